@@ -160,6 +160,12 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Resource, Do
 
     protected transient int splitCount = 0;
 
+    /**
+     * In-memory version of the document, incremented whenever the
+     * document is stored. Used to validate snapshot reads.
+     */
+    private transient volatile long version = 0;
+
     private boolean isReferenced = false;
 
     /**
@@ -546,6 +552,26 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Resource, Do
         splitCount = count;
     }
 
+    /**
+     * Get the in-memory version of this document. The version is not
+     * persisted, it only changes when the document is stored again.
+     *
+     * @return the version of the document
+     *
+     * @see org.exist.storage.lock.DocumentSnapshot
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Increase the in-memory version of this document. Called whenever
+     * the document is stored, whilst holding a write lock on it.
+     */
+    public void incVersion() {
+        version++;
+    }
+
     public boolean isReferenced() {
         return isReferenced;
     }
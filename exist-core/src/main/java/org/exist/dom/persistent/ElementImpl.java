@@ -30,6 +30,7 @@ import org.exist.dom.NodeListImpl;
 import org.exist.dom.QName;
 import org.exist.dom.QName.IllegalQNameException;
 import org.exist.indexing.IndexController;
+import org.exist.indexing.IndexController.ReindexRoots;
 import org.exist.indexing.StreamListener;
 import org.exist.indexing.StreamListener.ReindexMode;
 import org.exist.numbering.NodeId;
@@ -573,12 +574,10 @@ public class ElementImpl extends NamedNode<ElementImpl> implements Element {
             final IndexController indexes = broker.getIndexController();
             //May help getReindexRoot() to make some useful things
             indexes.setDocument(ownerDocument);
-            final IStoredNode reindexRoot = indexes.getReindexRoot(this, path, true, true);
+            final ReindexRoots reindexRoots = indexes.getReindexRoots(this, path, true, true);
             indexes.setMode(ReindexMode.STORE);
-            // only reindex if reindexRoot is an ancestor of the current node
-            if(reindexRoot == null) {
-                listener = indexes.getStreamListener();
-            }
+            // indexes which need to reindex an ancestor do not receive the new nodes
+            listener = indexes.getStreamListener(reindexRoots);
             if(children == 0) {
                 // no children: append a new child
                 appendChildren(transaction, nodeId.newChild(), null, new NodeImplRef(this), path, nodes, listener);
@@ -599,7 +598,7 @@ public class ElementImpl extends NamedNode<ElementImpl> implements Element {
                 }
             }
             broker.updateNode(transaction, this, false);
-            indexes.reindex(transaction, reindexRoot, ReindexMode.STORE);
+            indexes.reindex(transaction, reindexRoots, ReindexMode.STORE);
             broker.flush();
         } catch(final EXistException e) {
             LOG.warn("Exception while appending child node: {}", e.getMessage(), e);
@@ -1510,15 +1509,10 @@ public class ElementImpl extends NamedNode<ElementImpl> implements Element {
             final IndexController indexes = broker.getIndexController();
             //May help getReindexRoot() to make some useful things
             indexes.setDocument(ownerDocument);
-            final IStoredNode reindexRoot = indexes.getReindexRoot(this, path, true, true);
+            final ReindexRoots reindexRoots = indexes.getReindexRoots(this, path, true, true);
             indexes.setMode(ReindexMode.STORE);
 
-            final StreamListener listener;
-            if(reindexRoot == null) {
-                listener = indexes.getStreamListener();
-            } else {
-                listener = null;
-            }
+            final StreamListener listener = indexes.getStreamListener(reindexRoots);
 
             final IStoredNode<?> following = (IStoredNode<?>) refChild;
             final IStoredNode<?> previous = (IStoredNode<?>) following.getPreviousSibling();
@@ -1535,7 +1529,7 @@ public class ElementImpl extends NamedNode<ElementImpl> implements Element {
             }
             setDirty(true);
             broker.updateNode(transaction, this, true);
-            indexes.reindex(transaction, reindexRoot, ReindexMode.STORE);
+            indexes.reindex(transaction, reindexRoots, ReindexMode.STORE);
             broker.flush();
         } catch(final EXistException e) {
             LOG.warn("Exception while inserting node: {}", e.getMessage(), e);
@@ -1565,15 +1559,10 @@ public class ElementImpl extends NamedNode<ElementImpl> implements Element {
             final IndexController indexes = broker.getIndexController();
             //May help getReindexRoot() to make some useful things
             indexes.setDocument(ownerDocument);
-            final IStoredNode reindexRoot = indexes.getReindexRoot(this, path, true, true);
+            final ReindexRoots reindexRoots = indexes.getReindexRoots(this, path, true, true);
             indexes.setMode(ReindexMode.STORE);
 
-            final StreamListener listener;
-            if(reindexRoot == null) {
-                listener = indexes.getStreamListener();
-            } else {
-                listener = null;
-            }
+            final StreamListener listener = indexes.getStreamListener(reindexRoots);
 
             final IStoredNode<?> previous = (IStoredNode<?>) refChild;
             final IStoredNode<?> following = (IStoredNode<?>) previous.getNextSibling();
@@ -1582,7 +1571,7 @@ public class ElementImpl extends NamedNode<ElementImpl> implements Element {
             appendChildren(transaction, newNodeId, followingId, new NodeImplRef(getLastNode(previous)), path, nodes, listener);
             setDirty(true);
             broker.updateNode(transaction, this, true);
-            indexes.reindex(transaction, reindexRoot, ReindexMode.STORE);
+            indexes.reindex(transaction, reindexRoots, ReindexMode.STORE);
             broker.flush();
         } catch(final EXistException e) {
             LOG.warn("Exception while inserting node: {}", e.getMessage(), e);
@@ -1604,15 +1593,10 @@ public class ElementImpl extends NamedNode<ElementImpl> implements Element {
             final IndexController indexes = broker.getIndexController();
             //May help getReindexRoot() to make some useful things
             indexes.setDocument(ownerDocument);
-            final IStoredNode reindexRoot = indexes.getReindexRoot(this, path, true, true);
+            final ReindexRoots reindexRoots = indexes.getReindexRoots(this, path, true, true);
             indexes.setMode(ReindexMode.REMOVE_SOME_NODES);
-            final StreamListener listener;
-            if(reindexRoot == null) {
-                listener = indexes.getStreamListener();
-            } else {
-                listener = null;
-                indexes.reindex(transaction, reindexRoot, ReindexMode.REMOVE_SOME_NODES);
-            }
+            indexes.reindex(transaction, reindexRoots, ReindexMode.REMOVE_SOME_NODES);
+            final StreamListener listener = indexes.getStreamListener(reindexRoots);
             // TODO: fix once range index has been moved to new architecture
             final IStoredNode valueReindexRoot = broker.getValueIndex().getReindexRoot(this, path);
             broker.getValueIndex().reindex(valueReindexRoot);
@@ -1634,14 +1618,14 @@ public class ElementImpl extends NamedNode<ElementImpl> implements Element {
             }
             indexes.flush();
             indexes.setMode(ReindexMode.STORE);
-            indexes.getStreamListener();
+            indexes.getStreamListener(reindexRoots);
             broker.endRemove(transaction);
             children = i;
             final NodeId newNodeId = last == this ? nodeId.newChild() : last.getNodeId().nextSibling();
             //Append new content
             appendChildren(transaction, newNodeId, null, new NodeImplRef(last), path, newContent, listener);
             broker.updateNode(transaction, this, false);
-            indexes.reindex(transaction, reindexRoot, ReindexMode.STORE);
+            indexes.reindex(transaction, reindexRoots, ReindexMode.STORE);
             broker.getValueIndex().reindex(valueReindexRoot);
             broker.flush();
         } catch(final EXistException e) {
@@ -1690,14 +1674,12 @@ public class ElementImpl extends NamedNode<ElementImpl> implements Element {
             //May help getReindexRoot() to make some useful things
             indexes.setDocument(ownerDocument);
 
-            //Check if the change affects any ancestor nodes, which then need to be reindexed later
-            IStoredNode reindexRoot = indexes.getReindexRoot(oldNode, oldPath, false);
+            //Check if the change affects any ancestor nodes, which then need to be reindexed later.
+            //The replaced node is not streamed to the indexes, so all others reindex the node itself
+            final ReindexRoots reindexRoots = indexes.getReindexRootsOrSelf(oldNode, oldPath);
             indexes.setMode(ReindexMode.REMOVE_SOME_NODES);
             //Remove indexes
-            if(reindexRoot == null) {
-                reindexRoot = oldNode;
-            }
-            indexes.reindex(transaction, reindexRoot, ReindexMode.REMOVE_SOME_NODES);
+            indexes.reindex(transaction, reindexRoots, ReindexMode.REMOVE_SOME_NODES);
             //TODO: fix once range index has been moved to new architecture
             final NativeValueIndex valueIndex = broker.getValueIndex();
             final IStoredNode valueReindexRoot = valueIndex.getReindexRoot(this, oldPath);
@@ -1717,7 +1699,7 @@ public class ElementImpl extends NamedNode<ElementImpl> implements Element {
             broker.updateNode(transaction, this, true);
 
             //Recreate indexes on ancestor nodes
-            indexes.reindex(transaction, reindexRoot, ReindexMode.STORE);
+            indexes.reindex(transaction, reindexRoots, ReindexMode.STORE);
             valueIndex.reindex(valueReindexRoot);
             broker.flush();
         } catch(final EXistException e) {
@@ -1742,15 +1724,10 @@ public class ElementImpl extends NamedNode<ElementImpl> implements Element {
         try(final DBBroker broker = ownerDocument.getBrokerPool().getBroker()) {
             final IndexController indexes = broker.getIndexController();
             indexes.setDocument(ownerDocument);
-            final IStoredNode reindexRoot = indexes.getReindexRoot(oldNode, oldPath, false);
+            final ReindexRoots reindexRoots = indexes.getReindexRoots(oldNode, oldPath, false, false);
             indexes.setMode(ReindexMode.REMOVE_SOME_NODES);
-            final StreamListener listener;
-            if(reindexRoot == null) {
-                listener = indexes.getStreamListener();
-            } else {
-                listener = null;
-                indexes.reindex(transaction, reindexRoot, ReindexMode.REMOVE_SOME_NODES);
-            }
+            indexes.reindex(transaction, reindexRoots, ReindexMode.REMOVE_SOME_NODES);
+            final StreamListener listener = indexes.getStreamListener(reindexRoots);
             broker.removeAllNodes(transaction, oldNode, oldPath, listener);
             --children;
             if(oldChild.getNodeType() == Node.ATTRIBUTE_NODE) {
@@ -1760,9 +1737,8 @@ public class ElementImpl extends NamedNode<ElementImpl> implements Element {
             setDirty(true);
             broker.updateNode(transaction, this, false);
             broker.flush();
-            if(reindexRoot != null && !reindexRoot.getNodeId().equals(oldNode.getNodeId())) {
-                indexes.reindex(transaction, reindexRoot, ReindexMode.STORE);
-            }
+            // the removed node itself needs no reindexing, only its ancestors
+            indexes.reindex(transaction, reindexRoots.without(oldNode.getNodeId()), ReindexMode.STORE);
         } catch(final EXistException e) {
             LOG.warn("Exception while inserting node: {}", e.getMessage(), e);
         }
@@ -1800,8 +1776,8 @@ public class ElementImpl extends NamedNode<ElementImpl> implements Element {
             }
             final NodePath path = getPath();
             indexes.setDocument(ownerDocument, ReindexMode.STORE);
-            final IStoredNode reindexRoot = indexes.getReindexRoot(this, path, true, true);
-            final StreamListener listener = reindexRoot == null ? indexes.getStreamListener() : null;
+            final ReindexRoots reindexRoots = indexes.getReindexRoots(this, path, true, true);
+            final StreamListener listener = indexes.getStreamListener(reindexRoots);
             if (children == 0) {
                 appendChildren(transaction, nodeId.newChild(), null,
                     new NodeImplRef(this), path, appendList, listener);
@@ -1825,7 +1801,7 @@ public class ElementImpl extends NamedNode<ElementImpl> implements Element {
 
             broker.updateNode(transaction, this, true);
             broker.flush();
-            indexes.reindex(transaction, reindexRoot,
+            indexes.reindex(transaction, reindexRoots,
                     ReindexMode.STORE);
         } catch (final EXistException e) {
             LOG.warn("Exception while inserting node: {}", e.getMessage(), e);
@@ -1884,25 +1860,21 @@ public class ElementImpl extends NamedNode<ElementImpl> implements Element {
             final IndexController indexes = broker.getIndexController();
             //May help getReindexRoot() to make some useful things
             indexes.setDocument(ownerDocument);
-            final IStoredNode reindexRoot = broker.getIndexController().getReindexRoot(oldNode, oldPath, false);
+            final ReindexRoots reindexRoots = indexes.getReindexRoots(oldNode, oldPath, false, false);
             indexes.setMode(ReindexMode.REMOVE_SOME_NODES);
-            if(reindexRoot == null) {
-                listener = indexes.getStreamListener();
-            } else {
-                indexes.reindex(transaction, reindexRoot,
-                        ReindexMode.REMOVE_SOME_NODES);
-            }
+            indexes.reindex(transaction, reindexRoots, ReindexMode.REMOVE_SOME_NODES);
+            listener = indexes.getStreamListener(reindexRoots);
             broker.removeAllNodes(transaction, oldNode, oldPath, listener);
             broker.endRemove(transaction);
             broker.flush();
             indexes.setMode(ReindexMode.STORE);
-            listener = indexes.getStreamListener();
+            listener = indexes.getStreamListener(reindexRoots);
             newNode = appendChild(transaction, oldNode.getNodeId(), new NodeImplRef(previous),
                 thisPath, newChild, listener);
             //Reindex if required
             broker.storeXMLResource(transaction, getOwnerDocument());
             broker.updateNode(transaction, this, false);
-            indexes.reindex(transaction, reindexRoot, ReindexMode.STORE);
+            indexes.reindex(transaction, reindexRoots, ReindexMode.STORE);
             broker.flush();
         } catch(final EXistException e) {
             LOG.warn("Exception while inserting node: {}", e.getMessage(), e);
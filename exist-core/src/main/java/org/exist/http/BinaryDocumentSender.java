@@ -0,0 +1,368 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.http;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.commons.lang3.SystemUtils;
+import org.eclipse.jetty.server.HttpOutput;
+import org.exist.dom.persistent.BinaryDocument;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.Txn;
+import org.exist.util.MimeType;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Sends the content of a binary document to an HTTP client straight from the
+ * blob file, using {@link FileChannel#transferTo(long, long, WritableByteChannel)}
+ * instead of copying it through an intermediate buffer.
+ *
+ * Sets the Content-Type, Content-Length, Last-Modified and ETag headers and answers
+ * conditional requests (If-None-Match, If-Modified-Since) with 304 Not Modified.
+ * A single byte range requested with the Range header (optionally guarded by If-Range)
+ * is answered with 206 Partial Content, multiple ranges are ignored and the complete
+ * content is sent.
+ *
+ * When writing directly to a Jetty response, the blob file is memory mapped and handed
+ * to Jetty, so that the content is written to the socket from the page cache without
+ * being copied through the Java heap.
+ *
+ * The caller is responsible for holding a read lock on the document and for
+ * checking the read permission.
+ */
+public class BinaryDocumentSender {
+
+    /**
+     * Ranges of at least this size are memory mapped when writing to a Jetty response.
+     * Smaller ones are cheaper to copy.
+     */
+    static final long MIN_MAPPED_SIZE = 64 * 1024;
+
+    private static final long[] UNSATISFIABLE = new long[0];
+
+    private BinaryDocumentSender() {
+    }
+
+    /**
+     * Check if the REST server would answer a GET or HEAD request for the document
+     * by sending its content unchanged, so that the request may be answered by
+     * {@link #send} instead. This is not the case for documents the REST server
+     * executes, e.g. XQuery main modules, or if the request has any of the
+     * parameters of the REST server, e.g. _source, _xsl or _query.
+     *
+     * @param request the HTTP request
+     * @param document the document
+     *
+     * @return true if the content of the document may be sent directly
+     */
+    public static boolean isPlainDownload(final HttpServletRequest request, final DocumentImpl document) {
+        if (document.getResourceType() != DocumentImpl.BINARY_FILE) {
+            return false;
+        }
+        final String mimeType = document.getMimeType();
+        if (MimeType.XQUERY_TYPE.getName().equals(mimeType) || MimeType.XPROC_TYPE.getName().equals(mimeType)) {
+            return false;
+        }
+        for (final RESTServerParameter parameter : RESTServerParameter.values()) {
+            if (request.getParameter(parameter.queryStringKey()) != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Send a binary document as the response to a GET or HEAD request.
+     *
+     * @param broker the database broker
+     * @param transaction the transaction used to access the blob store, or null as
+     *     reading from the blob store is not journalled
+     * @param document the binary document, read locked by the caller
+     * @param mimeType the mime type to send, or null to use the one of the document
+     * @param encoding the charset to add to text/* mime types
+     * @param request the HTTP request
+     * @param response the HTTP response
+     *
+     * @throws IOException if the document cannot be read or the response cannot be written
+     */
+    public static void send(final DBBroker broker, @Nullable final Txn transaction, final BinaryDocument document,
+            @Nullable final String mimeType, final String encoding, final HttpServletRequest request,
+            final HttpServletResponse response) throws IOException {
+        final String etag = RESTServer.getETag(document, request);
+        response.setHeader("ETag", etag);
+        response.setDateHeader("Last-Modified", roundUpToSeconds(document.getLastModified()));
+
+        if (isNotModified(request, etag, document.getLastModified())) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        final String contentType = mimeType == null ? document.getMimeType() : mimeType;
+        if (contentType.startsWith("text/")) {
+            response.setContentType(contentType + "; charset=" + encoding);
+        } else {
+            response.setContentType(contentType);
+        }
+
+        sendContent(broker, transaction, document, etag, request, response);
+    }
+
+    /**
+     * Send the content of a binary document, or of the byte range requested by the client.
+     * Content-Type and the validator headers need to be set by the caller.
+     *
+     * @param broker the database broker
+     * @param transaction the transaction used to access the blob store, or null as
+     *     reading from the blob store is not journalled
+     * @param document the binary document, read locked by the caller
+     * @param etag the entity tag sent for the document, checked against If-Range
+     * @param request the HTTP request
+     * @param response the HTTP response
+     *
+     * @throws IOException if the document cannot be read or the response cannot be written
+     */
+    public static void sendContent(final DBBroker broker, @Nullable final Txn transaction, final BinaryDocument document,
+            final String etag, final HttpServletRequest request, final HttpServletResponse response)
+            throws IOException {
+        final IOException error = broker.withBinaryFile(transaction, document, path -> {
+            if (path == null) {
+                return new IOException("Blob file of " + document.getURI() + " is missing");
+            }
+            try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                sendContent(channel, document.getLastModified(), etag, request, response);
+                return null;
+            } catch (final IOException e) {
+                return e;
+            }
+        });
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Write a part of a binary document to an output stream, straight from the blob file.
+     * The range is clipped to the length of the blob file.
+     *
+     * @param broker the database broker
+     * @param transaction the transaction used to access the blob store, or null as
+     *     reading from the blob store is not journalled
+     * @param document the binary document, read locked by the caller
+     * @param offset the position of the first byte to write
+     * @param count the number of bytes to write
+     * @param os the stream to write to
+     *
+     * @throws IOException if the document cannot be read or the stream cannot be written
+     */
+    public static void transfer(final DBBroker broker, @Nullable final Txn transaction, final BinaryDocument document,
+            final long offset, final long count, final OutputStream os) throws IOException {
+        final IOException error = broker.withBinaryFile(transaction, document, path -> {
+            if (path == null) {
+                return new IOException("Blob file of " + document.getURI() + " is missing");
+            }
+            try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                final long available = Math.max(0, Math.min(count, channel.size() - offset));
+                transfer(channel, offset, available, Channels.newChannel(os));
+                return null;
+            } catch (final IOException e) {
+                return e;
+            }
+        });
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Send the content of a blob file. The length and the requested range are checked
+     * against the file itself, rather than against the metadata of the document, so
+     * that the Content-Length sent always matches the number of bytes written.
+     */
+    static void sendContent(final FileChannel channel, final long lastModified, final String etag,
+            final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+        final long length = channel.size();
+        response.setHeader("Accept-Ranges", "bytes");
+
+        long offset = 0;
+        long count = length;
+        final String rangeHeader = request.getHeader("Range");
+        if (rangeHeader != null && "GET".equals(request.getMethod())
+                && matchesIfRange(request.getHeader("If-Range"), etag, lastModified)) {
+            final long[] range = parseRange(rangeHeader, length);
+            if (range == UNSATISFIABLE) {
+                response.setHeader("Content-Range", "bytes */" + length);
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            } else if (range != null) {
+                offset = range[0];
+                count = range[1] - range[0] + 1;
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range", "bytes " + range[0] + '-' + range[1] + '/' + length);
+            }
+        }
+
+        // HttpServletResponse.setContentLength is limited to int
+        response.setHeader("Content-Length", Long.toString(count));
+        if ("HEAD".equals(request.getMethod())) {
+            return;
+        }
+
+        final OutputStream os = response.getOutputStream();
+        // a mapped file can not be deleted on Windows until the buffer is garbage collected
+        if (os instanceof HttpOutput && count >= MIN_MAPPED_SIZE
+                && count <= Integer.MAX_VALUE && !SystemUtils.IS_OS_WINDOWS) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, count);
+            ((HttpOutput) os).write(buffer);
+        } else {
+            transfer(channel, offset, count, Channels.newChannel(os));
+        }
+        os.flush();
+    }
+
+    /**
+     * Parse a Range header requesting a single byte range, i.e. "bytes=first-last",
+     * "bytes=first-" or "bytes=-suffixLength" (RFC 7233 Section 2.1).
+     *
+     * @param header the value of the Range header
+     * @param length the length of the content
+     *
+     * @return the first and last (inclusive) position of the range, null if the header
+     *     should be ignored, or an empty array if the range can not be satisfied
+     */
+    static @Nullable long[] parseRange(final String header, final long length) {
+        final String value = header.trim();
+        if (!value.startsWith("bytes=") || value.indexOf(',') > -1) {
+            // unknown unit or multiple ranges, send the complete content
+            return null;
+        }
+        final String spec = value.substring("bytes=".length()).trim();
+        final int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            final String first = spec.substring(0, dash).trim();
+            final String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                // suffix range: the last n bytes
+                final long suffix = Long.parseLong(last);
+                if (suffix <= 0 || length == 0) {
+                    return UNSATISFIABLE;
+                }
+                return new long[] { Math.max(0, length - suffix), length - 1 };
+            }
+            final long start = Long.parseLong(first);
+            final long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+            if (start < 0 || end < start) {
+                // syntactically invalid, ignore it
+                return null;
+            }
+            if (start >= length) {
+                return UNSATISFIABLE;
+            }
+            return new long[] { start, Math.min(end, length - 1) };
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A range is only applied if the If-Range header is absent or still matches
+     * the resource, otherwise the complete content is sent (RFC 7233 Section 3.2).
+     */
+    private static boolean matchesIfRange(@Nullable final String ifRange, final String etag, final long lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        final String value = ifRange.trim();
+        if (value.startsWith("\"") || value.startsWith("W/")) {
+            // weak tags never match here, the strong comparison function is required
+            return value.equals(etag);
+        }
+        try {
+            final long date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return date == roundUpToSeconds(lastModified);
+        } catch (final DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Check the conditional request headers. If-None-Match takes precedence, If-Modified-Since
+     * is ignored when it is present (RFC 7232 Section 6).
+     *
+     * @param request the HTTP request
+     * @param etag the current entity tag of the resource
+     * @param lastModified the last modification time of the resource
+     *
+     * @return true if the client copy is still valid and 304 can be sent
+     */
+    static boolean isNotModified(final HttpServletRequest request, final String etag, final long lastModified) {
+        final String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            return RESTServer.matchesETag(ifNoneMatch, etag);
+        }
+        try {
+            final long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+            return ifModifiedSince > -1 && ifModifiedSince <= System.currentTimeMillis()
+                    && lastModified <= ifModifiedSince;
+        } catch (final IllegalArgumentException e) {
+            // illegal date header, ignore it
+            return false;
+        }
+    }
+
+    static void transfer(final FileChannel channel, final long offset, final long count,
+            final WritableByteChannel target) throws IOException {
+        long position = offset;
+        final long end = offset + count;
+        while (position < end) {
+            final long transferred = channel.transferTo(position, end - position, target);
+            if (transferred <= 0) {
+                // the file was truncated underneath us
+                throw new IOException("Unexpected end of blob file at offset " + position);
+            }
+            position += transferred;
+        }
+    }
+
+    /**
+     * Jetty ignores the milliseconds component of date headers, round up to the
+     * nearest whole second like {@link RESTServer#setCreatedAndLastModifiedHeaders}.
+     */
+    private static long roundUpToSeconds(final long time) {
+        final long millis = time % 1000;
+        return millis > 0 ? time + 1000 - millis : time;
+    }
+}
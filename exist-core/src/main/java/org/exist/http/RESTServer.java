@@ -49,6 +49,7 @@ import org.exist.source.URLSource;
 import org.exist.storage.BrokerPool;
 import org.exist.storage.DBBroker;
 import org.exist.storage.XQueryPool;
+import org.exist.storage.blob.BlobId;
 import org.exist.storage.lock.Lock.LockMode;
 import org.exist.storage.lock.ManagedCollectionLock;
 import org.exist.storage.serializers.EXistOutputKeys;
@@ -59,11 +60,10 @@ import org.exist.util.io.CachingFilterInputStream;
 import org.exist.util.io.FilterInputStreamCache;
 import org.exist.util.io.FilterInputStreamCacheFactory;
 import org.exist.util.io.FilterInputStreamCacheFactory.FilterInputStreamCacheConfiguration;
+import org.exist.util.io.PeriodicFlushWriter;
 import org.exist.util.serializer.SAXSerializer;
 import org.exist.util.serializer.SerializerPool;
 import org.exist.util.serializer.XQuerySerializer;
-import org.exist.util.serializer.json.JSONNode;
-import org.exist.util.serializer.json.JSONObject;
 import org.exist.util.serializer.json.JSONSimpleProperty;
 import org.exist.util.serializer.json.JSONValue;
 import org.exist.xmldb.XmldbURI;
@@ -610,6 +610,7 @@ public class RESTServer {
                 // must be set so
                 response.addHeader("Content-Length", Long.toString(resource.getContentLength()));
                 setCreatedAndLastModifiedHeaders(response, resource.getCreated(), resource.getLastModified());
+                response.setHeader("ETag", getETag(resource, request));
             } else {
                 try(final Collection col = broker.openCollection(pathUri, LockMode.READ_LOCK)) {
                     //no resource or collection
@@ -763,10 +764,12 @@ public class RESTServer {
             boolean cache = false;
             String query = null;
 
-            try {
-                final String content = getRequestContent(request);
+            // the request body may be parsed twice, so it is cached rather than read into memory
+            try (final FilterInputStreamCache bodyCache = FilterInputStreamCacheFactory.getCacheInstance(()
+                    -> (String) broker.getConfiguration().getProperty(Configuration.BINARY_CACHE_CLASS_PROPERTY), request.getInputStream());
+                 final CachingFilterInputStream cfis = new CachingFilterInputStream(bodyCache)) {
                 final NamespaceExtractor nsExtractor = new NamespaceExtractor();
-                final ElementImpl root = parseXML(broker.getBrokerPool(), content, nsExtractor);
+                final ElementImpl root = parseXML(broker.getBrokerPool(), getRequestContent(request, cfis), nsExtractor);
                 final String rootNS = root.getNamespaceURI();
 
                 if (rootNS != null && rootNS.equals(Namespaces.EXIST_NS)) {
@@ -900,7 +903,7 @@ public class RESTServer {
 
                 } else if (rootNS != null && rootNS.equals(XUpdateProcessor.XUPDATE_NS)) {
                     if(LOG.isDebugEnabled()) {
-                        LOG.debug("Got xupdate request: {}", content);
+                        LOG.debug("Got xupdate request for: {}", path);
                     }
 
                     if(xupdateSubmission == EXistServlet.FeatureEnabled.FALSE) {
@@ -937,12 +940,10 @@ public class RESTServer {
 
                     final XUpdateProcessor processor = new XUpdateProcessor(broker, docs);
                     long mods = 0;
-                    try(final Reader reader = new StringReader(content)) {
-                        final Modification modifications[] = processor.parse(new InputSource(reader));
-                        for (Modification modification : modifications) {
-                            mods += modification.process(transaction);
-                            broker.flush();
-                        }
+                    final Modification modifications[] = processor.parse(getRequestContent(request, cfis));
+                    for (Modification modification : modifications) {
+                        mods += modification.process(transaction);
+                        broker.flush();
                     }
 
                     // FD : Returns an XML doc
@@ -982,7 +983,12 @@ public class RESTServer {
     private ElementImpl parseXML(final BrokerPool pool, final String content,
             final NamespaceExtractor nsExtractor)
             throws SAXException, IOException {
-        final InputSource src = new InputSource(new StringReader(content));
+        return parseXML(pool, new InputSource(new StringReader(content)), nsExtractor);
+    }
+
+    private ElementImpl parseXML(final BrokerPool pool, final InputSource src,
+            final NamespaceExtractor nsExtractor)
+            throws SAXException, IOException {
         final XMLReaderPool parserPool = pool.getParserPool();
         XMLReader reader = null;
         try {
@@ -1095,12 +1101,16 @@ public class RESTServer {
                 mime = MimeTable.getInstance().getContentTypeFor(docUri);
             }
 
-            // TODO(AR) in storeDocument need to handle mime == null and use MimeType.BINARY_TYPE
-            // TODO(AR) in storeDocument, if the input source has an InputStream (but is not a subclass: FileInputSource or ByteArrayInputSource), need to handle caching and reusing the input stream between validate and store
-            try (final FilterInputStreamCache cache = FilterInputStreamCacheFactory.getCacheInstance(()
-                    -> (String) broker.getConfiguration().getProperty(Configuration.BINARY_CACHE_CLASS_PROPERTY), request.getInputStream());
-                final CachingFilterInputStream cfis = new CachingFilterInputStream(cache)) {
-                broker.storeDocument(transaction, docUri, new CachingFilterInputStreamInputSource(cfis), mime, collection);
+            if (mime == null || !mime.isXMLType()) {
+                // binary resources are read only once, so stream the request body straight into the blob store
+                broker.storeDocument(transaction, docUri, new InputSource(request.getInputStream()), mime, collection);
+            } else {
+                // TODO(AR) in storeDocument, if the input source has an InputStream (but is not a subclass: FileInputSource or ByteArrayInputSource), need to handle caching and reusing the input stream between validate and store
+                try (final FilterInputStreamCache cache = FilterInputStreamCacheFactory.getCacheInstance(()
+                        -> (String) broker.getConfiguration().getProperty(Configuration.BINARY_CACHE_CLASS_PROPERTY), request.getInputStream());
+                    final CachingFilterInputStream cfis = new CachingFilterInputStream(cache)) {
+                    broker.storeDocument(transaction, docUri, new CachingFilterInputStreamInputSource(cfis), mime, collection);
+                }
             }
             response.setStatus(HttpServletResponse.SC_CREATED);
 
@@ -1275,24 +1285,17 @@ public class RESTServer {
         return true;
     }
 
-    private String getRequestContent(final HttpServletRequest request) throws IOException {
-
-        String encoding = request.getCharacterEncoding();
-        if (encoding == null) {
-            encoding = DEFAULT_ENCODING;
-        }
-
-        final InputStream is = request.getInputStream();
-        final Reader reader = new InputStreamReader(is, encoding);
-        final StringWriter content = new StringWriter();
-        final char ch[] = new char[4096];
-        int len = 0;
-        while ((len = reader.read(ch)) > -1) {
-            content.write(ch, 0, len);
+    /**
+     * Get an input source for the request body, which has been cached by the caller.
+     * Each call returns a new source positioned at the start of the body.
+     */
+    private InputSource getRequestContent(final HttpServletRequest request, final CachingFilterInputStream cfis) {
+        final InputSource source = new CachingFilterInputStreamInputSource(cfis);
+        final String encoding = request.getCharacterEncoding();
+        if (encoding != null) {
+            source.setEncoding(encoding);
         }
-
-        final String xml = content.toString();
-        return xml;
+        return source;
     }
 
     /**
@@ -1688,6 +1691,61 @@ public class RESTServer {
         }
     }
 
+    /**
+     * Compute a strong entity tag for a resource.
+     *
+     * For binary resources the tag is derived from the content digest of the blob,
+     * for XML resources from the document id and the last modified time. The query
+     * string is part of the tag, as serialization parameters and stylesheets change
+     * the representation.
+     *
+     * @param resource the resource
+     * @param request the http request
+     *
+     * @return the quoted entity tag
+     */
+    static String getETag(final DocumentImpl resource, final HttpServletRequest request) {
+        final StringBuilder etag = new StringBuilder("\"");
+        final BlobId blobId = resource.getResourceType() == DocumentImpl.BINARY_FILE
+                ? ((BinaryDocument) resource).getBlobId() : null;
+        if (blobId != null) {
+            etag.append(HexEncoder.bytesToHex(blobId.getId()));
+        } else {
+            etag.append(Integer.toHexString(resource.getDocId()))
+                    .append('-')
+                    .append(Long.toHexString(resource.getLastModified()));
+        }
+        final String queryString = request.getQueryString();
+        if (queryString != null && !queryString.isEmpty()) {
+            etag.append('-').append(Integer.toHexString(queryString.hashCode()));
+        }
+        return etag.append('"').toString();
+    }
+
+    /**
+     * Check the value of an If-None-Match header against an entity tag, using the
+     * weak comparison function of RFC 7232 Section 2.3.2.
+     *
+     * @param ifNoneMatch the value of the If-None-Match header
+     * @param etag the entity tag of the resource
+     *
+     * @return true if the header matches the entity tag
+     */
+    public static boolean matchesETag(final String ifNoneMatch, final String etag) {
+        final String opaqueTag = stripWeakIndicator(etag);
+        for (final String candidate : ifNoneMatch.split(",")) {
+            final String tag = candidate.trim();
+            if ("*".equals(tag) || stripWeakIndicator(tag).equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeakIndicator(final String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
     public void setCreatedAndLastModifiedHeaders(
         final HttpServletResponse response, long created, long lastModified) {
 
@@ -1726,39 +1784,53 @@ public class RESTServer {
         final long lastModified = resource.getLastModified();
         setCreatedAndLastModifiedHeaders(response, resource.getCreated(), lastModified);
 
+        final String etag = getETag(resource, request);
+        response.setHeader("ETag", etag);
 
-        /**
-         * HTTP 1.1 RFC 2616 Section 14.25 *
+        /*
+         * RFC 7232 Section 6: If-None-Match takes precedence, If-Modified-Since
+         * is ignored when it is present
          */
-        //handle If-Modified-Since request header
-        try {
-            final long ifModifiedSince = request.getDateHeader("If-Modified-Since");
-            if (ifModifiedSince > -1) {
-
-                /*
-                 a) A date which is later than the server's
-                 current time is invalid.
+        final String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            if (matchesETag(ifNoneMatch, etag)) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+        } else {
+            try {
+                /**
+                 * HTTP 1.1 RFC 2616 Section 14.25 *
                  */
-                if (ifModifiedSince <= System.currentTimeMillis()) {
+                //handle If-Modified-Since request header
+                final long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+                if (ifModifiedSince > -1) {
 
                     /*
-                     b) If the variant has been modified since the If-Modified-Since
-                     date, the response is exactly the same as for a normal GET.
+                     a) A date which is later than the server's
+                     current time is invalid.
                      */
-                    if (lastModified <= ifModifiedSince) {
+                    if (ifModifiedSince <= System.currentTimeMillis()) {
 
                         /*
-                         c) If the variant has not been modified since a valid If-
-                         Modified-Since date, the server SHOULD return a 304 (Not
-                         Modified) response.
+                         b) If the variant has been modified since the If-Modified-Since
+                         date, the response is exactly the same as for a normal GET.
                          */
-                        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
-                        return;
+                        if (lastModified <= ifModifiedSince) {
+
+                            /*
+                             c) If the variant has not been modified since a valid If-
+                             Modified-Since date, the server SHOULD return a 304 (Not
+                             Modified) response.
+                             */
+                            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                            return;
+                        }
                     }
                 }
+            } catch (final IllegalArgumentException iae) {
+                LOG.warn("Illegal If-Modified-Since HTTP Header sent on request, ignoring. {}", iae.getMessage(), iae);
             }
-        } catch (final IllegalArgumentException iae) {
-            LOG.warn("Illegal If-Modified-Since HTTP Header sent on request, ignoring. {}", iae.getMessage(), iae);
         }
 
         if (resource.getResourceType() == DocumentImpl.BINARY_FILE) {
@@ -1774,15 +1846,8 @@ public class RESTServer {
                 response.setContentType(asMimeType);
             }
 
-            // As HttpServletResponse.setContentLength is limited to integers,
-            // (see http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4187336)
-            // next sentence:
-            //	response.setContentLength(resource.getContentLength());
-            // must be set so
-            response.addHeader("Content-Length", Long.toString(resource.getContentLength()));
-            final OutputStream os = response.getOutputStream();
-            broker.readBinaryResource((BinaryDocument) resource, os);
-            os.flush();
+            // sets Content-Length and answers Range requests
+            BinaryDocumentSender.sendContent(broker, transaction, (BinaryDocument) resource, etag, request, response);
         } else {
             // xml resource
 
@@ -1832,6 +1897,14 @@ public class RESTServer {
                     outputProperties.setProperty("omit-xml-declaration", "no");
                 }
 
+                if (!asMimeType.equals(MimeType.HTML_TYPE.getName()) && serializer.isRawSerializable(resource)) {
+                    // plain xml output: write the stored document straight to the response
+                    final OutputStream os = response.getOutputStream();
+                    serializer.toRawUTF8(resource, os);
+                    os.close();
+                    return;
+                }
+
                 final OutputStreamWriter writer = new OutputStreamWriter(response.getOutputStream(), encoding);
                 sax.setOutput(writer, outputProperties);
                 serializer.setSAXHandlers(sax, sax);
@@ -2174,7 +2247,7 @@ public class RESTServer {
             if (wrap) {
                 outputProperties.setProperty("method", "xml");
             }
-            final Writer writer = new OutputStreamWriter(response.getOutputStream(), encoding);
+            final Writer writer = new PeriodicFlushWriter(new OutputStreamWriter(response.getOutputStream(), encoding));
             final XQuerySerializer serializer = new XQuerySerializer(broker, outputProperties, writer);
 
             //Marshaller.marshall(broker, results, start, howmany, serializer.getContentHandler());
@@ -2217,43 +2290,53 @@ public class RESTServer {
         outputProperties.setProperty(Serializer.GENERATE_DOC_EVENTS, "false");
         try {
             serializer.setProperties(outputProperties);
-            try (Writer writer = new OutputStreamWriter(response.getOutputStream(), getEncoding(outputProperties))) {
-                final JSONObject root = new JSONObject();
-                root.addObject(new JSONSimpleProperty("start", Integer.toString(start), true));
-                root.addObject(new JSONSimpleProperty("count", Integer.toString(howmany), true));
-                root.addObject(new JSONSimpleProperty("hits", Integer.toString(results.getItemCount()), true));
+            try (Writer writer = new PeriodicFlushWriter(new OutputStreamWriter(response.getOutputStream(), getEncoding(outputProperties)))) {
+                // the items are written one by one as they are serialized, instead of building a JSON tree of the whole result
+                writer.write('{');
+                new JSONSimpleProperty("start", Integer.toString(start), true).serialize(writer, false);
+                writer.write(',');
+                new JSONSimpleProperty("count", Integer.toString(howmany), true).serialize(writer, false);
+                writer.write(',');
+                new JSONSimpleProperty("hits", Integer.toString(results.getItemCount()), true).serialize(writer, false);
                 if (outputProperties.getProperty(Serializer.PROPERTY_SESSION_ID) != null) {
-                    root.addObject(new JSONSimpleProperty("session",
-                            outputProperties.getProperty(Serializer.PROPERTY_SESSION_ID)));
+                    writer.write(',');
+                    new JSONSimpleProperty("session", outputProperties.getProperty(Serializer.PROPERTY_SESSION_ID)).serialize(writer, false);
                 }
-                root.addObject(new JSONSimpleProperty("compilationTime", Long.toString(compilationTime), true));
-                root.addObject(new JSONSimpleProperty("executionTime", Long.toString(executionTime), true));
-
-                final JSONObject data = new JSONObject("data");
-                root.addObject(data);
-
-                Item item;
-                for (int i = --start; i < start + howmany; i++) {
-                    item = results.itemAt(i);
-                    if (Type.subTypeOf(item.getType(), Type.NODE)) {
-                        final NodeValue value = (NodeValue) item;
-                        JSONValue json;
-                        if ("json".equals(outputProperties.getProperty("method", "xml"))) {
-                            json = new JSONValue(serializer.serialize(value), false);
-                            json.setSerializationDataType(JSONNode.SerializationDataType.AS_LITERAL);
+                writer.write(',');
+                new JSONSimpleProperty("compilationTime", Long.toString(compilationTime), true).serialize(writer, false);
+                writer.write(',');
+                new JSONSimpleProperty("executionTime", Long.toString(executionTime), true).serialize(writer, false);
+                writer.write(",\"data\":");
+
+                if (howmany == 0) {
+                    writer.write("null");
+                } else {
+                    // a single item is written as a plain value, multiple items as an array
+                    if (howmany > 1) {
+                        writer.write('[');
+                    }
+                    Item item;
+                    for (int i = --start; i < start + howmany; i++) {
+                        if (i > start) {
+                            writer.write(',');
+                        }
+                        item = results.itemAt(i);
+                        if (Type.subTypeOf(item.getType(), Type.NODE)) {
+                            final NodeValue value = (NodeValue) item;
+                            if ("json".equals(outputProperties.getProperty("method", "xml"))) {
+                                serializer.serialize(value, writer);
+                            } else {
+                                new JSONValue(serializer.serialize(value)).serializeContent(writer);
+                            }
                         } else {
-                            json = new JSONValue(serializer.serialize(value));
-                            json.setSerializationType(JSONNode.SerializationType.AS_ARRAY);
+                            new JSONValue(item.getStringValue()).serializeContent(writer);
                         }
-                        data.addObject(json);
-                    } else {
-                        final JSONValue json = new JSONValue(item.getStringValue());
-                        json.setSerializationType(JSONNode.SerializationType.AS_ARRAY);
-                        data.addObject(json);
+                    }
+                    if (howmany > 1) {
+                        writer.write(']');
                     }
                 }
-
-                root.serialize(writer, true);
+                writer.write('}');
 
                 writer.flush();
             }
@@ -0,0 +1,504 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.http.servlets;
+
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Response wrapper which gzip compresses the response body if the client
+ * accepts it.
+ *
+ * The decision to compress is taken lazily when the first byte of the body is
+ * written, so that servlets and XQueries can still set the content type, a
+ * Content-Encoding of their own, or a status without body. Only textual content
+ * types are compressed. A Content-Length set by the application is dropped if
+ * the body is compressed, and a strong ETag is turned into a weak one, as the
+ * compressed body is no longer byte-identical to the resource.
+ *
+ * Deflaters are pooled, since they hold a considerable amount of native memory
+ * which is otherwise only released on garbage collection.
+ *
+ * Brotli is not offered, as the JDK has no encoder for it.
+ */
+public class CompressingResponseWrapper extends HttpServletResponseWrapper {
+
+    private static final int MAX_POOLED_DEFLATERS = 32;
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final byte[] GZIP_HEADER = {
+            0x1f, (byte) 0x8b,      // magic
+            Deflater.DEFLATED,      // compression method
+            0,                      // flags
+            0, 0, 0, 0,             // modification time
+            0,                      // extra flags
+            (byte) 0xff             // operating system: unknown
+    };
+
+    private static final Queue<Deflater> DEFLATERS = new ArrayBlockingQueue<>(MAX_POOLED_DEFLATERS);
+
+    private Boolean compress = null;
+    private long contentLength = -1;
+    private GzipServletOutputStream stream = null;
+    private PrintWriter writer = null;
+
+    private CompressingResponseWrapper(final HttpServletResponse response) {
+        super(response);
+    }
+
+    @FunctionalInterface
+    public interface ResponseHandler {
+        void handle(HttpServletResponse response) throws ServletException, IOException;
+    }
+
+    /**
+     * Run the handler with a compressing response if compression is enabled
+     * and accepted by the client, or with the original response otherwise.
+     *
+     * Forwarded and included requests are never compressed here, as the
+     * dispatching servlet, e.g. the URL rewriter, may post-process the body.
+     *
+     * @param request the http request
+     * @param response the http response
+     * @param enabled true if compression is enabled
+     * @param handler the handler writing the response
+     *
+     * @throws ServletException if the handler raises an exception
+     * @throws IOException if an I/O error occurs
+     */
+    public static void process(final HttpServletRequest request, final HttpServletResponse response,
+            final boolean enabled, final ResponseHandler handler) throws ServletException, IOException {
+        if (!enabled || request.getDispatcherType() != DispatcherType.REQUEST
+                || !acceptsGzip(request.getHeader("Accept-Encoding"))) {
+            handler.handle(response);
+            return;
+        }
+
+        final CompressingResponseWrapper wrapper = new CompressingResponseWrapper(response);
+        try {
+            handler.handle(wrapper);
+        } finally {
+            wrapper.finish();
+        }
+    }
+
+    /**
+     * Check if gzip is an acceptable content-coding according to the value of
+     * an Accept-Encoding header.
+     *
+     * @param acceptEncoding the value of the Accept-Encoding header, may be null
+     * @return true if the response may be gzip compressed
+     */
+    static boolean acceptsGzip(@Nullable final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+
+        boolean wildcard = false;
+        for (final String coding : acceptEncoding.split(",")) {
+            final String[] params = coding.split(";");
+            final String name = params[0].trim().toLowerCase(Locale.ROOT);
+            final boolean accepted = !hasZeroQuality(params);
+            if ("gzip".equals(name) || "x-gzip".equals(name)) {
+                return accepted;
+            } else if ("*".equals(name)) {
+                wildcard = accepted;
+            }
+        }
+        return wildcard;
+    }
+
+    private static boolean hasZeroQuality(final String[] params) {
+        for (int i = 1; i < params.length; i++) {
+            final String param = params[i].trim();
+            if (param.length() > 2 && (param.charAt(0) == 'q' || param.charAt(0) == 'Q') && param.charAt(1) == '=') {
+                try {
+                    return Float.parseFloat(param.substring(2).trim()) <= 0;
+                } catch (final NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if a body of the given content type is worth compressing.
+     *
+     * @param contentType the content type of the response, may be null
+     * @return true for textual content types
+     */
+    static boolean isCompressible(@Nullable final String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        final int sep = contentType.indexOf(';');
+        final String mediaType = (sep < 0 ? contentType : contentType.substring(0, sep)).trim().toLowerCase(Locale.ROOT);
+        return mediaType.startsWith("text/")
+                || mediaType.endsWith("+xml")
+                || mediaType.endsWith("+json")
+                || mediaType.equals("application/xml")
+                || mediaType.equals("application/json")
+                || mediaType.equals("application/javascript")
+                || mediaType.equals("application/x-javascript")
+                || mediaType.equals("application/xquery");
+    }
+
+    private boolean shouldCompress() {
+        if (compress == null) {
+            final int status = getStatus();
+            compress = !isCommitted()
+                    && status != SC_NO_CONTENT && status != SC_NOT_MODIFIED
+                    // a byte range refers to the uncompressed content
+                    && status != SC_PARTIAL_CONTENT
+                    && getHeader("Content-Encoding") == null
+                    && isCompressible(getContentType());
+            if (compress) {
+                super.setHeader("Content-Encoding", "gzip");
+                super.addHeader("Vary", "Accept-Encoding");
+                final String etag = getHeader("ETag");
+                if (etag != null && !etag.startsWith("W/")) {
+                    super.setHeader("ETag", "W/" + etag);
+                }
+            } else if (contentLength > -1) {
+                super.setContentLengthLong(contentLength);
+            }
+        }
+        return compress;
+    }
+
+    /**
+     * Called before the response is committed. If no body has been written
+     * so far, the response goes out uncompressed, so a Content-Length set by
+     * the application must be passed on.
+     */
+    private void commitUncompressed() {
+        if (compress == null && !isCommitted()) {
+            compress = false;
+            if (contentLength > -1) {
+                super.setContentLengthLong(contentLength);
+            }
+        }
+    }
+
+    /**
+     * Complete the compressed body, if any, and return the deflater to the pool.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void finish() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        commitUncompressed();
+        if (stream != null) {
+            stream.finish();
+        }
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has already been called on this response");
+        }
+        if (stream == null) {
+            stream = new GzipServletOutputStream(super.getOutputStream());
+        }
+        return stream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            if (stream != null) {
+                throw new IllegalStateException("getOutputStream() has already been called on this response");
+            }
+            stream = new GzipServletOutputStream(super.getOutputStream());
+            writer = new PrintWriter(new OutputStreamWriter(stream, getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        commitUncompressed();
+        if (stream != null) {
+            stream.flush();
+        }
+        super.flushBuffer();
+    }
+
+    @Override
+    public void setContentLength(final int len) {
+        setContentLengthLong(len);
+    }
+
+    @Override
+    public void setContentLengthLong(final long len) {
+        if (compress == null) {
+            contentLength = len;
+        } else if (!compress) {
+            super.setContentLengthLong(len);
+        }
+    }
+
+    @Override
+    public void setHeader(final String name, final String value) {
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            setContentLengthLong(value == null ? -1 : Long.parseLong(value.trim()));
+        } else {
+            super.setHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addHeader(final String name, final String value) {
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            setContentLengthLong(Long.parseLong(value.trim()));
+        } else {
+            super.addHeader(name, value);
+        }
+    }
+
+    @Override
+    public void setIntHeader(final String name, final int value) {
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            setContentLengthLong(value);
+        } else {
+            super.setIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addIntHeader(final String name, final int value) {
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            setContentLengthLong(value);
+        } else {
+            super.addIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void sendError(final int sc, final String msg) throws IOException {
+        abortCompression();
+        super.sendError(sc, msg);
+    }
+
+    @Override
+    public void sendError(final int sc) throws IOException {
+        abortCompression();
+        super.sendError(sc);
+    }
+
+    @Override
+    public void sendRedirect(final String location) throws IOException {
+        abortCompression();
+        super.sendRedirect(location);
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        abortCompression();
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        abortCompression();
+    }
+
+    /**
+     * The container writes its own, uncompressed body for errors and redirects,
+     * and discards buffered output on reset, so any compressed output must be
+     * dropped and the decision to compress taken again.
+     */
+    private void abortCompression() {
+        if (stream != null) {
+            stream.discard();
+        }
+        if (Boolean.TRUE.equals(compress) && !isCommitted()) {
+            super.setHeader("Content-Encoding", null);
+        }
+        compress = null;
+        contentLength = -1;
+    }
+
+    private static Deflater borrowDeflater() {
+        final Deflater deflater = DEFLATERS.poll();
+        if (deflater != null) {
+            return deflater;
+        }
+        return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    }
+
+    private static void returnDeflater(final Deflater deflater) {
+        deflater.reset();
+        if (!DEFLATERS.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Writes the gzip format by hand around a pooled raw deflater, as
+     * {@link java.util.zip.GZIPOutputStream} always allocates its own.
+     */
+    private class GzipServletOutputStream extends ServletOutputStream {
+
+        private final ServletOutputStream out;
+        private final CRC32 crc = new CRC32();
+        private final byte[] single = new byte[1];
+        private Deflater deflater = null;
+        private byte[] buf = null;
+        private boolean finished = false;
+
+        GzipServletOutputStream(final ServletOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            single[0] = (byte) b;
+            write(single, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            if (finished) {
+                throw new IOException("Stream has already been closed");
+            }
+            if (len == 0) {
+                return;
+            }
+            if (!shouldCompress()) {
+                out.write(b, off, len);
+                return;
+            }
+            if (deflater == null) {
+                deflater = borrowDeflater();
+                buf = new byte[BUFFER_SIZE];
+                out.write(GZIP_HEADER);
+            }
+            crc.update(b, off, len);
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                deflate(Deflater.NO_FLUSH);
+            }
+        }
+
+        private int deflate(final int flush) throws IOException {
+            final int len = deflater.deflate(buf, 0, buf.length, flush);
+            if (len > 0) {
+                out.write(buf, 0, len);
+            }
+            return len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            commitUncompressed();
+            if (deflater != null && !finished) {
+                while (deflate(Deflater.SYNC_FLUSH) == buf.length) {
+                    // output buffer was full, there may be more
+                }
+            }
+            out.flush();
+        }
+
+        void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            commitUncompressed();
+            if (deflater != null) {
+                try {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        deflate(Deflater.NO_FLUSH);
+                    }
+                    writeInt((int) crc.getValue());
+                    writeInt((int) deflater.getBytesRead());
+                } finally {
+                    returnDeflater(deflater);
+                    deflater = null;
+                }
+            }
+        }
+
+        /**
+         * Drop the state of the compressed output written so far, so that the
+         * stream can start over.
+         */
+        void discard() {
+            if (deflater != null) {
+                returnDeflater(deflater);
+                deflater = null;
+            }
+            crc.reset();
+        }
+
+        private void writeInt(final int i) throws IOException {
+            out.write(i & 0xff);
+            out.write((i >> 8) & 0xff);
+            out.write((i >> 16) & 0xff);
+            out.write((i >> 24) & 0xff);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                finish();
+            } finally {
+                out.close();
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return out.isReady();
+        }
+
+        @Override
+        public void setWriteListener(final WriteListener writeListener) {
+            out.setWriteListener(writeListener);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.http.servlets;
+
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
+import org.exist.http.RESTServer;
+import org.exist.util.HexEncoder;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Response wrapper which answers conditional GET and HEAD requests for
+ * generated content.
+ *
+ * The output of an XQuery is not known before it has been executed, so the body
+ * of a successful response is buffered and a strong ETag is computed from its
+ * digest. If the ETag matches the If-None-Match header of the request, 304 Not
+ * Modified is sent instead of the body. This saves the transfer, not the
+ * execution of the query.
+ *
+ * Bodies larger than {@link #MAX_BUFFER_SIZE} are streamed to the client
+ * without an ETag once the limit is reached, as are responses with a status
+ * other than 200, errors, redirects and responses which already carry an ETag.
+ * Flushing the output stream is deferred while the body is buffered, an explicit
+ * {@link #flushBuffer()} starts streaming.
+ */
+public class ETagResponseWrapper extends HttpServletResponseWrapper {
+
+    static final int MAX_BUFFER_SIZE = 1024 * 1024;
+
+    private final HttpServletRequest request;
+    private Boolean buffering = null;
+    private UnsynchronizedByteArrayOutputStream buffer = null;
+    private BufferingServletOutputStream stream = null;
+    private PrintWriter writer = null;
+
+    private ETagResponseWrapper(final HttpServletRequest request, final HttpServletResponse response) {
+        super(response);
+        this.request = request;
+    }
+
+    /**
+     * Run the handler with a response which sends an ETag and answers
+     * If-None-Match, if enabled and the request is a GET or HEAD request, or
+     * with the original response otherwise.
+     *
+     * @param request the http request
+     * @param response the http response
+     * @param enabled true if conditional requests are answered
+     * @param handler the handler writing the response
+     *
+     * @throws ServletException if the handler raises an exception
+     * @throws IOException if an I/O error occurs
+     */
+    public static void process(final HttpServletRequest request, final HttpServletResponse response,
+            final boolean enabled, final CompressingResponseWrapper.ResponseHandler handler)
+            throws ServletException, IOException {
+        final String method = request.getMethod();
+        if (!enabled || request.getDispatcherType() != DispatcherType.REQUEST
+                || !("GET".equals(method) || "HEAD".equals(method))) {
+            handler.handle(response);
+            return;
+        }
+
+        final ETagResponseWrapper wrapper = new ETagResponseWrapper(request, response);
+        handler.handle(wrapper);
+        wrapper.finish();
+    }
+
+    /**
+     * Compute the strong entity tag of a response body.
+     *
+     * @param data the response body
+     * @param len the number of bytes of the body in data
+     *
+     * @return the quoted entity tag
+     *
+     * @throws IOException if no digest is available
+     */
+    static String getETag(final byte[] data, final int len) throws IOException {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(data, 0, len);
+            return '"' + HexEncoder.bytesToHex(digest.digest()) + '"';
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private boolean isBuffering() {
+        if (buffering == null) {
+            buffering = !isCommitted()
+                    && getStatus() == SC_OK
+                    && getHeader("ETag") == null;
+            if (buffering) {
+                buffer = new UnsynchronizedByteArrayOutputStream();
+            }
+        }
+        return buffering;
+    }
+
+    /**
+     * Give up buffering and pass the body written so far on to the client.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    private void stopBuffering() throws IOException {
+        if (Boolean.TRUE.equals(buffering)) {
+            buffering = false;
+            buffer.writeTo(super.getOutputStream());
+            buffer = null;
+        }
+    }
+
+    /**
+     * Send the buffered body with its ETag, or 304 Not Modified if the ETag
+     * matches the If-None-Match header of the request.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void finish() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        // the status may still have been changed after the body was started
+        if (!Boolean.TRUE.equals(buffering) || isCommitted() || getStatus() != SC_OK) {
+            stopBuffering();
+            return;
+        }
+
+        buffering = false;
+        final byte[] data = buffer.toByteArray();
+        buffer = null;
+
+        final String etag = getETag(data, data.length);
+        super.setHeader("ETag", etag);
+        final String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null && RESTServer.matchesETag(ifNoneMatch, etag)) {
+            super.setStatus(SC_NOT_MODIFIED);
+        } else {
+            super.setContentLength(data.length);
+            super.getOutputStream().write(data);
+        }
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has already been called on this response");
+        }
+        if (stream == null) {
+            stream = new BufferingServletOutputStream(super.getOutputStream());
+        }
+        return stream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            if (stream != null) {
+                throw new IllegalStateException("getOutputStream() has already been called on this response");
+            }
+            stream = new BufferingServletOutputStream(super.getOutputStream());
+            writer = new PrintWriter(new OutputStreamWriter(stream, getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        stopBuffering();
+        buffering = false;
+        super.flushBuffer();
+    }
+
+    @Override
+    public void sendError(final int sc, final String msg) throws IOException {
+        abortBuffering();
+        super.sendError(sc, msg);
+    }
+
+    @Override
+    public void sendError(final int sc) throws IOException {
+        abortBuffering();
+        super.sendError(sc);
+    }
+
+    @Override
+    public void sendRedirect(final String location) throws IOException {
+        abortBuffering();
+        super.sendRedirect(location);
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        abortBuffering();
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        abortBuffering();
+    }
+
+    /**
+     * The container writes its own body for errors and redirects, and
+     * discards buffered output on reset, so the buffered body is dropped and
+     * the decision to buffer taken again.
+     */
+    private void abortBuffering() {
+        buffering = null;
+        buffer = null;
+    }
+
+    private class BufferingServletOutputStream extends ServletOutputStream {
+
+        private final ServletOutputStream out;
+        private final byte[] single = new byte[1];
+        private boolean closed = false;
+
+        BufferingServletOutputStream(final ServletOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            single[0] = (byte) b;
+            write(single, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream has already been closed");
+            }
+            if (len == 0) {
+                return;
+            }
+            if (isBuffering()) {
+                if (buffer.size() + len <= MAX_BUFFER_SIZE) {
+                    buffer.write(b, off, len);
+                    return;
+                }
+                stopBuffering();
+            }
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // deferred until the whole body is known
+            if (Boolean.FALSE.equals(buffering)) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            finish();
+            out.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return out.isReady();
+        }
+
+        @Override
+        public void setWriteListener(final WriteListener writeListener) {
+            out.setWriteListener(writeListener);
+        }
+    }
+}
@@ -59,6 +59,7 @@ public class EXistServlet extends AbstractExistHttpServlet {
     private static final long serialVersionUID = -3563999345725645647L;
     private final static Logger LOG = LogManager.getLogger(EXistServlet.class);
     private RESTServer srvREST;
+    private boolean compression = true;
 
     public enum FeatureEnabled {
         FALSE,
@@ -80,6 +81,9 @@ public class EXistServlet extends AbstractExistHttpServlet {
             useDynamicContentType = "no";
         }
 
+        compression = Optional.ofNullable(config.getInitParameter("compression")).map(Boolean::parseBoolean)
+                .orElse(true);
+
         final FeatureEnabled xquerySubmission = parseFeatureEnabled(config, "xquery-submission", FeatureEnabled.TRUE);
         final FeatureEnabled xupdateSubmission = parseFeatureEnabled(config, "xupdate-submission", FeatureEnabled.TRUE);
 
@@ -295,6 +299,11 @@ public class EXistServlet extends AbstractExistHttpServlet {
     @Override
     protected void doGet(final HttpServletRequest request, final HttpServletResponse response)
             throws ServletException, IOException {
+        CompressingResponseWrapper.process(request, response, compression, res -> get(request, res));
+    }
+
+    private void get(final HttpServletRequest request, final HttpServletResponse response)
+            throws ServletException, IOException {
 
         // first, adjust the path
         String path = adjustPath(request);
@@ -489,6 +498,11 @@ public class EXistServlet extends AbstractExistHttpServlet {
     @Override
     protected void doPost(final HttpServletRequest req, final HttpServletResponse response)
             throws ServletException, IOException {
+        CompressingResponseWrapper.process(req, response, compression, res -> post(req, res));
+    }
+
+    private void post(final HttpServletRequest req, final HttpServletResponse response)
+            throws ServletException, IOException {
         HttpServletRequest request = null;
         try {
             // For POST request, If we are logging the requests we must wrap
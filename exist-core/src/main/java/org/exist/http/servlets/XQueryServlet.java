@@ -36,6 +36,7 @@ import org.exist.source.*;
 import org.exist.storage.DBBroker;
 import org.exist.util.Configuration;
 import org.exist.util.MimeTable;
+import org.exist.util.io.PeriodicFlushWriter;
 import org.exist.util.serializer.XQuerySerializer;
 import org.exist.xmldb.XmldbURI;
 import org.exist.xquery.*;
@@ -83,6 +84,9 @@ import java.util.Properties;
  * 	<tr><td>form-encoding</td><td>The character encoding used by parameters posted
  * 	from HTML for
  * ms.</td></tr>
+ * 	<tr><td>compression</td><td>Gzip the output if the client accepts it, true by default.</td></tr>
+ * 	<tr><td>etag</td><td>Send an ETag computed from the output of GET and HEAD requests and
+ * 	answer a matching If-None-Match with 304 Not Modified, true by default.</td></tr>
  * </table>
  *
  * User identity and password may also be specified through the HTTP session attributes
@@ -117,6 +121,8 @@ public class XQueryServlet extends AbstractExistHttpServlet {
     private String encoding = null;
     private String contentType = null;
     private boolean hideErrorMessages = false;
+    private boolean compression = true;
+    private boolean etag = true;
 
     @Override
     public Logger getLog() {
@@ -153,6 +159,12 @@ public class XQueryServlet extends AbstractExistHttpServlet {
 
         hideErrorMessages = Optional.ofNullable(config.getInitParameter("hide-error-messages")).map(Boolean::parseBoolean)
                 .orElse(false);
+
+        compression = Optional.ofNullable(config.getInitParameter("compression")).map(Boolean::parseBoolean)
+                .orElse(true);
+
+        etag = Optional.ofNullable(config.getInitParameter("etag")).map(Boolean::parseBoolean)
+                .orElse(true);
     }
 
     @Override
@@ -236,6 +248,11 @@ public class XQueryServlet extends AbstractExistHttpServlet {
      * @throws IOException if an I/O error occurs
      */
     protected void process(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        CompressingResponseWrapper.process(request, response, compression,
+                res -> ETagResponseWrapper.process(request, res, etag, r -> execute(request, r)));
+    }
+
+    private void execute(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         //first, adjust the path
         String path = request.getPathTranslated();
         if(path == null) {
@@ -263,7 +280,8 @@ public class XQueryServlet extends AbstractExistHttpServlet {
 //            } catch (IllegalStateException e) {
 //            }
         final ServletOutputStream sout = response.getOutputStream();
-        final PrintWriter output = new PrintWriter(new OutputStreamWriter(sout, getFormEncoding()));
+        // flushed periodically, so that large results reach the client while they are being serialized
+        final PrintWriter output = new PrintWriter(new PeriodicFlushWriter(new OutputStreamWriter(sout, getFormEncoding())));
 //        response.setContentType(contentType + "; charset=" + formEncoding);
         response.addHeader( "pragma", "no-cache" );
         response.addHeader( "Cache-Control", "no-cache" );
@@ -76,20 +76,38 @@ public class ControllerForward extends URLRewrite {
 
     @Override
     protected void rewriteRequest(final XQueryURLRewrite.RequestWrapper request) {
-        if (target != null && target.startsWith(XmldbURI.XMLDB_URI_PREFIX)) {
-            final XmldbURI dbURI = XmldbURI.create(target);
+        final String colPath = getCollectionPath(request);
+        if (colPath != null) {
             this.uri = "/rest";
-            String colPath = dbURI.getCollectionPath();
-            final String contextPath = request.getInContextPath();
-            if (contextPath.startsWith(colPath)) {
-                colPath = "";
-            }
-            request.setPaths("/rest" + colPath + contextPath, "/rest");
+            request.setPaths("/rest" + colPath + request.getInContextPath(), "/rest");
             request.setBasePath("/rest" + colPath);
             request.setAttribute(XQueryURLRewrite.RQ_ATTR, "true");
         }
     }
 
+    /**
+     * Get the path of the database resource the request is mapped to.
+     *
+     * @param request the request wrapper, after {@link #updateRequest(XQueryURLRewrite.RequestWrapper)}
+     *
+     * @return the database path, or null if the controller is not stored in the database
+     */
+    protected String getDatabasePath(final XQueryURLRewrite.RequestWrapper request) {
+        final String colPath = getCollectionPath(request);
+        return colPath == null ? null : colPath + request.getInContextPath();
+    }
+
+    private String getCollectionPath(final XQueryURLRewrite.RequestWrapper request) {
+        if (target == null || !target.startsWith(XmldbURI.XMLDB_URI_PREFIX)) {
+            return null;
+        }
+        final String colPath = XmldbURI.create(target).getCollectionPath();
+        if (request.getInContextPath().startsWith(colPath)) {
+            return "";
+        }
+        return colPath;
+    }
+
     public void setServerName(final String serverName) {
         this.serverName = serverName;
     }
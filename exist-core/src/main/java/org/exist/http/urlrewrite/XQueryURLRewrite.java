@@ -21,6 +21,8 @@
  */
 package org.exist.http.urlrewrite;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import jakarta.servlet.annotation.MultipartConfig;
 import org.apache.commons.io.input.UnsynchronizedByteArrayInputStream;
 import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
@@ -32,6 +34,7 @@ import org.exist.collections.Collection;
 import org.exist.dom.persistent.BinaryDocument;
 import org.exist.dom.persistent.DocumentImpl;
 import org.exist.dom.persistent.LockedDocument;
+import org.exist.http.BinaryDocumentSender;
 import org.exist.http.Descriptor;
 import org.exist.http.servlets.Authenticator;
 import org.exist.http.servlets.BasicAuthenticator;
@@ -120,8 +123,16 @@ public class XQueryURLRewrite extends HttpServlet {
     public static final String RQ_ATTR_RESULT = "org.exist.forward.result";
     public static final String RQ_ATTR_ERROR = "org.exist.forward.error";
 
+    /**
+     * Default maximum number of controller decisions kept in the url cache,
+     * can be changed with the init-param url-cache-size.
+     */
+    public static final int DEFAULT_URL_CACHE_SIZE = 1024;
+
     private ServletConfig config;
-    private final Map<String, ModelAndView> urlCache = Collections.synchronizedMap(new TreeMap<>());
+    private Cache<String, ModelAndView> urlCache;
+    // the vary headers declared by the decision last cached for a method, host and URI
+    private Cache<String, List<String>> urlVary;
     private Subject defaultUser = null;
     private BrokerPool pool;
     // path to the query
@@ -147,6 +158,22 @@ public class XQueryURLRewrite extends HttpServlet {
         if (optSendChallenge != null) {
             sendChallenge = optSendChallenge.equalsIgnoreCase("true");
         }
+
+        int urlCacheSize = DEFAULT_URL_CACHE_SIZE;
+        final String optUrlCacheSize = filterConfig.getInitParameter("url-cache-size");
+        if (optUrlCacheSize != null) {
+            try {
+                urlCacheSize = Integer.parseInt(optUrlCacheSize);
+            } catch (final NumberFormatException e) {
+                LOG.warn("Invalid url-cache-size: {}, using default of {}", optUrlCacheSize, DEFAULT_URL_CACHE_SIZE);
+            }
+        }
+        urlCache = Caffeine.newBuilder()
+                .maximumSize(urlCacheSize)
+                .build();
+        urlVary = Caffeine.newBuilder()
+                .maximumSize(urlCacheSize)
+                .build();
     }
 
     @Override
@@ -215,14 +242,21 @@ public class XQueryURLRewrite extends HttpServlet {
                 }
 
                 // check if the request URI is already in the url cache
-                ModelAndView modelView = getFromCache(
-                        request.getHeader("Host") + request.getRequestURI(),
-                        user);
+                ModelAndView modelView = getFromCache(getCacheKey(request), request, user);
 
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Checked cache for URI: {} original: {}", modifiedRequest.getRequestURI(), request.getRequestURI());
                 }
 
+                // a cached pass-through to a binary resource is served without forwarding
+                if (modelView != null && modelView.isPlainPassThrough() && staticRewrite instanceof ControllerForward
+                        && sendBinaryResource((ControllerForward) staticRewrite, modelView, modifiedRequest, response, user)) {
+                    if (LOG.isTraceEnabled()) {
+                        LOG.trace("URLRewrite served binary resource in {}ms.", System.currentTimeMillis() - start);
+                    }
+                    return;
+                }
+
                 // no: create a new model and view configuration
                 if (modelView == null) {
                     modelView = new ModelAndView();
@@ -280,8 +314,7 @@ public class XQueryURLRewrite extends HttpServlet {
                                         } else if ("error-handler".equals(action.getLocalName())) {
                                             parseErrorHandlers(modifiedRequest, action, modelView);
                                         } else if ("cache-control".equals(action.getLocalName())) {
-                                            final String option = action.getAttribute("cache");
-                                            modelView.setUseCache("yes".equals(option));
+                                            parseCacheControl(request, action, modelView);
                                         } else {
                                             final URLRewrite urw = parseAction(modifiedRequest, action);
                                             if (urw != null) {
@@ -298,9 +331,7 @@ public class XQueryURLRewrite extends HttpServlet {
                                 modelView.setModel(new PassThrough(config, elem, modifiedRequest));
                                 final NodeList nl = elem.getElementsByTagNameNS(Namespaces.EXIST_NS, "cache-control");
                                 if (nl.getLength() > 0) {
-                                    elem = (Element) nl.item(0);
-                                    final String option = elem.getAttribute("cache");
-                                    modelView.setUseCache("yes".equals(option));
+                                    parseCacheControl(request, (Element) nl.item(0), modelView);
                                 }
                             } else {
                                 response(broker, response, outputProperties, result);
@@ -313,7 +344,7 @@ public class XQueryURLRewrite extends HttpServlet {
 
                         if (modelView.useCache()) {
                             LOG.debug("Caching request to {}", request.getRequestURI());
-                            urlCache.put(modifiedRequest.getHeader("Host") + request.getRequestURI(), modelView);
+                            putInCache(request, modelView);
                         }
                     }
 
@@ -464,15 +495,86 @@ public class XQueryURLRewrite extends HttpServlet {
         }
     }
 
-    private ModelAndView getFromCache(final String url, final Subject user) throws EXistException, PermissionDeniedException {
-        /* Make sure we have a broker *before* we synchronize on urlCache or we may run
-         * into a deadlock situation (with method checkCache)
-         */
-        final ModelAndView model = urlCache.get(url);
+    /**
+     * Controller decisions are cached per request method, host and URI, and the
+     * values of the vary headers declared by the decision cached for them, so
+     * that each combination of header values gets its own entry.
+     */
+    private String getCacheKey(final HttpServletRequest request) {
+        final String key = getBaseCacheKey(request);
+        final List<String> varyHeaders = urlVary.getIfPresent(key);
+        return varyHeaders == null ? key : getCacheKey(key, varyHeaders, request);
+    }
+
+    private static String getBaseCacheKey(final HttpServletRequest request) {
+        return request.getMethod() + ' ' + request.getHeader("Host") + request.getRequestURI();
+    }
+
+    private static String getCacheKey(final String baseKey, final List<String> varyHeaders, final HttpServletRequest request) {
+        final StringBuilder key = new StringBuilder(baseKey);
+        for (final String header : varyHeaders) {
+            key.append('\n').append(header).append(':').append(request.getHeader(header));
+        }
+        return key.toString();
+    }
+
+    private void putInCache(final HttpServletRequest request, final ModelAndView modelView) {
+        final String key = getBaseCacheKey(request);
+        final List<String> varyHeaders = modelView.getVaryHeaders();
+        if (varyHeaders.isEmpty()) {
+            urlVary.invalidate(key);
+            urlCache.put(key, modelView);
+        } else {
+            urlVary.put(key, varyHeaders);
+            urlCache.put(getCacheKey(key, varyHeaders, request), modelView);
+        }
+    }
+
+    /**
+     * Parse an exist:cache-control element returned by the controller:
+     *
+     * <pre>
+     * &lt;exist:cache-control cache="yes" max-age="300" vary="Accept-Language"/&gt;
+     * </pre>
+     *
+     * max-age limits the time in seconds the decision is reused, vary lists request
+     * headers whose values need to match for a cached decision to apply.
+     */
+    private static void parseCacheControl(final HttpServletRequest request, final Element elem, final ModelAndView modelView) {
+        modelView.setUseCache("yes".equals(elem.getAttribute("cache")));
+
+        final String maxAge = elem.getAttribute("max-age");
+        if (!maxAge.isEmpty()) {
+            try {
+                modelView.setExpires(System.currentTimeMillis() + Long.parseLong(maxAge.trim()) * 1000);
+            } catch (final NumberFormatException e) {
+                LOG.warn("Invalid max-age on cache-control: {}", maxAge);
+            }
+        }
+
+        final String vary = elem.getAttribute("vary");
+        if (!vary.isEmpty()) {
+            for (final String header : vary.split("[\\s,]+")) {
+                if (!header.isEmpty()) {
+                    modelView.addVary(header, request.getHeader(header));
+                }
+            }
+        }
+    }
+
+    private ModelAndView getFromCache(final String url, final HttpServletRequest request, final Subject user) throws EXistException, PermissionDeniedException {
+        final ModelAndView model = urlCache.getIfPresent(url);
         if (model == null) {
             return null;
         }
 
+        if (!model.isValidFor(request)) {
+            if (model.isExpired()) {
+                urlCache.asMap().remove(url, model);
+            }
+            return null;
+        }
+
         try (final DBBroker broker = pool.get(Optional.ofNullable(user))) {
 
             if (model.getSourceInfo().source instanceof DBSource) {
@@ -480,7 +582,7 @@ public class XQueryURLRewrite extends HttpServlet {
             }
 
             if (model.getSourceInfo().source.isValid(broker) != Source.Validity.VALID) {
-                urlCache.remove(url);
+                urlCache.invalidate(url);
                 return null;
             }
 
@@ -492,7 +594,56 @@ public class XQueryURLRewrite extends HttpServlet {
     }
 
     void clearCaches() {
-        urlCache.clear();
+        urlCache.invalidateAll();
+        urlVary.invalidateAll();
+    }
+
+    /**
+     * Serve a GET or HEAD request for a binary document directly from the blob store,
+     * bypassing the forward to the REST servlet. Only documents the REST servlet would
+     * send unchanged are served, see {@link BinaryDocumentSender#isPlainDownload}.
+     *
+     * @return false if the request does not map to a readable binary document and needs
+     *     to be processed as usual
+     */
+    private boolean sendBinaryResource(final ControllerForward controller, final ModelAndView modelView,
+            final RequestWrapper request, final HttpServletResponse response, final Subject user)
+            throws EXistException, IOException {
+        final String method = request.getMethod();
+        if (!("GET".equals(method) || "HEAD".equals(method))) {
+            return false;
+        }
+        final String path = controller.getDatabasePath(request);
+        if (path == null) {
+            return false;
+        }
+
+        final XmldbURI uri;
+        try {
+            uri = XmldbURI.xmldbUriFor(path);
+        } catch (final URISyntaxException e) {
+            return false;
+        }
+
+        try (final DBBroker broker = pool.get(Optional.ofNullable(user));
+                final LockedDocument lockedDocument = broker.getXMLResource(uri, LockMode.READ_LOCK)) {
+            final DocumentImpl document = lockedDocument == null ? null : lockedDocument.getDocument();
+            if (document == null || !BinaryDocumentSender.isPlainDownload(request, document)
+                    || !document.getPermissions().validate(broker.getCurrentSubject(), Permission.READ)) {
+                // let the REST servlet report missing resources and errors
+                return false;
+            }
+
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("Sending binary resource {} directly", uri);
+            }
+            modelView.getModel().setHeaders(new HttpResponseWrapper(response));
+            // a read only access, no transaction needed
+            BinaryDocumentSender.send(broker, null, (BinaryDocument) document, null, UTF_8.name(), request, response);
+            return true;
+        } catch (final PermissionDeniedException e) {
+            return false;
+        }
     }
 
     /**
@@ -973,6 +1124,8 @@ public class XQueryURLRewrite extends HttpServlet {
         private final List<URLRewrite> views = new LinkedList<>();
         private List<URLRewrite> errorHandlers = null;
         private boolean useCache = false;
+        private long expires = Long.MAX_VALUE;
+        private Map<String, String> vary = null;
         private SourceInfo sourceInfo = null;
 
         private ModelAndView() {
@@ -1020,6 +1173,57 @@ public class XQueryURLRewrite extends HttpServlet {
         public void setUseCache(final boolean useCache) {
             this.useCache = useCache;
         }
+
+        public void setExpires(final long expires) {
+            this.expires = expires;
+        }
+
+        public boolean isExpired() {
+            return System.currentTimeMillis() >= expires;
+        }
+
+        public void addVary(final String header, @Nullable final String value) {
+            if (vary == null) {
+                vary = new HashMap<>();
+            }
+            vary.put(header, value);
+        }
+
+        /**
+         * @return the names of the vary headers in a stable order
+         */
+        public List<String> getVaryHeaders() {
+            if (vary == null) {
+                return Collections.emptyList();
+            }
+            final List<String> headers = new ArrayList<>(vary.keySet());
+            Collections.sort(headers);
+            return headers;
+        }
+
+        public boolean isValidFor(final HttpServletRequest request) {
+            if (isExpired()) {
+                return false;
+            }
+            if (vary != null) {
+                for (final Entry<String, String> entry : vary.entrySet()) {
+                    if (!Objects.equals(entry.getValue(), request.getHeader(entry.getKey()))) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return true if the request is passed through unchanged, without views,
+         *     error handlers, parameters or attributes
+         */
+        public boolean isPlainPassThrough() {
+            return rewrite instanceof PassThrough && rewrite.doResolve()
+                    && rewrite.parameters == null && rewrite.attributes == null
+                    && !hasViews() && !hasErrorHandlers();
+        }
     }
 
     private static class SourceInfo {
@@ -28,6 +28,7 @@ import org.exist.dom.persistent.AbstractCharacterData;
 import org.exist.dom.persistent.ElementImpl;
 import org.exist.dom.persistent.DocumentImpl;
 import org.exist.dom.persistent.IStoredNode;
+import org.exist.numbering.NodeId;
 import org.exist.collections.Collection;
 import org.exist.indexing.StreamListener.ReindexMode;
 import org.exist.storage.DBBroker;
@@ -41,8 +42,10 @@ import org.w3c.dom.NodeList;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
 import org.exist.security.PermissionDeniedException;
 
 /**
@@ -239,6 +242,57 @@ public class IndexController {
         }
     }
 
+    /**
+     * Re-index the nodes below the roots returned by {@link #getReindexRoots(IStoredNode, NodePath, boolean, boolean)}.
+     * Each index worker only receives the events for its own root, workers which did not ask
+     * for a root are skipped.
+     *
+     * @param transaction the current transaction
+     * @param roots the roots to reindex per index worker
+     * @param mode the mode, one of {@link ReindexMode#STORE}, {@link ReindexMode#REMOVE_SOME_NODES}
+     */
+    public void reindex(final Txn transaction, final ReindexRoots roots, final ReindexMode mode) {
+        if (roots.isEmpty()) {
+            return;
+        }
+
+        setReindexing(true);
+        try {
+            // group the workers by their root, so each subtree is scanned only once
+            final Map<NodeId, List<IndexWorker>> groups = new HashMap<>();
+            final Map<NodeId, IStoredNode> nodes = new HashMap<>();
+            for (final Map.Entry<IndexWorker, IStoredNode> entry : roots.roots.entrySet()) {
+                final NodeId nodeId = entry.getValue().getNodeId();
+                groups.computeIfAbsent(nodeId, k -> new ArrayList<>()).add(entry.getKey());
+                nodes.putIfAbsent(nodeId, entry.getValue());
+            }
+            for (final Map.Entry<NodeId, List<IndexWorker>> group : groups.entrySet()) {
+                final IStoredNode<? extends IStoredNode> root = nodes.get(group.getKey());
+                final IStoredNode<? extends IStoredNode> node = broker.objectWith(new NodeProxy(null, root.getOwnerDocument(), root.getNodeId()));
+                final List<IndexWorker> workers = group.getValue();
+                // only prepare the workers of this group: setting the mode on the other workers
+                // would drop the nodes they buffered from getStreamListener(ReindexRoots)
+                for (final IndexWorker worker : workers) {
+                    worker.setDocument(node.getOwnerDocument());
+                    worker.setMode(mode);
+                }
+                final StreamListener groupListener = buildListenerChain(workers::contains);
+                if (groupListener == null) {
+                    continue;
+                }
+                groupListener.startIndexDocument(transaction);
+                try {
+                    IndexUtils.scanNode(broker, transaction, node, groupListener);
+                } finally {
+                    groupListener.endIndexDocument(transaction);
+                }
+                workers.forEach(IndexWorker::flush);
+            }
+        } finally {
+            setReindexing(false);
+        }
+    }
+
     public boolean isReindexing() {
         return reindexing;
     }
@@ -287,6 +341,63 @@ public class IndexController {
         return top;
     }
 
+    /**
+     * Like {@link #getReindexRoot(IStoredNode, NodePath, boolean, boolean)}, but keeps the root
+     * returned by every index worker separately. Workers which can handle the modification
+     * incrementally are not included, so only the indexes which really need it reindex a
+     * (possibly large) subtree: use {@link #getStreamListener(ReindexRoots)} to pass the
+     * modified nodes to the other workers and {@link #reindex(Txn, ReindexRoots, ReindexMode)}
+     * to reindex the roots.
+     *
+     * @param node the node to be modified.
+     * @param path the NodePath of the node
+     * @param insert true if nodes are inserted below node
+     * @param includeSelf if set to true, the current node itself will be included in the check
+     * @return the roots to be re-indexed per index worker
+     */
+    public ReindexRoots getReindexRoots(final IStoredNode node, final NodePath path, final boolean insert, final boolean includeSelf) {
+        final ReindexRoots roots = new ReindexRoots();
+        for (final IndexWorker indexWorker : indexWorkers.values()) {
+            final IStoredNode next = indexWorker.getReindexRoot(node, path, insert, includeSelf);
+            if (next != null) {
+                roots.roots.put(indexWorker, next.getNodeId().equals(node.getNodeId()) ? node : next);
+            }
+        }
+        return roots;
+    }
+
+    /**
+     * Like {@link #getReindexRoots(IStoredNode, NodePath, boolean, boolean)} for a node which is
+     * going to be replaced without streaming it to the index workers: every worker which does not
+     * need to reindex an ancestor gets the node itself as root.
+     *
+     * @param node the node to be replaced.
+     * @param path the NodePath of the node
+     * @return the roots to be re-indexed per index worker
+     */
+    public ReindexRoots getReindexRootsOrSelf(final IStoredNode node, final NodePath path) {
+        final ReindexRoots roots = getReindexRoots(node, path, false, false);
+        for (final IndexWorker indexWorker : indexWorkers.values()) {
+            roots.roots.putIfAbsent(indexWorker, node);
+        }
+        return roots;
+    }
+
+    /**
+     * Returns a chain of {@link org.exist.indexing.StreamListener} for the index workers
+     * which do not need to reindex a root, i.e. those which process the modified nodes
+     * incrementally.
+     *
+     * @param roots the roots as returned by {@link #getReindexRoots(IStoredNode, NodePath, boolean, boolean)}
+     * @return the first listener in the chain or null if all workers reindex a root
+     */
+    public StreamListener getStreamListener(final ReindexRoots roots) {
+        if (roots.isEmpty()) {
+            return getStreamListener();
+        }
+        return buildListenerChain(worker -> !roots.roots.containsKey(worker));
+    }
+
     public StreamListener getStreamListener(final DocumentImpl doc, final ReindexMode mode) {
         setDocument(doc);
         setMode(mode);
@@ -312,25 +423,36 @@ public class IndexController {
             }
             return listener;
         }
+        listener = buildListenerChain(worker -> true);
+        return listener;
+    }
+
+    private StreamListener buildListenerChain(final Predicate<IndexWorker> include) {
+        // the listeners are linked in place, so a previously built chain becomes invalid
+        listener = null;
         StreamListener first = null;
         StreamListener previous = null;
         for (final IndexWorker worker : indexWorkers.values()) {
+            if (!include.test(worker)) {
+                continue;
+            }
             // wolf: setDocument() should have been called before
             //worker.setDocument(currentDoc, currentMode);
             final StreamListener current = worker.getListener();
+            if (current == null) {
+                continue;
+            }
             if (first == null) {
                 first = current;
             } else {
-                if (current != null) {
-                    previous.setNextInChain(current);
-                }
-            }
-            if (current != null) {
-                previous = current;
+                previous.setNextInChain(current);
             }
+            previous = current;
         }
-        listener = first;
-        return listener;
+        if (previous != null) {
+            previous.setNextInChain(null);
+        }
+        return first;
     }
 
     /**
@@ -471,4 +593,33 @@ public class IndexController {
         }
         return rewriters;
     }
+
+    /**
+     * The roots to be reindexed after a node-level modification, kept per index worker.
+     */
+    public static class ReindexRoots {
+
+        private final Map<IndexWorker, IStoredNode> roots = new IdentityHashMap<>();
+
+        public boolean isEmpty() {
+            return roots.isEmpty();
+        }
+
+        /**
+         * Get a copy without the workers whose root is the given node, e.g. because the
+         * node has been removed and there's nothing left to reindex.
+         *
+         * @param nodeId the id of the node to exclude
+         * @return the remaining roots
+         */
+        public ReindexRoots without(final NodeId nodeId) {
+            final ReindexRoots remaining = new ReindexRoots();
+            for (final Map.Entry<IndexWorker, IStoredNode> entry : roots.entrySet()) {
+                if (!entry.getValue().getNodeId().equals(nodeId)) {
+                    remaining.roots.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return remaining;
+        }
+    }
 }
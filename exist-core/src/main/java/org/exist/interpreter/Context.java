@@ -40,6 +40,7 @@ import org.exist.source.Source;
 import org.exist.stax.ExtendedXMLStreamReader;
 import org.exist.storage.DBBroker;
 import org.exist.storage.UpdateListener;
+import org.exist.storage.lock.DocumentSnapshot;
 import org.exist.storage.lock.LockedDocumentMap;
 import org.exist.util.hashtable.NamePool;
 import org.exist.xmldb.XmldbURI;
@@ -301,6 +302,16 @@ public interface Context {
 
     boolean inProtectedMode();
 
+    /**
+     * Run the query in snapshot mode: the documents loaded by the query are pinned
+     * in the snapshot, which is validated by the caller once the query has finished.
+     *
+     * @param snapshot the snapshot to pin the loaded documents in, or null to leave snapshot mode
+     */
+    void setSnapshot(@Nullable DocumentSnapshot snapshot);
+
+    @Nullable DocumentSnapshot getSnapshot();
+
     /**
      * Should loaded documents be locked?
      *
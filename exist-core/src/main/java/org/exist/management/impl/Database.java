@@ -25,14 +25,21 @@ import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.EXistException;
 import org.exist.storage.BrokerPool;
 import org.exist.storage.DBBroker;
+import org.exist.storage.DefragmentationTask;
 
 public class Database implements DatabaseMXBean {
 
+    private final static Logger LOG = LogManager.getLogger(Database.class);
+
     private final BrokerPool pool;
 
     public Database(final BrokerPool pool) {
@@ -67,6 +74,20 @@ public class Database implements DatabaseMXBean {
         pool.shutdown();
     }
 
+    @Override
+    public void triggerDefragmentation(final int minSplits, final int maxDocuments) {
+        final DefragmentationTask task = new DefragmentationTask();
+        final Properties properties = new Properties();
+        properties.setProperty(DefragmentationTask.MIN_SPLITS_PROP_NAME, Integer.toString(minSplits));
+        properties.setProperty(DefragmentationTask.MAX_DOCUMENTS_PROP_NAME, Integer.toString(maxDocuments));
+        try {
+            task.configure(pool.getConfiguration(), properties);
+            pool.triggerSystemTask(task);
+        } catch (final EXistException e) {
+            LOG.warn("Failed to trigger defragmentation: {}", e.getMessage(), e);
+        }
+    }
+
     @Override
     public int getMaxBrokers() {
         return pool.getMax();
@@ -29,6 +29,14 @@ public interface DatabaseMXBean extends PerInstanceMBean {
 
     void shutdown();
 
+    /**
+     * Schedule a run of the {@link org.exist.storage.DefragmentationTask}.
+     *
+     * @param minSplits only documents with more page splits are rewritten
+     * @param maxDocuments the maximum number of documents to rewrite, or 0 for no limit
+     */
+    void triggerDefragmentation(int minSplits, int maxDocuments);
+
     int getMaxBrokers();
 
     int getAvailableBrokers();
@@ -62,6 +62,7 @@ import org.exist.storage.journal.JournalManager;
 import org.exist.storage.lock.FileLockService;
 import org.exist.storage.lock.LockManager;
 import org.exist.storage.recovery.RecoveryManager;
+import org.exist.storage.sync.CheckpointFlusher;
 import org.exist.storage.sync.Sync;
 import org.exist.storage.sync.SyncTask;
 import org.exist.storage.txn.TransactionException;
@@ -72,6 +73,7 @@ import org.exist.xmldb.ShutdownListener;
 import org.exist.xmldb.XmldbURI;
 import org.exist.xquery.PerformanceStats;
 import org.exist.xquery.XQuery;
+import org.exist.xslt.StylesheetCache;
 
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -116,6 +118,8 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
 
     private StatusReporter statusReporter = null;
 
+    private CheckpointFlusher checkpointFlusher = null;
+
     private final XQuery xqueryService = new XQuery();
 
 
@@ -337,6 +341,11 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
      */
     private XQueryPool xQueryPool;
 
+    /**
+     * The cache in which the database instance's <strong>compiled</strong> XSLT stylesheets are stored.
+     */
+    private StylesheetCache stylesheetCache;
+
     /**
      * The monitor in which the database instance's strong>running</strong> XQueries are managed.
      */
@@ -486,6 +495,7 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
 
         this.cacheManager = servicesManager.register(new DefaultCacheManager(this));
         this.xQueryPool = servicesManager.register(new XQueryPool());
+        this.stylesheetCache = servicesManager.register(new StylesheetCache());
         this.processMonitor = servicesManager.register(new ProcessMonitor());
         this.xqueryStats = servicesManager.register(new PerformanceStats(this));
         final XMLReaderObjectFactory xmlReaderObjectFactory = servicesManager.register(new XMLReaderObjectFactory());
@@ -711,6 +721,8 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
                     status.process(Event.READY);
 
                     statusReporter.setStatus(SIGNAL_STARTED);
+
+                    startCheckpointFlusher();
                 } catch(final Throwable t) {
                     transactionManager.shutdown();
                     throw t;
@@ -800,11 +812,12 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
      */
     public boolean runRecovery(final DBBroker broker) throws EXistException {
         final boolean forceRestart = conf.getProperty(PROPERTY_RECOVERY_FORCE_RESTART, false);
+        final int redoThreads = conf.getProperty(PROPERTY_RECOVERY_REDO_THREADS, RecoveryManager.DEFAULT_REDO_THREADS);
         if(LOG.isDebugEnabled()) {
-            LOG.debug("ForceRestart = {}", forceRestart);
+            LOG.debug("ForceRestart = {}, RedoThreads = {}", forceRestart, redoThreads);
         }
         if(journalManager.isPresent()) {
-            final RecoveryManager recovery = new RecoveryManager(broker, journalManager.get(), forceRestart);
+            final RecoveryManager recovery = new RecoveryManager(broker, journalManager.get(), forceRestart, redoThreads);
             return recovery.recover();
         } else {
             throw new IllegalStateException("Cannot run recovery without a JournalManager");
@@ -1058,6 +1071,15 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         return xQueryPool;
     }
 
+    /**
+     * Returns the cache in which the database instance's <strong>compiled</strong> XSLT stylesheets are stored.
+     *
+     * @return The cache
+     */
+    public StylesheetCache getStylesheetCache() {
+        return stylesheetCache;
+    }
+
     /**
      * Retuns the XQuery Service
      *
@@ -1450,6 +1472,21 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         }
     }
 
+    /**
+     * Start writing dirty pages in the background between checkpoints,
+     * if a rate is configured.
+     */
+    private void startCheckpointFlusher() {
+        final int flushRate = conf.getProperty(PROPERTY_CHECKPOINT_FLUSH_RATE, 0);
+        if (flushRate > 0 && majorSyncPeriod > 0 && !isReadOnly()) {
+            checkpointFlusher = new CheckpointFlusher(this, flushRate);
+            final Thread thread = newInstanceThread(this, "checkpoint-flusher", checkpointFlusher);
+            thread.setDaemon(true);
+            thread.start();
+            LOG.info("Writing up to {} dirty pages per second ahead of checkpoints", flushRate);
+        }
+    }
+
     public long getMajorSyncPeriod() {
         return majorSyncPeriod;
     }
@@ -1623,6 +1660,11 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
             //Shutdown the scheduler
             scheduler.shutdown(true);
 
+            if (checkpointFlusher != null) {
+                checkpointFlusher.terminate();
+                checkpointFlusher = null;
+            }
+
             try {
                 statusReporter = new StatusReporter(SIGNAL_SHUTDOWN);
                 statusObservers.forEach(statusReporter::addObserver);
@@ -1744,6 +1786,7 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
                 transactionManager = null;
                 collectionCache = null;
                 xQueryPool = null;
+                stylesheetCache = null;
                 processMonitor = null;
                 collectionConfigurationManager = null;
                 notificationService = null;
@@ -86,6 +86,10 @@ public interface BrokerPoolConstants {
     String RECOVERY_GROUP_COMMIT_ATTRIBUTE = "group-commit";
     String PROPERTY_RECOVERY_FORCE_RESTART = "db-connection.recovery.force-restart";
     String RECOVERY_FORCE_RESTART_ATTRIBUTE = "force-restart";
+    String PROPERTY_RECOVERY_REDO_THREADS = "db-connection.recovery.redo-threads";
+    String RECOVERY_REDO_THREADS_ATTRIBUTE = "redo-threads";
+    String PROPERTY_CHECKPOINT_FLUSH_RATE = "db-connection.recovery.checkpoint-flush-rate";
+    String CHECKPOINT_FLUSH_RATE_ATTRIBUTE = "checkpoint-flush-rate";
 
     String PROPERTY_PAGE_SIZE = "db-connection.page-size";
 
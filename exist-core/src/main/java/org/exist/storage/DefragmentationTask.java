@@ -0,0 +1,186 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import java.util.Iterator;
+import java.util.Properties;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.lock.LockManager;
+import org.exist.storage.lock.ManagedDocumentLock;
+import org.exist.storage.txn.Txn;
+import org.exist.util.Configuration;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+
+/**
+ * Online defragmentation of the DOM storage file.
+ *
+ * Every XML document with more page splits than a configurable limit is
+ * rewritten into contiguous pages, which also removes the forward links left
+ * behind by relocated nodes. Before that, the free pages at the end of dom.dbx,
+ * collections.dbx and values.dbx are cut off, shrinking the files on disk. This
+ * happens first, as the task runs directly after a checkpoint, so that the pages
+ * freed by the previous run are released by the next one.
+ *
+ * As all other database operations are blocked while a system task runs, each
+ * run is limited to a number of documents and a maximum duration. These limits
+ * do not apply to cutting off free pages, which walks the complete free page
+ * list of each file and so blocks the database for a time proportional to the
+ * number of free pages. Scheduled periodically, the task works through the
+ * database in small steps:
+ *
+ * <pre>
+ * &lt;job type="system" name="defrag" class="org.exist.storage.DefragmentationTask"
+ *     cron-trigger="0 0 3 * * ?"&gt;
+ *     &lt;parameter name="min-splits" value="10"/&gt;
+ *     &lt;parameter name="max-documents" value="100"/&gt;
+ *     &lt;parameter name="max-time" value="30000"/&gt;
+ * &lt;/job&gt;
+ * </pre>
+ *
+ * The task can also be started through the JMX Database bean.
+ */
+public class DefragmentationTask implements SystemTask {
+
+    private final static Logger LOG = LogManager.getLogger(DefragmentationTask.class);
+
+    public final static String MIN_SPLITS_PROP_NAME = "min-splits";
+    public final static String MAX_DOCUMENTS_PROP_NAME = "max-documents";
+    public final static String MAX_TIME_PROP_NAME = "max-time";
+    public final static String TRUNCATE_PROP_NAME = "truncate";
+
+    public final static String ACTION_DEFRAGMENT = "defragmentation";
+
+    private int minSplits = 10;
+    private int maxDocuments = 100;
+    private long maxTime = 30000;
+    private boolean truncate = true;
+
+    private long deadline;
+    private int documentsDone;
+
+    @Override
+    public String getName() {
+        return "Defragmentation Task";
+    }
+
+    @Override
+    public boolean afterCheckpoint() {
+        return true;
+    }
+
+    @Override
+    public void configure(final Configuration config, final Properties properties) throws EXistException {
+        minSplits = parseInt(properties, MIN_SPLITS_PROP_NAME, minSplits);
+        maxDocuments = parseInt(properties, MAX_DOCUMENTS_PROP_NAME, maxDocuments);
+        maxTime = parseInt(properties, MAX_TIME_PROP_NAME, (int) maxTime);
+        truncate = properties.getProperty(TRUNCATE_PROP_NAME, "yes").equalsIgnoreCase("YES");
+    }
+
+    private static int parseInt(final Properties properties, final String name, final int defaultValue) throws EXistException {
+        final String value = properties.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (final NumberFormatException e) {
+            throw new EXistException("Parameter '" + name + "' has to be an integer");
+        }
+    }
+
+    @Override
+    public void execute(final DBBroker broker, final Txn transaction) throws EXistException {
+        final BrokerPool pool = broker.getBrokerPool();
+        final long start = System.currentTimeMillis();
+        deadline = maxTime > 0 ? start + maxTime : Long.MAX_VALUE;
+        documentsDone = 0;
+
+        pool.getProcessMonitor().startJob(ACTION_DEFRAGMENT);
+        try {
+            if (truncate && broker instanceof NativeBroker) {
+                final long pages = ((NativeBroker) broker).truncateFreePages();
+                LOG.info("Released {} free pages", pages);
+            }
+
+            final Collection root = broker.getCollection(XmldbURI.ROOT_COLLECTION_URI);
+            if (root != null) {
+                defragment(broker, transaction, pool.getLockManager(), root);
+            }
+            LOG.info("Defragmented {} documents in {} ms", documentsDone, System.currentTimeMillis() - start);
+        } catch (final PermissionDeniedException e) {
+            throw new EXistException(e.getMessage(), e);
+        } finally {
+            pool.getProcessMonitor().endJob();
+        }
+    }
+
+    /**
+     * Defragment the documents of the collection and its descendants.
+     *
+     * @return false if the limits of this run have been reached
+     */
+    private boolean defragment(final DBBroker broker, final Txn transaction, final LockManager lockManager,
+            final Collection collection) throws PermissionDeniedException {
+        for (final Iterator<DocumentImpl> i = collection.iteratorNoLock(broker); i.hasNext(); ) {
+            final DocumentImpl doc = i.next();
+            if (doc.getResourceType() != DocumentImpl.XML_FILE || doc.getSplitCount() <= minSplits) {
+                continue;
+            }
+            if (isExhausted()) {
+                return false;
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Defragmenting {}: {} page splits", doc.getURI(), doc.getSplitCount());
+            }
+            try (final ManagedDocumentLock docLock = lockManager.acquireDocumentWriteLock(doc.getURI())) {
+                broker.defragXMLResource(transaction, doc);
+                documentsDone++;
+            } catch (final LockException e) {
+                LOG.warn("Failed to lock {}: {}", doc.getURI(), e.getMessage());
+            }
+        }
+
+        final XmldbURI uri = collection.getURI();
+        for (final Iterator<XmldbURI> i = collection.collectionIteratorNoLock(broker); i.hasNext(); ) {
+            final Collection child = broker.getCollection(uri.append(i.next()));
+            if (child != null && child.getId() != collection.getId() && !defragment(broker, transaction, lockManager, child)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isExhausted() {
+        if ((maxDocuments > 0 && documentsDone >= maxDocuments) || System.currentTimeMillis() > deadline) {
+            LOG.info("Limit of this run reached after {} documents, continuing on next run", documentsDone);
+            return true;
+        }
+        return false;
+    }
+}
@@ -2320,6 +2320,7 @@ public class NativeBroker implements DBBroker {
             doc.write(os);
             final Value key = new CollectionStore.DocumentKey(doc.getCollection().getId(), doc.getResourceType(), doc.getDocId());
             collectionsDb.put(transaction, key, os.data(), true);
+            doc.incVersion();
             //} catch (ReadOnlyException e) {
             //LOG.warn(DATABASE_IS_READ_ONLY);
         } catch(final LockException e) {
@@ -3905,6 +3906,71 @@ public class NativeBroker implements DBBroker {
         nodesCount = 0;
     }
 
+    /**
+     * Write up to maxPages dirty pages of the core storage files (dom.dbx,
+     * collections.dbx and values.dbx) to disk, without waiting for a checkpoint.
+     * Each file is only locked while its pages are written, so concurrent
+     * transactions are blocked briefly at most.
+     *
+     * @param maxPages the maximum number of pages to write
+     * @return the number of pages written
+     */
+    public int flushDirtyPages(final int maxPages) {
+        if(isReadOnly()) {
+            return 0;
+        }
+        int written = 0;
+        for(final byte fileId : ALL_STORAGE_FILES) {
+            final BTree file = getStorage(fileId);
+            if(file == null || written >= maxPages) {
+                continue;
+            }
+            try(final ManagedLock<ReentrantLock> fileLock = lockManager.acquireBtreeWriteLock(file.getLockName())) {
+                written += file.flush(maxPages - written);
+            } catch(final LockException e) {
+                LOG.warn("Failed to acquire lock on {}", FileUtils.fileName(file.getFile()), e);
+            } catch(final DBException e) {
+                LOG.error("Error while writing pages of {}", FileUtils.fileName(file.getFile()), e);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Shrink the core storage files (dom.dbx, collections.dbx and values.dbx)
+     * by cutting off free pages at their end.
+     *
+     * Must only be called directly after a checkpoint, see
+     * {@link org.exist.storage.btree.Paged#truncateFreePages()}. Each file is
+     * locked until its complete free page list has been processed.
+     *
+     * @return the number of pages removed
+     */
+    public long truncateFreePages() {
+        if(isReadOnly()) {
+            return 0;
+        }
+        long removed = 0;
+        for(final byte fileId : ALL_STORAGE_FILES) {
+            final BTree file = getStorage(fileId);
+            if(file == null) {
+                continue;
+            }
+            try(final ManagedLock<ReentrantLock> fileLock = lockManager.acquireBtreeWriteLock(file.getLockName())) {
+                final long pages = file.truncateFreePages();
+                if(pages > 0) {
+                    LOG.info("Removed {} free pages from {}", pages, FileUtils.fileName(file.getFile()));
+                }
+                removed += pages;
+            } catch(final LockException e) {
+                LOG.warn("Failed to acquire lock on {}", FileUtils.fileName(file.getFile()), e);
+            } catch(final IOException e) {
+                LOG.error("Error while truncating {}", FileUtils.fileName(file.getFile()), e);
+            }
+        }
+        return removed;
+    }
+
     long nextReportTS = System.currentTimeMillis();
 
     @Override
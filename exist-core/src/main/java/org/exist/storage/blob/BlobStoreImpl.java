@@ -61,7 +61,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
@@ -69,6 +71,7 @@ import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 import static com.evolvedbinary.j8fu.Try.TaggedTryUnchecked;
@@ -106,17 +109,22 @@ import static org.exist.util.ThreadUtils.newInstanceSubThreadGroup;
  * reflects the in-memory state of BlobStore.
  *
  * The persistent store file will grow for each unique blob added to
- * the system, space is not reclaimed in the persistent file until
- * {@link #compactPersistentReferences(ByteBuffer, Path)} is called,
- * which typically only happens the next time the blob store is re-opened.
+ * the system. Space is reclaimed in the persistent file by
+ * {@link #compactPersistentReferences(ByteBuffer, Path)} when the blob
+ * store is re-opened, and on-line by the {@link PersistentWriter} once
+ * the file holds at least {@link #DEFAULT_COMPACT_MIN_ENTRIES} entries
+ * of which at least half are garbage, i.e. entries of blobs which have
+ * been vacuumed. The on-line compaction writes the entries of all known
+ * blobs to a new file, which then atomically replaces the persistent
+ * file. As journal entries address blobs by their id, and not by their
+ * offset in the persistent file, recovery is not affected by compaction.
+ * Keeping the file compact also bounds the time needed to rebuild the
+ * in-memory references from it on startup.
  *
  * Each unique blob typically takes up only 36 bytes in the
  * persistent store file, but this can vary if a smaller or larger
  * digestType is specified.
  *
- * On-line compaction of the persistent file could be added in
- * future with relative ease if deemed necessary.
- *
  * The persistent file for the blob store has the format:
  *
  * [fileHeader entry+]
@@ -233,8 +241,15 @@ public class BlobStoreImpl implements BlobStore {
      */
     public static final short BLOB_STORE_VERSION = 1;
 
+    /**
+     * Minimum number of entries in the persistent file
+     * before it is compacted on-line.
+     */
+    public static final int DEFAULT_COMPACT_MIN_ENTRIES = 10_000;
+
     private ByteBuffer buffer;
-    private SeekableByteChannel channel;
+    // replaced by the persistent writer thread when it compacts the file
+    private volatile SeekableByteChannel channel;
 
     /**
      * In-memory representation of the Blob Store.
@@ -267,6 +282,7 @@ public class BlobStoreImpl implements BlobStore {
     private final Path blobDir;
     private final Path stagingDir;
     private final DigestType digestType;
+    private final int compactMinEntries;
 
     /**
      * Enumeration of possible
@@ -308,11 +324,25 @@ public class BlobStoreImpl implements BlobStore {
      */
     public BlobStoreImpl(final Database database, final Path persistentFile, final Path blobDir,
             final DigestType digestType) {
+        this(database, persistentFile, blobDir, digestType, DEFAULT_COMPACT_MIN_ENTRIES);
+    }
+
+    /**
+     * @param database the database that this BlobStore is operating within
+     * @param persistentFile the file path for the persistent blob store metadata.
+     * @param blobDir the directory to store BLOBs in.
+     * @param digestType the message digest type to use for creating checksums of the BLOBs.
+     * @param compactMinEntries the minimum number of entries in the persistent file
+     *     before it is compacted on-line, or 0 to disable on-line compaction.
+     */
+    public BlobStoreImpl(final Database database, final Path persistentFile, final Path blobDir,
+            final DigestType digestType, final int compactMinEntries) {
         this.database = database;
         this.persistentFile = persistentFile;
         this.blobDir = blobDir;
         this.stagingDir = blobDir.resolve("staging");
         this.digestType = digestType;
+        this.compactMinEntries = compactMinEntries;
     }
 
     @Override
@@ -323,8 +353,8 @@ public class BlobStoreImpl implements BlobStore {
         final ThreadGroup blobStoreThreadGroup = newInstanceSubThreadGroup(database, "blob-store");
 
         // startup the persistent writer thread
-        this.persistentWriter = new PersistentWriter(persistQueue, buffer, channel,
-                this::abnormalPersistentWriterShutdown);
+        this.persistentWriter = new PersistentWriter(persistQueue, buffer, channel, references, persistentFile,
+                compactMinEntries, compacted -> this.channel = compacted, this::abnormalPersistentWriterShutdown);
         this.persistentWriterThread = new Thread(blobStoreThreadGroup, persistentWriter,
                 nameInstanceThread(database, "blob-store.persistent-writer"));
         persistentWriterThread.start();
@@ -373,8 +403,9 @@ public class BlobStoreImpl implements BlobStore {
             if (Files.exists(persistentFile)) {
                 if (!forRecovery) {
                     // compact existing blob store file and then open
+                    deleteCompactionLeftovers(persistentFile);
                     this.references = compactPersistentReferences(buffer, persistentFile);
-                    channel = Files.newByteChannel(persistentFile, WRITE);
+                    channel = Files.newByteChannel(persistentFile, WRITE, READ);
 
                     /*
                      * We are not recovering, so we can delete any staging area left over
@@ -395,7 +426,7 @@ public class BlobStoreImpl implements BlobStore {
                 }
 
                 references = new ConcurrentHashMap<>();
-                channel = Files.newByteChannel(persistentFile, CREATE_NEW, WRITE);
+                channel = Files.newByteChannel(persistentFile, CREATE_NEW, WRITE, READ);
                 writeFileHeader(buffer, channel);
             }
 
@@ -606,6 +637,24 @@ public class BlobStoreImpl implements BlobStore {
         return compactReferences;
     }
 
+    /**
+     * Deletes any temporary files left behind by a compaction
+     * of the persistent file that was interrupted by a crash.
+     *
+     * @param persistentFile the persistent file
+     *
+     * @throws IOException if the directory cannot be read
+     */
+    private static void deleteCompactionLeftovers(final Path persistentFile) throws IOException {
+        try (final DirectoryStream<Path> leftovers = Files.newDirectoryStream(persistentFile.getParent(),
+                persistentFile.getFileName() + ".new.*")) {
+            for (final Path leftover : leftovers) {
+                LOG.warn("Removing incomplete compaction of Blob Store: {}", leftover.toAbsolutePath().toString());
+                FileUtils.deleteQuietly(leftover);
+            }
+        }
+    }
+
     /**
      * Writes the persistent file header
      *
@@ -614,7 +663,7 @@ public class BlobStoreImpl implements BlobStore {
      * @return the number of bytes written.
      * @throws IOException if an error occurs whilst writing the header.
      */
-    private long writeFileHeader(final ByteBuffer buffer, final SeekableByteChannel channel) throws IOException {
+    private static long writeFileHeader(final ByteBuffer buffer, final SeekableByteChannel channel) throws IOException {
         final long start = channel.position();
 
         buffer.clear();
@@ -1559,15 +1608,33 @@ public class BlobStoreImpl implements BlobStore {
 
         private final BlockingQueue<Tuple3<BlobId, BlobReference, Integer>> persistQueue;
         private final ByteBuffer buffer;
-        private final SeekableByteChannel channel;
+        private SeekableByteChannel channel;
+        private final ConcurrentMap<BlobId, BlobReference> references;
+        private final Path persistentFile;
+        private final int compactMinEntries;
+        private final Consumer<SeekableByteChannel> compactedCallback;
         private final Runnable abnormalShutdownCallback;
 
+        /**
+         * The number of entries in the persistent file at which
+         * to check next if it should be compacted.
+         */
+        private long nextCompactionCheck;
+
         PersistentWriter(final BlockingQueue<Tuple3<BlobId, BlobReference, Integer>> persistQueue,
-                final ByteBuffer buffer, final SeekableByteChannel channel, final Runnable abnormalShutdownCallback) {
+                final ByteBuffer buffer, final SeekableByteChannel channel,
+                final ConcurrentMap<BlobId, BlobReference> references, final Path persistentFile,
+                final int compactMinEntries, final Consumer<SeekableByteChannel> compactedCallback,
+                final Runnable abnormalShutdownCallback) {
             this.persistQueue = persistQueue;
             this.buffer = buffer;
             this.channel = channel;
+            this.references = references;
+            this.persistentFile = persistentFile;
+            this.compactMinEntries = compactMinEntries;
+            this.compactedCallback = compactedCallback;
             this.abnormalShutdownCallback = abnormalShutdownCallback;
+            this.nextCompactionCheck = compactMinEntries;
         }
 
         @Override
@@ -1588,7 +1655,7 @@ public class BlobStoreImpl implements BlobStore {
                 LOG.error("PersistentWriter Shutting down due to interrupt: {}", e.getMessage());
                 Thread.currentThread().interrupt();
                 abnormalShutdownCallback.run();
-            } catch (final IOException e) {
+            } catch (final IOException | RuntimeException e) {
                 LOG.error("PersistentWriter Shutting down, received: {}", e.getMessage(), e);
                 abnormalShutdownCallback.run();
             }
@@ -1611,7 +1678,8 @@ public class BlobStoreImpl implements BlobStore {
                 throws IOException {
 
             // if new record (i.e. not yet persisted), append to the end of the file
-            if (blobReference.persistentOffset == NOT_PERSISTED) {
+            final boolean append = blobReference.persistentOffset == NOT_PERSISTED;
+            if (append) {
                 blobReference.persistentOffset = channel.size();
             }
 
@@ -1623,6 +1691,151 @@ public class BlobStoreImpl implements BlobStore {
             buffer.flip();
 
             channel.write(buffer);
+
+            if (append && compactMinEntries > 0) {
+                compactIfNeeded();
+            }
+        }
+
+        /**
+         * Compacts the persistent file if it has grown to at least
+         * {@link #compactMinEntries} entries and at least half of them
+         * are garbage.
+         *
+         * @throws IOException if an error occurs whilst compacting the persistent file.
+         */
+        private void compactIfNeeded() throws IOException {
+            final long entries = (channel.size() - BLOB_STORE_HEADER_LEN) / buffer.capacity();
+            if (entries < nextCompactionCheck) {
+                return;
+            }
+
+            long live = 0;
+            for (final BlobReference blobReference : references.values()) {
+                if (blobReference.persistentOffset != NOT_PERSISTED) {
+                    live++;
+                }
+            }
+
+            if (entries - live < live) {
+                // the file must double in size relative to the live entries before the next check
+                nextCompactionCheck = Math.max(compactMinEntries, live * 2);
+                return;
+            }
+
+            final long start = System.currentTimeMillis();
+            boolean compacted = false;
+            try {
+                compacted = compact();
+            } catch (final IOException | RuntimeException e) {
+                if (!channel.isOpen()) {
+                    // the persistent file could not be reopened, we can not continue writing
+                    throw new IOException("Unable to reopen blob.dbx after failed compaction: " + e.getMessage(), e);
+                }
+                // non-critical error, the current file is still in use
+                LOG.error("Unable to compact blob.dbx: {}", e.getMessage(), e);
+            }
+            if (compacted) {
+                LOG.info("Compacted Blob Store from {} to {} entries in {} ms", entries, live,
+                        System.currentTimeMillis() - start);
+                nextCompactionCheck = Math.max(compactMinEntries, live * 2);
+            } else {
+                // try again after a few more entries have been appended
+                nextCompactionCheck = entries + Math.max(1, entries / 100);
+            }
+        }
+
+        /**
+         * Copies the entries of all blobs which are still referenced
+         * from the in-memory references to a new persistent file, which
+         * then atomically replaces the current persistent file.
+         *
+         * Entries are copied from the current file, not from the in-memory
+         * reference counts, as the latter may be ahead of the persistent
+         * state whilst updates are waiting in the {@link #persistQueue}.
+         *
+         * @return true if the persistent file was replaced, false if the
+         *     current file was kept, either because updates of removed blobs
+         *     are still queued, or because it could not be replaced.
+         *
+         * @throws IOException if an error occurs whilst compacting the persistent file.
+         */
+        private boolean compact() throws IOException {
+            final List<BlobReference> persisted = new ArrayList<>();
+            for (final BlobReference blobReference : references.values()) {
+                if (blobReference.persistentOffset != NOT_PERSISTED) {
+                    persisted.add(blobReference);
+                }
+            }
+
+            /*
+             * A blob may have been vacuumed, i.e. removed from the references,
+             * whilst the update of its reference count to zero is still queued.
+             * Its entry will not be copied, so the queued update would overwrite
+             * the entry of another blob in the compacted file. Such updates are
+             * queued before the blob is removed, so they are all in the queue now.
+             */
+            final Set<BlobReference> included = Collections.newSetFromMap(new IdentityHashMap<>());
+            included.addAll(persisted);
+            for (final Tuple3<BlobId, BlobReference, Integer> queued : persistQueue) {
+                if (queued != POISON_PILL && queued._2.persistentOffset != NOT_PERSISTED
+                        && !included.contains(queued._2)) {
+                    return false;
+                }
+            }
+
+            // read the current file sequentially
+            persisted.sort(Comparator.comparingLong(blobReference -> blobReference.persistentOffset));
+
+            final Path compactPersistentFile = persistentFile.getParent().resolve(
+                    persistentFile.getFileName() + ".new." + System.currentTimeMillis());
+            final long[] compactOffsets = new long[persisted.size()];
+            final FileChannel compactChannel = FileChannel.open(compactPersistentFile, CREATE_NEW, WRITE, READ);
+            try {
+                writeFileHeader(buffer, compactChannel);
+
+                for (int i = 0; i < persisted.size(); i++) {
+                    buffer.clear();
+                    channel.position(persisted.get(i).persistentOffset);
+                    while (buffer.hasRemaining()) {
+                        if (channel.read(buffer) < 0) {
+                            throw new IOException("Unexpected end of Blob Store file: "
+                                    + persistentFile.toAbsolutePath().toString());
+                        }
+                    }
+                    buffer.flip();
+
+                    compactOffsets[i] = compactChannel.position();
+                    compactChannel.write(buffer);
+                }
+
+                compactChannel.force(true);
+            } catch (final IOException | RuntimeException e) {
+                compactChannel.close();
+                FileUtils.deleteQuietly(compactPersistentFile);
+                throw e;
+            }
+
+            // some platforms can not replace a file which is open
+            channel.close();
+            try {
+                Files.move(compactPersistentFile, persistentFile, ATOMIC_MOVE, REPLACE_EXISTING);
+            } catch (final IOException e) {
+                LOG.error("Unable to replace blob.dbx with its compacted version: {}", e.getMessage(), e);
+                compactChannel.close();
+                FileUtils.deleteQuietly(compactPersistentFile);
+                channel = Files.newByteChannel(persistentFile, WRITE, READ);
+                compactedCallback.accept(channel);
+                return false;
+            }
+
+            for (int i = 0; i < compactOffsets.length; i++) {
+                persisted.get(i).persistentOffset = compactOffsets[i];
+            }
+
+            channel = compactChannel;
+            compactedCallback.accept(compactChannel);
+            return true;
         }
     }
 
@@ -26,12 +26,13 @@ import java.nio.ByteBuffer;
 import org.exist.storage.DBBroker;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.journal.AbstractLoggable;
+import org.exist.storage.journal.FileLoggable;
 import org.exist.storage.txn.Txn;
 
 /**
  * @author wolf
  */
-public abstract class BTAbstractLoggable extends AbstractLoggable {
+public abstract class BTAbstractLoggable extends AbstractLoggable implements FileLoggable {
     private byte fileId;
     private NativeBroker broker;
 
@@ -45,6 +46,11 @@ public abstract class BTAbstractLoggable extends AbstractLoggable {
         this.broker = (NativeBroker) broker;
     }
 
+    @Override
+    public byte getFileId() {
+        return fileId;
+    }
+
     protected BTree getStorage() {
         return broker.getStorage(fileId);
     }
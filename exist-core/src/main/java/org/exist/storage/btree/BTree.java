@@ -531,11 +531,44 @@ public class BTree extends Paged implements Lockable {
 
     @Override
     public boolean flush() throws DBException {
-        boolean flushed = cache.flush();
+        boolean flushed;
+        beginWriteBatch();
+        try {
+            flushed = cache.flush();
+        } finally {
+            endWriteBatch();
+        }
         flushed = flushed | super.flush();
         return flushed;
     }
 
+    /**
+     * Write at most maxPages dirty pages to disk, leaving them in the cache.
+     * The journal is flushed first, so that the log records of all changes
+     * to the pages are on disk before the pages are.
+     *
+     * This is used to write pages in the background, ahead of a checkpoint.
+     * The caller must hold the write lock on the file.
+     *
+     * @param maxPages the maximum number of pages to write
+     * @return the number of pages written
+     * @throws DBException if an error occurs
+     */
+    public int flush(final int maxPages) throws DBException {
+        if (maxPages <= 0 || BrokerPool.FORCE_CORRUPTION) {
+            return 0;
+        }
+        if (isRecoveryEnabled()) {
+            logManager.ifPresent(l -> l.flush(true, false));
+        }
+        beginWriteBatch();
+        try {
+            return cache.flush(maxPages);
+        } finally {
+            endWriteBatch();
+        }
+    }
+
     @Override
 	public void close() throws DBException {
         if (!isReadOnly()) {
@@ -85,12 +85,16 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.NonWritableChannelException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 /**
  *  Paged is a paged file foundation that is used by the BTree class and
@@ -129,6 +133,18 @@ public abstract class Paged implements AutoCloseable {
 
     protected static int PAGE_SIZE = 4096;
 
+    /**
+     * Maximum number of pages held back in a write batch before
+     * they are written out.
+     */
+    private static final int MAX_BATCH_PAGES = 1024;
+
+    /**
+     * Maximum number of adjacent pages combined into a single
+     * gathering write.
+     */
+    private static final int MAX_WRITE_RUN = 64;
+
     protected final short fileVersion;
     private final FileHeader fileHeader;
     private final byte[] tempPageData;
@@ -138,6 +154,9 @@ public abstract class Paged implements AutoCloseable {
     private Path file;
     private boolean readOnly = false;
     private boolean fileIsNew = false;
+
+    private int writeBatchDepth = 0;
+    private final TreeMap<Long, byte[]> writeBatch = new TreeMap<>();
 	
     public Paged(final BrokerPool pool, final short fileVersion) {
         this.fileVersion = fileVersion;
@@ -223,6 +242,11 @@ public abstract class Paged implements AutoCloseable {
     public boolean flush() throws DBException {
         boolean flushed = false;
         try {
+            if (!writeBatch.isEmpty()) {
+                // left over from a batch which failed to be written
+                writeBatchedPages();
+                flushed = true;
+            }
             if(fileHeader.isDirty() && !readOnly) {
                 fileHeader.write();
                 flushed = true;
@@ -242,6 +266,7 @@ public abstract class Paged implements AutoCloseable {
      * @throws IOException if an I/O error occurs
      */
     public void backupToStream(final OutputStream os) throws IOException {
+        writeBatchedPages();
         raf.seek(0);
         final byte[] buf = new byte[4096];
         int len;
@@ -489,6 +514,71 @@ public abstract class Paged implements AutoCloseable {
         }
     }
 
+    /**
+     * Shrink the file by removing free pages from its end.
+     *
+     * The free page list is read, free pages at the end of the file are cut
+     * off, and the remaining free pages are linked again in ascending order,
+     * so that pages near the start of the file get reused first.
+     *
+     * Must only be called while the file is consistent on disk, i.e. directly
+     * after a checkpoint, and while holding the write lock on the file. The
+     * whole free page list is read, so the time taken grows with the number of
+     * free pages; there is no limit on it, callers block the file throughout.
+     *
+     * The pages are relinked before the file header is written. If the process
+     * dies in between, the header still describes the old file size and no page
+     * can be handed out twice, at worst some free pages are no longer linked.
+     *
+     * @return the number of pages removed from the file
+     * @throws IOException if an I/O error occurs
+     */
+    public long truncateFreePages() throws IOException {
+        if (readOnly) {
+            return 0;
+        }
+        synchronized (fileHeader) {
+            final long totalCount = fileHeader.getTotalCount();
+            final TreeSet<Long> freePages = new TreeSet<>();
+            long pageNum = fileHeader.getFirstFreePage();
+            while (pageNum != Page.NO_PAGE && pageNum < totalCount && freePages.add(pageNum)) {
+                final Page page = getPage(pageNum);
+                page.read();
+                pageNum = page.header.getNextPage();
+            }
+
+            long newCount = totalCount;
+            while (newCount > 0 && freePages.contains(newCount - 1)) {
+                newCount--;
+            }
+            if (newCount == totalCount) {
+                return 0;
+            }
+
+            // relink the remaining free pages, lowest page first
+            long next = Page.NO_PAGE;
+            long last = Page.NO_PAGE;
+            for (final Long free : freePages.headSet(newCount, false).descendingSet()) {
+                final Page page = getPage(free);
+                page.header.setStatus(UNUSED);
+                page.header.setNextPage(next);
+                page.remove();
+                if (last == Page.NO_PAGE) {
+                    last = free;
+                }
+                next = free;
+            }
+            fileHeader.setFirstFreePage(next);
+            fileHeader.setLastFreePage(last);
+            fileHeader.setTotalCount(newCount);
+            fileHeader.write();
+            // pending pages beyond the new end would otherwise extend the file again
+            writeBatchedPages();
+            raf.setLength(fileHeader.getHeaderSize() + (newCount * fileHeader.getPageSize()));
+            return totalCount - newCount;
+        }
+    }
+
     protected void reuseDeleted(final Page page) throws IOException {
         if (page != null && fileHeader.getFirstFreePage() != Page.NO_PAGE) {
 
@@ -543,6 +633,79 @@ public abstract class Paged implements AutoCloseable {
         page.write(data);
     }
 
+    /**
+     * Start collecting page writes instead of writing each page with a separate
+     * seek. Until the matching {@link #endWriteBatch()}, pages written are kept
+     * in memory, ordered by their position in the file, and are then written
+     * out in ascending order, combining adjacent pages into a single write.
+     *
+     * Batches may be nested, the pages are written when the outermost batch
+     * ends. The caller must hold the write lock on the file.
+     */
+    protected final void beginWriteBatch() {
+        writeBatchDepth++;
+    }
+
+    /**
+     * End a write batch started with {@link #beginWriteBatch()}.
+     *
+     * @throws DBException if the pages could not be written
+     */
+    protected final void endWriteBatch() throws DBException {
+        if (writeBatchDepth > 0 && --writeBatchDepth == 0) {
+            try {
+                writeBatchedPages();
+            } catch (final IOException e) {
+                LOG.error("Failed to write pages to {}: {}", FileUtils.fileName(file), e.getMessage(), e);
+                throw new DBException("Failed to write pages to " + FileUtils.fileName(file) + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Write out the pages collected by the current write batch. The pages are marked
+     * clean when they are added to the batch, so they are only removed from it once
+     * all of them have been written. If a write fails, they stay in the batch and are
+     * written again by the next call.
+     *
+     * @throws IOException if the pages could not be written
+     */
+    private void writeBatchedPages() throws IOException {
+        if (writeBatch.isEmpty()) {
+            return;
+        }
+        final FileChannel channel = raf.getChannel();
+        final ByteBuffer[] run = new ByteBuffer[MAX_WRITE_RUN];
+        int runLength = 0;
+        long runOffset = -1;
+        for (final Map.Entry<Long, byte[]> entry : writeBatch.entrySet()) {
+            final long offset = entry.getKey();
+            if (runLength == MAX_WRITE_RUN || (runLength > 0 && offset != runOffset + (long) runLength * fileHeader.pageSize)) {
+                writeRun(channel, runOffset, run, runLength);
+                runLength = 0;
+            }
+            if (runLength == 0) {
+                runOffset = offset;
+            }
+            run[runLength++] = ByteBuffer.wrap(entry.getValue());
+        }
+        if (runLength > 0) {
+            writeRun(channel, runOffset, run, runLength);
+        }
+        writeBatch.clear();
+    }
+
+    private static void writeRun(final FileChannel channel, final long offset, final ByteBuffer[] run, final int runLength) throws IOException {
+        channel.position(offset);
+        long remaining = 0;
+        for (int i = 0; i < runLength; i++) {
+            remaining += run[i].remaining();
+        }
+        while (remaining > 0) {
+            remaining -= channel.write(run, 0, runLength);
+        }
+    }
+
     /**
      * Writes the multi-Paged Value starting at the specified page number.
      *
@@ -943,6 +1106,9 @@ public abstract class Paged implements AutoCloseable {
         }
 
         public byte[] read() throws IOException {
+            if (writeBatch.containsKey(offset)) {
+                writeBatchedPages();
+            }
             try {
                 if (raf.getFilePointer() != offset) {
                     raf.seek(offset);
@@ -986,6 +1152,15 @@ public abstract class Paged implements AutoCloseable {
                     System.arraycopy(data, 0, tempPageData, fileHeader.pageHeaderSize, data.length);
                 }
             }
+            if (writeBatchDepth > 0) {
+                writeBatch.put(offset, tempPageData.clone());
+                if (writeBatch.size() >= MAX_BATCH_PAGES) {
+                    writeBatchedPages();
+                }
+                return;
+            }
+            // a page left over from a failed batch must not overwrite this write later on
+            writeBatch.remove(offset);
             if (raf.getFilePointer() != offset) {
                 raf.seek(offset);
             }
@@ -1009,6 +1184,7 @@ public abstract class Paged implements AutoCloseable {
         }
 
         public void dumpPage() throws IOException {
+            writeBatchedPages();
             if (raf.getFilePointer() != offset) {
                 raf.seek(offset);
             }
@@ -105,6 +105,17 @@ public interface Cache<T extends Cacheable> {
 
     boolean flush();
 
+    /**
+     * Write at most maxItems dirty items to disk, without
+     * removing them from the cache.
+     *
+     * Used to write pages in the background, ahead of a checkpoint.
+     *
+     * @param maxItems the maximum number of items to write
+     * @return the number of items written
+     */
+    int flush(int maxItems);
+
     /**
      * Get the size of this cache.
      * 
@@ -29,6 +29,9 @@ import org.apache.logging.log4j.Logger;
 import org.exist.storage.CacheManager;
 
 import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 
 /**
  * Cache implementation based on the GClock algorithm. 
@@ -148,8 +151,8 @@ public class GClockCache<T extends Cacheable> implements Cache<T> {
 	public boolean flush() {
 		boolean flushed = false;
 	    int written = 0;
-		for (int i = 0; i < count; i++) {
-			if (items[i] != null && items[i].sync(false)) {
+		for (final T item : getDirtyItems()) {
+			if (item.sync(false)) {
 			    ++written;
 			    flushed = true;
 			}
@@ -160,6 +163,33 @@ public class GClockCache<T extends Cacheable> implements Cache<T> {
 		return flushed;
 	}
 
+	@Override
+	public int flush(final int maxItems) {
+		int written = 0;
+		final List<T> dirty = getDirtyItems();
+		for (int i = 0; i < dirty.size() && written < maxItems; i++) {
+			if (dirty.get(i).sync(false)) {
+				++written;
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * Get the dirty items ordered by key, i.e. by page number,
+	 * so that they are written to the file sequentially.
+	 */
+	private List<T> getDirtyItems() {
+		final List<T> dirty = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			if (items[i] != null && items[i].isDirty()) {
+				dirty.add(items[i]);
+			}
+		}
+		dirty.sort(Comparator.comparingLong(Cacheable::getKey));
+		return dirty;
+	}
+
 	@Override
 	public boolean hasDirtyItems() {
 	    for(int i = 0; i < count; i++) {
@@ -28,7 +28,10 @@ import org.apache.logging.log4j.Logger;
 import org.exist.storage.CacheManager;
 import org.exist.util.hashtable.SequencedLongHashMap;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * A simple cache implementing a Last Recently Used policy. This
@@ -117,17 +120,41 @@ public class LRUCache<T extends Cacheable> implements Cache<T> {
 	@Override
 	public boolean flush() {
 		boolean flushed = false;
+        for (final T cacheable : getDirtyItems()) {
+            flushed = flushed | cacheable.sync(false);
+        }
+		return flushed;
+	}
+
+    @Override
+    public int flush(final int maxItems) {
+        int written = 0;
+        final Iterator<T> iterator = getDirtyItems().iterator();
+        while (written < maxItems && iterator.hasNext()) {
+            if (iterator.next().sync(false)) {
+                written++;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Get the dirty items ordered by key, i.e. by page number,
+     * so that they are written to the file sequentially.
+     */
+    private List<T> getDirtyItems() {
+        final List<T> dirty = new ArrayList<>();
         final Iterator<T> iterator = map.valueIterator();
         while (iterator.hasNext()) {
             final T cacheable = iterator.next();
-            if(cacheable.isDirty()) {
-                flushed = flushed | cacheable.sync(false);
+            if (cacheable.isDirty()) {
+                dirty.add(cacheable);
             }
         }
-		return flushed;
-	}
+        dirty.sort(Comparator.comparingLong(Cacheable::getKey));
+        return dirty;
+    }
 
-	
     @Override
     public boolean hasDirtyItems() {
         final Iterator<T> iterator = map.valueIterator();
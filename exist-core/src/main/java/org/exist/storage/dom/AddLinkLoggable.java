@@ -26,13 +26,14 @@ import java.nio.ByteBuffer;
 import org.exist.storage.DBBroker;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.journal.AbstractLoggable;
+import org.exist.storage.journal.FileLoggable;
 import org.exist.storage.journal.LogException;
 import org.exist.storage.txn.Txn;
 
 /**
  * @author wolf
  */
-public class AddLinkLoggable extends AbstractLoggable {
+public class AddLinkLoggable extends AbstractLoggable implements FileLoggable {
     protected long pageNum;
     protected short tid;
     protected long link;
@@ -69,6 +70,11 @@ public class AddLinkLoggable extends AbstractLoggable {
         return 14;
     }
 
+    @Override
+    public byte getFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
+
     @Override
     public void redo() throws LogException {
         domDb.redoAddLink(this);
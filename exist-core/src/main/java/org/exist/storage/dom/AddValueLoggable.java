@@ -26,10 +26,11 @@ import java.nio.ByteBuffer;
 import org.exist.storage.DBBroker;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.journal.AbstractLoggable;
+import org.exist.storage.journal.FileLoggable;
 import org.exist.storage.journal.LogException;
 import org.exist.storage.txn.Txn;
 
-public class AddValueLoggable extends AbstractLoggable {
+public class AddValueLoggable extends AbstractLoggable implements FileLoggable {
     protected DOMFile domDb;
     protected long pageNum;
     protected short tid;
@@ -92,6 +93,11 @@ public class AddValueLoggable extends AbstractLoggable {
         return 8 + value.length;
     }
 
+    @Override
+    public byte getFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
+
     @Override
     public void redo() throws LogException {
         domDb.redoAddValue(this);
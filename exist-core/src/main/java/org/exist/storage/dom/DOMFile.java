@@ -29,6 +29,11 @@ import java.nio.file.Path;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.Nullable;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
@@ -70,6 +75,7 @@ import org.exist.storage.journal.LogEntryTypes;
 import org.exist.storage.journal.Loggable;
 import org.exist.storage.journal.Lsn;
 import org.exist.storage.lock.LockManager;
+import org.exist.storage.lock.ManagedLock;
 import org.exist.storage.txn.Txn;
 import org.exist.util.*;
 import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
@@ -112,6 +118,15 @@ import org.w3c.dom.Node;
  * The upper two bits of the tuple id are used to indicate the type of the record
  * (see {@link org.exist.storage.dom.ItemId}).
  * 
+ * Nodes which do not fit into a page are stored in a chain of overflow pages;
+ * the record then has length 0 and holds the number of the first overflow page.
+ * If {@link #PROPERTY_COMPRESS_OVERFLOW} is enabled, these values are LZ4
+ * compressed (see {@link OverflowCompression}).
+ * 
+ * When a document is scanned sequentially by a {@link NodeIterator} or
+ * {@link RawNodeIterator}, the following pages of the chain are loaded into the
+ * page cache in the background (see {@link #PROPERTY_READ_AHEAD}).
+ * 
  * @author <a href="mailto:wolfgang@exist-db.org">Wolfgang Meier</a>
  */
 public class DOMFile extends BTree implements Lockable {
@@ -166,6 +181,19 @@ public class DOMFile extends BTree implements Lockable {
 
     public static final short FILE_FORMAT_VERSION_ID = 10;
 
+    public static final String COMPRESS_OVERFLOW_ATTRIBUTE = "compress-overflow";
+    public static final String PROPERTY_COMPRESS_OVERFLOW = "db-connection.compress-overflow";
+
+    public static final String READ_AHEAD_ATTRIBUTE = "read-ahead";
+    public static final String PROPERTY_READ_AHEAD = "db-connection.read-ahead";
+    public static final int DEFAULT_READ_AHEAD = 16;
+
+    /**
+     * Maximum number of read-ahead requests waiting to be processed,
+     * further requests are dropped.
+     */
+    private static final int MAX_PENDING_READ_AHEADS = 16;
+
     private final LockManager lockManager;
 
     //Page types
@@ -188,11 +216,34 @@ public class DOMFile extends BTree implements Lockable {
 
     private final AddValueLoggable addValueLog = new AddValueLoggable();
 
+    /**
+     * If true, node values stored in overflow pages are LZ4 compressed.
+     * Reading always accepts both compressed and uncompressed values.
+     */
+    private final boolean compressOverflow;
+
+    /**
+     * Number of pages to load ahead of a sequential scan, 0 if disabled.
+     */
+    private final int readAhead;
+    @Nullable private final ThreadPoolExecutor readAheadExecutor;
+
     public DOMFile(final BrokerPool pool, final byte id, final Path dataDir, final Configuration config) throws DBException {
         super(pool, id, FILE_FORMAT_VERSION_ID, true, pool.getCacheManager());
         this.lockManager = pool.getLockManager();
         this.pages = new Reference2LongOpenHashMap<>(64);
         this.pages.defaultReturnValue(NO_PAGE);
+        this.compressOverflow = config.getProperty(PROPERTY_COMPRESS_OVERFLOW, false);
+        this.readAhead = Math.max(0, config.getProperty(PROPERTY_READ_AHEAD, DEFAULT_READ_AHEAD));
+        if (readAhead > 0) {
+            this.readAheadExecutor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(MAX_PENDING_READ_AHEADS), new NamedThreadFactory(pool, "dom.read-ahead"),
+                    new ThreadPoolExecutor.DiscardPolicy());
+            // do not keep an idle thread around between scans
+            this.readAheadExecutor.allowCoreThreadTimeOut(true);
+        } else {
+            this.readAheadExecutor = null;
+        }
         fileHeader = (BTreeFileHeader)getFileHeader();
         fileHeader.setPageCount(0);
         fileHeader.setTotalCount(0);
@@ -260,6 +311,78 @@ public class DOMFile extends BTree implements Lockable {
         return page;
     }
 
+    /**
+     * Request the pages following the given page in the chain of data pages
+     * to be loaded into the page cache in the background. Called by the node
+     * iterators when a sequential scan moves on to the next page, so that the
+     * scan does not have to wait for a synchronous read on every page.
+     *
+     * The caller must hold the lock on the file.
+     *
+     * @param page the page the scan has just moved to
+     * @return the number of pages the scan may move on before read-ahead
+     *     should be requested again
+     */
+    int readAhead(final DOMPage page) {
+        if (readAheadExecutor == null) {
+            return Integer.MAX_VALUE;
+        }
+        final long pageNum = page.getPageNum();
+        final long nextPageNum = page.getPageHeader().getNextDataPage();
+        if (nextPageNum != NO_PAGE) {
+            readAheadExecutor.execute(() -> loadAhead(pageNum, nextPageNum));
+        }
+        // request again when half of the pages have been consumed, to stay ahead of the scan
+        return Math.max(1, readAhead / 2);
+    }
+
+    /**
+     * Load up to {@link #readAhead} pages of a chain into the page cache. The
+     * lock on the file is acquired for each page separately, so the scan
+     * can proceed in between.
+     *
+     * @param pageNum the page to start from
+     * @param nextPageNum the next page in the chain
+     */
+    void loadAhead(final long pageNum, final long nextPageNum) {
+        long previous = pageNum;
+        long next = nextPageNum;
+        for (int i = 0; i < readAhead && next != NO_PAGE; i++) {
+            try (final ManagedLock<ReentrantLock> domFileLock = lockManager.acquireBtreeReadLock(getLockName())) {
+                if (readAheadExecutor.isShutdown()) {
+                    return;
+                }
+                DOMPage page = dataCache.get(next);
+                if (page == null) {
+                    page = new DOMPage(getPage(next));
+                    // the chain may have changed since the read-ahead was requested
+                    final DOMFilePageHeader pageHeader = page.getPageHeader();
+                    if (pageHeader == null || pageHeader.getStatus() != RECORD
+                            || pageHeader.getPreviousDataPage() != previous) {
+                        return;
+                    }
+                    dataCache.add(page);
+                }
+                previous = next;
+                next = page.getPageHeader().getNextDataPage();
+            } catch (final LockException | IOException e) {
+                LOG.debug("Read-ahead of page {} failed: {}", next, e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Check if a data page is in the page cache. The caller must hold
+     * the lock on the file.
+     *
+     * @param pageNum the page number
+     * @return true if the page is cached
+     */
+    boolean isCached(final long pageNum) {
+        return dataCache.get(pageNum) != null;
+    }
+
     /**
      * Open the file.
      * 
@@ -299,6 +422,9 @@ public class DOMFile extends BTree implements Lockable {
 
     @Override
     public void close() throws DBException {
+        if (readAheadExecutor != null) {
+            readAheadExecutor.shutdownNow();
+        }
         if (!isReadOnly()) {
             flush();
         }
@@ -346,7 +472,7 @@ public class DOMFile extends BTree implements Lockable {
                 LOG.debug("Creating overflow page");
             }
             final OverflowDOMPage overflowPage = new OverflowDOMPage();
-            overflowPage.write(transaction, value);
+            overflowPage.write(transaction, encodeOverflowValue(value));
             final byte[] pageNum = ByteConversion.longToByte(overflowPage.getPageNum());
             return add(transaction, pageNum, true);
         } else {
@@ -480,7 +606,13 @@ public class DOMFile extends BTree implements Lockable {
         if(LOG.isDebugEnabled() && !lockManager.isBtreeLocked(getLockName())) {
             LOG.debug("The file doesn't own a lock");
         }
-        return getOverflowValue(pageNum);
+        try {
+            final OverflowDOMPage overflowPage = new OverflowDOMPage(pageNum);
+            return overflowPage.read();
+        } catch (final IOException e) {
+            LOG.warn("IO error while loading binary value", e);
+            return null;
+        }
     }
 
     public void readBinary(final long pageNum, final OutputStream os) {
@@ -548,7 +680,7 @@ public class DOMFile extends BTree implements Lockable {
         if (LENGTH_TID + LENGTH_DATA_LENGTH + value.length > fileHeader.getWorkSize()) {
             final OverflowDOMPage overflowPage = new OverflowDOMPage();
             LOG.debug("Creating overflow page: {}", overflowPage.getPageNum());
-            overflowPage.write(transaction, value);
+            overflowPage.write(transaction, encodeOverflowValue(value));
             value = ByteConversion.longToByte(overflowPage.getPageNum());
             isOverflow = true;
         }
@@ -1385,12 +1517,31 @@ public class DOMFile extends BTree implements Lockable {
             logManager.ifPresent(l -> l.flush(true, false));
         }
         if (!BrokerPool.FORCE_CORRUPTION) {
-            flushed = flushed | super.flush();
-            flushed = flushed | dataCache.flush();
+            beginWriteBatch();
+            try {
+                flushed = flushed | super.flush();
+                flushed = flushed | dataCache.flush();
+            } finally {
+                endWriteBatch();
+            }
         }
         return flushed;
     }
 
+    @Override
+    public int flush(final int maxPages) throws DBException {
+        beginWriteBatch();
+        try {
+            int written = super.flush(maxPages);
+            if (written < maxPages && !BrokerPool.FORCE_CORRUPTION) {
+                written += dataCache.flush(maxPages - written);
+            }
+            return written;
+        } finally {
+            endWriteBatch();
+        }
+    }
+
     @Override
     public void printStatistics() {
         super.printStatistics();
@@ -1587,7 +1738,11 @@ public class DOMFile extends BTree implements Lockable {
         }
         try {
             final OverflowDOMPage overflow = new OverflowDOMPage(pointer);
-            return overflow.read();
+            final byte[] data = overflow.read();
+            if (data != null && OverflowCompression.isCompressed(data)) {
+                return OverflowCompression.decompress(data);
+            }
+            return data;
         } catch (final IOException e) {
             LOG.warn("IO error while loading overflow value", e);
             //TODO : throw exception ?
@@ -1595,6 +1750,21 @@ public class DOMFile extends BTree implements Lockable {
         }
     }
 
+    /**
+     * Encode a node value before it is written to overflow pages.
+     * Values which do not compress well are stored as they are.
+     *
+     * @param value the serialized node
+     * @return the data to store in the overflow pages
+     */
+    private byte[] encodeOverflowValue(final byte[] value) {
+        if (!compressOverflow) {
+            return value;
+        }
+        final byte[] compressed = OverflowCompression.compress(value);
+        return compressed != null ? compressed : value;
+    }
+
     /**
      * Remove the overflow value.
      * 
@@ -1949,41 +2119,19 @@ public class DOMFile extends BTree implements Lockable {
      * @return string value of the specified node
      */
     public String getNodeValue(final DBBroker broker, final IStoredNode node, final boolean addWhitespace) {
-        if(LOG.isDebugEnabled() && !lockManager.isBtreeLocked(getLockName())) {
-            LOG.debug("The file doesn't own a lock");
-        }
-        try {
-            long address = node.getInternalAddress();
-            RecordPos recordPos = null;
-            // try to directly locate the root node through its storage address
-            if (StorageAddress.hasAddress(address)) {
-                recordPos = findRecord(address);
-            }
-            if (recordPos == null) {
-                // fallback to a BTree lookup if the node could not be found
-                // by its storage address
-                address = findValue(broker, new NodeProxy(null, node));
-                if (address == BTree.KEY_NOT_FOUND) {
-                    LOG.error("Node value not found: {}", node);
-                    //TODO : throw exception ? -pb
-                    return null;
-                }
-                recordPos = findRecord(address);
-                SanityCheck.THROW_ASSERT(recordPos != null, "Node data could not be found!");
+        // we collect the string values in binary format and append them to a ByteArrayOutputStream
+        try(final UnsynchronizedByteArrayOutputStream os = new UnsynchronizedByteArrayOutputStream(32)) {
+            if (!writeNodeValue(broker, node, addWhitespace, os)) {
                 //TODO : throw exception ? -pb
+                return null;
             }
-            // we collect the string values in binary format and append them to a ByteArrayOutputStream
-            try(final UnsynchronizedByteArrayOutputStream os = new UnsynchronizedByteArrayOutputStream(32)) {
-                // now traverse the tree
-                getNodeValue(broker.getBrokerPool(), os, recordPos, true, addWhitespace);
-                final byte[] data = os.toByteArray();
+            final byte[] data = os.toByteArray();
 
-                final XMLString str = UTF8.decode(data);
-                if (str != null) {
-                    return str.toString();
-                } else {
-                    return "";
-                }
+            final XMLString str = UTF8.decode(data);
+            if (str != null) {
+                return str.toString();
+            } else {
+                return "";
             }
         } catch (final BTreeException e) {
             LOG.error("BTree error while reading node value", e);
@@ -1996,6 +2144,47 @@ public class DOMFile extends BTree implements Lockable {
         return null;
     }
 
+    /**
+     * Write the string value of the specified node, encoded as UTF-8, to an output stream.
+     * The content of text nodes stored in overflow pages is copied to the stream one page
+     * at a time, rather than being read into a buffer of its own first.
+     *
+     * @param broker the database broker
+     * @param node the node
+     * @param addWhitespace true if whitespace should be added to the node value
+     * @param os the output stream to receive the value
+     * @return false if the node could not be found
+     * @throws BTreeException if an error occurs whilst looking up the node
+     * @throws IOException if an error occurs whilst reading the node or writing to the stream
+     */
+    private boolean writeNodeValue(final DBBroker broker, final IStoredNode node, final boolean addWhitespace,
+            final OutputStream os) throws BTreeException, IOException {
+        if(LOG.isDebugEnabled() && !lockManager.isBtreeLocked(getLockName())) {
+            LOG.debug("The file doesn't own a lock");
+        }
+        long address = node.getInternalAddress();
+        RecordPos recordPos = null;
+        // try to directly locate the root node through its storage address
+        if (StorageAddress.hasAddress(address)) {
+            recordPos = findRecord(address);
+        }
+        if (recordPos == null) {
+            // fallback to a BTree lookup if the node could not be found
+            // by its storage address
+            address = findValue(broker, new NodeProxy(null, node));
+            if (address == BTree.KEY_NOT_FOUND) {
+                LOG.error("Node value not found: {}", node);
+                return false;
+            }
+            recordPos = findRecord(address);
+            SanityCheck.THROW_ASSERT(recordPos != null, "Node data could not be found!");
+            //TODO : throw exception ? -pb
+        }
+        // now traverse the tree
+        getNodeValue(broker.getBrokerPool(), os, recordPos, true, addWhitespace);
+        return true;
+    }
+
     /**
      * Recursive method to retrieve the string values of the root node
      * and all its descendants.
@@ -2005,11 +2194,12 @@ public class DOMFile extends BTree implements Lockable {
      * @param rec the record position
      * @param isTopNode true if this is the top node, false otherwise
      * @param addWhitespace true if whitespace should be added to the node value
+     * @throws IOException if an error occurs whilst writing to the output stream
      */
     private void getNodeValue(final BrokerPool pool,
-                              final UnsynchronizedByteArrayOutputStream os,
+                              final OutputStream os,
                               final RecordPos rec, final boolean isTopNode,
-                              final boolean addWhitespace) {
+                              final boolean addWhitespace) throws IOException {
         if(LOG.isDebugEnabled() && !lockManager.isBtreeLocked(getLockName())) {
             LOG.debug("The file doesn't own a lock");
         }
@@ -2055,11 +2245,19 @@ public class DOMFile extends BTree implements Lockable {
         int readOffset = rec.offset;
         boolean inOverflow = false;
         if (valueLength == OVERFLOW) {
-            //If we have an overflow value, load it from the overflow page
             final long p = ByteConversion.byteToLong(data, rec.offset);
-            data = getOverflowValue(p);
             //We position the offset *after* the next TID
             rec.offset += LENGTH_OVERFLOW_LOCATION + LENGTH_TID;
+            final OverflowDOMPage overflow = new OverflowDOMPage(p);
+            final byte[] first = overflow.readFirst();
+            if (first == null) {
+                throw new IOException("Failed to read overflow page " + p);
+            }
+            if (streamOverflowText(pool, os, overflow, first)) {
+                return;
+            }
+            //If we have any other overflow value, load the rest of it from the overflow pages
+            data = readOverflowValue(overflow, first);
             realLen = data.length;
             readOffset = 0;
             inOverflow = true;
@@ -2152,6 +2350,58 @@ public class DOMFile extends BTree implements Lockable {
         }
     }
 
+    /**
+     * Copy the content of a text or CDATA node stored in overflow pages to the
+     * output stream, one page at a time, without loading the whole node.
+     *
+     * @param pool the broker pool
+     * @param os the output stream to receive the value
+     * @param overflow the overflow pages of the node
+     * @param first the data of the first overflow page, as returned by {@link OverflowDOMPage#readFirst()}
+     * @return false if the value is not an uncompressed text or CDATA node, and
+     *     needs to be read as a whole
+     * @throws IOException if an error occurs whilst writing to the output stream
+     */
+    private boolean streamOverflowText(final BrokerPool pool, final OutputStream os, final OverflowDOMPage overflow,
+            final byte[] first) throws IOException {
+        if (first.length == 0 || OverflowCompression.isCompressed(first)) {
+            return false;
+        }
+        final short type = Signatures.getType(first[0]);
+        if (type != Node.TEXT_NODE && type != Node.CDATA_SECTION_NODE) {
+            return false;
+        }
+        int readOffset = StoredNode.LENGTH_SIGNATURE_LENGTH;
+        final int dlnLen = ByteConversion.byteToShort(first, readOffset);
+        readOffset += NodeId.LENGTH_NODE_ID_UNITS;
+        readOffset += pool.getNodeFactory().lengthInBytes(dlnLen, first, readOffset);
+        if (readOffset > first.length) {
+            // node id continues on the next page
+            return false;
+        }
+        os.write(first, readOffset, first.length - readOffset);
+        overflow.streamRemaining(os);
+        return true;
+    }
+
+    /**
+     * Read the rest of an overflow value whose first page has already been read,
+     * and decompress it if needed.
+     *
+     * @param overflow the overflow pages of the node
+     * @param first the data of the first overflow page
+     * @return the complete value
+     * @throws IOException if an overflow page could not be read
+     */
+    private byte[] readOverflowValue(final OverflowDOMPage overflow, final byte[] first) throws IOException {
+        try (final UnsynchronizedByteArrayOutputStream os = new UnsynchronizedByteArrayOutputStream(first.length * 2)) {
+            os.write(first);
+            overflow.streamRemaining(os);
+            final byte[] data = os.toByteArray();
+            return OverflowCompression.isCompressed(data) ? OverflowCompression.decompress(data) : data;
+        }
+    }
+
     RecordPos findRecord(final long pointer) {
         return findRecord(pointer, true);
     }
@@ -3461,6 +3711,36 @@ public class DOMFile extends BTree implements Lockable {
             }
         }
 
+        /**
+         * Read only the first page of the overflow value.
+         *
+         * @return the data of the first page, or null if it could not be read
+         */
+        @Nullable byte[] readFirst() {
+            try {
+                return firstPage.read();
+            } catch (final IOException e) {
+                LOG.error("IO error while loading overflow page {}", firstPage.getPageNum(), e);
+                return null;
+            }
+        }
+
+        /**
+         * Stream the pages following the first page, which
+         * must have been read by {@link #readFirst()} before.
+         *
+         * @param os the output stream to receive the data
+         * @throws IOException if a page could not be read or written to the stream
+         */
+        void streamRemaining(final OutputStream os) throws IOException {
+            long nextPageNumber = firstPage.getPageHeader().getNextPage();
+            while (nextPageNumber != NO_PAGE) {
+                final Page page = getPage(nextPageNumber);
+                os.write(page.read());
+                nextPageNumber = page.getPageHeader().getNextPage();
+            }
+        }
+
         void streamTo(final OutputStream os) {
             Page page = firstPage;
             int count = 0;
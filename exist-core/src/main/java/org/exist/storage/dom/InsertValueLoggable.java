@@ -26,6 +26,7 @@ import java.nio.ByteBuffer;
 import org.exist.storage.DBBroker;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.journal.AbstractLoggable;
+import org.exist.storage.journal.FileLoggable;
 import org.exist.storage.journal.LogException;
 import org.exist.storage.txn.Txn;
 
@@ -34,7 +35,7 @@ import org.exist.storage.txn.Txn;
  *
  * @author wolf
  */
-public class InsertValueLoggable extends AbstractLoggable {
+public class InsertValueLoggable extends AbstractLoggable implements FileLoggable {
     private DOMFile domDb;
     protected byte isOverflow;
     protected long pageNum;
@@ -85,6 +86,11 @@ public class InsertValueLoggable extends AbstractLoggable {
         return 13 + value.length;
     }
 
+    @Override
+    public byte getFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
+
     @Override
     public void redo() throws LogException {
         domDb.redoInsertValue(this);
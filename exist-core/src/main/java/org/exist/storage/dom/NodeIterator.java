@@ -63,6 +63,8 @@ public final class NodeIterator implements INodeIterator {
     private short lastTupleID = ItemId.UNKNOWN_ID;
     private DOMFile.DOMPage page = null;
     private long pageNum;
+    /** number of pages to move on before requesting read-ahead */
+    private int readAheadCountdown = 0;
     private long startAddress = StoredNode.UNKNOWN_NODE_IMPL_ADDRESS;
     private DBBroker broker;
     private final LockManager lockManager;
@@ -148,6 +150,9 @@ public final class NodeIterator implements INodeIterator {
                         pageNum = nextPageNum;
                         page = db.getDOMPage(nextPageNum);
                         db.addToBuffer(page);
+                        if (--readAheadCountdown <= 0) {
+                            readAheadCountdown = db.readAhead(page);
+                        }
                         offset = 0;
                     }
                     //Extract the tuple ID
@@ -0,0 +1,107 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.dom;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.exist.util.ByteConversion;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+
+/**
+ * LZ4 encoding of node values which are stored in overflow pages of the {@link DOMFile}.
+ *
+ * A compressed value starts with a marker byte, followed by the length of the
+ * uncompressed value and the LZ4 block:
+ *
+ * <pre>
+ * [marker: 1 byte][uncompressed length: 4 bytes][lz4 data]
+ * </pre>
+ *
+ * The first byte of an uncompressed node value is its signature (see
+ * {@link org.exist.storage.Signatures}), which never has all three type bits set,
+ * so compressed and uncompressed values can be told apart and existing
+ * dom.dbx files remain readable.
+ */
+final class OverflowCompression {
+
+    static final byte MARKER = (byte) 0xE0;
+    static final int LENGTH_HEADER = 1 + 4;
+
+    private static final LZ4Factory LZ4 = LZ4Factory.fastestInstance();
+
+    private OverflowCompression() {
+    }
+
+    /**
+     * Compress a node value.
+     *
+     * @param value the serialized node
+     * @return the compressed value, or null if compression saves less than an eighth of the size
+     */
+    static @Nullable byte[] compress(final byte[] value) {
+        final LZ4Compressor compressor = LZ4.fastCompressor();
+        final byte[] buf = new byte[LENGTH_HEADER + compressor.maxCompressedLength(value.length)];
+        final int compressedLength = compressor.compress(value, 0, value.length, buf, LENGTH_HEADER, buf.length - LENGTH_HEADER);
+        final int length = LENGTH_HEADER + compressedLength;
+        if (length > value.length - (value.length >> 3)) {
+            return null;
+        }
+        buf[0] = MARKER;
+        ByteConversion.intToByte(value.length, buf, 1);
+        final byte[] compressed = new byte[length];
+        System.arraycopy(buf, 0, compressed, 0, length);
+        return compressed;
+    }
+
+    static boolean isCompressed(final byte[] data) {
+        return data.length > LENGTH_HEADER && data[0] == MARKER;
+    }
+
+    /**
+     * Decompress a value previously returned by {@link #compress(byte[])}.
+     *
+     * @param data the compressed value
+     * @return the original node value
+     * @throws IOException if the data is corrupt
+     */
+    static byte[] decompress(final byte[] data) throws IOException {
+        final int length = ByteConversion.byteToInt(data, 1);
+        if (length < 0) {
+            throw new IOException("Invalid length of compressed overflow value: " + length);
+        }
+        final LZ4FastDecompressor decompressor = LZ4.fastDecompressor();
+        final byte[] value = new byte[length];
+        try {
+            final int read = decompressor.decompress(data, LENGTH_HEADER, value, 0, length);
+            if (LENGTH_HEADER + read != data.length) {
+                throw new IOException("Compressed overflow value has " + (data.length - LENGTH_HEADER - read) + " trailing bytes");
+            }
+        } catch (final LZ4Exception e) {
+            throw new IOException("Corrupt compressed overflow value: " + e.getMessage(), e);
+        }
+        return value;
+    }
+}
@@ -59,6 +59,8 @@ public class RawNodeIterator implements IRawNodeIterator {
     private short lastTupleID = ItemId.UNKNOWN_ID;
     private DOMFile.DOMPage page = null;
     private long pageNum;
+    /** number of pages to move on before requesting read-ahead */
+    private int readAheadCountdown = 0;
 
     /**
      * Construct the iterator. The iterator will be positioned before the specified
@@ -96,6 +98,7 @@ public class RawNodeIterator implements IRawNodeIterator {
             //Position the stream at the very beginning of the record
             offset = rec.offset - DOMFile.LENGTH_TID;
             page = rec.getPage();
+            readAheadCountdown = 0;
         } catch (final LockException e) {
             throw new IOException("Exception while scanning document: " + e.getMessage());
         }
@@ -124,6 +127,9 @@ public class RawNodeIterator implements IRawNodeIterator {
                     pageNum = nextPage;
                     page = db.getDOMPage(nextPage);
                     db.addToBuffer(page);
+                    if (--readAheadCountdown <= 0) {
+                        readAheadCountdown = db.readAhead(page);
+                    }
                     offset = 0;
                 }
                 //Extract the tuple id
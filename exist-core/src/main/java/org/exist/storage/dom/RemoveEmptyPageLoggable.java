@@ -26,13 +26,14 @@ import java.nio.ByteBuffer;
 import org.exist.storage.DBBroker;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.journal.AbstractLoggable;
+import org.exist.storage.journal.FileLoggable;
 import org.exist.storage.journal.LogException;
 import org.exist.storage.txn.Txn;
 
 /**
  * @author wolf
  */
-public class RemoveEmptyPageLoggable extends AbstractLoggable {
+public class RemoveEmptyPageLoggable extends AbstractLoggable implements FileLoggable {
     private DOMFile domDb;
     protected long pageNum;
     protected long prevPage;
@@ -69,6 +70,11 @@ public class RemoveEmptyPageLoggable extends AbstractLoggable {
         return 12;
     }
 
+    @Override
+    public byte getFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
+
     @Override
     public void redo() throws LogException {
         domDb.redoRemoveEmptyPage(this);
@@ -26,13 +26,14 @@ import java.nio.ByteBuffer;
 import org.exist.storage.DBBroker;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.journal.AbstractLoggable;
+import org.exist.storage.journal.FileLoggable;
 import org.exist.storage.journal.LogException;
 import org.exist.storage.txn.Txn;
 
 /**
  * @author wolf
  */
-public class RemoveOverflowLoggable extends AbstractLoggable {
+public class RemoveOverflowLoggable extends AbstractLoggable implements FileLoggable {
     private DOMFile domDb;
     protected long pageNum;
     protected long nextPage;
@@ -73,6 +74,11 @@ public class RemoveOverflowLoggable extends AbstractLoggable {
         return 10 + oldData.length;
     }
 
+    @Override
+    public byte getFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
+
     @Override
     public void redo() throws LogException {
         domDb.redoRemoveOverflow(this);
@@ -26,6 +26,7 @@ import java.nio.ByteBuffer;
 import org.exist.storage.DBBroker;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.journal.AbstractLoggable;
+import org.exist.storage.journal.FileLoggable;
 import org.exist.storage.journal.LogException;
 import org.exist.storage.txn.Txn;
 
@@ -33,7 +34,7 @@ import org.exist.storage.txn.Txn;
  * @author wolf
  *
  */
-public class RemovePageLoggable extends AbstractLoggable {
+public class RemovePageLoggable extends AbstractLoggable implements FileLoggable {
     private DOMFile domDb;
     protected long pageNum;
     protected long prevPage;
@@ -88,6 +89,11 @@ public class RemovePageLoggable extends AbstractLoggable {
         return 18 + oldLen;
     }
 
+    @Override
+    public byte getFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
+
     @Override
     public void redo() throws LogException {
         domDb.redoRemovePage(this);
@@ -26,13 +26,14 @@ import java.nio.ByteBuffer;
 import org.exist.storage.DBBroker;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.journal.AbstractLoggable;
+import org.exist.storage.journal.FileLoggable;
 import org.exist.storage.journal.LogException;
 import org.exist.storage.txn.Txn;
 
 /**
  * @author wolf
  */
-public class RemoveValueLoggable extends AbstractLoggable {
+public class RemoveValueLoggable extends AbstractLoggable implements FileLoggable {
 
     private DOMFile domDb;
     protected long pageNum;
@@ -89,6 +90,11 @@ public class RemoveValueLoggable extends AbstractLoggable {
         return 11 + oldData.length + (ItemId.isRelocated(tid) ? 8 : 0);
     }
 
+    @Override
+    public byte getFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
+
     @Override
     public void redo() throws LogException {
         domDb.redoRemoveValue(this);
@@ -26,14 +26,14 @@ import java.nio.ByteBuffer;
 import org.exist.storage.DBBroker;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.journal.AbstractLoggable;
+import org.exist.storage.journal.FileLoggable;
 import org.exist.storage.journal.LogException;
-import org.exist.storage.journal.Loggable;
 import org.exist.storage.txn.Txn;
 
 /**
  * @author wolf
  */
-public class SplitPageLoggable extends AbstractLoggable implements Loggable {
+public class SplitPageLoggable extends AbstractLoggable implements FileLoggable {
 
     protected long pageNum;
     protected int splitOffset;
@@ -77,6 +77,11 @@ public class SplitPageLoggable extends AbstractLoggable implements Loggable {
         return 10 + oldLen;
     }
 
+    @Override
+    public byte getFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
+
     @Override
     public void redo() throws LogException {
         domDb.redoSplitPage(this);
@@ -26,13 +26,14 @@ import java.nio.ByteBuffer;
 import org.exist.storage.DBBroker;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.journal.AbstractLoggable;
+import org.exist.storage.journal.FileLoggable;
 import org.exist.storage.journal.LogException;
 import org.exist.storage.txn.Txn;
 
 /**
  * @author wolf
  */
-public class UpdateHeaderLoggable extends AbstractLoggable {
+public class UpdateHeaderLoggable extends AbstractLoggable implements FileLoggable {
     protected long pageNum;
     protected long nextPage;
     protected long prevPage;
@@ -78,6 +79,11 @@ public class UpdateHeaderLoggable extends AbstractLoggable {
         return 20;
     }
 
+    @Override
+    public byte getFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
+
     @Override
     public void redo() throws LogException {
         domDb.redoUpdateHeader(this);
@@ -26,10 +26,11 @@ import java.nio.ByteBuffer;
 import org.exist.storage.DBBroker;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.journal.AbstractLoggable;
+import org.exist.storage.journal.FileLoggable;
 import org.exist.storage.journal.LogException;
 import org.exist.storage.txn.Txn;
 
-public class UpdateLinkLoggable extends AbstractLoggable {
+public class UpdateLinkLoggable extends AbstractLoggable implements FileLoggable {
     protected long pageNum;
     protected int offset;
     protected long link;
@@ -70,6 +71,11 @@ public class UpdateLinkLoggable extends AbstractLoggable {
         return 22;
     }
 
+    @Override
+    public byte getFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
+
     @Override
     public void redo() throws LogException {
         domDb.redoUpdateLink(this);
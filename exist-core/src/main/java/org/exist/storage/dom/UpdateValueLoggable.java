@@ -26,13 +26,14 @@ import java.nio.ByteBuffer;
 import org.exist.storage.DBBroker;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.journal.AbstractLoggable;
+import org.exist.storage.journal.FileLoggable;
 import org.exist.storage.journal.LogException;
 import org.exist.storage.txn.Txn;
 
 /**
  * @author wolf
  */
-public class UpdateValueLoggable extends AbstractLoggable {
+public class UpdateValueLoggable extends AbstractLoggable implements FileLoggable {
     protected DOMFile domDb;
     protected long pageNum;
     protected short tid;
@@ -81,6 +82,11 @@ public class UpdateValueLoggable extends AbstractLoggable {
         return 10 + (value.length * 2);
     }
 
+    @Override
+    public byte getFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
+
     @Override
     public void redo() throws LogException {
         domDb.redoUpdateValue(this);
@@ -27,13 +27,14 @@ import org.exist.storage.DBBroker;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.btree.Value;
 import org.exist.storage.journal.AbstractLoggable;
+import org.exist.storage.journal.FileLoggable;
 import org.exist.storage.journal.LogException;
 import org.exist.storage.txn.Txn;
 
 /**
  * @author wolf
  */
-public class WriteOverflowPageLoggable extends AbstractLoggable {
+public class WriteOverflowPageLoggable extends AbstractLoggable implements FileLoggable {
     protected long pageNum;
     protected long nextPage;
     protected Value value;
@@ -74,6 +75,11 @@ public class WriteOverflowPageLoggable extends AbstractLoggable {
         return 10 + value.getLength();
     }
 
+    @Override
+    public byte getFileId() {
+        return NativeBroker.DOM_DBX_ID;
+    }
+
     @Override
     public void redo() throws LogException {
         domDb.redoWriteOverflow(this);
@@ -26,12 +26,13 @@ import java.nio.ByteBuffer;
 import org.exist.storage.DBBroker;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.journal.AbstractLoggable;
+import org.exist.storage.journal.FileLoggable;
 import org.exist.storage.txn.Txn;
 
 /**
  * @author wolf
  */
-public abstract class AbstractBFileLoggable extends AbstractLoggable {
+public abstract class AbstractBFileLoggable extends AbstractLoggable implements FileLoggable {
     private NativeBroker broker;
     protected byte fileId;
 
@@ -64,6 +65,7 @@ public abstract class AbstractBFileLoggable extends AbstractLoggable {
         return (BFile) broker.getStorage(fileId);
     }
 
+    @Override
     public byte getFileId() {
         return fileId;
     }
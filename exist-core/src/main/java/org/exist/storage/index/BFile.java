@@ -367,11 +367,30 @@ public class BFile extends BTree {
         if (isRecoveryEnabled()) {
             logManager.ifPresent(l -> l.flush(true, false));
         }
-        flushed = flushed | dataCache.flush();
-        flushed = flushed | super.flush();
+        beginWriteBatch();
+        try {
+            flushed = flushed | dataCache.flush();
+            flushed = flushed | super.flush();
+        } finally {
+            endWriteBatch();
+        }
         return flushed;
     }
 
+    @Override
+    public int flush(final int maxPages) throws DBException {
+        beginWriteBatch();
+        try {
+            int written = super.flush(maxPages);
+            if (written < maxPages && !BrokerPool.FORCE_CORRUPTION) {
+                written += dataCache.flush(maxPages - written);
+            }
+            return written;
+        } finally {
+            endWriteBatch();
+        }
+    }
+
     public BufferStats getDataBufferStats() {
         if (dataCache == null) {
             return null;
@@ -2305,11 +2324,15 @@ public class BFile extends BTree {
 
         @Override
         public final void skipBytes(final long count) throws IOException {
-            for(long i = 0; i < count; i++) {
+            long remaining = count;
+            while (remaining > 0) {
                 if (offset == pageLen) {
                     advance();
                 }
-                offset++;
+                // skip the rest of the current page at once
+                final int skip = (int) Math.min(remaining, pageLen - offset);
+                offset += skip;
+                remaining -= skip;
             }
         }
 
@@ -0,0 +1,126 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.lock;
+
+import net.jcip.annotations.NotThreadSafe;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.DBBroker;
+import org.exist.util.LockException;
+
+import javax.annotation.Nullable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.exist.storage.lock.Lock.LockMode.READ_LOCK;
+
+/**
+ * Records the versions of the documents read by a query in snapshot mode.
+ *
+ * Unlike {@link LockedDocumentMap}, no locks are held while the query is
+ * running, so writers are not blocked by long running queries. Documents are
+ * pinned when the query loads them, through the statically known documents,
+ * fn:doc or fn:collection, so only documents the query actually reads are
+ * recorded. A document is only read locked for a short moment when it is
+ * pinned, and again when the snapshot is validated after the query has
+ * finished. If one of the pinned documents was modified, moved or removed in
+ * the meantime, {@link #validate(DBBroker)} reports the conflict and the
+ * caller has to discard the query result.
+ */
+@NotThreadSafe
+public class DocumentSnapshot {
+
+    private final Map<Integer, PinnedDocument> pinned = new LinkedHashMap<>();
+
+    /**
+     * Pin the current version of a document.
+     *
+     * @param doc the document, the caller must hold at least a read lock on it
+     */
+    public void pin(@EnsureLocked(mode=READ_LOCK) final DocumentImpl doc) {
+        pinned.putIfAbsent(doc.getDocId(), new PinnedDocument(doc, doc.getVersion()));
+    }
+
+    /**
+     * Pin the current version of a document, unless it is already pinned.
+     * The document is read locked while it is pinned.
+     *
+     * @param lockManager the lock manager
+     * @param doc the document
+     *
+     * @throws LockException if the document could not be locked
+     */
+    public void pin(final LockManager lockManager, @EnsureUnlocked final DocumentImpl doc) throws LockException {
+        if (pinned.containsKey(doc.getDocId())) {
+            return;
+        }
+        try (final ManagedDocumentLock documentLock = lockManager.acquireDocumentReadLock(doc.getURI())) {
+            pin(doc);
+        }
+    }
+
+    /**
+     * Check that none of the pinned documents changed since they were pinned.
+     *
+     * Each document is briefly read locked, so that a writer which is still
+     * modifying it is waited for.
+     *
+     * @param broker the database broker
+     *
+     * @return the first document which was modified, moved or removed, or null
+     *     if the snapshot is still valid
+     *
+     * @throws PermissionDeniedException if a document can no longer be read by the current user
+     */
+    @Nullable
+    public DocumentImpl validate(final DBBroker broker) throws PermissionDeniedException {
+        for (final PinnedDocument pinnedDocument : pinned.values()) {
+            final DocumentImpl doc = pinnedDocument.document;
+            try (final LockedDocument lockedDocument = broker.getXMLResource(doc.getURI(), READ_LOCK)) {
+                if (lockedDocument == null || lockedDocument.getDocument() != doc
+                        || doc.getVersion() != pinnedDocument.version) {
+                    return doc;
+                }
+            }
+        }
+        return null;
+    }
+
+    public boolean containsKey(final int docId) {
+        return pinned.containsKey(docId);
+    }
+
+    public int size() {
+        return pinned.size();
+    }
+
+    private static class PinnedDocument {
+        private final DocumentImpl document;
+        private final long version;
+
+        private PinnedDocument(final DocumentImpl document, final long version) {
+            this.document = document;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.recovery;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.storage.journal.FileLoggable;
+import org.exist.storage.journal.LogEntryTypes;
+import org.exist.storage.journal.LogException;
+import org.exist.storage.journal.Loggable;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Redoes journal entries on a number of worker threads.
+ *
+ * Entries are partitioned by the file they modify (see {@link FileLoggable}). All
+ * entries of one file are handled by the same worker, in journal order, so
+ * the pages, caches and free lists of a file are only ever touched by one thread.
+ * Entries of different files are independent and redone concurrently.
+ *
+ * Transaction markers are redone on the calling thread. Any other entry which is
+ * not bound to a file waits until all workers have caught up before it is redone
+ * on the calling thread.
+ */
+class ParallelRedo implements AutoCloseable {
+
+    private static final Logger LOG = LogManager.getLogger(ParallelRedo.class);
+
+    private static final int QUEUE_SIZE = 1024;
+    private static final Object STOP = new Object();
+
+    private final Worker[] workers;
+    private final AtomicReference<LogException> failure = new AtomicReference<>();
+
+    /**
+     * @param threads the number of worker threads; if less than 2, all entries
+     *                are redone on the calling thread
+     */
+    ParallelRedo(final int threads) {
+        this.workers = new Worker[threads < 2 ? 0 : threads];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker();
+            final Thread thread = new Thread(workers[i], "exist-recovery-redo-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Redo the entry, or schedule it for being redone.
+     *
+     * @param loggable the journal entry
+     * @throws LogException if redoing this or a previously scheduled entry failed
+     */
+    void redo(final Loggable loggable) throws LogException {
+        checkFailure();
+        if (workers.length > 0 && loggable instanceof FileLoggable) {
+            final int fileId = ((FileLoggable) loggable).getFileId() & 0xFF;
+            workers[fileId % workers.length].put(loggable);
+        } else {
+            if (!isTransactionMarker(loggable)) {
+                await();
+            }
+            loggable.redo();
+        }
+    }
+
+    /**
+     * Wait until all scheduled entries have been redone.
+     *
+     * @throws LogException if redoing an entry failed
+     */
+    void await() throws LogException {
+        if (workers.length == 0) {
+            return;
+        }
+        final CountDownLatch done = new CountDownLatch(workers.length);
+        for (final Worker worker : workers) {
+            worker.put(done);
+        }
+        try {
+            done.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LogException("Interrupted while waiting for redo to complete", e);
+        }
+        checkFailure();
+    }
+
+    @Override
+    public void close() {
+        for (final Worker worker : workers) {
+            try {
+                worker.queue.put(STOP);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void checkFailure() throws LogException {
+        final LogException e = failure.get();
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    private static boolean isTransactionMarker(final Loggable loggable) {
+        final byte type = loggable.getLogType();
+        return type == LogEntryTypes.TXN_START || type == LogEntryTypes.TXN_COMMIT || type == LogEntryTypes.TXN_ABORT;
+    }
+
+    private class Worker implements Runnable {
+        private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+
+        void put(final Object entry) throws LogException {
+            try {
+                queue.put(entry);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new LogException("Interrupted while scheduling redo", e);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                Object entry;
+                while ((entry = queue.take()) != STOP) {
+                    if (entry instanceof CountDownLatch) {
+                        ((CountDownLatch) entry).countDown();
+                    } else if (failure.get() == null) {
+                        // after a failure, remaining entries are skipped: recovery will be aborted
+                        final Loggable loggable = (Loggable) entry;
+                        try {
+                            loggable.redo();
+                        } catch (final Exception e) {
+                            LOG.error("Log entry that caused the exception: {}", loggable.dump(), e);
+                            failure.compareAndSet(null, new LogException("Redo failed for " + loggable.dump() + ": " + e.getMessage(), e));
+                        }
+                    }
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -49,6 +49,10 @@ import org.exist.util.sanity.SanityCheck;
  * Database recovery. This class is used once during startup to check
  * if the database is in a consistent state. If not, the class attempts to recover
  * the database from the journalling log.
+ *
+ * During the redo pass, entries modifying different database files are
+ * redone concurrently (see {@link ParallelRedo}). Progress is reported to
+ * the startup status observers of the {@link BrokerPool}.
  * 
  * @author wolf
  */
@@ -56,14 +60,26 @@ public class RecoveryManager {
 	
 	private final static Logger LOG = LogManager.getLogger(RecoveryManager.class);
 
+    /**
+     * Default number of threads used to redo journal entries of different files.
+     */
+    public static final int DEFAULT_REDO_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
     private final DBBroker broker;
     private final JournalRecoveryAccessor journalRecovery;
     private final boolean restartOnError;
+    private final int redoThreads;
+    private int lastReportedProgress = -1;
 
     public RecoveryManager(final DBBroker broker, final JournalManager journalManager, final boolean restartOnError) {
+        this(broker, journalManager, restartOnError, DEFAULT_REDO_THREADS);
+    }
+
+    public RecoveryManager(final DBBroker broker, final JournalManager journalManager, final boolean restartOnError, final int redoThreads) {
         this.broker = broker;
         this.journalRecovery = journalManager.getRecoveryAccessor(this);
         this.restartOnError = restartOnError;
+        this.redoThreads = redoThreads;
 	}
 
 	/**
@@ -250,10 +266,11 @@ public class RecoveryManager {
             if (LOG.isInfoEnabled())
                 {
                     LOG.info("First pass: redoing {} transactions...", txnCount);}
-            final ProgressBar progress = new ProgressBar("Redo ", FileUtils.sizeQuietly(last));
+            final long journalSize = FileUtils.sizeQuietly(last);
+            final ProgressBar progress = new ProgressBar("Redo ", journalSize);
             Loggable next = null;
             int redoCnt = 0;
-            try {
+            try (final ParallelRedo parallelRedo = new ParallelRedo(redoThreads)) {
                 while ((next = reader.nextEntry()) != null) {
                     SanityCheck.ASSERT(next.getLogType() != LogEntryTypes.CHECKPOINT,
                             "Found a checkpoint during recovery run! This should not ever happen.");
@@ -269,18 +286,21 @@ public class RecoveryManager {
                         runningTxns.remove(next.getTransactionId());
                     }
         //            LOG.debug("Redo: " + next.dump());
-                    // redo the log entry
-                    next.redo();
+                    // redo the log entry: entries of different files may be redone concurrently
+                    parallelRedo.redo(next);
                     progress.set(next.getLsn().getOffset());
+                    reportProgress("Redo", next.getLsn().getOffset(), journalSize);
                     if (next.getLsn().equals(lastLsn))
                         {break;} // last readable entry reached. Stop here.
                 }
+                // all entries need to be redone before undo starts
+                parallelRedo.await();
             } catch (final Exception e) {
                 LOG.error("Exception caught while redoing transactions. Aborting recovery to avoid possible damage. " +
                     "Before starting again, make sure to run a check via the emergency export tool.", e);
                 if (next != null)
                     {
-                        LOG.info("Log entry that caused the exception: {}", next.dump());}
+                        LOG.info("Last log entry read: {}", next.dump());}
                 throw new LogException("Recovery aborted. ");
             } finally {
                 LOG.info("Redo processed {} out of {} transactions.", redoCnt, txnCount);
@@ -292,6 +312,7 @@ public class RecoveryManager {
                     LOG.info("Second pass: undoing dirty transactions. Uncommitted transactions: {}", runningTxns.size());}
             // see if there are uncommitted transactions pending
             if (runningTxns.size() > 0) {
+                lastReportedProgress = -1;
                 // do a reverse scan of the log, undoing all uncommitted transactions
                 try {
                     while((next = reader.previousEntry()) != null) {
@@ -314,6 +335,7 @@ public class RecoveryManager {
     //					LOG.debug("Undo: " + next.dump());
                             next.undo();
                         }
+                        reportProgress("Undo", journalSize - next.getLsn().getOffset(), journalSize);
                     }
                 } catch (final Exception e) {
                     LOG.warn("Exception caught while undoing dirty transactions. Remaining transactions to be undone: {}. Aborting recovery to avoid possible damage. Before starting again, make sure to run a check via the emergency export tool.", runningTxns.size(), e);
@@ -329,6 +351,21 @@ public class RecoveryManager {
         }
     }
     
+    /**
+     * Report the progress of a recovery phase to the startup status observers
+     * of the database, at most once per percent.
+     */
+    private void reportProgress(final String phase, final long position, final long total) {
+        if (total <= 0) {
+            return;
+        }
+        final int percent = (int) Math.min(100, (position * 100) / total);
+        if (percent != lastReportedProgress) {
+            lastReportedProgress = percent;
+            broker.getBrokerPool().reportStatus("Running recovery: " + phase + " " + percent + "%");
+        }
+    }
+
 	private void cleanDirectory(final Stream<Path> files) {
         files.forEach(FileUtils::deleteQuietly);
 	}
@@ -88,6 +88,14 @@ public class EXistOutputKeys {
      */
     public static final String JSON_ARRAY_OUTPUT = "json-array-output";
 
+    /**
+     * JSON serialization of XML: write the JSON while the XML is being serialized instead
+     * of building the complete JSON tree in memory first. Repeated elements are only recognized
+     * as arrays if they are adjacent siblings and the first one is small enough to be held back,
+     * use json:array="true" to force arrays for large repeated elements.
+     */
+    public static final String JSON_STREAMING = "json-streaming";
+
     /**
      * Determines whether the presence of multiple keys in a map item with the same string value
      * will or will not raise serialization error err:SERE0022.
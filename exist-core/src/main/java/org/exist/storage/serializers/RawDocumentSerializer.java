@@ -0,0 +1,507 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.serializers;
+
+import org.exist.dom.QName;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.ElementImpl;
+import org.exist.dom.persistent.IStoredNode;
+import org.exist.dom.persistent.ProcessingInstructionImpl;
+import org.exist.dom.persistent.StoredNode;
+import org.exist.dom.persistent.SymbolTable;
+import org.exist.numbering.NodeId;
+import org.exist.numbering.NodeIdFactory;
+import org.exist.storage.DBBroker;
+import org.exist.storage.NativeBroker;
+import org.exist.storage.Signatures;
+import org.exist.storage.btree.Value;
+import org.exist.storage.dom.RawNodeIterator;
+import org.exist.util.ByteConversion;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.helpers.NamespaceSupport;
+
+import javax.annotation.Nullable;
+import javax.xml.XMLConstants;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Writes a stored XML document as UTF-8 directly from the raw node records on the
+ * DOM pages, without instantiating DOM nodes, decoding strings or passing events
+ * through the {@link org.exist.util.serializer.Receiver} chain.
+ *
+ * Text and attribute values are stored as UTF-8 already, so they are escaped and
+ * copied byte by byte into an output buffer which is reused across calls. Only
+ * element and attribute names are resolved through the symbol table, and their
+ * encoded form is cached.
+ *
+ * This is a fast path for the common case only: the output is equivalent to
+ * what {@link org.exist.util.serializer.XMLWriter} produces for method xml without
+ * indentation. The caller is responsible for checking that no stylesheets, XInclude
+ * expansion, match highlighting or other output options are required, see
+ * {@link Serializer#isRawSerializable(DocumentImpl)}.
+ *
+ * Instances are not thread safe and are meant to be owned by a {@link Serializer}.
+ */
+public class RawDocumentSerializer {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private static final byte[] LT = "&lt;".getBytes(UTF_8);
+    private static final byte[] GT = "&gt;".getBytes(UTF_8);
+    private static final byte[] AMP = "&amp;".getBytes(UTF_8);
+    private static final byte[] QUOT = "&#34;".getBytes(UTF_8);
+    private static final byte[] CR = "&#xD;".getBytes(UTF_8);
+    private static final byte[] LF = "&#xA;".getBytes(UTF_8);
+    private static final byte[] TAB = "&#x9;".getBytes(UTF_8);
+    private static final byte[] XMLNS = " xmlns".getBytes(UTF_8);
+    private static final byte[] CDATA_START = "<![CDATA[".getBytes(UTF_8);
+    private static final byte[] CDATA_END = "]]>".getBytes(UTF_8);
+    private static final byte[] COMMENT_START = "<!--".getBytes(UTF_8);
+    private static final byte[] COMMENT_END = "-->".getBytes(UTF_8);
+    private static final byte[] PI_START = "<?".getBytes(UTF_8);
+    private static final byte[] PI_END = "?>".getBytes(UTF_8);
+    private static final byte[] EMPTY_TAG_END = "/>".getBytes(UTF_8);
+    private static final byte[] END_TAG_START = "</".getBytes(UTF_8);
+    private static final byte[] EQ_QUOT = "=\"".getBytes(UTF_8);
+
+    private static final int MAX_CHUNK = BUFFER_SIZE / 8;
+
+    static final int RAW = 0;
+    static final int TEXT = 1;
+    static final int ATTRIBUTE = 2;
+
+    private final NativeBroker broker;
+    private final SymbolTable symbols;
+    private final NodeIdFactory nodeFactory;
+
+    private final Map<QName, byte[]> encodedNames = new IdentityHashMap<>();
+    private final NamespaceSupport nsSupport = new NamespaceSupport();
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int length = 0;
+    private @Nullable OutputStream os = null;
+
+    // attributes of the current element are escaped into a separate buffer
+    // as they need to be written after any namespace declarations they require
+    private byte[] attrBuffer = new byte[256];
+    private int attrLength = 0;
+
+    private byte[][] elementNames = new byte[16][];
+    private int[] remainingChildren = new int[16];
+
+    public RawDocumentSerializer(final DBBroker broker) {
+        this.broker = (NativeBroker) broker;
+        this.symbols = broker.getBrokerPool().getSymbols();
+        this.nodeFactory = broker.getBrokerPool().getNodeFactory();
+    }
+
+    /**
+     * Serialize the document to the output stream.
+     *
+     * @param doc the document to serialize
+     * @param xmlDeclaration the XML declaration to write first, or null to omit it
+     * @param finalNewline true if a newline should be appended to the output
+     * @param os the stream to write to. It is flushed, but not closed.
+     *
+     * @throws IOException if reading the document or writing the output fails
+     */
+    public void serialize(final DocumentImpl doc, @Nullable final String xmlDeclaration, final boolean finalNewline,
+            final OutputStream os) throws IOException {
+        this.os = os;
+        this.length = 0;
+        nsSupport.reset();
+        try {
+            if (xmlDeclaration != null) {
+                write(xmlDeclaration.getBytes(UTF_8));
+            }
+            final NodeList children = doc.getChildNodes();
+            if (children.getLength() > 0) {
+                try (final RawNodeIterator iterator = new RawNodeIterator(broker, broker.getDOMFile(), (IStoredNode<?>) children.item(0))) {
+                    for (int i = 0; i < children.getLength(); i++) {
+                        if (i > 0) {
+                            iterator.seek((IStoredNode<?>) children.item(i));
+                        }
+                        serializeNode(iterator);
+                    }
+                }
+            }
+            if (finalNewline) {
+                write((byte) '\n');
+            }
+            flushBuffer();
+            os.flush();
+        } finally {
+            this.os = null;
+            // do not keep a reference to page data
+            Arrays.fill(elementNames, null);
+        }
+    }
+
+    /**
+     * Serialize the node the iterator is positioned on, including all its descendants.
+     */
+    private void serializeNode(final RawNodeIterator iterator) throws IOException {
+        int depth = 0;
+        do {
+            final Value value = iterator.next();
+            if (value == null) {
+                throw new IOException("Failed to read node from DOM file");
+            }
+            final byte[] data = value.data();
+            final int start = value.start();
+            final int end = start + value.getLength();
+            switch (Signatures.getType(data[start])) {
+                case Node.ELEMENT_NODE:
+                    final int children = startElement(iterator, data, start, end, depth);
+                    if (children > 0) {
+                        if (depth == remainingChildren.length) {
+                            remainingChildren = Arrays.copyOf(remainingChildren, depth * 2);
+                        }
+                        remainingChildren[depth++] = children;
+                        // the element is complete after its last child
+                        continue;
+                    }
+                    break;
+
+                case Node.TEXT_NODE:
+                    write(data, contentStart(data, start), end, TEXT);
+                    break;
+
+                case Node.CDATA_SECTION_NODE:
+                    write(CDATA_START);
+                    write(data, contentStart(data, start), end, RAW);
+                    write(CDATA_END);
+                    break;
+
+                case Node.COMMENT_NODE:
+                    write(COMMENT_START);
+                    write(data, contentStart(data, start), end, RAW);
+                    write(COMMENT_END);
+                    break;
+
+                case Node.PROCESSING_INSTRUCTION_NODE:
+                    int pos = contentStart(data, start);
+                    final int targetLen = ByteConversion.byteToInt(data, pos);
+                    pos += ProcessingInstructionImpl.LENGTH_TARGET_DATA;
+                    write(PI_START);
+                    write(data, pos, pos + targetLen, RAW);
+                    pos += targetLen;
+                    if (pos < end) {
+                        write((byte) ' ');
+                        write(data, pos, end, RAW);
+                    }
+                    write(PI_END);
+                    break;
+
+                default:
+                    throw new IOException("Unexpected node type in document: " + Signatures.getType(data[start]));
+            }
+            while (depth > 0 && --remainingChildren[depth - 1] == 0) {
+                endElement(--depth);
+            }
+        } while (depth > 0);
+    }
+
+    /**
+     * Write the start tag of the element, including its namespace declarations
+     * and attributes.
+     *
+     * @return the number of child nodes following the attributes
+     */
+    private int startElement(final RawNodeIterator iterator, final byte[] data, final int start, final int end,
+            final int depth) throws IOException {
+        int pos = start + StoredNode.LENGTH_SIGNATURE_LENGTH;
+        final int children = ByteConversion.byteToInt(data, pos);
+        pos += ElementImpl.LENGTH_ELEMENT_CHILD_COUNT;
+        pos = skipNodeId(data, pos);
+        final int attributes = ByteConversion.byteToShort(data, pos);
+        pos += ElementImpl.LENGTH_ATTRIBUTES_COUNT;
+        final QName qname = readName(Node.ELEMENT_NODE, data, start, pos);
+        pos = skipName(data, start, pos);
+
+        nsSupport.pushContext();
+        write((byte) '<');
+        final byte[] name = encodedName(qname);
+        write(name);
+        if (depth == elementNames.length) {
+            elementNames = Arrays.copyOf(elementNames, depth * 2);
+        }
+        elementNames[depth] = name;
+
+        // namespaces declared on the element in the source document
+        if (pos < end) {
+            final int count = ByteConversion.byteToShort(data, pos);
+            pos += 2;
+            for (int i = 0; i < count; i++) {
+                final int prefixLen = ByteConversion.byteToShort(data, pos);
+                pos += 2;
+                final String prefix = new String(data, pos, prefixLen, UTF_8);
+                pos += prefixLen;
+                final String uri = symbols.getNamespace(ByteConversion.byteToShort(data, pos));
+                pos += 2;
+                declareNamespace(prefix, uri);
+            }
+        }
+        declareNamespace(qname.getPrefix(), qname.getNamespaceURI());
+
+        attrLength = 0;
+        for (int i = 0; i < attributes; i++) {
+            final Value attr = iterator.next();
+            if (attr == null) {
+                throw new IOException("Failed to read attribute from DOM file");
+            }
+            writeAttribute(attr.data(), attr.start(), attr.start() + attr.getLength());
+        }
+        write(attrBuffer, 0, attrLength, RAW);
+
+        final int childNodes = children - attributes;
+        if (childNodes == 0) {
+            write(EMPTY_TAG_END);
+            nsSupport.popContext();
+        } else {
+            write((byte) '>');
+        }
+        return childNodes;
+    }
+
+    private void endElement(final int depth) throws IOException {
+        write(END_TAG_START);
+        write(elementNames[depth]);
+        write((byte) '>');
+        elementNames[depth] = null;
+        nsSupport.popContext();
+    }
+
+    private void writeAttribute(final byte[] data, final int start, final int end) throws IOException {
+        int pos = skipNodeId(data, start + StoredNode.LENGTH_SIGNATURE_LENGTH);
+        final QName qname = readName(Node.ATTRIBUTE_NODE, data, start, pos);
+        pos = skipName(data, start, pos);
+        if (!qname.getPrefix().isEmpty()) {
+            declareNamespace(qname.getPrefix(), qname.getNamespaceURI());
+        }
+
+        final byte[] name = encodedName(qname);
+        ensureAttrCapacity(name.length + 4 + (end - pos) * 6);
+        attrBuffer[attrLength++] = ' ';
+        System.arraycopy(name, 0, attrBuffer, attrLength, name.length);
+        attrLength += name.length;
+        attrBuffer[attrLength++] = '=';
+        attrBuffer[attrLength++] = '"';
+        attrLength = escape(data, pos, end, ATTRIBUTE, attrBuffer, attrLength);
+        attrBuffer[attrLength++] = '"';
+    }
+
+    /**
+     * Write a namespace declaration unless the prefix is already bound to the
+     * namespace in scope.
+     */
+    private void declareNamespace(final String prefix, final String uri) throws IOException {
+        if (XMLConstants.XML_NS_URI.equals(uri)) {
+            return;
+        }
+        final String current = nsSupport.getURI(prefix);
+        if (uri.equals(current == null ? XMLConstants.NULL_NS_URI : current)) {
+            return;
+        }
+        nsSupport.declarePrefix(prefix, uri);
+        write(XMLNS);
+        if (!prefix.isEmpty()) {
+            write((byte) ':');
+            write(prefix.getBytes(UTF_8));
+        }
+        write(EQ_QUOT);
+        final byte[] uriBytes = uri.getBytes(UTF_8);
+        write(uriBytes, 0, uriBytes.length, ATTRIBUTE);
+        write((byte) '"');
+    }
+
+    private QName readName(final short type, final byte[] data, final int start, int pos) {
+        final byte idSizeType = (byte) (data[start] & 0x3);
+        final boolean hasNamespace = (data[start] & 0x10) == 0x10;
+        final short id = (short) Signatures.read(idSizeType, data, pos);
+        pos += Signatures.getLength(idSizeType);
+        String namespace = XMLConstants.NULL_NS_URI;
+        String prefix = XMLConstants.DEFAULT_NS_PREFIX;
+        if (hasNamespace) {
+            final short nsId = ByteConversion.byteToShort(data, pos);
+            pos += ElementImpl.LENGTH_NS_ID;
+            final int prefixLen = ByteConversion.byteToShort(data, pos);
+            pos += ElementImpl.LENGTH_PREFIX_LENGTH;
+            if (prefixLen > 0) {
+                prefix = new String(data, pos, prefixLen, UTF_8);
+            }
+            if (nsId != 0) {
+                namespace = symbols.getNamespace(nsId);
+            }
+        }
+        return symbols.getQName(type, namespace, symbols.getName(id), prefix);
+    }
+
+    private static int skipName(final byte[] data, final int start, int pos) {
+        final byte idSizeType = (byte) (data[start] & 0x3);
+        pos += Signatures.getLength(idSizeType);
+        if ((data[start] & 0x10) == 0x10) {
+            pos += ElementImpl.LENGTH_NS_ID;
+            final int prefixLen = ByteConversion.byteToShort(data, pos);
+            pos += ElementImpl.LENGTH_PREFIX_LENGTH + prefixLen;
+        }
+        return pos;
+    }
+
+    private int skipNodeId(final byte[] data, final int pos) {
+        final int units = ByteConversion.byteToShort(data, pos);
+        return pos + NodeId.LENGTH_NODE_ID_UNITS + nodeFactory.lengthInBytes(units, data, pos + NodeId.LENGTH_NODE_ID_UNITS);
+    }
+
+    private int contentStart(final byte[] data, final int start) {
+        return skipNodeId(data, start + StoredNode.LENGTH_SIGNATURE_LENGTH);
+    }
+
+    private byte[] encodedName(final QName qname) {
+        return encodedNames.computeIfAbsent(qname, q -> q.getStringValue().getBytes(UTF_8));
+    }
+
+    private void write(final byte b) throws IOException {
+        if (length == buffer.length) {
+            flushBuffer();
+        }
+        buffer[length++] = b;
+    }
+
+    private void write(final byte[] bytes) throws IOException {
+        write(bytes, 0, bytes.length, RAW);
+    }
+
+    /**
+     * Copy the bytes to the output buffer, escaping them as required by the mode.
+     * Surrogate pairs, which are stored as two 3-byte sequences, are converted
+     * into a proper 4-byte UTF-8 sequence.
+     */
+    private void write(final byte[] data, int from, final int to, final int mode) throws IOException {
+        while (from < to) {
+            int chunkEnd = to;
+            if (to - from > MAX_CHUNK) {
+                chunkEnd = from + MAX_CHUNK;
+                // do not split a character, nor a stored surrogate pair
+                while ((data[chunkEnd] & 0xC0) == 0x80) {
+                    chunkEnd--;
+                }
+                if (isHighSurrogate(data, chunkEnd - 3, to)) {
+                    chunkEnd -= 3;
+                }
+            }
+            // worst case, every byte expands into a character reference
+            if (length + (chunkEnd - from) * 6 > buffer.length) {
+                flushBuffer();
+            }
+            length = escape(data, from, chunkEnd, mode, buffer, length);
+            from = chunkEnd;
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (length > 0) {
+            os.write(buffer, 0, length);
+            length = 0;
+        }
+    }
+
+    private void ensureAttrCapacity(final int additional) {
+        if (attrLength + additional > attrBuffer.length) {
+            attrBuffer = Arrays.copyOf(attrBuffer, Math.max(attrBuffer.length * 2, attrLength + additional));
+        }
+    }
+
+    /**
+     * Escape the bytes into the target array, which must have enough space
+     * for the worst case expansion.
+     *
+     * @return the new length of the target
+     */
+    static int escape(final byte[] data, final int from, final int to, final int mode, final byte[] target, int offset) {
+        for (int i = from; i < to; i++) {
+            final byte b = data[i];
+            final byte[] replacement;
+            switch (b) {
+                case '<':
+                    replacement = mode == RAW ? null : LT;
+                    break;
+                case '>':
+                    replacement = mode == RAW ? null : GT;
+                    break;
+                case '&':
+                    replacement = mode == RAW ? null : AMP;
+                    break;
+                case '"':
+                    replacement = mode == ATTRIBUTE ? QUOT : null;
+                    break;
+                case '\r':
+                    replacement = mode == ATTRIBUTE ? CR : null;
+                    break;
+                case '\n':
+                    replacement = mode == ATTRIBUTE ? LF : null;
+                    break;
+                case '\t':
+                    replacement = mode == ATTRIBUTE ? TAB : null;
+                    break;
+                case (byte) 0xED:
+                    if (isHighSurrogate(data, i, to) && isLowSurrogate(data, i + 3, to)) {
+                        final int high = ((data[i] & 0x0F) << 12) | ((data[i + 1] & 0x3F) << 6) | (data[i + 2] & 0x3F);
+                        final int low = ((data[i + 3] & 0x0F) << 12) | ((data[i + 4] & 0x3F) << 6) | (data[i + 5] & 0x3F);
+                        final int cp = 0x10000 + ((high - 0xD800) << 10) + (low - 0xDC00);
+                        target[offset++] = (byte) (0xF0 | (cp >> 18));
+                        target[offset++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                        target[offset++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                        target[offset++] = (byte) (0x80 | (cp & 0x3F));
+                        i += 5;
+                        continue;
+                    }
+                    replacement = null;
+                    break;
+                default:
+                    replacement = null;
+            }
+            if (replacement == null) {
+                target[offset++] = b;
+            } else {
+                System.arraycopy(replacement, 0, target, offset, replacement.length);
+                offset += replacement.length;
+            }
+        }
+        return offset;
+    }
+
+    private static boolean isHighSurrogate(final byte[] data, final int i, final int to) {
+        return i >= 0 && i + 2 < to && data[i] == (byte) 0xED && (data[i + 1] & 0xF0) == 0xA0;
+    }
+
+    private static boolean isLowSurrogate(final byte[] data, final int i, final int to) {
+        return i + 2 < to && data[i] == (byte) 0xED && (data[i + 1] & 0xF0) == 0xB0;
+    }
+}
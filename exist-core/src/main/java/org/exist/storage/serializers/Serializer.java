@@ -22,6 +22,7 @@
 package org.exist.storage.serializers;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.net.URI;
@@ -50,9 +51,11 @@ import org.apache.logging.log4j.Logger;
 import org.exist.Namespaces;
 import org.exist.dom.memtree.NodeImpl;
 import org.exist.dom.memtree.ReferenceNode;
+import org.exist.dom.persistent.DefaultDocumentSet;
 import org.exist.dom.persistent.DocumentImpl;
 import org.exist.dom.persistent.NodeProxy;
 import org.exist.dom.QName;
+import org.exist.dom.persistent.XMLDeclarationImpl;
 import org.exist.dom.persistent.XMLUtil;
 import org.exist.indexing.IndexController;
 import org.exist.indexing.MatchListener;
@@ -61,6 +64,7 @@ import org.exist.security.Permission;
 import org.exist.security.PermissionDeniedException;
 import org.exist.security.Subject;
 import org.exist.storage.DBBroker;
+import org.exist.storage.ElementValue;
 import org.exist.util.Configuration;
 import org.exist.util.MimeType;
 import org.exist.util.serializer.AttrList;
@@ -167,6 +171,8 @@ public abstract class Serializer implements XMLReader {
     private static final QName ATTR_HAS_ELEMENT_QNAME = new QName("has-element", Namespaces.EXIST_NS, "exist");
     // -----------------------------------------
 
+    private static final QName XINCLUDE_QNAME = new QName("include", Namespaces.XINCLUDE_NS);
+
 
     protected final DBBroker broker;
 
@@ -184,6 +190,7 @@ public abstract class Serializer implements XMLReader {
     private final XIncludeFilter xinclude;
     private final CustomMatchListenerFactory customMatchListeners;
     protected @Nullable Receiver receiver = null;
+    private @Nullable RawDocumentSerializer rawSerializer = null;
     private @Nullable LexicalHandler lexicalHandler = null;
     private @Nullable Int2ObjectMap<String> useCharacterMaps = null;
     private @Nullable Subject user = null;
@@ -913,6 +920,85 @@ public abstract class Serializer implements XMLReader {
         serializeToReceiver(doc, "true".equals(getProperty(GENERATE_DOC_EVENTS, "false")));
     }
 
+    /**
+     * Check if the document can be written by {@link #toRawUTF8(DocumentImpl, OutputStream)}
+     * instead of going through SAX. This is the case if the current output properties ask for
+     * plain, non-indented XML in UTF-8 and there is nothing to transform, expand or highlight.
+     *
+     * @param doc the document to serialize
+     * @return true if the raw serializer can produce the output
+     */
+    public boolean isRawSerializable(final DocumentImpl doc) {
+        if (doc.getResourceType() != DocumentImpl.XML_FILE || templates != null || showId != EXIST_ID_NONE
+                || lexicalHandler != null || useCharacterMaps != null || customMatchListeners.getFirst() != null) {
+            return false;
+        }
+        if (!"xml".equals(getProperty(OutputKeys.METHOD, "xml"))
+                || "yes".equals(getProperty(OutputKeys.INDENT, "no"))
+                || !"UTF-8".equalsIgnoreCase(getProperty(OutputKeys.ENCODING, "UTF-8"))
+                || "yes".equals(getProperty(EXistOutputKeys.ENFORCE_XHTML, "no"))
+                || "yes".equals(getProperty(EXistOutputKeys.XDM_SERIALIZATION, "no"))
+                || getProperty(OutputKeys.CDATA_SECTION_ELEMENTS, null) != null
+                || getProperty(OutputKeys.DOCTYPE_PUBLIC, null) != null
+                || getProperty(OutputKeys.DOCTYPE_SYSTEM, null) != null
+                || getProperty(EXistOutputKeys.STYLESHEET, null) != null) {
+            return false;
+        }
+        if (doc.getDoctype() != null && "yes".equals(getProperty(EXistOutputKeys.OUTPUT_DOCTYPE, "no"))) {
+            return false;
+        }
+        if ("yes".equals(getProperty(EXistOutputKeys.PROCESS_XSL_PI, "no")) && hasXSLPi(doc) != null) {
+            return false;
+        }
+        if ("yes".equals(getProperty(EXistOutputKeys.EXPAND_XINCLUDES, "yes"))) {
+            final DefaultDocumentSet docs = new DefaultDocumentSet(1);
+            docs.add(doc);
+            return broker.getStructuralIndex().findElementsByTagName(ElementValue.ELEMENT, docs, XINCLUDE_QNAME, null).isEmpty();
+        }
+        return true;
+    }
+
+    /**
+     * Write the document as UTF-8 directly from its stored node records. Only valid
+     * if {@link #isRawSerializable(DocumentImpl)} returned true for the current settings.
+     *
+     * @param doc the document to serialize
+     * @param os the stream to write to. It is flushed, but not closed.
+     * @throws IOException if reading the document or writing the output fails
+     */
+    public void toRawUTF8(final DocumentImpl doc, final OutputStream os) throws IOException {
+        if (rawSerializer == null) {
+            rawSerializer = new RawDocumentSerializer(broker);
+        }
+        rawSerializer.serialize(doc, getRawXmlDeclaration(doc),
+                "yes".equals(getProperty(EXistOutputKeys.INSERT_FINAL_NEWLINE, "no")), os);
+    }
+
+    private @Nullable String getRawXmlDeclaration(final DocumentImpl doc) {
+        final XMLDeclarationImpl originalXmlDecl = doc.getXmlDeclaration();
+        String version = null;
+        String encoding = null;
+        String standalone = null;
+        if (originalXmlDecl != null && "no".equals(getProperty(EXistOutputKeys.OMIT_ORIGINAL_XML_DECLARATION, "yes"))) {
+            version = originalXmlDecl.getVersion();
+            encoding = originalXmlDecl.getEncoding();
+            standalone = getProperty(OutputKeys.STANDALONE, originalXmlDecl.getStandalone());
+        } else if ("no".equals(getProperty(OutputKeys.OMIT_XML_DECLARATION, "yes"))) {
+            standalone = getProperty(OutputKeys.STANDALONE, null);
+        } else {
+            return null;
+        }
+        final StringBuilder decl = new StringBuilder("<?xml version=\"");
+        decl.append(getProperty(OutputKeys.VERSION, version != null ? version : "1.0"));
+        decl.append("\" encoding=\"");
+        decl.append(getProperty(OutputKeys.ENCODING, encoding != null ? encoding : "UTF-8"));
+        decl.append('"');
+        if (standalone != null) {
+            decl.append(" standalone=\"").append(standalone).append('"');
+        }
+        return decl.append("?>\n").toString();
+    }
+
     public void toSAX(final NodeValue n) throws SAXException {
         try {
             if (n.getType() == Type.DOCUMENT && !(n instanceof NodeProxy)) {
@@ -0,0 +1,106 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.sync;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.EXistException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.NativeBroker;
+
+import java.util.Optional;
+
+/**
+ * Writes dirty pages of the core database files to disk in the background,
+ * at a limited rate, while transactions keep running.
+ *
+ * A checkpoint ({@link Sync#MAJOR}) runs with all transactions suspended and
+ * has to write every page changed since the previous checkpoint. By trickling
+ * these pages out between checkpoints, only the pages changed in the last few
+ * moments remain to be written, and the pause of the checkpoint becomes short.
+ * Shortly before the next checkpoint is due, the rate is raised to catch up.
+ *
+ * Configured with the <code>checkpoint-flush-rate</code> attribute of the
+ * <code>recovery</code> element in conf.xml, in pages per second.
+ */
+public class CheckpointFlusher implements Runnable {
+
+    private static final Logger LOG = LogManager.getLogger(CheckpointFlusher.class);
+
+    private static final long INTERVAL = 1000;
+
+    /**
+     * Within the last 1/CATCH_UP_DIVISOR of the major sync period, pages are
+     * written at CATCH_UP_FACTOR times the configured rate.
+     */
+    private static final int CATCH_UP_DIVISOR = 10;
+    private static final int CATCH_UP_FACTOR = 4;
+
+    private final BrokerPool pool;
+    private final int pagesPerSecond;
+    private volatile boolean terminate = false;
+
+    public CheckpointFlusher(final BrokerPool pool, final int pagesPerSecond) {
+        this.pool = pool;
+        this.pagesPerSecond = pagesPerSecond;
+    }
+
+    public void terminate() {
+        terminate = true;
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (!terminate) {
+            synchronized (this) {
+                try {
+                    wait(INTERVAL);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (terminate || !pool.isOperational() || pool.isReadOnly()) {
+                continue;
+            }
+            final int maxPages = isCheckpointDue() ? pagesPerSecond * CATCH_UP_FACTOR : pagesPerSecond;
+            try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+                final int written = ((NativeBroker) broker).flushDirtyPages(maxPages);
+                if (LOG.isTraceEnabled()) {
+                    LOG.trace("{} dirty pages written ahead of checkpoint", written);
+                }
+            } catch (final EXistException e) {
+                LOG.warn("Unable to write dirty pages: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private boolean isCheckpointDue() {
+        final long period = pool.getMajorSyncPeriod();
+        final long untilCheckpoint = pool.getLastMajorSync() + period - System.currentTimeMillis();
+        return untilCheckpoint < period / CATCH_UP_DIVISOR;
+    }
+}
@@ -58,11 +58,13 @@ import org.exist.storage.IndexSpec;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.NativeValueIndex;
 import org.exist.storage.XQueryPool;
+import org.exist.storage.dom.DOMFile;
 import org.exist.storage.journal.Journal;
 import org.exist.storage.serializers.CustomMatchListenerFactory;
 import org.exist.storage.serializers.Serializer;
 import org.exist.validation.GrammarPool;
 import org.exist.xmldb.DatabaseImpl;
+import org.exist.xslt.StylesheetCache;
 import org.exist.xslt.TransformerFactoryAllocator;
 
 import java.io.IOException;
@@ -592,6 +594,13 @@ public class Configuration implements ErrorHandler
             config.put( TransformerFactoryAllocator.PROPERTY_CACHING_ATTRIBUTE, parseBoolean( cachingValue, false ) );
             LOG.debug(TransformerFactoryAllocator.PROPERTY_CACHING_ATTRIBUTE + ": {}", config.get(TransformerFactoryAllocator.PROPERTY_CACHING_ATTRIBUTE));
         }
+
+        final String cacheSizeValue = getConfigAttributeValue( transformer, StylesheetCache.CACHE_SIZE_ATTRIBUTE );
+
+        if( cacheSizeValue != null ) {
+            config.put( StylesheetCache.PROPERTY_CACHE_SIZE, parseInt( cacheSizeValue, StylesheetCache.DEFAULT_CACHE_SIZE ) );
+            LOG.debug(StylesheetCache.PROPERTY_CACHE_SIZE + ": {}", config.get(StylesheetCache.PROPERTY_CACHE_SIZE));
+        }
     }
 
     private void configureParser(final Element parser) {
@@ -1018,6 +1027,14 @@ public class Configuration implements ErrorHandler
             }
         }
 
+        final boolean compressOverflow = parseBoolean(getConfigAttributeValue(con, DOMFile.COMPRESS_OVERFLOW_ATTRIBUTE), false);
+        config.put(DOMFile.PROPERTY_COMPRESS_OVERFLOW, compressOverflow);
+        LOG.debug(DOMFile.PROPERTY_COMPRESS_OVERFLOW + ": {}", compressOverflow);
+
+        final int readAhead = parseInt(getConfigAttributeValue(con, DOMFile.READ_AHEAD_ATTRIBUTE), DOMFile.DEFAULT_READ_AHEAD);
+        config.put(DOMFile.PROPERTY_READ_AHEAD, readAhead);
+        LOG.debug(DOMFile.PROPERTY_READ_AHEAD + ": {}", readAhead);
+
         final String posixChownRestrictedStr = getConfigAttributeValue(con,  DBBroker.POSIX_CHOWN_RESTRICTED_ATTRIBUTE);
         final boolean posixChownRestricted;
         if(posixChownRestrictedStr == null) {
@@ -1135,6 +1152,28 @@ public class Configuration implements ErrorHandler
         setProperty( BrokerPool.PROPERTY_RECOVERY_FORCE_RESTART, value);
         LOG.debug(BrokerPool.PROPERTY_RECOVERY_FORCE_RESTART + ": {}", config.get(BrokerPool.PROPERTY_RECOVERY_FORCE_RESTART));
 
+        option = getConfigAttributeValue( recovery, BrokerPool.RECOVERY_REDO_THREADS_ATTRIBUTE );
+        if( option != null ) {
+            try {
+                setProperty( BrokerPool.PROPERTY_RECOVERY_REDO_THREADS, Integer.valueOf(option) );
+                LOG.debug(BrokerPool.PROPERTY_RECOVERY_REDO_THREADS + ": {}", config.get(BrokerPool.PROPERTY_RECOVERY_REDO_THREADS));
+            }
+            catch( final NumberFormatException e ) {
+                throw( new DatabaseConfigurationException( "redo-threads attribute in recovery section needs to be a number" ) );
+            }
+        }
+
+        option = getConfigAttributeValue( recovery, BrokerPool.CHECKPOINT_FLUSH_RATE_ATTRIBUTE );
+        if( option != null ) {
+            try {
+                setProperty( BrokerPool.PROPERTY_CHECKPOINT_FLUSH_RATE, Integer.valueOf(option) );
+                LOG.debug(BrokerPool.PROPERTY_CHECKPOINT_FLUSH_RATE + ": {}", config.get(BrokerPool.PROPERTY_CHECKPOINT_FLUSH_RATE));
+            }
+            catch( final NumberFormatException e ) {
+                throw( new DatabaseConfigurationException( "checkpoint-flush-rate attribute in recovery section needs to be a number" ) );
+            }
+        }
+
         option = getConfigAttributeValue( recovery, BrokerPool.RECOVERY_POST_RECOVERY_CHECK );
         value  = false;
 
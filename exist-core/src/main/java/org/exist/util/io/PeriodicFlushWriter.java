@@ -0,0 +1,102 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.util.io;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Writer filter which flushes the underlying writer whenever
+ * output has been written and the last flush is longer ago than
+ * a given interval.
+ *
+ * Used when serializing query results to an HTTP response, so that
+ * a client receives the first part of a large result while the rest
+ * is still being serialized. As no content length is known, the
+ * container then sends the response with chunked transfer encoding.
+ * Results which are serialized within the interval are still sent
+ * in one piece.
+ */
+public class PeriodicFlushWriter extends FilterWriter {
+
+    public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+    /**
+     * Number of chars written between looking at the clock.
+     */
+    private static final int CHECK_INTERVAL_CHARS = 512;
+
+    private final long intervalNanos;
+    private long lastFlush;
+    private int unchecked = 0;
+
+    public PeriodicFlushWriter(final Writer writer) {
+        this(writer, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    /**
+     * @param writer the writer to write to.
+     * @param flushInterval the minimum time between two flushes in milliseconds.
+     */
+    public PeriodicFlushWriter(final Writer writer, final long flushInterval) {
+        super(writer);
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+        this.lastFlush = System.nanoTime();
+    }
+
+    @Override
+    public void write(final int c) throws IOException {
+        out.write(c);
+        written(1);
+    }
+
+    @Override
+    public void write(final char[] cbuf, final int off, final int len) throws IOException {
+        out.write(cbuf, off, len);
+        written(len);
+    }
+
+    @Override
+    public void write(final String str, final int off, final int len) throws IOException {
+        out.write(str, off, len);
+        written(len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+        lastFlush = System.nanoTime();
+        unchecked = 0;
+    }
+
+    private void written(final int len) throws IOException {
+        unchecked += len;
+        if (unchecked >= CHECK_INTERVAL_CHARS) {
+            unchecked = 0;
+            if (System.nanoTime() - lastFlush >= intervalNanos) {
+                flush();
+            }
+        }
+    }
+}
@@ -24,6 +24,7 @@ package org.exist.util.serializer;
 import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import org.exist.storage.serializers.EXistOutputKeys;
 import org.exist.util.serializer.json.JSONWriter;
+import org.exist.util.serializer.json.StreamingJSONWriter;
 import org.exist.xquery.util.SerializerUtils;
 
 import javax.annotation.Nullable;
@@ -48,6 +49,8 @@ public abstract class AbstractSerializer {
 
     protected static final int CHARACTER_MAPPING_WRITER = 7;
 
+    protected static final int STREAMING_JSON_WRITER = 8;
+
     protected SerializerWriter[] writers = {
         new IndentingXMLWriter(),
         new XHTMLWriter(),
@@ -56,7 +59,8 @@ public abstract class AbstractSerializer {
         new XHTML5Writer(),
         new MicroXmlWriter(),
         new HTML5Writer(),
-        new CharacterMappingWriter()
+        new CharacterMappingWriter(),
+        new StreamingJSONWriter()
     };
 
     protected static final Properties defaultProperties = new Properties();
@@ -95,7 +99,8 @@ public abstract class AbstractSerializer {
             htmlVersion = 1.0;
         }
 
-        final SerializerWriter baseSerializerWriter = getBaseSerializerWriter(method, htmlVersion);
+        final boolean jsonStreaming = "yes".equals(outputProperties.getProperty(EXistOutputKeys.JSON_STREAMING, "no"));
+        final SerializerWriter baseSerializerWriter = getBaseSerializerWriter(method, htmlVersion, jsonStreaming);
 
         final SerializerWriter serializerWriter;
 
@@ -118,7 +123,7 @@ public abstract class AbstractSerializer {
         return (CharacterMappingWriter) writers[CHARACTER_MAPPING_WRITER];
     }
 
-    private SerializerWriter getBaseSerializerWriter(final String method, final double htmlVersion) {
+    private SerializerWriter getBaseSerializerWriter(final String method, final double htmlVersion, final boolean jsonStreaming) {
 
         if ("xhtml".equalsIgnoreCase(method)) {
             if (htmlVersion < 5.0) {
@@ -135,7 +140,7 @@ public abstract class AbstractSerializer {
         } else if("text".equalsIgnoreCase(method)) {
             return writers[TEXT_WRITER];
         } else if ("json".equalsIgnoreCase(method)) {
-            return writers[JSON_WRITER];
+            return jsonStreaming ? writers[STREAMING_JSON_WRITER] : writers[JSON_WRITER];
         } else if ("xhtml5".equalsIgnoreCase(method)) {
             return writers[XHTML5_WRITER];
         } else if ("html5".equalsIgnoreCase(method)) {
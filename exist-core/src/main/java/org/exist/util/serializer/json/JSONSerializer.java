@@ -27,6 +27,8 @@ import io.lacuna.bifurcan.IEntry;
 import org.exist.storage.DBBroker;
 import org.exist.storage.serializers.EXistOutputKeys;
 import org.exist.storage.serializers.Serializer;
+import org.exist.util.io.TemporaryFileManager;
+import org.exist.util.io.VirtualTempPath;
 import org.exist.xquery.XPathException;
 import org.exist.xquery.functions.array.ArrayType;
 import org.exist.xquery.functions.map.MapType;
@@ -35,18 +37,32 @@ import org.xml.sax.SAXException;
 
 import javax.xml.transform.OutputKeys;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.io.Writer;
 import java.util.Properties;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 /**
  * Called by {@link org.exist.util.serializer.XQuerySerializer} to serialize an XQuery sequence
  * to JSON. The JSON serializer differs from other serialization methods because it maps XQuery
  * data items to JSON.
  *
+ * Maps, arrays and atomic values are written directly to the generator as the sequence is traversed.
+ * Nodes are serialized into a temporary buffer, which overflows to disk for large nodes, and are then
+ * streamed from there into the JSON string.
+ *
  * @author Wolf
  */
 public class JSONSerializer {
 
+    /**
+     * Size of a serialized node up to which it is buffered in memory.
+     */
+    private static final int NODE_BUFFER_SIZE = 64 * 1024;
+
     private final DBBroker broker;
     private final Properties outputProperties;
 
@@ -124,7 +140,14 @@ public class JSONSerializer {
         xmlOutput.setProperty(OutputKeys.INDENT, outputProperties.getProperty(OutputKeys.INDENT, "no"));
         try {
             serializer.setProperties(xmlOutput);
-            generator.writeString(serializer.serialize((NodeValue)item));
+            try (final VirtualTempPath buffer = new VirtualTempPath(NODE_BUFFER_SIZE, TemporaryFileManager.getInstance())) {
+                try (final Writer writer = new OutputStreamWriter(buffer.newOutputStream(), UTF_8)) {
+                    serializer.serialize((NodeValue)item, writer);
+                }
+                try (final Reader reader = new InputStreamReader(buffer.newInputStream(), UTF_8)) {
+                    generator.writeString(reader, -1);
+                }
+            }
         } catch (IOException e) {
             throw new SAXException(e.getMessage(), e);
         } finally {
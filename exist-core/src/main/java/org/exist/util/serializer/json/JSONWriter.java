@@ -64,6 +64,9 @@ import org.exist.util.serializer.XMLWriter;
  * 
  * The attribute json:literal indicates that the element's text content should be serialized literally. This is
  * handy for writing boolean or numeric values. By default, text content is serialized as a Javascript string.
+ *
+ * The complete JSON tree is built in memory and written out at the end of the document. If the serialization
+ * property {@link EXistOutputKeys#JSON_STREAMING} is set to "yes", {@link StreamingJSONWriter} is used instead.
  *  
  * @author wolf
  *
@@ -92,8 +95,8 @@ public class JSONWriter extends XMLWriter {
     
     protected boolean prefixAttributes = false;
     protected boolean ignoreWhitespaceTextNodes = false;
-    private String jsonp = null;
-    private boolean indent = false;
+    protected String jsonp = null;
+    protected boolean indent = false;
 	
     public JSONWriter() {
         // empty
@@ -173,7 +176,7 @@ public class JSONWriter extends XMLWriter {
         }
     }
 
-    private void processStartElement(final String localName, boolean simpleValue) {
+    protected void processStartElement(final String localName, boolean simpleValue) throws TransformerException {
         final JSONObject obj = new JSONObject(localName);
         obj.setIndent(indent);
         if(root == null) {
@@ -186,7 +189,7 @@ public class JSONWriter extends XMLWriter {
         }
     }
 
-    private void processStartValue() throws TransformerException {
+    protected void processStartValue() throws TransformerException {
         // a json:value is stored as an unnamed object
         final JSONObject obj = new JSONObject();
         obj.setIndent(indent);
@@ -0,0 +1,482 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.util.serializer.json;
+
+import org.exist.dom.QName;
+import org.exist.storage.serializers.EXistOutputKeys;
+
+import javax.annotation.Nullable;
+import javax.xml.transform.TransformerException;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Variant of {@link JSONWriter} which writes the JSON as the XML events arrive, instead of
+ * building a tree of {@link JSONNode}s for the whole document first. It is used if the
+ * serialization property {@link EXistOutputKeys#JSON_STREAMING} is set to "yes".
+ *
+ * The mapping rules are the same as for {@link JSONWriter}, but to decide whether an element
+ * starts an array the writer can only look ahead to its next sibling: the JSON of the first
+ * element of a run of same-named siblings is held back until the next sibling arrives, or until
+ * it exceeds {@link #MAX_LOOKAHEAD} characters, in which case it is written as a single value.
+ * Consequently only adjacent siblings with the same name, the first of which is not larger than
+ * the look ahead, can be combined into an array. If a name is repeated otherwise, the output
+ * would contain a duplicate property, so serialization fails instead. Such elements have to be
+ * marked with json:array="true", which makes them stream without any look ahead, or be
+ * serialized without streaming.
+ *
+ * Memory use is bounded by the look ahead per open element, independent of the document size.
+ */
+public class StreamingJSONWriter extends JSONWriter {
+
+    /**
+     * Maximum number of characters of JSON held back for an element, while
+     * waiting to see if a sibling with the same name follows.
+     */
+    public static final int MAX_LOOKAHEAD = 64 * 1024;
+
+    private enum Kind { ELEMENT, TEXT, ATTRIBUTE }
+
+    private enum Mode { UNDECIDED, OBJECT, SIMPLE }
+
+    private final Deque<Frame> frames = new ArrayDeque<>();
+    private boolean rootWritten = false;
+
+    public StreamingJSONWriter() {
+        // empty
+    }
+
+    public StreamingJSONWriter(final Writer writer) {
+        super(writer);
+    }
+
+    @Override
+    protected void resetObjectState() {
+        super.resetObjectState();
+        frames.clear();
+        rootWritten = false;
+    }
+
+    @Override
+    public void endDocument() throws TransformerException {
+        if (rootWritten && jsonp != null) {
+            try {
+                getWriter().write(')');
+            } catch (final IOException e) {
+                throw new TransformerException(e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    protected void processStartElement(final String localName, final boolean simpleValue) throws TransformerException {
+        startFrame(localName);
+    }
+
+    @Override
+    protected void processStartValue() throws TransformerException {
+        startFrame(JSONNode.ANONYMOUS_OBJECT);
+    }
+
+    private void startFrame(final String name) throws TransformerException {
+        final Frame parent = frames.peek();
+        if (parent != null) {
+            place(parent);
+        }
+        frames.push(new Frame(name));
+    }
+
+    @Override
+    public void endElement(final String namespaceUri, final String localName, final String qname) throws TransformerException {
+        processEndElement();
+    }
+
+    @Override
+    public void endElement(final QName qname) throws TransformerException {
+        processEndElement();
+    }
+
+    private void processEndElement() throws TransformerException {
+        final Frame frame = frames.peek();
+        if (frame == null) {
+            return;
+        }
+        try {
+            place(frame);
+            frame.end();
+            frames.pop();
+            if (frames.isEmpty() && frame.forcedArray) {
+                frame.out.write(']');
+            }
+        } catch (final IOException e) {
+            throw new TransformerException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void attribute(final String qname, final CharSequence value) throws TransformerException {
+        final Frame frame = frames.peek();
+        if (frame == null) {
+            return;
+        }
+        switch (qname) {
+            case "json:array":
+                frame.forcedArray = true;
+                break;
+            case "json:literal":
+                frame.literal = true;
+                break;
+            case "json:name":
+                frame.name = value.toString();
+                break;
+            default:
+                final String name = prefixAttributes ? "@" + qname : qname;
+                if (frame.placed) {
+                    // attributes following content, e.g. from a custom receiver
+                    try {
+                        frame.attribute(name, value);
+                    } catch (final IOException e) {
+                        throw new TransformerException(e.getMessage(), e);
+                    }
+                } else {
+                    frame.attributes.add(new String[] { name, value.toString() });
+                }
+                break;
+        }
+    }
+
+    @Override
+    public void characters(final CharSequence chars) throws TransformerException {
+        final Frame frame = frames.peek();
+        if (frame == null) {
+            return;
+        }
+        if (ignoreWhitespaceTextNodes && chars.toString().trim().isEmpty()) {
+            return;
+        }
+        try {
+            place(frame);
+            frame.text(chars);
+        } catch (final IOException e) {
+            throw new TransformerException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Attach the frame to its parent, once its name and attributes are known.
+     */
+    private void place(final Frame frame) throws TransformerException {
+        if (frame.placed) {
+            return;
+        }
+        frame.placed = true;
+        try {
+            final Frame parent = parentOf(frame);
+            if (parent == null) {
+                // the root element is absorbed
+                final Sink root = new Sink(getWriter());
+                if (jsonp != null) {
+                    root.write(jsonp);
+                    root.write('(');
+                }
+                if (frame.forcedArray) {
+                    root.write('[');
+                }
+                rootWritten = true;
+                frame.out = root;
+            } else {
+                frame.out = parent.startMember(Kind.ELEMENT, frame.name, frame.forcedArray);
+            }
+            for (final String[] attribute : frame.attributes) {
+                frame.attribute(attribute[0], attribute[1]);
+            }
+            frame.attributes.clear();
+        } catch (final IOException e) {
+            throw new TransformerException(e.getMessage(), e);
+        }
+    }
+
+    private @Nullable Frame parentOf(final Frame frame) {
+        boolean found = false;
+        for (final Frame f : frames) {
+            if (found) {
+                return f;
+            }
+            found = f == frame;
+        }
+        return null;
+    }
+
+    /**
+     * Receives the JSON of a value. While a value is held back for look ahead,
+     * its JSON is collected in a buffer, afterwards it is written directly.
+     */
+    private static class Sink {
+        private final Writer writer;
+        @Nullable private final Sink target;
+        @Nullable private final Frame owner;
+        @Nullable private StringBuilder buffer;
+
+        Sink(final Writer writer) {
+            this.writer = writer;
+            this.target = null;
+            this.owner = null;
+            this.buffer = null;
+        }
+
+        /**
+         * @param target the sink to write to once the buffered value has been flushed
+         * @param owner the frame to notify if the look ahead is exceeded, or null to buffer without limit
+         */
+        Sink(final Sink target, @Nullable final Frame owner) {
+            this.writer = null;
+            this.target = target;
+            this.owner = owner;
+            this.buffer = new StringBuilder();
+        }
+
+        void write(final char c) throws IOException {
+            if (buffer != null) {
+                buffer.append(c);
+                checkLookahead();
+            } else if (target != null) {
+                target.write(c);
+            } else {
+                writer.write(c);
+            }
+        }
+
+        void write(final CharSequence s) throws IOException {
+            if (buffer != null) {
+                buffer.append(s);
+                checkLookahead();
+            } else if (target != null) {
+                target.write(s);
+            } else {
+                writer.append(s);
+            }
+        }
+
+        private void checkLookahead() throws IOException {
+            if (owner != null && buffer.length() > MAX_LOOKAHEAD) {
+                owner.commitRun(false);
+            }
+        }
+
+        /**
+         * Stop buffering.
+         *
+         * @return the JSON buffered so far
+         */
+        @Nullable StringBuilder detach() {
+            final StringBuilder buffered = buffer;
+            buffer = null;
+            return buffered;
+        }
+    }
+
+    /**
+     * An open element, writing its content into {@link #out}. The content of the element
+     * is a sequence of members, each being a run of adjacent children with the same name.
+     * Only the current run may be held back.
+     */
+    private class Frame {
+        private String name;
+        private boolean forcedArray = false;
+        private boolean literal = false;
+        private boolean placed = false;
+        private final List<String[]> attributes = new ArrayList<>(4);
+
+        private Sink out;
+        private Mode mode = Mode.UNDECIDED;
+        private int members = 0;
+        private final Set<String> memberNames = new HashSet<>();
+
+        @Nullable private Kind runKind = null;
+        @Nullable private String runName = null;
+        @Nullable private Sink runSink = null;
+        private boolean runCommitted = false;
+        private boolean runArray = false;
+
+        Frame(final String name) {
+            this.name = name;
+        }
+
+        Sink startMember(final Kind kind, final String memberName, final boolean array) throws IOException {
+            if (kind == Kind.ELEMENT && runKind == Kind.ELEMENT && memberName.equals(runName)
+                    && !(runCommitted && !runArray)) {
+                // another sibling with the same name: the run is an array
+                if (!runCommitted) {
+                    commitRun(true);
+                }
+                out.write(',');
+                if (indent) {
+                    out.write(' ');
+                }
+                return out;
+            }
+
+            if (!JSONNode.ANONYMOUS_OBJECT.equals(memberName) && memberNames.contains(memberName)) {
+                throw new IOException("Cannot stream property \"" + memberName + "\" of \"" + name + "\" as JSON: it is"
+                        + " repeated after other siblings, or after a sibling larger than " + MAX_LOOKAHEAD
+                        + " characters. Mark it with json:array=\"true\" or disable " + EXistOutputKeys.JSON_STREAMING);
+            }
+            memberNames.add(memberName);
+
+            closeRun(false);
+            members++;
+            runKind = kind;
+            runName = memberName;
+            runCommitted = false;
+            runArray = false;
+
+            if (kind == Kind.ATTRIBUTE || (kind == Kind.ELEMENT && array)) {
+                runSink = null;
+                commitRun(array);
+                return out;
+            }
+            runSink = new Sink(out, kind == Kind.ELEMENT ? this : null);
+            return runSink;
+        }
+
+        void attribute(final String attrName, final CharSequence value) throws IOException {
+            final Sink sink = startMember(Kind.ATTRIBUTE, attrName, false);
+            sink.write('"');
+            sink.write(JSONValue.escape(value));
+            sink.write('"');
+            closeRun(false);
+        }
+
+        void text(final CharSequence chars) throws IOException {
+            if (runKind == Kind.TEXT) {
+                // adjacent text is merged into one value
+                runSink.write(JSONValue.escape(chars));
+                return;
+            }
+            final Sink sink = startMember(Kind.TEXT, JSONValue.NAME_VALUE, false);
+            if (!literal) {
+                sink.write('"');
+            }
+            sink.write(JSONValue.escape(chars));
+        }
+
+        /**
+         * Write the prefix of the current run (separator, property name and array
+         * start), followed by the JSON held back so far. Afterwards the run is
+         * written directly.
+         */
+        void commitRun(final boolean array) throws IOException {
+            final StringBuilder buffered = runSink != null ? runSink.detach() : null;
+            writePrefix(array, false);
+            runCommitted = true;
+            runArray = array;
+            if (buffered != null) {
+                out.write(buffered);
+            }
+        }
+
+        private void closeRun(final boolean last) throws IOException {
+            if (runKind == null) {
+                return;
+            }
+            if (runKind == Kind.TEXT && !literal) {
+                runSink.write('"');
+            }
+            if (!runCommitted) {
+                final StringBuilder buffered = runSink.detach();
+                writePrefix(false, last);
+                out.write(buffered);
+            } else if (runArray) {
+                out.write(']');
+            }
+            runKind = null;
+            runName = null;
+            runSink = null;
+            runCommitted = false;
+            runArray = false;
+        }
+
+        private void writePrefix(final boolean array, final boolean last) throws IOException {
+            final boolean anonymous = JSONNode.ANONYMOUS_OBJECT.equals(runName);
+            if (mode == Mode.UNDECIDED) {
+                if (members == 1 && ((last && runKind == Kind.TEXT) || (runKind == Kind.ELEMENT && anonymous && array))) {
+                    // a single text child, or an array of json:value children, become the value of the element
+                    mode = Mode.SIMPLE;
+                } else {
+                    mode = Mode.OBJECT;
+                    out.write('{');
+                    if (indent) {
+                        out.write(' ');
+                    }
+                }
+            } else {
+                out.write(',');
+                if (indent) {
+                    out.write(' ');
+                }
+            }
+
+            if (mode == Mode.OBJECT && !anonymous) {
+                out.write('"');
+                out.write(runName);
+                out.write('"');
+                if (indent) {
+                    out.write(' ');
+                }
+                out.write(':');
+                if (indent) {
+                    out.write(' ');
+                }
+            }
+
+            if (array) {
+                out.write('[');
+            }
+        }
+
+        void end() throws IOException {
+            closeRun(true);
+            switch (mode) {
+                case UNDECIDED:
+                    // an empty element becomes null, unless it is an array
+                    if (!forcedArray) {
+                        out.write("null");
+                    }
+                    break;
+                case OBJECT:
+                    if (indent) {
+                        out.write(' ');
+                    }
+                    out.write('}');
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
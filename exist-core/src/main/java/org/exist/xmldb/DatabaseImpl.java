@@ -36,6 +36,7 @@ import org.exist.util.Configuration;
 import org.exist.util.Leasable;
 import org.exist.util.SSLHelper;
 
+import org.exist.xmlrpc.BinaryRpcTransportFactory;
 import org.exist.xmlrpc.ExistRpcTypeFactory;
 import org.xmldb.api.base.Collection;
 import org.xmldb.api.base.Database;
@@ -98,6 +99,7 @@ public class DatabaseImpl implements Database {
 
     private Boolean ssl_enable = false;
     private Boolean ssl_allow_self_signed = true;
+    private Integer binary_port = null;
     private Boolean ssl_verify_hostname = false;
 
     public DatabaseImpl() {
@@ -337,6 +339,16 @@ public class DatabaseImpl implements Database {
         client.setConfig(config);
         client.setTypeFactory(new ExistRpcTypeFactory(client));
 
+        if (binary_port != null) {
+            // use the binary protocol of the server instead of XML-RPC over HTTP
+            final BinaryRpcTransportFactory transportFactory = new BinaryRpcTransportFactory(client, url.getHost(), binary_port);
+            client.setTransportFactory(transportFactory);
+            return new Leasable<>(client, _client -> {
+                rpcClients.remove(rpcClientKey(user, url));
+                transportFactory.close();
+            });
+        }
+
         return new Leasable<>(client, _client -> rpcClients.remove(rpcClientKey(user, url)));
     }
 
@@ -372,6 +384,7 @@ public class DatabaseImpl implements Database {
     public final static String SSL_ENABLE = "ssl-enable";
     public final static String SSL_ALLOW_SELF_SIGNED = "ssl-allow-self-signed";
     public final static String SSL_VERIFY_HOSTNAME = "ssl-verify-hostname";
+    public final static String BINARY_PORT = "binary-port";
 
     @Override
     public String getProperty(final String property) throws XMLDBException {
@@ -414,6 +427,10 @@ public class DatabaseImpl implements Database {
                 value = ssl_verify_hostname.toString();
                 break;
 
+            case BINARY_PORT:
+                value = binary_port != null ? binary_port.toString() : null;
+                break;
+
             default:
                 value = defaultValue;
         }
@@ -454,6 +471,10 @@ public class DatabaseImpl implements Database {
             case SSL_VERIFY_HOSTNAME:
                 this.ssl_verify_hostname = Boolean.valueOf(value);
                 break;
+
+            case BINARY_PORT:
+                this.binary_port = value == null || value.isEmpty() ? null : Integer.valueOf(value);
+                break;
         }
     }
 }
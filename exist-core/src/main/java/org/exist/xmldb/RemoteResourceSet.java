@@ -25,8 +25,10 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URISyntaxException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -44,6 +46,7 @@ import org.apache.logging.log4j.Logger;
 import org.apache.xmlrpc.XmlRpcException;
 import org.apache.xmlrpc.client.XmlRpcClient;
 import org.exist.storage.serializers.EXistOutputKeys;
+import org.exist.util.Compressor;
 import org.exist.util.Leasable;
 import org.exist.util.io.TemporaryFileManager;
 import org.exist.util.io.VirtualTempPath;
@@ -66,6 +69,12 @@ public class RemoteResourceSet implements ResourceSet, AutoCloseable {
     private boolean closed;
     private LazyVal<Integer> inMemoryBufferSize;
 
+    // items of the result on the server which are retrieved in windows
+    private long windowedHits = 0;
+    private int windowSize = 0;
+    private int windowStart = -1;
+    private Resource[] window = null;
+
     private static Logger LOG = LogManager.getLogger(RemoteResourceSet.class.getName());
 
     public RemoteResourceSet(final Leasable<XmlRpcClient> leasableXmlRpcClient, final RemoteCollection col, final Properties properties, final Object[] resources, final int handle, final int hash) {
@@ -77,6 +86,24 @@ public class RemoteResourceSet implements ResourceSet, AutoCloseable {
         this.outputProperties = properties;
     }
 
+    /**
+     * Create a resource set for a result cached on the server, which retrieves
+     * the items in windows of consecutive items while iterating, instead of
+     * receiving a descriptor for every item upfront.
+     *
+     * @param leasableXmlRpcClient the XML-RPC client lease
+     * @param col the collection the query was executed against
+     * @param properties the output properties
+     * @param handle the id of the result on the server
+     * @param hits the number of items in the result
+     * @param windowSize the number of items to retrieve per call
+     */
+    public RemoteResourceSet(final Leasable<XmlRpcClient> leasableXmlRpcClient, final RemoteCollection col, final Properties properties, final int handle, final int hits, final int windowSize) {
+        this(leasableXmlRpcClient, col, properties, new Object[0], handle, -1);
+        this.windowedHits = hits;
+        this.windowSize = windowSize;
+    }
+
     private final int getInMemorySize(Properties properties) {
         if (inMemoryBufferSize == null) {
             inMemoryBufferSize = new LazyVal<>(() -> Integer.parseInt(properties.getProperty("in-memory-buffer-size", Integer.toString(VirtualTempPath.DEFAULT_IN_MEMORY_SIZE))));
@@ -109,6 +136,8 @@ public class RemoteResourceSet implements ResourceSet, AutoCloseable {
         hash = -1;
         resources.clear();
         handle = -1;
+        windowedHits = 0;
+        window = null;
     }
 
     @Override
@@ -196,41 +225,104 @@ public class RemoteResourceSet implements ResourceSet, AutoCloseable {
 
     @Override
     public Resource getResource(final long pos) throws XMLDBException {
-        if (pos >= resources.size()) {
+        if (pos < windowedHits) {
+            if (window == null || pos < windowStart || pos >= windowStart + window.length) {
+                fetchWindow((int) pos);
+            }
+            return window[(int) pos - windowStart];
+        }
+
+        final int index = (int) (pos - windowedHits);
+        if (index >= resources.size()) {
             return null;
         }
 
-        if(resources.get((int) pos) instanceof Resource) {
-            return (Resource) resources.get((int) pos);
+        if(resources.get(index) instanceof Resource) {
+            return (Resource) resources.get(index);
         } else {
-            final Map<String, String> item = (Map<String, String>)resources.get((int)pos);
-
-            switch(item.get("type")) {
-                case "node()":
-                case "document-node()":
-                case "element()":
-                case "attribute()":
-                case "text()":
-                case "processing-instruction()":
-                case "comment()":
-                case "namespace()":
-                case "cdata-section()":
-                    return getResourceNode((int)pos, item);
+            return getResource(index, (Map<String, String>) resources.get(index), null);
+        }
+    }
 
-                case "xs:base64Binary":
-                    return getResourceBinaryValue((int)pos, item, Base64::decodeBase64);
+    private Resource getResource(final int pos, final Map<String, String> item, final Map<XmldbURI, RemoteCollection> parents) throws XMLDBException {
+        switch(item.get("type")) {
+            case "node()":
+            case "document-node()":
+            case "element()":
+            case "attribute()":
+            case "text()":
+            case "processing-instruction()":
+            case "comment()":
+            case "namespace()":
+            case "cdata-section()":
+                return getResourceNode(pos, item, parents);
+
+            case "xs:base64Binary":
+                return getResourceBinaryValue(pos, item, Base64::decodeBase64);
+
+            case "xs:hexBinary":
+                return getResourceBinaryValue(pos, item, Hex::decodeHex);
+
+            default:    // atomic value
+                return getResourceValue(pos, item);
+        }
+    }
 
-                case "xs:hexBinary":
-                    return getResourceBinaryValue((int)pos, item, Hex::decodeHex);
+    /**
+     * Retrieve the window of items starting at the given position with a single call,
+     * the serialized content of the items is set on the resources.
+     */
+    private void fetchWindow(final int start) throws XMLDBException {
+        final List<Object> params = new ArrayList<>();
+        params.add(handle);
+        params.add(start);
+        params.add(windowSize);
+        params.add(outputProperties);
+        final Map<?, ?> table = (Map<?, ?>) collection.execute("retrieveWindow", params);
 
-                default:    // atomic value
-                    return getResourceValue((int)pos, item);
+        final Object[] items = (Object[]) table.get("items");
+        if (items == null || items.length == 0) {
+            throw new XMLDBException(ErrorCodes.VENDOR_ERROR, "No items returned for position " + start);
+        }
+        byte[] data = (byte[]) table.get("data");
+        if ("yes".equals(outputProperties.getProperty(EXistOutputKeys.COMPRESS_OUTPUT, "no"))) {
+            try {
+                data = Compressor.uncompress(data);
+            } catch (final IOException e) {
+                throw new XMLDBException(ErrorCodes.VENDOR_ERROR, e.getMessage(), e);
+            }
+        }
+        final Charset encoding = Charset.forName(outputProperties.getProperty(OutputKeys.ENCODING, UTF_8.name()));
+
+        final Map<XmldbURI, RemoteCollection> parents = new HashMap<>();
+        final Resource[] fetched = new Resource[items.length];
+        int offset = 0;
+        for (int i = 0; i < items.length; i++) {
+            final Map<?, ?> item = (Map<?, ?>) items[i];
+            final int length = (Integer) item.get("length");
+            final String content = new String(data, offset, length, encoding);
+            offset += length;
+
+            final Map<String, String> detail = new HashMap<>();
+            detail.put("type", (String) item.get("type"));
+            if (item.containsKey("docUri")) {
+                detail.put("docUri", (String) item.get("docUri"));
+                detail.put("nodeId", (String) item.get("nodeId"));
+            } else {
+                detail.put("value", content);
+            }
 
+            final Resource resource = getResource(start + i, detail, parents);
+            if (resource instanceof RemoteXMLResource && item.containsKey("docUri")) {
+                resource.setContent(content);
             }
+            fetched[i] = resource;
         }
+        windowStart = start;
+        window = fetched;
     }
 
-    private RemoteXMLResource getResourceNode(final int pos, final Map<String, String> nodeDetail) throws XMLDBException {
+    private RemoteXMLResource getResourceNode(final int pos, final Map<String, String> nodeDetail, final Map<XmldbURI, RemoteCollection> parents) throws XMLDBException {
         final String doc = nodeDetail.get("docUri");
         final Optional<String> s_id =  Optional.ofNullable(nodeDetail.get("nodeId"));
         final Optional<String> s_type = Optional.ofNullable(nodeDetail.get("type"));
@@ -241,9 +333,16 @@ public class RemoteResourceSet implements ResourceSet, AutoCloseable {
             throw new XMLDBException(ErrorCodes.INVALID_URI, e.getMessage(), e);
         }
 
-        final RemoteCollection parent;
+        RemoteCollection parent;
         if (docUri.startsWith(XmldbURI.DB)) {
-            parent = RemoteCollection.instance(leasableXmlRpcClient, docUri.removeLastSegment());
+            final XmldbURI parentUri = docUri.removeLastSegment();
+            parent = parents == null ? null : parents.get(parentUri);
+            if (parent == null) {
+                parent = RemoteCollection.instance(leasableXmlRpcClient, parentUri);
+                if (parents != null) {
+                    parents.put(parentUri, parent);
+                }
+            }
         } else {
             //fake to provide a RemoteCollection for local files that have been transferred by xml-rpc
             parent = collection;
@@ -281,12 +380,15 @@ public class RemoteResourceSet implements ResourceSet, AutoCloseable {
 
     @Override
     public long getSize() throws XMLDBException {
-        return resources == null ? 0 : (long) resources.size();
+        return windowedHits + (resources == null ? 0 : (long) resources.size());
     }
 
     @Override
     public void removeResource(final long pos) throws XMLDBException {
-        resources.remove(pos);
+        if (pos < windowedHits) {
+            throw new XMLDBException(ErrorCodes.VENDOR_ERROR, "Items of a result retrieved in windows cannot be removed");
+        }
+        resources.remove((int) (pos - windowedHits));
     }
 
     public final boolean isClosed() {
@@ -325,7 +427,7 @@ public class RemoteResourceSet implements ResourceSet, AutoCloseable {
 
         @Override
         public boolean hasMoreResources() throws XMLDBException {
-            return resources == null ? false : pos < resources.size();
+            return pos < getSize();
         }
 
         @Override
@@ -47,6 +47,7 @@ public class RemoteXPathQueryService extends AbstractRemoteService implements EX
     private final Properties outputProperties;
     private String moduleLoadPath = null;
     private boolean protectedMode = false;
+    private int windowSize = 0;
 
     /**
      * Creates a new RemoteXPathQueryService instance.
@@ -99,6 +100,18 @@ public class RemoteXPathQueryService extends AbstractRemoteService implements EX
         final List<Object> params = new ArrayList<>();
         params.add(query.getBytes(UTF_8));
         params.add(optParams);
+
+        if (windowSize > 0 && sortExpr == null) {
+            // keep the result on the server and retrieve it in windows while iterating
+            final int handle = (Integer) collection.execute("executeQuery", params);
+            final List<Object> hitsParams = new ArrayList<>();
+            hitsParams.add(handle);
+            final int hits = (Integer) collection.execute("getHits", hitsParams);
+            final Properties resourceSetProperties = new Properties(outputProperties);
+            resourceSetProperties.setProperty(EXistOutputKeys.XDM_SERIALIZATION, "yes");
+            return new RemoteResourceSet(leasableXmlRpcClient, collection, resourceSetProperties, handle, hits, windowSize);
+        }
+
         final Map result = (Map) collection.execute("queryPT", params);
 
         if (result.get(RpcAPI.ERROR) != null) {
@@ -368,6 +381,17 @@ public class RemoteXPathQueryService extends AbstractRemoteService implements EX
         }
     }
 
+    /**
+     * Retrieve the results of {@link #query(String)} in windows of the given number
+     * of items while iterating over the returned resource set, instead of receiving
+     * a descriptor for every item with the query response. Recommended for large results.
+     *
+     * @param windowSize the number of items to retrieve per call, or 0 to disable
+     */
+    public void setWindowSize(final int windowSize) {
+        this.windowSize = windowSize;
+    }
+
     @Override
     public void beginProtected() {
         protectedMode = true;
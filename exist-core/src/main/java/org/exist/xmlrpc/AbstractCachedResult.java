@@ -78,6 +78,16 @@ public abstract class AbstractCachedResult implements Closeable {
         return creationTimestamp;
     }
 
+    /**
+     * The weight of this result in the {@link QueryResultCache},
+     * roughly proportional to the memory it holds on to.
+     *
+     * @return the weight, at least 1
+     */
+    public int getWeight() {
+        return 1;
+    }
+
     /**
      * This abstract method returns the cached result
      * or null
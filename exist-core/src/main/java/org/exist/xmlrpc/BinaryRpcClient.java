@@ -0,0 +1,324 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xmlrpc;
+
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
+import org.apache.xmlrpc.XmlRpcException;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Client side of the {@link BinaryRpcProtocol}. A single connection to the
+ * {@link BinaryRpcServer} is opened lazily and shared by all threads using
+ * the client; calls may be issued concurrently and are matched to their
+ * responses by request id. If the connection is lost, all outstanding calls
+ * fail and the next call opens a new connection. A call that is not answered
+ * within the reply timeout fails, its response is discarded if it arrives later.
+ */
+public class BinaryRpcClient implements Closeable {
+
+    public static final int DEFAULT_CONNECT_TIMEOUT = 30_000;
+    public static final long DEFAULT_REPLY_TIMEOUT = 10 * 60 * 1000;
+
+    private final String host;
+    private final int port;
+    private volatile int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private volatile long replyTimeout = DEFAULT_REPLY_TIMEOUT;
+    private final AtomicInteger requestIds = new AtomicInteger();
+    private final Map<Integer, CompletableFuture<DataInputStream>> pending = new ConcurrentHashMap<>();
+
+    private final Object connectionLock = new Object();
+    @Nullable private Socket socket = null;
+    @Nullable private DataOutputStream out = null;
+    @Nullable private String user = null;
+    @Nullable private String password = null;
+    private boolean hello = false;
+    private boolean closed = false;
+
+    public BinaryRpcClient(final String host, final int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * @param connectTimeout the timeout in milliseconds for opening a connection, 0 to wait forever
+     */
+    public void setConnectTimeout(final int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * @param replyTimeout the timeout in milliseconds for the response to a call, 0 to wait forever
+     */
+    public void setReplyTimeout(final long replyTimeout) {
+        this.replyTimeout = replyTimeout;
+    }
+
+    /**
+     * A single call of a batch, see {@link #executeBatch(String, String, List)}.
+     */
+    public static class Call {
+        private final String methodName;
+        private final Object[] params;
+
+        public Call(final String methodName, final Object... params) {
+            this.methodName = methodName;
+            this.params = params;
+        }
+    }
+
+    /**
+     * Execute a remote method.
+     *
+     * @param user the user to authenticate as
+     * @param password the password of the user
+     * @param methodName the name of the {@link RpcAPI} method
+     * @param params the parameters of the method
+     *
+     * @return the result of the method
+     *
+     * @throws XmlRpcException if the method fails, or the server cannot be reached
+     */
+    public Object execute(@Nullable final String user, @Nullable final String password, final String methodName, final Object[] params) throws XmlRpcException {
+        return execute(user, password, methodName, params, replyTimeout);
+    }
+
+    /**
+     * Execute a remote method with a reply timeout other than the one
+     * configured for the client.
+     *
+     * @param user the user to authenticate as
+     * @param password the password of the user
+     * @param methodName the name of the {@link RpcAPI} method
+     * @param params the parameters of the method
+     * @param replyTimeout the timeout in milliseconds for the response, 0 to wait forever
+     *
+     * @return the result of the method
+     *
+     * @throws XmlRpcException if the method fails, the server cannot be reached, or does not answer in time
+     */
+    public Object execute(@Nullable final String user, @Nullable final String password, final String methodName, final Object[] params,
+            final long replyTimeout) throws XmlRpcException {
+        final DataInputStream response = call(user, password, BinaryRpcProtocol.CALL, replyTimeout, out -> BinaryRpcProtocol.writeCall(out, methodName, params));
+        try {
+            return BinaryRpcProtocol.readValue(response);
+        } catch (final IOException e) {
+            throw new XmlRpcException("Failed to read response of " + methodName + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Execute several remote methods with a single round trip. The
+     * calls are executed on the server in the given order.
+     *
+     * @param user the user to authenticate as
+     * @param password the password of the user
+     * @param calls the calls to execute
+     *
+     * @return the results of the calls in the same order, a failed call
+     *     is represented by the {@link XmlRpcException} it caused
+     *
+     * @throws XmlRpcException if the server cannot be reached
+     */
+    public Object[] executeBatch(@Nullable final String user, @Nullable final String password, final List<Call> calls) throws XmlRpcException {
+        final DataInputStream response = call(user, password, BinaryRpcProtocol.BATCH, replyTimeout, out -> {
+            out.writeInt(calls.size());
+            for (final Call call : calls) {
+                BinaryRpcProtocol.writeCall(out, call.methodName, call.params);
+            }
+        });
+        try {
+            // every result takes at least its status byte
+            final Object[] results = new Object[BinaryRpcProtocol.readCount(response, 1)];
+            for (int i = 0; i < results.length; i++) {
+                if (response.readByte() == 0) {
+                    results[i] = BinaryRpcProtocol.readValue(response);
+                } else {
+                    results[i] = BinaryRpcProtocol.readFault(response);
+                }
+            }
+            return results;
+        } catch (final IOException e) {
+            throw new XmlRpcException("Failed to read batch response: " + e.getMessage(), e);
+        }
+    }
+
+    private DataInputStream call(@Nullable final String user, @Nullable final String password, final byte type,
+            final long timeout, final PayloadWriter writer) throws XmlRpcException {
+        final UnsynchronizedByteArrayOutputStream payload = new UnsynchronizedByteArrayOutputStream();
+        try {
+            writer.write(new DataOutputStream(payload));
+        } catch (final IOException e) {
+            throw new XmlRpcException("Failed to encode request: " + e.getMessage(), e);
+        }
+
+        final int requestId = requestIds.incrementAndGet();
+        final CompletableFuture<DataInputStream> future = new CompletableFuture<>();
+        pending.put(requestId, future);
+        try {
+            synchronized (connectionLock) {
+                final DataOutputStream os = connect();
+                // the server expects a HELLO before the first call on a connection
+                if (!hello || !Objects.equals(this.user, user) || !Objects.equals(this.password, password)) {
+                    final UnsynchronizedByteArrayOutputStream helloPayload = new UnsynchronizedByteArrayOutputStream();
+                    BinaryRpcProtocol.writeHello(new DataOutputStream(helloPayload), user, password);
+                    writeFrame(os, 0, BinaryRpcProtocol.HELLO, helloPayload);
+                    this.hello = true;
+                    this.user = user;
+                    this.password = password;
+                }
+                writeFrame(os, requestId, type, payload);
+                os.flush();
+            }
+        } catch (final IOException e) {
+            pending.remove(requestId);
+            disconnect(e);
+            throw new XmlRpcException("Failed to send request to " + host + ":" + port + ": " + e.getMessage(), e);
+        }
+
+        try {
+            final DataInputStream response = timeout > 0 ? future.get(timeout, TimeUnit.MILLISECONDS) : future.get();
+            if (response.readByte() == BinaryRpcProtocol.FAULT) {
+                throw BinaryRpcProtocol.readFault(response);
+            }
+            return response;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.remove(requestId);
+            throw new XmlRpcException("Interrupted while waiting for response", e);
+        } catch (final TimeoutException e) {
+            pending.remove(requestId);
+            throw new XmlRpcException("No response from " + host + ":" + port + " within " + timeout + "ms", e);
+        } catch (final ExecutionException | CancellationException e) {
+            final Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw new XmlRpcException("Connection to " + host + ":" + port + " failed: " + cause.getMessage(), cause);
+        } catch (final IOException e) {
+            throw new XmlRpcException("Failed to read response: " + e.getMessage(), e);
+        }
+    }
+
+    private static void writeFrame(final DataOutputStream os, final int requestId, final byte type,
+            final UnsynchronizedByteArrayOutputStream payload) throws IOException {
+        os.writeInt(payload.size() + 5);
+        os.writeInt(requestId);
+        os.writeByte(type);
+        payload.writeTo(os);
+    }
+
+    private DataOutputStream connect() throws IOException {
+        if (closed) {
+            throw new IOException("Client is closed");
+        }
+        if (socket == null) {
+            final Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(host, port), connectTimeout);
+            } catch (final IOException e) {
+                socket.close();
+                throw e;
+            }
+            socket.setTcpNoDelay(true);
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.socket = socket;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            this.hello = false;
+            this.user = null;
+            this.password = null;
+
+            final Thread reader = new Thread(() -> read(socket, in), "binary-rpc.client-" + host + ":" + port);
+            reader.setDaemon(true);
+            reader.start();
+        }
+        return out;
+    }
+
+    private void read(final Socket socket, final DataInputStream in) {
+        try {
+            while (true) {
+                final int length = in.readInt();
+                if (length < 5 || length > BinaryRpcProtocol.MAX_FRAME_SIZE) {
+                    throw new IOException("Invalid frame length: " + length);
+                }
+                final int requestId = in.readInt();
+                // the frame type is left in the payload for the caller
+                final byte[] payload = new byte[length - 4];
+                in.readFully(payload);
+                final CompletableFuture<DataInputStream> future = pending.remove(requestId);
+                if (future != null) {
+                    future.complete(new DataInputStream(new ByteArrayInputStream(payload)));
+                }
+            }
+        } catch (final IOException e) {
+            synchronized (connectionLock) {
+                if (this.socket == socket) {
+                    disconnect(e);
+                }
+            }
+        }
+    }
+
+    private void disconnect(final IOException cause) {
+        synchronized (connectionLock) {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (final IOException e) {
+                    // ignore
+                }
+                socket = null;
+                out = null;
+            }
+        }
+        for (final Integer requestId : pending.keySet()) {
+            final CompletableFuture<DataInputStream> future = pending.remove(requestId);
+            if (future != null) {
+                future.completeExceptionally(cause);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (connectionLock) {
+            closed = true;
+        }
+        disconnect(new EOFException("Client closed"));
+    }
+
+    @FunctionalInterface
+    private interface PayloadWriter {
+        void write(DataOutput out) throws IOException;
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xmlrpc;
+
+import com.evolvedbinary.j8fu.tuple.*;
+import org.apache.xmlrpc.XmlRpcException;
+import org.exist.security.ACLPermission.ACE_ACCESS_TYPE;
+import org.exist.security.ACLPermission.ACE_TARGET;
+import org.exist.security.internal.aider.ACEAider;
+
+import javax.annotation.Nullable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Encoding of the compact binary alternative to the XML-RPC wire format,
+ * used by {@link BinaryRpcServer} and {@link BinaryRpcClient}.
+ *
+ * Every message is sent as a frame:
+ *
+ * <pre>
+ * frame   := length:int requestId:int type:byte payload
+ * </pre>
+ *
+ * where the length counts the bytes following it. The request id is chosen
+ * by the client and echoed by the server, so that many requests can be in
+ * flight on one connection. Payloads by frame type:
+ *
+ * <pre>
+ * HELLO        := version:int user:value password:value
+ * CALL         := call
+ * BATCH        := count:int call*
+ * RESULT       := value
+ * FAULT        := code:int message:value
+ * BATCH_RESULT := count:int (0:byte value | 1:byte code:int message:value)*
+ * call         := method:value paramCount:int value*
+ * </pre>
+ *
+ * Values carry the same types as XML-RPC with the Apache extensions and
+ * the eXist-db specific {@link Tuple} and {@link ACEAider} types, each
+ * prefixed by a one byte tag. Arrays are decoded as {@code Object[]} and
+ * structs as {@code Map<String, Object>}, as the XML-RPC parser does.
+ *
+ * A connection has to start with a HELLO frame, which is limited to
+ * {@link #MAX_HELLO_SIZE} bytes. Every length or element count is checked
+ * against the bytes left in the frame before anything is allocated for it.
+ */
+public final class BinaryRpcProtocol {
+
+    public static final int VERSION = 1;
+
+    /** Largest frame accepted, guards against reading garbage as a length. */
+    public static final int MAX_FRAME_SIZE = 256 * 1024 * 1024;
+
+    /** Largest frame accepted before the client has sent its credentials. */
+    public static final int MAX_HELLO_SIZE = 64 * 1024;
+
+    public static final byte HELLO = 1;
+    public static final byte CALL = 2;
+    public static final byte BATCH = 3;
+    public static final byte RESULT = 4;
+    public static final byte FAULT = 5;
+    public static final byte BATCH_RESULT = 6;
+
+    private static final byte NULL = 0;
+    private static final byte INT = 1;
+    private static final byte LONG = 2;
+    private static final byte DOUBLE = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte STRING = 5;
+    private static final byte BYTES = 6;
+    private static final byte ARRAY = 7;
+    private static final byte STRUCT = 8;
+    private static final byte DATE = 9;
+    private static final byte BYTE = 10;
+    private static final byte SHORT = 11;
+    private static final byte FLOAT = 12;
+    private static final byte TUPLE = 13;
+    private static final byte ACE_AIDER = 14;
+
+    private BinaryRpcProtocol() {
+    }
+
+    public static void writeValue(final DataOutput out, final Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof byte[]) {
+            final byte[] data = (byte[]) value;
+            out.writeByte(BYTES);
+            out.writeInt(data.length);
+            out.write(data);
+        } else if (value instanceof Map) {
+            final Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(STRUCT);
+            out.writeInt(map.size());
+            for (final Map.Entry<?, ?> entry : map.entrySet()) {
+                writeString(out, String.valueOf(entry.getKey()));
+                writeValue(out, entry.getValue());
+            }
+        } else if (value instanceof Object[]) {
+            final Object[] array = (Object[]) value;
+            out.writeByte(ARRAY);
+            out.writeInt(array.length);
+            for (final Object item : array) {
+                writeValue(out, item);
+            }
+        } else if (value instanceof Collection) {
+            final Collection<?> collection = (Collection<?>) value;
+            out.writeByte(ARRAY);
+            out.writeInt(collection.size());
+            for (final Object item : collection) {
+                writeValue(out, item);
+            }
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Date) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Tuple) {
+            writeTuple(out, (Tuple) value);
+        } else if (value instanceof ACEAider) {
+            final ACEAider ace = (ACEAider) value;
+            out.writeByte(ACE_AIDER);
+            writeString(out, ace.getAccessType().name());
+            writeString(out, ace.getTarget().name());
+            writeString(out, ace.getWho());
+            out.writeInt(ace.getMode());
+        } else {
+            throw new IOException("Unsupported Java type: " + value.getClass().getName());
+        }
+    }
+
+    private static void writeTuple(final DataOutput out, final Tuple tuple) throws IOException {
+        final Object[] elements;
+        if (tuple instanceof Tuple2) {
+            final Tuple2<?, ?> t = (Tuple2<?, ?>) tuple;
+            elements = new Object[] { t._1, t._2 };
+        } else if (tuple instanceof Tuple3) {
+            final Tuple3<?, ?, ?> t = (Tuple3<?, ?, ?>) tuple;
+            elements = new Object[] { t._1, t._2, t._3 };
+        } else if (tuple instanceof Tuple4) {
+            final Tuple4<?, ?, ?, ?> t = (Tuple4<?, ?, ?, ?>) tuple;
+            elements = new Object[] { t._1, t._2, t._3, t._4 };
+        } else if (tuple instanceof Tuple5) {
+            final Tuple5<?, ?, ?, ?, ?> t = (Tuple5<?, ?, ?, ?, ?>) tuple;
+            elements = new Object[] { t._1, t._2, t._3, t._4, t._5 };
+        } else if (tuple instanceof Tuple6) {
+            final Tuple6<?, ?, ?, ?, ?, ?> t = (Tuple6<?, ?, ?, ?, ?, ?>) tuple;
+            elements = new Object[] { t._1, t._2, t._3, t._4, t._5, t._6 };
+        } else {
+            throw new IOException("Unsupported Tuple class: " + tuple.getClass().getName());
+        }
+        out.writeByte(TUPLE);
+        out.writeByte(elements.length);
+        for (final Object element : elements) {
+            writeValue(out, element);
+        }
+    }
+
+    public static Object readValue(final DataInput in) throws IOException {
+        final byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case INT:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case BOOLEAN:
+                return in.readBoolean();
+            case STRING:
+                return readString(in);
+            case BYTES:
+                final byte[] data = new byte[readCount(in, 1)];
+                in.readFully(data);
+                return data;
+            case ARRAY:
+                // every element takes at least its tag
+                final Object[] array = new Object[readCount(in, 1)];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = readValue(in);
+                }
+                return array;
+            case STRUCT:
+                // every entry takes at least the length of its key and the tag of its value
+                final int size = readCount(in, 5);
+                final Map<String, Object> map = new HashMap<>((int) (size / 0.75f) + 1);
+                for (int i = 0; i < size; i++) {
+                    final String key = readString(in);
+                    map.put(key, readValue(in));
+                }
+                return map;
+            case DATE:
+                return new Date(in.readLong());
+            case BYTE:
+                return in.readByte();
+            case SHORT:
+                return in.readShort();
+            case FLOAT:
+                return in.readFloat();
+            case TUPLE:
+                return readTuple(in);
+            case ACE_AIDER:
+                final ACE_ACCESS_TYPE accessType = ACE_ACCESS_TYPE.valueOf(readString(in));
+                final ACE_TARGET target = ACE_TARGET.valueOf(readString(in));
+                final String who = readString(in);
+                return new ACEAider(accessType, target, who, in.readInt());
+            default:
+                throw new IOException("Unknown value tag: " + tag);
+        }
+    }
+
+    private static Tuple readTuple(final DataInput in) throws IOException {
+        final int arity = in.readByte();
+        final Object[] e = new Object[arity];
+        for (int i = 0; i < arity; i++) {
+            e[i] = readValue(in);
+        }
+        switch (arity) {
+            case 2:
+                return new Tuple2<>(e[0], e[1]);
+            case 3:
+                return new Tuple3<>(e[0], e[1], e[2]);
+            case 4:
+                return new Tuple4<>(e[0], e[1], e[2], e[3]);
+            case 5:
+                return new Tuple5<>(e[0], e[1], e[2], e[3], e[4]);
+            case 6:
+                return new Tuple6<>(e[0], e[1], e[2], e[3], e[4], e[5]);
+            default:
+                throw new IOException("Unsupported Tuple arity: " + arity);
+        }
+    }
+
+    public static void writeHello(final DataOutput out, @Nullable final String user, @Nullable final String password)
+            throws IOException {
+        out.writeInt(VERSION);
+        writeValue(out, user);
+        writeValue(out, password);
+    }
+
+    public static void writeCall(final DataOutput out, final String methodName, final Object[] params) throws IOException {
+        writeString(out, methodName);
+        out.writeInt(params.length);
+        for (final Object param : params) {
+            writeValue(out, param);
+        }
+    }
+
+    public static String readMethodName(final DataInput in) throws IOException {
+        return readString(in);
+    }
+
+    public static Object[] readParams(final DataInput in) throws IOException {
+        final Object[] params = new Object[readCount(in, 1)];
+        for (int i = 0; i < params.length; i++) {
+            params[i] = readValue(in);
+        }
+        return params;
+    }
+
+    public static void writeFault(final DataOutput out, final int code, final String message) throws IOException {
+        out.writeInt(code);
+        writeString(out, message == null ? "" : message);
+    }
+
+    public static XmlRpcException readFault(final DataInput in) throws IOException {
+        final int code = in.readInt();
+        return new XmlRpcException(code, readString(in));
+    }
+
+    private static void writeString(final DataOutput out, final String s) throws IOException {
+        final byte[] data = s.getBytes(UTF_8);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private static String readString(final DataInput in) throws IOException {
+        final byte[] data = new byte[readCount(in, 1)];
+        in.readFully(data);
+        return new String(data, UTF_8);
+    }
+
+    /**
+     * Read a length or an element count, and check that the rest of the frame
+     * can hold that many elements.
+     *
+     * @param in the payload of a frame
+     * @param minElementSize the smallest number of bytes an element is encoded in
+     *
+     * @return the length or count
+     *
+     * @throws IOException if the count is negative or larger than the frame allows
+     */
+    static int readCount(final DataInput in, final int minElementSize) throws IOException {
+        final int count = in.readInt();
+        if (count < 0 || (long) count * minElementSize > remaining(in)) {
+            throw new IOException("Invalid length: " + count);
+        }
+        return count;
+    }
+
+    private static long remaining(final DataInput in) throws IOException {
+        // payloads are decoded from a frame which has been read completely,
+        // so the bytes left are known
+        return in instanceof InputStream ? ((InputStream) in).available() : MAX_FRAME_SIZE;
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xmlrpc;
+
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.xmlrpc.XmlRpcException;
+import org.apache.xmlrpc.client.XmlRpcClientRequestImpl;
+import org.apache.xmlrpc.common.XmlRpcHttpRequestConfigImpl;
+import org.apache.xmlrpc.server.XmlRpcServer;
+import org.exist.util.NamedThreadFactory;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the XML:DB remote API ({@link RpcAPI}) using the compact framing of
+ * {@link BinaryRpcProtocol} instead of XML-RPC over HTTP.
+ *
+ * Calls are dispatched through the same {@link XmlRpcServer} as the
+ * {@link RpcServlet}, so method lookup, authentication and type conversion
+ * are shared with the XML-RPC endpoint. A client keeps a single connection
+ * open and may have any number of calls in flight; each call is executed on
+ * a worker thread and its result written back as soon as it is available,
+ * tagged with the request id of the call. Batches are executed in order and
+ * answered with a single frame.
+ *
+ * Both the number of connections and the number of worker threads are bounded.
+ * Connections beyond the limit are closed right away. If all workers are busy
+ * and the queue of waiting calls is full, a call is executed by the thread
+ * reading the connection it arrived on, which stops reading further calls
+ * from that client until it is done.
+ *
+ * The protocol is unencrypted; the server should only be bound to an
+ * interface which is not reachable from untrusted networks.
+ */
+public class BinaryRpcServer implements Closeable {
+
+    private static final Logger LOG = LogManager.getLogger(BinaryRpcServer.class);
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 64;
+    public static final int DEFAULT_MAX_WORKERS = 32;
+    private static final int MAX_QUEUED_CALLS_PER_WORKER = 8;
+
+    private final XmlRpcServer server;
+    private final ServerSocket serverSocket;
+    private final ExecutorService workers;
+    private final int maxConnections;
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+    private volatile boolean closed = false;
+
+    public BinaryRpcServer(final XmlRpcServer server, final int port) throws IOException {
+        this(server, null, port);
+    }
+
+    public BinaryRpcServer(final XmlRpcServer server, @Nullable final InetAddress bindAddress, final int port) throws IOException {
+        this(server, bindAddress, port, DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_WORKERS);
+    }
+
+    /**
+     * @param server the XML-RPC server to dispatch calls to
+     * @param bindAddress the address to listen on, or null for all interfaces
+     * @param port the port to listen on, or 0 to choose a free port
+     * @param maxConnections the maximum number of open client connections
+     * @param maxWorkers the maximum number of calls executed concurrently
+     *
+     * @throws IOException if the server socket cannot be opened
+     */
+    public BinaryRpcServer(final XmlRpcServer server, @Nullable final InetAddress bindAddress, final int port,
+            final int maxConnections, final int maxWorkers) throws IOException {
+        this.server = server;
+        this.maxConnections = maxConnections;
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.setReuseAddress(true);
+        this.serverSocket.bind(new InetSocketAddress(bindAddress, port));
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(maxWorkers, maxWorkers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(maxWorkers * MAX_QUEUED_CALLS_PER_WORKER),
+                new NamedThreadFactory((String) null, "binary-rpc.worker"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        this.workers = pool;
+        this.acceptor = new Thread(this::accept, "binary-rpc.acceptor-" + getPort());
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+        LOG.info("Binary RPC server listening on port {}", getPort());
+    }
+
+    /**
+     * @return the local port the server is listening on
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void accept() {
+        while (!closed) {
+            try {
+                final Socket socket = serverSocket.accept();
+                if (connections.size() >= maxConnections) {
+                    LOG.warn("Refusing binary RPC connection from {}: limit of {} connections reached",
+                            socket.getRemoteSocketAddress(), maxConnections);
+                    socket.close();
+                    continue;
+                }
+                socket.setTcpNoDelay(true);
+                final Connection connection = new Connection(socket);
+                connections.add(connection);
+                final Thread reader = new Thread(connection, "binary-rpc.connection-" + socket.getRemoteSocketAddress());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (final IOException e) {
+                if (!closed) {
+                    LOG.error("Failed to accept binary RPC connection: {}", e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            serverSocket.close();
+        } finally {
+            for (final Connection connection : connections) {
+                connection.close();
+            }
+            workers.shutdownNow();
+        }
+    }
+
+    private class Connection implements Runnable, Closeable {
+        private final Socket socket;
+        private final DataOutputStream out;
+        // only accessed by the thread reading the connection
+        private boolean hello = false;
+        private String user = null;
+        private String password = null;
+
+        Connection(final Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        @Override
+        public void run() {
+            try (final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+                while (!closed) {
+                    final int length = in.readInt();
+                    final int maxLength = hello ? BinaryRpcProtocol.MAX_FRAME_SIZE : BinaryRpcProtocol.MAX_HELLO_SIZE;
+                    if (length < 5 || length > maxLength) {
+                        throw new IOException("Invalid frame length: " + length);
+                    }
+                    final int requestId = in.readInt();
+                    final byte type = in.readByte();
+                    final byte[] payload = new byte[length - 5];
+                    in.readFully(payload);
+                    dispatch(requestId, type, new DataInputStream(new ByteArrayInputStream(payload)));
+                }
+            } catch (final EOFException | SocketException e) {
+                // client disconnected
+            } catch (final IOException e) {
+                if (!closed) {
+                    LOG.warn("Closing binary RPC connection from {}: {}", socket.getRemoteSocketAddress(), e.getMessage());
+                }
+            } finally {
+                close();
+            }
+        }
+
+        private void dispatch(final int requestId, final byte type, final DataInputStream payload) throws IOException {
+            switch (type) {
+                case BinaryRpcProtocol.HELLO:
+                    final int version = payload.readInt();
+                    if (version != BinaryRpcProtocol.VERSION) {
+                        final String message = "Unsupported protocol version: " + version;
+                        send(requestId, BinaryRpcProtocol.FAULT, out -> BinaryRpcProtocol.writeFault(out, 0, message));
+                        throw new IOException(message);
+                    }
+                    user = (String) BinaryRpcProtocol.readValue(payload);
+                    password = (String) BinaryRpcProtocol.readValue(payload);
+                    hello = true;
+                    break;
+
+                case BinaryRpcProtocol.CALL:
+                    checkHello(type);
+                    final String methodName = BinaryRpcProtocol.readMethodName(payload);
+                    final Object[] params = BinaryRpcProtocol.readParams(payload);
+                    // the credentials may be changed by a later HELLO before the task runs
+                    final String callUser = user;
+                    final String callPassword = password;
+                    submit(() -> {
+                        try {
+                            final Object result = execute(callUser, callPassword, methodName, params);
+                            send(requestId, BinaryRpcProtocol.RESULT, out -> BinaryRpcProtocol.writeValue(out, result));
+                        } catch (final Throwable t) {
+                            send(requestId, BinaryRpcProtocol.FAULT, out -> BinaryRpcProtocol.writeFault(out, faultCode(t), t.getMessage()));
+                        }
+                    });
+                    break;
+
+                case BinaryRpcProtocol.BATCH:
+                    checkHello(type);
+                    // every call takes at least the length of its method name and its parameter count
+                    final int count = BinaryRpcProtocol.readCount(payload, 8);
+                    final String[] methodNames = new String[count];
+                    final Object[][] batchParams = new Object[count][];
+                    for (int i = 0; i < count; i++) {
+                        methodNames[i] = BinaryRpcProtocol.readMethodName(payload);
+                        batchParams[i] = BinaryRpcProtocol.readParams(payload);
+                    }
+                    final String batchUser = user;
+                    final String batchPassword = password;
+                    submit(() -> {
+                        final Object[] results = new Object[count];
+                        for (int i = 0; i < count; i++) {
+                            try {
+                                results[i] = execute(batchUser, batchPassword, methodNames[i], batchParams[i]);
+                            } catch (final Throwable t) {
+                                results[i] = t;
+                            }
+                        }
+                        send(requestId, BinaryRpcProtocol.BATCH_RESULT, out -> {
+                            out.writeInt(count);
+                            for (final Object result : results) {
+                                if (result instanceof Throwable) {
+                                    out.writeByte(1);
+                                    BinaryRpcProtocol.writeFault(out, faultCode((Throwable) result), ((Throwable) result).getMessage());
+                                } else {
+                                    out.writeByte(0);
+                                    BinaryRpcProtocol.writeValue(out, result);
+                                }
+                            }
+                        });
+                    });
+                    break;
+
+                default:
+                    throw new IOException("Unknown frame type: " + type);
+            }
+        }
+
+        private void checkHello(final byte type) throws IOException {
+            if (!hello) {
+                throw new IOException("Frame of type " + type + " received before HELLO");
+            }
+        }
+
+        private void submit(final Runnable task) {
+            try {
+                workers.execute(task);
+            } catch (final RejectedExecutionException e) {
+                // server is shutting down
+                close();
+            }
+        }
+
+        private Object execute(@Nullable final String user, @Nullable final String password, final String methodName,
+                final Object[] params) throws XmlRpcException {
+            final XmlRpcHttpRequestConfigImpl config = new XmlRpcHttpRequestConfigImpl();
+            config.setBasicUserName(user);
+            config.setBasicPassword(password);
+            config.setEnabledForExtensions(true);
+            return server.execute(new XmlRpcClientRequestImpl(config, methodName, params));
+        }
+
+        private void send(final int requestId, final byte type, final PayloadWriter writer) {
+            final UnsynchronizedByteArrayOutputStream buf = new UnsynchronizedByteArrayOutputStream();
+            try {
+                try {
+                    writer.write(new DataOutputStream(buf));
+                } catch (final IOException e) {
+                    // the result could not be encoded, report it to the caller instead
+                    buf.reset();
+                    BinaryRpcProtocol.writeFault(new DataOutputStream(buf), 0, e.getMessage());
+                    writeFrame(requestId, BinaryRpcProtocol.FAULT, buf);
+                    return;
+                }
+                writeFrame(requestId, type, buf);
+            } catch (final IOException e) {
+                LOG.warn("Failed to send binary RPC response to {}: {}", socket.getRemoteSocketAddress(), e.getMessage());
+                close();
+            }
+        }
+
+        private void writeFrame(final int requestId, final byte type, final UnsynchronizedByteArrayOutputStream payload) throws IOException {
+            synchronized (out) {
+                out.writeInt(payload.size() + 5);
+                out.writeInt(requestId);
+                out.writeByte(type);
+                payload.writeTo(out);
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() {
+            connections.remove(this);
+            try {
+                socket.close();
+            } catch (final IOException e) {
+                LOG.debug(e.getMessage(), e);
+            }
+        }
+    }
+
+    static int faultCode(final Throwable t) {
+        return t instanceof XmlRpcException ? ((XmlRpcException) t).code : 0;
+    }
+
+    @FunctionalInterface
+    private interface PayloadWriter {
+        void write(DataOutput out) throws IOException;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xmlrpc;
+
+import org.apache.xmlrpc.XmlRpcException;
+import org.apache.xmlrpc.XmlRpcRequest;
+import org.apache.xmlrpc.client.XmlRpcClient;
+import org.apache.xmlrpc.client.XmlRpcTransport;
+import org.apache.xmlrpc.client.XmlRpcTransportFactoryImpl;
+import org.apache.xmlrpc.client.XmlRpcTransportImpl;
+import org.apache.xmlrpc.common.XmlRpcHttpRequestConfig;
+
+import java.io.Closeable;
+
+/**
+ * Plugs the {@link BinaryRpcClient} into an Apache {@link XmlRpcClient}, so
+ * that existing code issuing XML-RPC calls transparently uses the binary
+ * protocol. The basic authentication credentials of the client config are
+ * used to authenticate the connection, a reply timeout of the config
+ * overrides the one of the {@link BinaryRpcClient}.
+ */
+public class BinaryRpcTransportFactory extends XmlRpcTransportFactoryImpl implements Closeable {
+
+    private final BinaryRpcClient binaryClient;
+    private final XmlRpcTransport transport;
+
+    public BinaryRpcTransportFactory(final XmlRpcClient client, final String host, final int port) {
+        super(client);
+        this.binaryClient = new BinaryRpcClient(host, port);
+        this.transport = new XmlRpcTransportImpl(client) {
+            @Override
+            public Object sendRequest(final XmlRpcRequest request) throws XmlRpcException {
+                final XmlRpcHttpRequestConfig config = (XmlRpcHttpRequestConfig) request.getConfig();
+                final Object[] params = new Object[request.getParameterCount()];
+                for (int i = 0; i < params.length; i++) {
+                    params[i] = request.getParameter(i);
+                }
+                if (config.getReplyTimeout() > 0) {
+                    return binaryClient.execute(config.getBasicUserName(), config.getBasicPassword(), request.getMethodName(), params,
+                            config.getReplyTimeout());
+                }
+                return binaryClient.execute(config.getBasicUserName(), config.getBasicPassword(), request.getMethodName(), params);
+            }
+        };
+    }
+
+    @Override
+    public XmlRpcTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * @return the underlying client, e.g. for issuing batches of calls
+     */
+    public BinaryRpcClient getBinaryClient() {
+        return binaryClient;
+    }
+
+    @Override
+    public void close() {
+        binaryClient.close();
+    }
+}
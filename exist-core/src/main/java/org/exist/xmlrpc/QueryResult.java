@@ -23,10 +23,12 @@ package org.exist.xmlrpc;
 
 import java.io.IOException;
 
+import org.exist.storage.lock.DocumentSnapshot;
 import org.exist.xquery.XPathException;
 import org.exist.xquery.value.Sequence;
 
 import java.util.Properties;
+import javax.annotation.Nullable;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -46,6 +48,8 @@ public class QueryResult extends AbstractCachedResult {
     protected Properties serialization = null;
     // set upon failure
     protected XPathException exception = null;
+    // set if the query ran in snapshot mode
+    protected DocumentSnapshot snapshot = null;
 
     public QueryResult(final Sequence result, final Properties outputProperties) {
         this(result, outputProperties, 0);
@@ -69,6 +73,18 @@ public class QueryResult extends AbstractCachedResult {
         return exception;
     }
 
+    /**
+     * @return the snapshot the query ran in, which has to be validated again before
+     *     the result is serialized, or null if the query did not run in snapshot mode
+     */
+    public @Nullable DocumentSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public void setSnapshot(@Nullable final DocumentSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
     /**
      * @return Returns the result.
      */
@@ -77,6 +93,16 @@ public class QueryResult extends AbstractCachedResult {
         return result;
     }
 
+    /**
+     * Weighs the result by its number of items.
+     *
+     * @return the number of items in the result, at least 1
+     */
+    @Override
+    public int getWeight() {
+        return result == null ? 1 : Math.max(1, result.getItemCount());
+    }
+
     @Override
     protected void doClose() {
         if (result != null) {
@@ -35,25 +35,45 @@ import java.util.concurrent.atomic.AtomicInteger;
  * Used by {@link XmldbRequestProcessorFactory} to cache query results. Each query result
  * is identified by a unique integer id.
  *
+ * Results expire after they have not been accessed for a configurable time. The size of
+ * the cache is bounded by the total {@link AbstractCachedResult#getWeight() weight} of the
+ * cached results, i.e. roughly by the number of items held, so that a few huge results
+ * cannot exhaust the heap. A single result counts with at most a quarter of the maximum
+ * weight: otherwise a result larger than the whole cache would be evicted as soon as it is
+ * added, before the client had a chance to retrieve it.
+ *
  * @author <a href="mailto:adam@evolvedbinary.com">Adam Retter</a>
  */
 @ThreadSafe
 public class QueryResultCache {
 
     private static final Logger LOG = LogManager.getLogger(QueryResultCache.class);
-    private static final int TIMEOUT = 180_000;  // ms (e.g. 2 minutes)
+    public static final long DEFAULT_TIMEOUT = 180_000;  // ms (e.g. 3 minutes)
+    public static final long DEFAULT_MAX_WEIGHT = 5_000_000;  // items
+    private static final int MAX_ENTRY_WEIGHT_DIVISOR = 4;
 
     private final AtomicInteger cacheIdCounter = new AtomicInteger();
     private final Cache<Integer, AbstractCachedResult> cache;
 
     public QueryResultCache() {
+        this(DEFAULT_TIMEOUT, DEFAULT_MAX_WEIGHT);
+    }
+
+    /**
+     * @param timeout the time in milliseconds after which a result which has not been accessed is removed
+     * @param maxWeight the maximum total weight of all cached results
+     */
+    public QueryResultCache(final long timeout, final long maxWeight) {
+        final int maxEntryWeight = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxWeight / MAX_ENTRY_WEIGHT_DIVISOR));
         this.cache = Caffeine.newBuilder()
-                .expireAfterAccess(TIMEOUT, TimeUnit.MILLISECONDS)
+                .expireAfterAccess(timeout, TimeUnit.MILLISECONDS)
+                .maximumWeight(maxWeight)
+                .weigher((Integer key, AbstractCachedResult value) -> Math.min(value.getWeight(), maxEntryWeight))
                 .removalListener((key, value, cause) -> {
                     final AbstractCachedResult qr = (AbstractCachedResult)value;
                     qr.free();  // must free associated resources
                     if(LOG.isDebugEnabled()) {
-                        LOG.debug("Removing cached result set: {}", new Date(qr.getTimestamp()).toString());
+                        LOG.debug("Removing cached result set: {} ({})", new Date(qr.getTimestamp()).toString(), cause);
                     }
                 }).build();
     }
@@ -81,6 +101,13 @@ public class QueryResultCache {
         return (acr != null && acr instanceof SerializedResult) ? (SerializedResult) acr : null;
     }
 
+    /**
+     * Perform pending maintenance, e.g. evictions, right away.
+     */
+    void cleanUp() {
+        cache.cleanUp();
+    }
+
     public void remove(final int cacheId) {
         if (cacheId < 0 || cacheId >= cacheIdCounter.get()) {
             return; // out of scope
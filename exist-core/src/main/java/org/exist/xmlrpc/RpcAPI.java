@@ -51,6 +51,7 @@ public interface RpcAPI {
     String BASE_URI = "base-uri";
     String STATIC_DOCUMENTS = "static-documents";
     String PROTECTED_MODE = "protected";
+    String SNAPSHOT_MODE = "snapshot";
     String ERROR = "error";
     String LINE = "line";
     String COLUMN = "column";
@@ -825,6 +826,50 @@ public interface RpcAPI {
     Map<String, Object> retrieveFirstChunk(int resultId, int num, Map<String, Object> parameters)
             throws EXistException, PermissionDeniedException;
 
+    /**
+     * Retrieve a window of consecutive items from the result-set identified by
+     * resultId, e.g. as returned by {@link #executeQuery(byte[], Map)}, in a single call.
+     * This allows clients to iterate over large results without transferring a
+     * descriptor for every item upfront, or retrieving every item separately.
+     *
+     * The items are serialized one after the other into a single byte array.
+     * The returned struct has the following fields:
+     *
+     * <table border="1">
+     *  <caption>Fields</caption>
+     *  <tr>
+     *      <td>"hits"</td>
+     *      <td>int, the total number of items in the result-set</td>
+     *  </tr>
+     *  <tr>
+     *      <td>"start"</td>
+     *      <td>int, the position of the first item of the window</td>
+     *  </tr>
+     *  <tr>
+     *      <td>"items"</td>
+     *      <td>array of structs describing each item as returned by {@link #queryPT(byte[], Map)},
+     *      plus the "length" in bytes of its serialization</td>
+     *  </tr>
+     *  <tr>
+     *      <td>"data"</td>
+     *      <td>byte[], the serialized items, compressed if requested by the parameters</td>
+     *  </tr>
+     * </table>
+     *
+     * The window may contain fewer items than requested, if the end of the result-set
+     * or the maximum size of a chunk has been reached.
+     *
+     * @param resultId the ID of the result-set
+     * @param start the position of the first item to retrieve
+     * @param count the maximum number of items to retrieve
+     * @param parameters controlling the serialization of the items
+     * @return the window of items
+     * @throws EXistException If an internal error occurs
+     * @throws PermissionDeniedException If the current user is not allowed to perform this action
+     */
+    Map<String, Object> retrieveWindow(int resultId, int start, int count, Map<String, Object> parameters)
+            throws EXistException, PermissionDeniedException;
+
     boolean addAccount(String name, String passwd, String digestPassword, List<String> groups, Boolean isEnabled, Integer umask, Map<String, String> metadata)
             throws EXistException, PermissionDeniedException;
 
@@ -21,6 +21,7 @@
  */
 package org.exist.xmlrpc;
 
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exist.backup.Restore;
@@ -60,6 +61,7 @@ import org.exist.source.Source;
 import org.exist.source.StringSource;
 import org.exist.storage.*;
 import org.exist.storage.DBBroker.PreserveType;
+import org.exist.storage.lock.DocumentSnapshot;
 import org.exist.storage.lock.Lock.LockMode;
 import org.exist.storage.lock.LockManager;
 import org.exist.storage.lock.LockedDocumentMap;
@@ -132,6 +134,7 @@ public class RpcConnection implements RpcAPI {
     private final static Logger LOG = LogManager.getLogger(RpcConnection.class);
 
     public final static int MAX_DOWNLOAD_CHUNK_SIZE = 1024 * 1024;  // 1 MB
+    public final static int MAX_WINDOW_SIZE = 10_000;  // items
     private final static Charset DEFAULT_ENCODING = StandardCharsets.UTF_8;
 
     private final XmldbRequestProcessorFactory factory;
@@ -245,15 +248,28 @@ public class RpcConnection implements RpcAPI {
         try {
             final long start = System.currentTimeMillis();
             lockedDocuments = beginProtected(broker, parameters);
+            DocumentSnapshot snapshot = null;
             if (lockedDocuments != null) {
                 compiled.getContext().setProtectedDocs(lockedDocuments);
+            } else {
+                snapshot = beginSnapshot(broker, compiled.getContext(), contextSet, parameters);
             }
             final Properties outputProperties = new Properties();
             final Sequence result = xquery.execute(broker, compiled, contextSet, outputProperties);
+            if (snapshot != null) {
+                final DocumentImpl modified = snapshot.validate(broker);
+                if (modified != null) {
+                    throw new XPathException((Expression) null, ErrorCodes.EXXQDY0007,
+                            "Document " + modified.getURI() + " was modified whilst the query was running in snapshot mode");
+                }
+            }
             // pass last modified date to the HTTP response
             HTTPUtils.addLastModifiedHeader(result, compiled.getContext());
             LOG.info("query took {}ms.", System.currentTimeMillis() - start);
-            return new QueryResult(result, outputProperties);
+            final QueryResult queryResult = new QueryResult(result, outputProperties);
+            // the result is serialized later on, when the documents may have changed again
+            queryResult.setSnapshot(snapshot);
+            return queryResult;
         } catch (final XPathException e) {
             return new QueryResult(e);
         } finally {
@@ -289,6 +305,70 @@ public class RpcConnection implements RpcAPI {
         throw new EXistException("Unable to beginProtected after " + BEGIN_PROTECTED_MAX_LOCKING_RETRIES + " retries");
     }
 
+    /**
+     * Run the query in snapshot mode on the collection given by the {@link RpcAPI#SNAPSHOT_MODE} parameter.
+     *
+     * In contrast to {@link #beginProtected(DBBroker, Map)}, no documents are locked whilst the query
+     * is running. The collection becomes the statically known documents, and each document is pinned
+     * when the query loads it, see {@link DocumentSnapshot}. The nodes of the context set are pinned
+     * right away. The query result is discarded if any of the pinned documents was modified in the meantime,
+     * and the same check is repeated whenever items of the cached result are retrieved.
+     *
+     * @param broker the broker to use
+     * @param context the context of the query
+     * @param contextSet the initial context set of the query, or null
+     * @param parameters the query parameters
+     *
+     * @return the snapshot, or null if snapshot mode was not requested
+     *
+     * @throws EXistException if the documents of the context set could not be locked
+     */
+    /**
+     * Check that the documents pinned by a query in snapshot mode were not modified
+     * since, before serializing items of its cached result.
+     *
+     * @param broker the broker to use
+     * @param qr the cached query result
+     *
+     * @throws EXistException with an {@link ErrorCodes#EXXQDY0007} error if a document was modified
+     * @throws PermissionDeniedException if a pinned document could not be read
+     */
+    private void checkSnapshot(final DBBroker broker, final QueryResult qr) throws EXistException, PermissionDeniedException {
+        final DocumentSnapshot snapshot = qr.getSnapshot();
+        if (snapshot == null) {
+            return;
+        }
+        final DocumentImpl modified = snapshot.validate(broker);
+        if (modified != null) {
+            final XPathException e = new XPathException((Expression) null, ErrorCodes.EXXQDY0007,
+                    "Document " + modified.getURI() + " was modified after the query ran in snapshot mode");
+            throw new EXistException(e.getMessage(), e);
+        }
+    }
+
+    protected DocumentSnapshot beginSnapshot(final DBBroker broker, final XQueryContext context,
+            @Nullable final NodeSet contextSet, final Map<String, Object> parameters) throws EXistException {
+        final String snapshotColl = (String) parameters.get(RpcAPI.SNAPSHOT_MODE);
+        if (snapshotColl == null) {
+            return null;
+        }
+
+        final DocumentSnapshot snapshot = new DocumentSnapshot();
+        if (contextSet != null) {
+            final LockManager lockManager = broker.getBrokerPool().getLockManager();
+            try {
+                for (final Iterator<DocumentImpl> i = contextSet.getDocumentSet().getDocumentIterator(); i.hasNext(); ) {
+                    snapshot.pin(lockManager, i.next());
+                }
+            } catch (final LockException e) {
+                throw new EXistException("Unable to beginSnapshot: " + e.getMessage(), e);
+            }
+        }
+        context.setStaticallyKnownDocuments(new XmldbURI[] { XmldbURI.createInternal(snapshotColl) });
+        context.setSnapshot(snapshot);
+        return snapshot;
+    }
+
     /**
      * @deprecated Use compileQuery lambda instead!
      * @param broker the broker to use
@@ -2246,6 +2326,7 @@ public class RpcConnection implements RpcAPI {
                 throw new EXistException("result set unknown or timed out");
             }
             qr.touch();
+            checkSnapshot(broker, qr);
             final Item item = qr.result.itemAt(num);
             if (item == null) {
                 throw new EXistException("index out of range");
@@ -2282,6 +2363,7 @@ public class RpcConnection implements RpcAPI {
                 throw new EXistException("result set unknown or timed out: " + resultId);
             }
             qr.touch();
+            checkSnapshot(broker, qr);
             final Item item = qr.result.itemAt(num);
             if (item == null) {
                 throw new EXistException("index out of range");
@@ -2329,6 +2411,67 @@ public class RpcConnection implements RpcAPI {
         });
     }
 
+    @Override
+    public Map<String, Object> retrieveWindow(final int resultId, final int start, final int count, final Map<String, Object> parameters)
+            throws EXistException, PermissionDeniedException {
+        final boolean compression = useCompression(parameters);
+        final Charset encoding = getEncoding(parameters);
+
+        return withDb((broker, transaction) -> {
+            final QueryResult qr = factory.resultSets.getResult(resultId);
+            if (qr == null) {
+                throw new EXistException("result set unknown or timed out: " + resultId);
+            }
+            qr.touch();
+            checkSnapshot(broker, qr);
+            final int hits = qr.result == null ? 0 : qr.result.getItemCount();
+            if (start < 0 || start > hits) {
+                throw new EXistException("index out of range");
+            }
+            for (final Map.Entry<Object, Object> entry : qr.serialization.entrySet()) {
+                parameters.put(entry.getKey().toString(), entry.getValue().toString());
+            }
+            final Properties properties = toProperties(parameters);
+            final int end = (int) Math.min(hits, (long) start + Math.min(Math.max(count, 1), MAX_WINDOW_SIZE));
+
+            final List<Map<String, Object>> items = new ArrayList<>();
+            try (final UnsynchronizedByteArrayOutputStream data = new UnsynchronizedByteArrayOutputStream();
+                    final Writer writer = new OutputStreamWriter(data, encoding)) {
+
+                // always deliver at least one item, but stop early if the window grows too large
+                for (int i = start; i < end && (i == start || data.size() < MAX_DOWNLOAD_CHUNK_SIZE); i++) {
+                    final Item item = qr.result.itemAt(i);
+                    final Map<String, Object> entry = new HashMap<>();
+                    final int offset = data.size();
+                    if (Type.subTypeOf(item.getType(), Type.NODE)) {
+                        final Map<String, String> node = nodeMap(item);
+                        if (node == null) {
+                            entry.put("type", Type.getTypeName(item.getType()));
+                        } else {
+                            entry.putAll(node);
+                        }
+                        serialize(broker, properties, saxSerializer -> saxSerializer.toSAX((NodeValue) item), writer);
+                    } else {
+                        entry.put("type", Type.getTypeName(item.getType()));
+                        writer.write(item.getStringValue());
+                        writer.flush();
+                    }
+                    entry.put("length", data.size() - offset);
+                    items.add(entry);
+                }
+
+                final Map<String, Object> result = new HashMap<>();
+                result.put("hits", hits);
+                result.put("start", start);
+                result.put("items", items);
+                result.put("data", compression ? Compressor.compress(data.toByteArray()) : data.toByteArray());
+                return result;
+            } catch (final XPathException e) {
+                throw new EXistException(e);
+            }
+        });
+    }
+
     @Override
     public byte[] retrieveAll(final int resultId, final Map<String, Object> parameters) throws EXistException,
             PermissionDeniedException {
@@ -2343,6 +2486,7 @@ public class RpcConnection implements RpcAPI {
                 throw new EXistException("result set unknown or timed out");
             }
             qr.touch();
+            checkSnapshot(broker, qr);
 
             final SAXSerializer handler = (SAXSerializer) SerializerPool.getInstance().borrowObject(SAXSerializer.class);
             try (final StringWriter writer = new StringWriter()) {
@@ -2399,6 +2543,7 @@ public class RpcConnection implements RpcAPI {
                 throw new EXistException("result set unknown or timed out");
             }
             qr.touch();
+            checkSnapshot(broker, qr);
             for (final Map.Entry<Object, Object> entry : qr.serialization.entrySet()) {
                 parameters.put(entry.getKey().toString(), entry.getValue().toString());
             }
@@ -43,6 +43,7 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.net.InetAddress;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -61,6 +62,9 @@ public class RpcServlet extends XmlRpcServlet {
 
     private boolean useDefaultUser = DEFAULT_USE_DEFAULT_USER;
     private Charset charset = null;
+    private long resultCacheTimeout = QueryResultCache.DEFAULT_TIMEOUT;
+    private long resultCacheMaxItems = QueryResultCache.DEFAULT_MAX_WEIGHT;
+    private BinaryRpcServer binaryServer = null;
 
     @Override
     public void init(final ServletConfig pConfig) throws ServletException {
@@ -76,7 +80,53 @@ public class RpcServlet extends XmlRpcServlet {
             this.charset = Charset.forName(charset);
         }
 
-        super.init(new FilteredServletConfig(pConfig, paramName -> (!"useDefaultUser".equals(paramName)) && (!"charset".equals(paramName))));
+        final String resultCacheTimeout = pConfig.getInitParameter("resultCacheTimeout");
+        if (resultCacheTimeout != null) {
+            this.resultCacheTimeout = Long.parseLong(resultCacheTimeout);
+        }
+
+        final String resultCacheMaxItems = pConfig.getInitParameter("resultCacheMaxItems");
+        if (resultCacheMaxItems != null) {
+            this.resultCacheMaxItems = Long.parseLong(resultCacheMaxItems);
+        }
+
+        super.init(new FilteredServletConfig(pConfig, paramName -> (!"useDefaultUser".equals(paramName))
+                && (!"charset".equals(paramName))
+                && (!"resultCacheTimeout".equals(paramName))
+                && (!"resultCacheMaxItems".equals(paramName))
+                && (!"binaryPort".equals(paramName))
+                && (!"binaryBindAddress".equals(paramName))
+                && (!"binaryMaxConnections".equals(paramName))
+                && (!"binaryMaxWorkers".equals(paramName))));
+
+        final String binaryPort = pConfig.getInitParameter("binaryPort");
+        if (binaryPort != null && !binaryPort.isEmpty()) {
+            final String binaryBindAddress = pConfig.getInitParameter("binaryBindAddress");
+            final String binaryMaxConnections = pConfig.getInitParameter("binaryMaxConnections");
+            final String binaryMaxWorkers = pConfig.getInitParameter("binaryMaxWorkers");
+            try {
+                binaryServer = new BinaryRpcServer(getXmlRpcServletServer(),
+                        binaryBindAddress != null ? InetAddress.getByName(binaryBindAddress) : null,
+                        Integer.parseInt(binaryPort),
+                        binaryMaxConnections != null ? Integer.parseInt(binaryMaxConnections) : BinaryRpcServer.DEFAULT_MAX_CONNECTIONS,
+                        binaryMaxWorkers != null ? Integer.parseInt(binaryMaxWorkers) : BinaryRpcServer.DEFAULT_MAX_WORKERS);
+            } catch (final IOException e) {
+                throw new ServletException("Failed to start binary RPC server on port " + binaryPort + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (binaryServer != null) {
+            try {
+                binaryServer.close();
+            } catch (final IOException e) {
+                LOG.warn("Failed to stop binary RPC server: {}", e.getMessage(), e);
+            }
+            binaryServer = null;
+        }
+        super.destroy();
     }
 
     @Override
@@ -131,7 +181,7 @@ public class RpcServlet extends XmlRpcServlet {
     protected XmlRpcHandlerMapping newXmlRpcHandlerMapping() throws XmlRpcException {
         final DefaultHandlerMapping mapping = new DefaultHandlerMapping();
         mapping.setVoidMethodEnabled(true);
-        mapping.setRequestProcessorFactoryFactory(new XmldbRequestProcessorFactoryFactory(useDefaultUser));
+        mapping.setRequestProcessorFactoryFactory(new XmldbRequestProcessorFactoryFactory(useDefaultUser, resultCacheTimeout, resultCacheMaxItems));
         mapping.loadDefault(RpcConnection.class);
         return mapping;
     }
@@ -139,10 +189,10 @@ public class RpcServlet extends XmlRpcServlet {
     private static class XmldbRequestProcessorFactoryFactory extends RequestProcessorFactoryFactory.RequestSpecificProcessorFactoryFactory {
         private final AtomicLazyValE<RequestProcessorFactory, XmlRpcException> instance;
 
-        public XmldbRequestProcessorFactoryFactory(final boolean useDefaultUser) {
+        public XmldbRequestProcessorFactoryFactory(final boolean useDefaultUser, final long resultCacheTimeout, final long resultCacheMaxItems) {
             instance = new AtomicLazyValE<>(() -> {
                 try {
-                    return Right(new XmldbRequestProcessorFactory("exist", useDefaultUser));
+                    return Right(new XmldbRequestProcessorFactory("exist", useDefaultUser, new QueryResultCache(resultCacheTimeout, resultCacheMaxItems)));
                 } catch (final EXistException e) {
                     return Left(new XmlRpcException("Failed to initialize XMLRPC interface: " + e.getMessage(), e));
                 }
@@ -155,8 +205,8 @@ public class RpcServlet extends XmlRpcServlet {
         }
     }
 
-    private static class DefaultHandlerMapping extends AbstractReflectiveHandlerMapping {
-        private DefaultHandlerMapping() throws XmlRpcException {
+    static class DefaultHandlerMapping extends AbstractReflectiveHandlerMapping {
+        DefaultHandlerMapping() throws XmlRpcException {
         }
 
         public void loadDefault(final Class<?> clazz) throws XmlRpcException {
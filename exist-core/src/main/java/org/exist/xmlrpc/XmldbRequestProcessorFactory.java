@@ -56,7 +56,7 @@ public class XmldbRequestProcessorFactory implements RequestProcessorFactoryFact
 
     private final boolean useDefaultUser;
     private final BrokerPool brokerPool;
-    protected final QueryResultCache resultSets = new QueryResultCache();
+    protected final QueryResultCache resultSets;
 
     protected final AtomicLazyVal<ExecutorService> restoreExecutorService;
     protected final Map<UUID, Tuple2<RpcConnection.BufferingRestoreListener, Future<Void>>> restoreTasks = new ConcurrentHashMap<>();
@@ -67,7 +67,12 @@ public class XmldbRequestProcessorFactory implements RequestProcessorFactoryFact
     protected String databaseId = BrokerPool.DEFAULT_INSTANCE_NAME;
 
     public XmldbRequestProcessorFactory(final String databaseId, final boolean useDefaultUser) throws EXistException {
+        this(databaseId, useDefaultUser, new QueryResultCache());
+    }
+
+    public XmldbRequestProcessorFactory(final String databaseId, final boolean useDefaultUser, final QueryResultCache resultSets) throws EXistException {
         this.useDefaultUser = useDefaultUser;
+        this.resultSets = resultSets;
         if (databaseId != null && !databaseId.isEmpty()) {
             this.databaseId = databaseId;
         }
@@ -257,6 +257,7 @@ public class ErrorCodes {
     public static final ErrorCode EXXQDY0004 = new EXistErrorCode("EXXQDY0004", "Only Supported for xquery version \"3.1\" and later.");
     public static final ErrorCode EXXQDY0005 = new EXistErrorCode("EXXQDY0005", "No function call details were provided when trying to execute a Library Module.");
     public static final ErrorCode EXXQDY0006 = new EXistErrorCode("EXXQDY0006", "Unable to find named function when trying to execute a Library Module.");
+    public static final ErrorCode EXXQDY0007 = new EXistErrorCode("EXXQDY0007", "A document read in snapshot mode was modified whilst the query was running.");
 
     public static final ErrorCode ERROR = new EXistErrorCode("ERROR", "Error.");
 
@@ -76,6 +76,26 @@ public class Optimizer extends DefaultExpressionVisitor {
         return hasOptimized;
     }
 
+    @Override
+    public void visitOrderByClause(final OrderByClause orderBy) {
+        // check query rewriters if they want to rewrite the sort expressions
+        for (final OrderSpec spec : orderBy.getOrderSpecs()) {
+            for (final QueryRewriter rewriter : rewriters) {
+                try {
+                    final Expression rewritten = rewriter.rewriteOrderSpec(spec);
+                    if (rewritten != null) {
+                        spec.replace(spec.getSortExpression(), rewritten);
+                        hasOptimized = true;
+                        break;
+                    }
+                } catch (final XPathException e) {
+                    LOG.warn("Exception called while rewriting order spec: {}", e.getMessage(), e);
+                }
+            }
+        }
+        super.visitOrderByClause(orderBy);
+    }
+
     @Override
     public void visitLocationStep(final LocationStep locationStep) {
         super.visitLocationStep(locationStep);
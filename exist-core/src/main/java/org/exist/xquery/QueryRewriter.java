@@ -48,6 +48,20 @@ public class QueryRewriter {
         return null;
     }
 
+    /**
+     * Rewrite the sort expression of an "order by" specifier to make use of indexes.
+     * The returned expression must produce the same values as the original sort
+     * expression, so items looked up in the index can be compared with items for
+     * which the original expression had to be evaluated.
+     *
+     * @param orderSpec the order specifier to rewrite
+     * @return an expression to replace the sort expression or null if not applicable
+     * @throws XPathException in case of a static error
+     */
+    public Expression rewriteOrderSpec(OrderSpec orderSpec) throws XPathException {
+        return null;
+    }
+
     protected XQueryContext getContext() {
         return context;
     }
@@ -29,6 +29,7 @@ import org.exist.dom.persistent.NodeProxy;
 import org.exist.dom.persistent.NodeSet;
 import org.exist.numbering.NodeId;
 import org.exist.storage.UpdateListener;
+import org.exist.util.LockException;
 import org.exist.xquery.util.ExpressionDumper;
 import org.exist.xquery.value.*;
 
@@ -146,6 +147,13 @@ public class RootNode extends Step {
                 if (context.inProtectedMode() && !context.getProtectedDocs().containsKey(doc.getDocId()))
                     {continue;}
                 if(doc.getResourceType() == DocumentImpl.XML_FILE) {  // skip binary resources
+                    if (context.getSnapshot() != null) {
+                        try {
+                            context.getSnapshot().pin(context.getBroker().getBrokerPool().getLockManager(), doc);
+                        } catch (final LockException e) {
+                            throw new XPathException(this, "Failed to acquire lock on document " + doc.getURI());
+                        }
+                    }
 	            	result.add(new NodeProxy(this, doc));
 	            }
             }
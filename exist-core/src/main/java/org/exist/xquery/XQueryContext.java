@@ -82,6 +82,7 @@ import org.exist.stax.ExtendedXMLStreamReader;
 import org.exist.storage.BrokerPool;
 import org.exist.storage.DBBroker;
 import org.exist.storage.UpdateListener;
+import org.exist.storage.lock.DocumentSnapshot;
 import org.exist.storage.lock.Lock.LockMode;
 import org.exist.storage.lock.LockedDocumentMap;
 import org.exist.storage.txn.Txn;
@@ -372,6 +373,11 @@ public class XQueryContext implements BinaryValueManager, Context {
 
     private LockedDocumentMap protectedDocuments = null;
 
+    /**
+     * Versions of the documents read by a query in snapshot mode.
+     */
+    private DocumentSnapshot snapshot = null;
+
     /**
      * The profiler instance used by this context.
      */
@@ -1329,6 +1335,16 @@ public class XQueryContext implements BinaryValueManager, Context {
         return protectedDocuments != null;
     }
 
+    @Override
+    public void setSnapshot(@Nullable final DocumentSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    @Override
+    public @Nullable DocumentSnapshot getSnapshot() {
+        return snapshot;
+    }
+
     @Override
     public boolean lockDocumentsOnLoad() {
         return false;
@@ -1484,6 +1500,7 @@ public class XQueryContext implements BinaryValueManager, Context {
         fragmentStack = new ArrayDeque<>();
         callStack.clear();
         protectedDocuments = null;
+        snapshot = null;
 
         cachedUriCollectionResults.clear();
 
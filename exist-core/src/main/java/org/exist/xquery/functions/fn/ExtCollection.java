@@ -219,6 +219,9 @@ public class ExtCollection extends Function {
                     if (!context.inProtectedMode()) {
                         dlock = lockManager.acquireDocumentReadLock(doc.getURI());
                     }
+                    if (context.getSnapshot() != null) {
+                        context.getSnapshot().pin(doc);
+                    }
                     result.add(new NodeProxy(null, doc));
                 } catch (final LockException e) {
                     throw new XPathException(this, ErrorCodes.FODC0002, e);
@@ -22,8 +22,6 @@
 
 package org.exist.xquery.functions.fn.transform;
 
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
 import io.lacuna.bifurcan.IEntry;
 import net.sf.saxon.Configuration;
 import net.sf.saxon.om.StructuredQName;
@@ -35,13 +33,15 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exist.dom.QName;
 import org.exist.dom.memtree.DocumentImpl;
-import org.exist.util.Holder;
+import org.exist.storage.DBBroker;
 import org.exist.xquery.ErrorCodes;
 import org.exist.xquery.XPathException;
 import org.exist.xquery.XQueryContext;
 import org.exist.xquery.functions.fn.FnTransform;
 import org.exist.xquery.functions.map.MapType;
 import org.exist.xquery.value.*;
+import org.exist.xslt.StylesheetCache;
+import org.exist.xslt.StylesheetDependencies;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
@@ -51,7 +51,6 @@ import javax.xml.transform.Source;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.dom.DOMSource;
 import java.net.URI;
-import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -96,11 +95,6 @@ public class Transform {
         }
     };
 
-    private static final Cache<String, XsltExecutable> XSLT_EXECUTABLE_CACHE = Caffeine.newBuilder()
-            .maximumSize(25)
-            .weakValues()
-            .build();
-
     private final XQueryContext context;
     private final FnTransform fnTransform;
 
@@ -118,25 +112,13 @@ public class Transform {
 
         if (options.xsltVersion.equals(V1_0) || options.xsltVersion.equals(V2_0) || options.xsltVersion.equals(V3_0)) {
             try {
-                final Holder<XPathException> compileException = new Holder<>();
                 final XsltExecutable xsltExecutable;
                 if (options.shouldCache.orElse(BooleanValue.TRUE).getValue()) {
-                    xsltExecutable = Transform.XSLT_EXECUTABLE_CACHE.get(executableHash(options), key -> {
-                        try {
-                            return compileExecutable(options);
-                        } catch (final XPathException e) {
-                            compileException.value = e;
-                            return null;
-                        }
-                    });
+                    xsltExecutable = cachedExecutable(options);
                 } else {
-                    xsltExecutable = compileExecutable(options);
+                    xsltExecutable = compileExecutable(options, new StylesheetDependencies());
                 }
 
-                if (compileException.value != null) {
-                    // if we could not compile the xslt, rethrow the error
-                    throw compileException.value;
-                }
                 if (xsltExecutable == null) {
                     throw new XPathException(fnTransform, ErrorCodes.FOXT0003, "Unable to compile stylesheet (No error returned from compilation)");
                 }
@@ -204,7 +186,37 @@ public class Transform {
     }
 
 
-    private XsltExecutable compileExecutable(final Options options) throws XPathException {
+    /**
+     * Get the compiled stylesheet from the {@link StylesheetCache} of the database,
+     * compiling it if it is not cached or any of its modules has been modified since.
+     * A stylesheet which has neither a base URI nor a checksum of its text can not
+     * be identified, so it is compiled without being cached.
+     */
+    private XsltExecutable cachedExecutable(final Options options) throws XPathException {
+        if (!options.resolvedStylesheetBaseURI.isPresent() && !options.sourceTextChecksum.isPresent()) {
+            return compileExecutable(options, new StylesheetDependencies());
+        }
+
+        final DBBroker broker = context.getBroker();
+        final StylesheetCache cache = broker.getBrokerPool().getStylesheetCache();
+        final String key = "fn:transform" + executableHash(options);
+        XsltExecutable xsltExecutable = cache.get(broker, key, XsltExecutable.class);
+        if (xsltExecutable == null) {
+            synchronized (cache.compileLock(key)) {
+                // another thread may have compiled it meanwhile
+                xsltExecutable = cache.get(broker, key, XsltExecutable.class);
+                if (xsltExecutable == null) {
+                    final StylesheetDependencies dependencies = new StylesheetDependencies();
+                    xsltExecutable = compileExecutable(options, dependencies);
+                    cache.put(key, xsltExecutable, dependencies);
+                }
+            }
+        }
+        return xsltExecutable;
+    }
+
+    private XsltExecutable compileExecutable(final Options options, final StylesheetDependencies dependencies) throws XPathException {
+        final DBBroker broker = context.getBroker();
         final XsltCompiler xsltCompiler = org.exist.xquery.functions.fn.transform.Transform.SAXON_PROCESSOR.newXsltCompiler();
         final SingleRequestErrorListener errorListener = new SingleRequestErrorListener(Transform.ERROR_LISTENER);
         xsltCompiler.setErrorListener(errorListener);
@@ -219,8 +231,9 @@ public class Transform {
             xsltCompiler.setParameter(new net.sf.saxon.s9api.QName(qKey.getPrefix(), qKey.getLocalPart()), value);
         }
 
-        // Take URI resolution into our own hands when there is no base
-        xsltCompiler.setURIResolver((href, base) -> {
+        // Take URI resolution into our own hands when there is no base,
+        // recording the included and imported modules
+        xsltCompiler.setURIResolver(dependencies.recording(broker, (href, base) -> {
             try {
                 final URI hrefURI = URI.create(href);
                 if (!options.resolvedStylesheetBaseURI.isPresent() && !hrefURI.isAbsolute() && StringUtils.isEmpty(base)) {
@@ -235,10 +248,11 @@ public class Transform {
             }
             // Pass it back
             return null;
-        });
+        }));
 
         try {
             options.resolvedStylesheetBaseURI.ifPresent(anyURIValue -> options.xsltSource._2.setSystemId(anyURIValue.getStringValue()));
+            addStylesheetDependency(broker, options.xsltSource._2, dependencies);
             return xsltCompiler.compile(options.xsltSource._2); //TODO(AR) need to implement support for xslt-packages
         } catch (final SaxonApiException e) {
             final Optional<Exception> compilerException = errorListener.getWorst().map(e1 -> e1);
@@ -246,6 +260,18 @@ public class Transform {
         }
     }
 
+    private static void addStylesheetDependency(final DBBroker broker, final Source xsltSource, final StylesheetDependencies dependencies) {
+        if (xsltSource instanceof DOMSource) {
+            final Node node = ((DOMSource) xsltSource).getNode();
+            final Document owner = node.getNodeType() == Node.DOCUMENT_NODE ? (Document) node : node.getOwnerDocument();
+            if (owner instanceof org.exist.dom.persistent.DocumentImpl) {
+                dependencies.add(broker, ((org.exist.dom.persistent.DocumentImpl) owner).getURI().toString());
+            }
+        } else if (xsltSource.getSystemId() != null) {
+            dependencies.add(broker, xsltSource.getSystemId());
+        }
+    }
+
     /**
      * Search for an XPathException in the cause chain, and return it "directly"
      * Either an eXist XPathException, which is immediate
@@ -291,13 +317,6 @@ public class Transform {
      * @return a string, the hash we want
      */
     private String executableHash(final Options options) {
-
-        final String uniquifier;
-        if (options.resolvedStylesheetBaseURI.isPresent() || options.sourceTextChecksum.isPresent()) {
-            uniquifier = "";
-        } else {
-            uniquifier = LocalDateTime.now().toString();
-        }
         final String paramHash = Tuple(
                 options.stylesheetParams,
                 options.staticParams).toString();
@@ -305,7 +324,6 @@ public class Transform {
         final String locationHash = Tuple(
                 options.resolvedStylesheetBaseURI.map(AnyURIValue::getStringValue).orElse(""),
                 options.sourceTextChecksum.orElse(0L),
-                uniquifier,
                 options.stylesheetNodeDocumentPath,
                 options.stylesheetNodeDocumentPath).toString();
 
@@ -212,6 +212,10 @@ public class DocUtils {
                         throw new XPathException(expression, "Document " + path + " is a binary resource, not an XML document. Please consider using the function util:binary-doc() to retrieve a reference to it.");
                     }
 
+                    if (context.getSnapshot() != null) {
+                        context.getSnapshot().pin(doc);
+                    }
+
                     return new NodeProxy(expression, doc);
                 }
             }
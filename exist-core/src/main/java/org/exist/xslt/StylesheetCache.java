@@ -0,0 +1,142 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xslt;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.storage.BrokerPoolService;
+import org.exist.storage.DBBroker;
+import org.exist.util.Configuration;
+
+import javax.annotation.Nullable;
+
+/**
+ * Size bounded cache of compiled stylesheets, shared by transform:transform,
+ * fn:transform and the XSLT servlet.
+ *
+ * Entries hold the compiled form ({@link javax.xml.transform.Templates} or
+ * {@link net.sf.saxon.s9api.XsltExecutable}) together with the
+ * {@link StylesheetDependencies} it was compiled from, and are dropped on lookup
+ * once any of the modules has been modified. Compilation of the same key is
+ * serialized, so a stylesheet is compiled only once per modification even if
+ * many requests need it at the same time.
+ *
+ * The size can be configured with the cache-size attribute of the transformer
+ * element in conf.xml.
+ */
+@ThreadSafe
+public class StylesheetCache implements BrokerPoolService {
+
+    private static final Logger LOG = LogManager.getLogger(StylesheetCache.class);
+
+    public static final String CACHE_SIZE_ATTRIBUTE = "cache-size";
+    public static final String PROPERTY_CACHE_SIZE = "transformer.cache-size";
+    public static final int DEFAULT_CACHE_SIZE = 128;
+
+    private static final int COMPILE_LOCKS = 64;
+
+    private final Object[] compileLocks = new Object[COMPILE_LOCKS];
+    private Cache<String, Entry> cache;
+
+    public StylesheetCache() {
+        for (int i = 0; i < COMPILE_LOCKS; i++) {
+            compileLocks[i] = new Object();
+        }
+        this.cache = Caffeine.newBuilder().maximumSize(DEFAULT_CACHE_SIZE).build();
+    }
+
+    @Override
+    public void configure(final Configuration configuration) {
+        final int size = configuration.getProperty(PROPERTY_CACHE_SIZE, DEFAULT_CACHE_SIZE);
+        this.cache = Caffeine.newBuilder().maximumSize(size).build();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Compiled stylesheet cache size: {}", size);
+        }
+    }
+
+    /**
+     * Get a compiled stylesheet, if it is cached and none of its modules has changed.
+     *
+     * @param <T> the type of the compiled stylesheet
+     * @param broker the broker to check the modules with
+     * @param key the cache key
+     * @param type the type of the compiled stylesheet
+     *
+     * @return the compiled stylesheet or null
+     */
+    public @Nullable <T> T get(final DBBroker broker, final String key, final Class<T> type) {
+        final Entry entry = cache.getIfPresent(key);
+        if (entry == null || !type.isInstance(entry.compiled)) {
+            return null;
+        }
+        if (!entry.dependencies.isValid(broker)) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Stylesheet {} has been modified", key);
+            }
+            cache.asMap().remove(key, entry);
+            return null;
+        }
+        return type.cast(entry.compiled);
+    }
+
+    public void put(final String key, final Object compiled, final StylesheetDependencies dependencies) {
+        cache.put(key, new Entry(compiled, dependencies));
+    }
+
+    /**
+     * Get the lock to hold while compiling the stylesheet for a key. Callers check
+     * the cache again after acquiring it, as another thread may have compiled the
+     * stylesheet meanwhile.
+     *
+     * @param key the cache key
+     *
+     * @return the lock object
+     */
+    public Object compileLock(final String key) {
+        return compileLocks[(key.hashCode() & Integer.MAX_VALUE) % COMPILE_LOCKS];
+    }
+
+    public void invalidate(final String key) {
+        cache.invalidate(key);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    private static class Entry {
+        final Object compiled;
+        final StylesheetDependencies dependencies;
+
+        Entry(final Object compiled, final StylesheetDependencies dependencies) {
+            this.compiled = compiled;
+            this.dependencies = dependencies;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xslt;
+
+import net.jcip.annotations.ThreadSafe;
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.DBBroker;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.xmldb.XmldbURI;
+
+import javax.annotation.Nullable;
+import javax.xml.transform.Source;
+import javax.xml.transform.URIResolver;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The modules a stylesheet was compiled from, i.e. the stylesheet itself and all
+ * modules included or imported by it, together with their last modification time
+ * at compile time.
+ *
+ * A compiled stylesheet can be reused as long as none of its modules has been
+ * modified or removed since. Database documents are checked by their last modified
+ * time, files and other URLs by the time reported by the file system or the server.
+ * If a server does not report a modification time, the stylesheet is never reused.
+ * Asking a server costs a round trip, so remote modules are checked at most once
+ * every {@link #REMOTE_CHECK_INTERVAL} milliseconds, and are assumed unchanged in
+ * between.
+ */
+@ThreadSafe
+public class StylesheetDependencies {
+
+    private static final long MISSING = -1;
+    private static final long UNKNOWN = 0;
+
+    static final long REMOTE_CHECK_INTERVAL = 10_000;
+
+    private final Map<String, Long> modules = new ConcurrentHashMap<>();
+    private final long remoteCheckInterval;
+    private volatile long remoteCheckedAt = System.currentTimeMillis();
+
+    public StylesheetDependencies() {
+        this(REMOTE_CHECK_INTERVAL);
+    }
+
+    StylesheetDependencies(final long remoteCheckInterval) {
+        this.remoteCheckInterval = remoteCheckInterval;
+    }
+
+    /**
+     * Record a module of the stylesheet.
+     *
+     * @param broker the broker to look up database documents
+     * @param uri the uri of the module, a database path, xmldb: or any other URL
+     */
+    public void add(final DBBroker broker, final String uri) {
+        // not computeIfAbsent, as looking up a document acquires locks
+        if (!modules.containsKey(uri)) {
+            modules.putIfAbsent(uri, lastModified(broker, uri));
+        }
+    }
+
+    /**
+     * Wrap a URI resolver to record every module resolved by it while compiling.
+     *
+     * @param broker the broker to look up database documents
+     * @param resolver the resolver to wrap, or null if the processor resolves URIs itself
+     *
+     * @return a resolver recording the resolved modules
+     */
+    public URIResolver recording(final DBBroker broker, @Nullable final URIResolver resolver) {
+        return (href, base) -> {
+            final Source source = resolver == null ? null : resolver.resolve(href, base);
+            String uri = source == null ? null : source.getSystemId();
+            if (uri == null) {
+                uri = resolve(href, base);
+            }
+            if (uri != null) {
+                add(broker, uri);
+            }
+            return source;
+        };
+    }
+
+    /**
+     * Check if all modules are unchanged since they were recorded.
+     *
+     * @param broker the broker to look up database documents
+     *
+     * @return true if the compiled stylesheet may be reused
+     */
+    public boolean isValid(final DBBroker broker) {
+        final long now = System.currentTimeMillis();
+        final boolean checkRemote = now - remoteCheckedAt >= remoteCheckInterval;
+        for (final Map.Entry<String, Long> module : modules.entrySet()) {
+            final long recorded = module.getValue();
+            if (recorded == MISSING || recorded == UNKNOWN) {
+                return false;
+            }
+            if (!checkRemote && isRemote(module.getKey())) {
+                continue;
+            }
+            if (lastModified(broker, module.getKey()) != recorded) {
+                return false;
+            }
+        }
+        if (checkRemote) {
+            remoteCheckedAt = now;
+        }
+        return true;
+    }
+
+    public int size() {
+        return modules.size();
+    }
+
+    private static boolean isRemote(final String uri) {
+        return !(uri.startsWith("/") || uri.startsWith(XmldbURI.XMLDB_URI_PREFIX) || uri.startsWith("file:"));
+    }
+
+    private static @Nullable String resolve(final String href, @Nullable final String base) {
+        try {
+            if (base == null || base.isEmpty()) {
+                return new URI(href).isAbsolute() ? href : null;
+            }
+            return new URI(base).resolve(href).toString();
+        } catch (final URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    static long lastModified(final DBBroker broker, final String uri) {
+        try {
+            String path = uri;
+            if (path.startsWith(XmldbURI.XMLDB_URI_PREFIX)) {
+                path = XmldbURI.create(path).getCollectionPath();
+            }
+            if (path.startsWith("/")) {
+                try (final LockedDocument lockedDocument = broker.getXMLResource(XmldbURI.create(path), LockMode.READ_LOCK)) {
+                    return lockedDocument == null ? MISSING : lockedDocument.getDocument().getLastModified();
+                }
+            }
+
+            final URI location = new URI(uri);
+            if ("file".equals(location.getScheme())) {
+                return Files.getLastModifiedTime(Paths.get(location)).toMillis();
+            }
+
+            final URLConnection connection = location.toURL().openConnection();
+            if (connection instanceof HttpURLConnection) {
+                ((HttpURLConnection) connection).setRequestMethod("HEAD");
+                try {
+                    return connection.getLastModified();
+                } finally {
+                    ((HttpURLConnection) connection).disconnect();
+                }
+            }
+            return connection.getLastModified();
+        } catch (final IOException | URISyntaxException | PermissionDeniedException | IllegalArgumentException e) {
+            return MISSING;
+        }
+    }
+}
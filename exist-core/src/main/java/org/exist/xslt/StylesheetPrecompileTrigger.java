@@ -0,0 +1,185 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xslt;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.StartupTrigger;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.txn.Txn;
+import org.exist.util.LockException;
+import org.exist.util.NamedThreadFactory;
+import org.exist.xmldb.XmldbURI;
+
+import javax.xml.transform.TransformerException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Startup trigger which compiles stylesheets into the {@link StylesheetCache}, so
+ * that the first transformations after a restart do not pay for compilation:
+ *
+ * <pre>
+ * &lt;trigger class="org.exist.xslt.StylesheetPrecompileTrigger"&gt;
+ *     &lt;parameter name="collection" value="/db/apps/tei/xslt"/&gt;
+ *     &lt;parameter name="stylesheet" value="xmldb:exist:///db/apps/site/page.xsl"/&gt;
+ *     &lt;parameter name="threads" value="4"/&gt;
+ * &lt;/trigger&gt;
+ * </pre>
+ *
+ * All .xsl and .xslt documents in a collection and its sub-collections are compiled.
+ * Compilation runs in parallel in the background once the database is operational,
+ * so it does not delay the startup.
+ */
+public class StylesheetPrecompileTrigger implements StartupTrigger {
+
+    private static final Logger LOG = LogManager.getLogger(StylesheetPrecompileTrigger.class);
+
+    public static final String COLLECTION_PARAM = "collection";
+    public static final String STYLESHEET_PARAM = "stylesheet";
+    public static final String THREADS_PARAM = "threads";
+
+    private static final long OPERATIONAL_POLL_INTERVAL = 500;
+
+    @Override
+    public void execute(final DBBroker sysBroker, final Txn transaction, final Map<String, List<? extends Object>> params) {
+        final List<String> collections = getParamValues(params, COLLECTION_PARAM);
+        final List<String> stylesheets = getParamValues(params, STYLESHEET_PARAM);
+        if (collections.isEmpty() && stylesheets.isEmpty()) {
+            return;
+        }
+
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        final List<String> threadsParam = getParamValues(params, THREADS_PARAM);
+        if (!threadsParam.isEmpty()) {
+            try {
+                threads = Math.max(1, Integer.parseInt(threadsParam.get(0)));
+            } catch (final NumberFormatException e) {
+                LOG.warn("Invalid value for parameter {}: {}", THREADS_PARAM, threadsParam.get(0));
+            }
+        }
+
+        // the system broker must not be used outside of execute, the workers acquire their own
+        final BrokerPool pool = sysBroker.getBrokerPool();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, new NamedThreadFactory(pool, "xslt.precompile"));
+        executor.execute(() -> {
+            try {
+                if (!awaitOperational(pool)) {
+                    return;
+                }
+                final List<String> uris = new ArrayList<>(stylesheets);
+                try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+                    for (final String collection : collections) {
+                        collectStylesheets(broker, XmldbURI.create(collection), uris);
+                    }
+                }
+                LOG.info("Precompiling {} stylesheets", uris.size());
+                for (final String uri : uris) {
+                    executor.execute(() -> precompile(pool, uri));
+                }
+            } catch (final EXistException | PermissionDeniedException | LockException e) {
+                LOG.error("Unable to find stylesheets to precompile: {}", e.getMessage(), e);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                // lets the already submitted tasks complete
+                executor.shutdown();
+            }
+        });
+    }
+
+    private static boolean awaitOperational(final BrokerPool pool) throws InterruptedException {
+        while (!pool.isOperational()) {
+            if (pool.isShuttingDownOrDown()) {
+                return false;
+            }
+            Thread.sleep(OPERATIONAL_POLL_INTERVAL);
+        }
+        return true;
+    }
+
+    private static void collectStylesheets(final DBBroker broker, final XmldbURI collectionUri, final List<String> uris)
+            throws PermissionDeniedException, LockException {
+        final List<XmldbURI> subCollections = new ArrayList<>();
+        try (final Collection collection = broker.openCollection(collectionUri, LockMode.READ_LOCK)) {
+            if (collection == null) {
+                LOG.warn("Collection {} not found", collectionUri);
+                return;
+            }
+            for (final Iterator<DocumentImpl> i = collection.iterator(broker); i.hasNext(); ) {
+                final DocumentImpl doc = i.next();
+                final String name = doc.getFileURI().toString();
+                if (doc.getResourceType() == DocumentImpl.XML_FILE && (name.endsWith(".xsl") || name.endsWith(".xslt"))) {
+                    // same form of uri as used by transform:transform
+                    uris.add(XmldbURI.XMLDB_URI_PREFIX + broker.getBrokerPool().getId() + "://" + doc.getURI());
+                }
+            }
+            for (final Iterator<XmldbURI> i = collection.collectionIterator(broker); i.hasNext(); ) {
+                subCollections.add(collectionUri.append(i.next()));
+            }
+        }
+        for (final XmldbURI subCollection : subCollections) {
+            collectStylesheets(broker, subCollection, uris);
+        }
+    }
+
+    private static void precompile(final BrokerPool pool, final String uri) {
+        final long start = System.currentTimeMillis();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            TemplatesFactory.stylesheet(uri, "", true).templates(broker, new XSLTErrorsListener<TransformerException>(true, false) {
+                @Override
+                protected void raiseError(final String error, final TransformerException ex) throws TransformerException {
+                    throw ex;
+                }
+            });
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Precompiled stylesheet {} in {}ms", uri, System.currentTimeMillis() - start);
+            }
+        } catch (final Exception e) {
+            LOG.warn("Unable to precompile stylesheet {}: {}", uri, e.getMessage());
+        }
+    }
+
+    private static List<String> getParamValues(final Map<String, List<? extends Object>> params, final String paramName) {
+        final List<String> result = new ArrayList<>();
+        final List<? extends Object> values = params.get(paramName);
+        if (values != null) {
+            for (final Object value : values) {
+                if (value != null) {
+                    result.add(value.toString());
+                }
+            }
+        }
+        return result;
+    }
+}
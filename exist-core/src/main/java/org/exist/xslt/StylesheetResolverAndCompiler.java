@@ -24,9 +24,9 @@ package org.exist.xslt;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
-import java.net.URLConnection;
 import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
 import javax.xml.transform.Templates;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.URIResolver;
@@ -54,6 +54,10 @@ import static org.exist.xslt.XsltURIResolverHelper.getXsltURIResolver;
 /**
  * {@link javax.xml.transform.Templates} resolver and compiler.
  *
+ * Compiled templates are kept in the {@link StylesheetCache} of the database,
+ * and recompiled once the stylesheet or any module it includes or imports
+ * has been modified.
+ *
  * @author <a href="mailto:shabanovd@gmail.com">Dmitriy Shabanov</a>
  */
 @ThreadSafe
@@ -63,14 +67,13 @@ public class StylesheetResolverAndCompiler implements Stylesheet {
 
   SAXTransformerFactory factory;
 
-  long lastModified = -1;
-  Templates templates = null;
-
   String uri;
   String base;
 
   Properties properties;
 
+  boolean useCache = true;
+
   public StylesheetResolverAndCompiler(String uri) {
     this.uri = uri;
 
@@ -88,41 +91,72 @@ public class StylesheetResolverAndCompiler implements Stylesheet {
     this.properties = properties;
   }
 
+  public StylesheetResolverAndCompiler(String uri, Properties properties, boolean useCache) {
+    this(uri, properties);
+
+    this.useCache = useCache;
+  }
+
   public <E extends Exception> Templates templates(DBBroker broker, XSLTErrorsListener<E> errorListener)
       throws E, TransformerConfigurationException, IOException, PermissionDeniedException, SAXException {
 
+    if (!useCache) {
+      return compile(broker, errorListener, new StylesheetDependencies());
+    }
+
+    final StylesheetCache cache = broker.getBrokerPool().getStylesheetCache();
+    final String key = cacheKey(uri, properties);
+    Templates templates = cache.get(broker, key, Templates.class);
+    if (templates == null) {
+      synchronized (cache.compileLock(key)) {
+        // another thread may have compiled it meanwhile
+        templates = cache.get(broker, key, Templates.class);
+        if (templates == null) {
+          final StylesheetDependencies dependencies = new StylesheetDependencies();
+          templates = compile(broker, errorListener, dependencies);
+          cache.put(key, templates, dependencies);
+        }
+      }
+    }
+    return templates;
+  }
+
+  static String cacheKey(String uri, Properties properties) {
+    if (properties == null || properties.isEmpty()) {
+      return uri;
+    }
+    // factory attributes change the compiled result
+    return uri + '#' + new TreeMap<>(properties);
+  }
+
+  private <E extends Exception> Templates compile(DBBroker broker, XSLTErrorsListener<E> errorListener,
+      StylesheetDependencies dependencies)
+      throws E, TransformerConfigurationException, IOException, PermissionDeniedException, SAXException {
+
     if (uri.startsWith(XmldbURI.EMBEDDED_SERVER_URI_PREFIX)) {
       final String docPath = uri.substring(XmldbURI.EMBEDDED_SERVER_URI_PREFIX.length());
+      dependencies.add(broker, docPath);
       try (final LockedDocument lockedDocument = broker.getXMLResource(XmldbURI.create(docPath), LockMode.READ_LOCK)) {
         if (lockedDocument == null) {
           throw new IOException("XSL stylesheet not found: "+docPath);
         }
         final DocumentImpl doc = lockedDocument.getDocument();
-        if (templates == null || doc.getLastModified() > lastModified) {
-          if (LOG.isDebugEnabled()) {
-            LOG.debug("compiling stylesheet {}", doc.getURI());
-          }
-          templates = compileTemplates(broker, doc, errorListener);
-          lastModified = doc.getLastModified();
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("compiling stylesheet {}", doc.getURI());
         }
+        return compileTemplates(broker, doc, errorListener, dependencies);
       }
 
     } else {
       final URL url = new URL(uri);
-      final URLConnection connection = url.openConnection();
-      long modified = connection.getLastModified();
-      if (templates == null || modified > lastModified || modified == 0) {
-        if (LOG.isDebugEnabled()) {
-          LOG.debug("compiling stylesheet {}", url);
-        }
-        try (final InputStream is = connection.getInputStream()) {
-          templates = factory(broker.getBrokerPool(), errorListener).newTemplates(new StreamSource(is));
-        }
+      dependencies.add(broker, uri);
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("compiling stylesheet {}", url);
+      }
+      try (final InputStream is = url.openStream()) {
+        return factory(broker, errorListener, dependencies).newTemplates(new StreamSource(is));
       }
-      lastModified = modified;
     }
-
-    return templates;
   }
 
   @Override
@@ -140,12 +174,13 @@ public class StylesheetResolverAndCompiler implements Stylesheet {
   private <E extends Exception> Templates compileTemplates(
       DBBroker broker,
       DocumentImpl stylesheet,
-      XSLTErrorsListener<E> errorListener)
+      XSLTErrorsListener<E> errorListener,
+      StylesheetDependencies dependencies)
       throws E, TransformerConfigurationException, SAXException
   {
     //factory.setURIResolver(new EXistURIResolver(broker, stylesheet.getCollection().getURI().toString()));
 
-    final TemplatesHandler handler = factory(broker.getBrokerPool(), errorListener).newTemplatesHandler();
+    final TemplatesHandler handler = factory(broker, errorListener, dependencies).newTemplatesHandler();
     handler.setSystemId(stylesheet.getBaseURI());
     handler.startDocument();
 
@@ -184,7 +219,9 @@ public class StylesheetResolverAndCompiler implements Stylesheet {
     return factory;
   }
 
-  private <E extends Exception> SAXTransformerFactory factory(BrokerPool db, XSLTErrorsListener<E> errorListener) {
+  private <E extends Exception> SAXTransformerFactory factory(DBBroker broker, XSLTErrorsListener<E> errorListener,
+      StylesheetDependencies dependencies) {
+    final BrokerPool db = broker.getBrokerPool();
     SAXTransformerFactory newFactory = TransformerFactoryAllocator.getTransformerFactory(db);
 
     if (properties != null) {
@@ -194,9 +231,9 @@ public class StylesheetResolverAndCompiler implements Stylesheet {
       }
     }
 
-    // setup any URI resolvers
+    // setup any URI resolvers, recording the included and imported modules
     final URIResolver uriResolver = getXsltURIResolver(db, newFactory.getURIResolver(), base, true);
-    newFactory.setURIResolver(uriResolver);
+    newFactory.setURIResolver(dependencies.recording(broker, uriResolver));
 
     newFactory.setErrorListener(errorListener);
     return newFactory;
@@ -21,6 +21,8 @@
  */
 package org.exist.xslt;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -28,8 +30,6 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import javax.xml.transform.Templates;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.URIResolver;
@@ -50,40 +50,34 @@ import org.xml.sax.SAXException;
 import static org.exist.xslt.XsltURIResolverHelper.getXsltURIResolver;
 
 /**
- * Factory for stylesheet resolver and compiler instances
- * and if instance is safe for reuse then it cached.
+ * Factory for stylesheet resolver and compiler instances.
+ * If caching is requested, the compiled templates are kept in
+ * the {@link StylesheetCache} of the database.
  *
  * @author <a href="mailto:shabanovd@gmail.com">Dmitriy Shabanov</a>
  */
 @ThreadSafe
 public class TemplatesFactory {
 
-  private final static ConcurrentMap<String, StylesheetResolverAndCompiler> cache = new ConcurrentHashMap<>();
+  // reuses the transformer factories, the compiled templates are held by the StylesheetCache
+  private final static Cache<String, StylesheetResolverAndCompiler> cache = Caffeine.newBuilder()
+      .maximumSize(StylesheetCache.DEFAULT_CACHE_SIZE)
+      .build();
 
   public static Stylesheet stylesheet(String stylesheet, String baseUri, Properties properties, boolean useCache) {
 
-    if (useCache && properties == null) {
-      return stylesheet(stylesheet, baseUri);
-    }
-
     String uri = uri(stylesheet, baseUri);
 
-    return new StylesheetResolverAndCompiler(uri, properties);
-  }
-
-  private static Stylesheet stylesheet(String stylesheet, String baseUri) {
-
-    String uri = uri(stylesheet, baseUri);
+    if (!useCache) {
+      return new StylesheetResolverAndCompiler(uri, properties, false);
+    }
 
-    return cache.computeIfAbsent(uri, StylesheetResolverAndCompiler::new);
+    return cache.get(StylesheetResolverAndCompiler.cacheKey(uri, properties),
+        key -> new StylesheetResolverAndCompiler(uri, properties));
   }
 
   public static Stylesheet stylesheet(String stylesheet, String baseUri, boolean useCache) {
-    if (useCache) {
-      return stylesheet(stylesheet, baseUri);
-    } else {
-      return new StylesheetResolverAndCompiler(uri(stylesheet, baseUri));
-    }
+    return stylesheet(stylesheet, baseUri, null, useCache);
   }
 
   private static String uri(String stylesheet, String baseUri) {
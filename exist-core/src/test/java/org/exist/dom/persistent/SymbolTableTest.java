@@ -31,12 +31,21 @@ import org.exist.storage.io.VariableByteOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.exist.util.Configuration;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import static org.easymock.EasyMock.*;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -223,6 +232,40 @@ public class SymbolTableTest {
         symbolTable.close();
     }
 
+    @Test
+    public void concurrentGetSymbol() throws IOException, BrokerPoolServiceException, InterruptedException, ExecutionException {
+        final SymbolTable symbolTable = createSymbolTable(createTempDir());
+        final int threads = 8;
+        final int names = 500;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<short[]>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(() -> {
+                    final short[] ids = new short[names];
+                    for (int i = 0; i < names; i++) {
+                        ids[i] = symbolTable.getSymbol("name-" + i);
+                        assertEquals("name-" + i, symbolTable.getName(ids[i]));
+                    }
+                    return ids;
+                }));
+            }
+
+            final short[] expected = results.get(0).get();
+            for (final Future<short[]> result : results) {
+                assertArrayEquals(expected, result.get());
+            }
+            final Set<Short> distinct = new HashSet<>();
+            for (final short id : expected) {
+                distinct.add(id);
+            }
+            assertEquals(names, distinct.size());
+        } finally {
+            executor.shutdownNow();
+            symbolTable.close();
+        }
+    }
+
     private static Path createTempDir() throws IOException {
         return Files.createTempDirectory("exist-symbolTableTest");
     }
@@ -0,0 +1,172 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.http;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+public class BinaryDocumentSenderTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void parseRange() {
+        assertArrayEquals(new long[] { 0, 99 }, BinaryDocumentSender.parseRange("bytes=0-99", 1000));
+        assertArrayEquals(new long[] { 500, 999 }, BinaryDocumentSender.parseRange("bytes=500-", 1000));
+        assertArrayEquals(new long[] { 900, 999 }, BinaryDocumentSender.parseRange("bytes=-100", 1000));
+        assertArrayEquals(new long[] { 0, 999 }, BinaryDocumentSender.parseRange("bytes=-5000", 1000));
+        assertArrayEquals(new long[] { 990, 999 }, BinaryDocumentSender.parseRange("bytes=990-2000", 1000));
+    }
+
+    @Test
+    public void parseIgnoredRange() {
+        assertNull(BinaryDocumentSender.parseRange("items=0-99", 1000));
+        assertNull(BinaryDocumentSender.parseRange("bytes=0-9,20-29", 1000));
+        assertNull(BinaryDocumentSender.parseRange("bytes=99-0", 1000));
+        assertNull(BinaryDocumentSender.parseRange("bytes=abc", 1000));
+        assertNull(BinaryDocumentSender.parseRange("bytes=a-b", 1000));
+    }
+
+    @Test
+    public void parseUnsatisfiableRange() {
+        assertEquals(0, BinaryDocumentSender.parseRange("bytes=1000-", 1000).length);
+        assertEquals(0, BinaryDocumentSender.parseRange("bytes=-0", 1000).length);
+        assertEquals(0, BinaryDocumentSender.parseRange("bytes=0-", 0).length);
+    }
+
+    @Test
+    public void transfer() throws IOException {
+        final Path file = temporaryFolder.newFile().toPath();
+        Files.write(file, "0123456789".getBytes(UTF_8));
+
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            BinaryDocumentSender.transfer(channel, 3, 4, Channels.newChannel(os));
+        }
+        assertEquals("3456", new String(os.toByteArray(), UTF_8));
+    }
+
+    @Test(expected = IOException.class)
+    public void transferBeyondEnd() throws IOException {
+        final Path file = temporaryFolder.newFile().toPath();
+        Files.write(file, "0123456789".getBytes(UTF_8));
+
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            BinaryDocumentSender.transfer(channel, 8, 4, Channels.newChannel(new ByteArrayOutputStream()));
+        }
+    }
+
+    @Test
+    public void rangeIsCheckedAgainstFile() throws IOException {
+        final Path file = temporaryFolder.newFile().toPath();
+        Files.write(file, "0123456789".getBytes(UTF_8));
+
+        final HttpServletRequest request = mockRequest("bytes=5-99");
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final HttpServletResponse response = createNiceMock(HttpServletResponse.class);
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        expectLastCall();
+        response.setHeader("Content-Range", "bytes 5-9/10");
+        expectLastCall();
+        response.setHeader("Content-Length", "5");
+        expectLastCall();
+        expect(response.getOutputStream()).andReturn(new BodyOutputStream(body));
+        replay(request, response);
+
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            BinaryDocumentSender.sendContent(channel, 0, "\"etag\"", request, response);
+        }
+
+        verify(response);
+        assertEquals("56789", new String(body.toByteArray(), UTF_8));
+    }
+
+    @Test
+    public void rangeBeyondFileIsUnsatisfiable() throws IOException {
+        final Path file = temporaryFolder.newFile().toPath();
+        Files.write(file, "0123456789".getBytes(UTF_8));
+
+        final HttpServletRequest request = mockRequest("bytes=10-");
+        final HttpServletResponse response = createStrictMock(HttpServletResponse.class);
+        response.setHeader("Accept-Ranges", "bytes");
+        expectLastCall();
+        response.setHeader("Content-Range", "bytes */10");
+        expectLastCall();
+        response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+        expectLastCall();
+        replay(request, response);
+
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            BinaryDocumentSender.sendContent(channel, 0, "\"etag\"", request, response);
+        }
+
+        verify(response);
+    }
+
+    private static HttpServletRequest mockRequest(final String range) {
+        final HttpServletRequest request = createNiceMock(HttpServletRequest.class);
+        expect(request.getMethod()).andStubReturn("GET");
+        expect(request.getHeader("Range")).andStubReturn(range);
+        expect(request.getHeader("If-Range")).andStubReturn(null);
+        return request;
+    }
+
+    private static class BodyOutputStream extends ServletOutputStream {
+        private final ByteArrayOutputStream body;
+
+        BodyOutputStream(final ByteArrayOutputStream body) {
+            this.body = body;
+        }
+
+        @Override
+        public void write(final int b) {
+            body.write(b);
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(final WriteListener writeListener) {
+        }
+    }
+}
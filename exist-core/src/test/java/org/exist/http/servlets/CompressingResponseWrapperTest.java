@@ -0,0 +1,194 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.http.servlets;
+
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+public class CompressingResponseWrapperTest {
+
+    @Test
+    public void acceptsGzip() {
+        assertFalse(CompressingResponseWrapper.acceptsGzip(null));
+        assertFalse(CompressingResponseWrapper.acceptsGzip(""));
+        assertFalse(CompressingResponseWrapper.acceptsGzip("deflate, br"));
+        assertTrue(CompressingResponseWrapper.acceptsGzip("gzip"));
+        assertTrue(CompressingResponseWrapper.acceptsGzip("deflate, GZIP;q=0.5"));
+        assertTrue(CompressingResponseWrapper.acceptsGzip("x-gzip"));
+        assertTrue(CompressingResponseWrapper.acceptsGzip("*"));
+        assertFalse(CompressingResponseWrapper.acceptsGzip("gzip;q=0"));
+        assertFalse(CompressingResponseWrapper.acceptsGzip("*, gzip;q=0.0"));
+        assertFalse(CompressingResponseWrapper.acceptsGzip("identity, *;q=0"));
+    }
+
+    @Test
+    public void isCompressible() {
+        assertTrue(CompressingResponseWrapper.isCompressible("text/html; charset=UTF-8"));
+        assertTrue(CompressingResponseWrapper.isCompressible("application/xml"));
+        assertTrue(CompressingResponseWrapper.isCompressible("application/xhtml+xml"));
+        assertTrue(CompressingResponseWrapper.isCompressible("application/json;charset=utf-8"));
+        assertFalse(CompressingResponseWrapper.isCompressible(null));
+        assertFalse(CompressingResponseWrapper.isCompressible("image/png"));
+        assertFalse(CompressingResponseWrapper.isCompressible("application/octet-stream"));
+    }
+
+    @Test
+    public void compressesTextualContent() throws Exception {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final HttpServletResponse response = mockResponse(body, "application/xml");
+        response.setHeader("Content-Encoding", "gzip");
+        expectLastCall();
+        replay(response);
+
+        final StringBuilder content = new StringBuilder("<root>");
+        for (int i = 0; i < 10000; i++) {
+            content.append("<item n=\"").append(i).append("\">some text</item>");
+        }
+        content.append("</root>");
+        final byte[] data = content.toString().getBytes(UTF_8);
+
+        CompressingResponseWrapper.process(mockRequest("gzip, deflate"), response, true, res -> {
+            res.setContentLength(data.length);
+            final ServletOutputStream os = res.getOutputStream();
+            os.write(data, 0, 100);
+            os.flush();
+            os.write(data, 100, data.length - 100);
+        });
+
+        verify(response);
+        assertTrue(body.size() < data.length / 4);
+        try (final InputStream is = new GZIPInputStream(new ByteArrayInputStream(body.toByteArray()))) {
+            assertArrayEquals(data, is.readAllBytes());
+        }
+    }
+
+    @Test
+    public void passesThroughBinaryContent() throws Exception {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final HttpServletResponse response = mockResponse(body, "image/png");
+        response.setContentLengthLong(4);
+        expectLastCall();
+        replay(response);
+
+        final byte[] data = { 1, 2, 3, 4 };
+        CompressingResponseWrapper.process(mockRequest("gzip"), response, true, res -> {
+            res.addHeader("Content-Length", "4");
+            res.getOutputStream().write(data);
+        });
+
+        verify(response);
+        assertArrayEquals(data, body.toByteArray());
+    }
+
+    @Test
+    public void keepsContentLengthWithoutBody() throws Exception {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final HttpServletResponse response = mockResponse(body, "text/plain");
+        response.setContentLengthLong(0);
+        expectLastCall();
+        replay(response);
+
+        CompressingResponseWrapper.process(mockRequest("gzip"), response, true, res -> {
+            res.setContentLength(0);
+            res.getOutputStream();
+        });
+
+        verify(response);
+        assertEquals(0, body.size());
+    }
+
+    @Test
+    public void keepsContentLengthWhenClosedWithoutBody() throws Exception {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final HttpServletResponse response = mockResponse(body, "text/plain");
+        response.setContentLengthLong(0);
+        expectLastCall();
+        replay(response);
+
+        CompressingResponseWrapper.process(mockRequest("gzip"), response, true, res -> {
+            res.setHeader("Content-Length", "0");
+            res.getOutputStream().close();
+        });
+
+        verify(response);
+        assertEquals(0, body.size());
+    }
+
+    @Test
+    public void notAccepted() throws Exception {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final HttpServletResponse response = mockResponse(body, "text/plain");
+        replay(response);
+
+        CompressingResponseWrapper.process(mockRequest("identity"), response, true, res -> {
+            assertSame(response, res);
+            res.getOutputStream().write("hello".getBytes(UTF_8));
+        });
+
+        assertEquals("hello", body.toString(UTF_8));
+    }
+
+    private static HttpServletRequest mockRequest(final String acceptEncoding) {
+        final HttpServletRequest request = createNiceMock(HttpServletRequest.class);
+        expect(request.getHeader("Accept-Encoding")).andStubReturn(acceptEncoding);
+        expect(request.getDispatcherType()).andStubReturn(DispatcherType.REQUEST);
+        replay(request);
+        return request;
+    }
+
+    private static HttpServletResponse mockResponse(final ByteArrayOutputStream body, final String contentType)
+            throws IOException {
+        final HttpServletResponse response = createNiceMock(HttpServletResponse.class);
+        expect(response.getContentType()).andStubReturn(contentType);
+        expect(response.getStatus()).andStubReturn(HttpServletResponse.SC_OK);
+        expect(response.getOutputStream()).andStubReturn(new ServletOutputStream() {
+            @Override
+            public void write(final int b) {
+                body.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(final WriteListener writeListener) {
+            }
+        });
+        return response;
+    }
+}
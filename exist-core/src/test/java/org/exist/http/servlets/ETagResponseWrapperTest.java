@@ -0,0 +1,145 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.http.servlets;
+
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+public class ETagResponseWrapperTest {
+
+    private static final byte[] DATA = "<result>hello</result>".getBytes(UTF_8);
+
+    @Test
+    public void sendsETag() throws Exception {
+        final String etag = ETagResponseWrapper.getETag(DATA, DATA.length);
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final HttpServletResponse response = mockResponse(body);
+        response.setHeader("ETag", etag);
+        expectLastCall();
+        response.setContentLength(DATA.length);
+        expectLastCall();
+        replay(response);
+
+        ETagResponseWrapper.process(mockRequest("GET", null), response, true, res -> {
+            final ServletOutputStream os = res.getOutputStream();
+            os.write(DATA, 0, 5);
+            os.flush();
+            os.write(DATA, 5, DATA.length - 5);
+        });
+
+        verify(response);
+        assertArrayEquals(DATA, body.toByteArray());
+    }
+
+    @Test
+    public void notModified() throws Exception {
+        final String etag = ETagResponseWrapper.getETag(DATA, DATA.length);
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final HttpServletResponse response = mockResponse(body);
+        response.setHeader("ETag", etag);
+        expectLastCall();
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        expectLastCall();
+        replay(response);
+
+        // a weak tag from a compressed response matches as well
+        ETagResponseWrapper.process(mockRequest("GET", "\"other\", W/" + etag), response, true,
+                res -> res.getOutputStream().write(DATA));
+
+        verify(response);
+        assertEquals(0, body.size());
+    }
+
+    @Test
+    public void streamsLargeBody() throws Exception {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final HttpServletResponse response = mockResponse(body);
+        response.setHeader(eq("ETag"), anyString());
+        expectLastCall().andThrow(new AssertionError("no ETag expected")).anyTimes();
+        replay(response);
+
+        final byte[] chunk = new byte[ETagResponseWrapper.MAX_BUFFER_SIZE / 2 + 1];
+        ETagResponseWrapper.process(mockRequest("GET", null), response, true, res -> {
+            res.getOutputStream().write(chunk);
+            res.getOutputStream().write(chunk);
+        });
+
+        verify(response);
+        assertEquals(chunk.length * 2, body.size());
+    }
+
+    @Test
+    public void passesThroughPost() throws Exception {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final HttpServletResponse response = mockResponse(body);
+        replay(response);
+
+        ETagResponseWrapper.process(mockRequest("POST", null), response, true, res -> {
+            assertSame(response, res);
+            res.getOutputStream().write(DATA);
+        });
+
+        assertArrayEquals(DATA, body.toByteArray());
+    }
+
+    private static HttpServletRequest mockRequest(final String method, final String ifNoneMatch) {
+        final HttpServletRequest request = createNiceMock(HttpServletRequest.class);
+        expect(request.getMethod()).andStubReturn(method);
+        expect(request.getHeader("If-None-Match")).andStubReturn(ifNoneMatch);
+        expect(request.getDispatcherType()).andStubReturn(DispatcherType.REQUEST);
+        replay(request);
+        return request;
+    }
+
+    private static HttpServletResponse mockResponse(final ByteArrayOutputStream body) throws IOException {
+        final HttpServletResponse response = createNiceMock(HttpServletResponse.class);
+        expect(response.getContentType()).andStubReturn("application/xml");
+        expect(response.getStatus()).andStubReturn(HttpServletResponse.SC_OK);
+        expect(response.getOutputStream()).andStubReturn(new ServletOutputStream() {
+            @Override
+            public void write(final int b) {
+                body.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(final WriteListener writeListener) {
+            }
+        });
+        return response;
+    }
+}
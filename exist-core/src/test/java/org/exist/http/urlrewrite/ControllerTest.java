@@ -49,6 +49,8 @@ public class ControllerTest extends AbstractHttpTest {
     private static final String CONTROLLER_XQUERY = "<controller>xq</controller>";
     private static final String LEGACY_CONTROLLER_XQUERY = "<controller>xql</controller>";
     private static final String TEST_DOCUMENT_NAME = "test.xml";
+    private static final String CACHING_CONTROLLER_XQUERY =
+            "<dispatch xmlns=\"http://exist.sourceforge.net/NS/exist\"><cache-control cache=\"yes\"/></dispatch>";
 
     @Rule
     public final ExistWebServer existWebServer = new ExistWebServer(true, false, true, true, false);
@@ -93,6 +95,35 @@ public class ControllerTest extends AbstractHttpTest {
         assertEquals(CONTROLLER_XQUERY, responseCodeAndBody._2);
     }
 
+    @Test
+    public void cachedPassThroughExecutesXQuery() throws IOException {
+        final String testCollectionName = "test-cached-pass-through-executes-xquery";
+
+        store(testCollectionName, "application/xquery", XQUERY_CONTROLLER_FILENAME, CACHING_CONTROLLER_XQUERY);
+        store(testCollectionName, "application/xquery", "hello.xq", "<hello>{1 + 1}</hello>");
+
+        // the second request uses the cached controller decision
+        for (int i = 0; i < 2; i++) {
+            final Tuple2<Integer, String> responseCodeAndBody = get(testCollectionName, "hello.xq");
+            assertEquals(HttpStatus.SC_OK, (int)responseCodeAndBody._1);
+            assertEquals("<hello>2</hello>", responseCodeAndBody._2.trim());
+        }
+    }
+
+    @Test
+    public void cachedPassThroughServesBinary() throws IOException {
+        final String testCollectionName = "test-cached-pass-through-serves-binary";
+
+        store(testCollectionName, "application/xquery", XQUERY_CONTROLLER_FILENAME, CACHING_CONTROLLER_XQUERY);
+        store(testCollectionName, "text/plain", "hello.txt", "hello world");
+
+        for (int i = 0; i < 2; i++) {
+            final Tuple2<Integer, String> responseCodeAndBody = get(testCollectionName, "hello.txt");
+            assertEquals(HttpStatus.SC_OK, (int)responseCodeAndBody._1);
+            assertEquals("hello world", responseCodeAndBody._2);
+        }
+    }
+
     private void store(final String testCollectionName, final String documentMediaType, final String documentName, final String documentContent) throws IOException {
         final Request request = Request
                 .Put(getRestUri(existWebServer) + "/db/apps/" + testCollectionName + "/" + documentName)
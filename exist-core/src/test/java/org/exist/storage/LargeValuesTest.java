@@ -25,6 +25,7 @@ import org.exist.EXistException;
 import org.exist.collections.Collection;
 import org.exist.collections.CollectionConfigurationException;
 import org.exist.collections.triggers.TriggerException;
+import org.exist.dom.persistent.IStoredNode;
 import org.exist.dom.persistent.LockedDocument;
 import org.exist.security.PermissionDeniedException;
 import org.exist.storage.lock.Lock.LockMode;
@@ -37,7 +38,9 @@ import org.exist.util.*;
 import org.exist.xmldb.XmldbURI;
 import org.exist.TestUtils;
 
+
 import org.junit.*;
+import org.w3c.dom.Node;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
@@ -77,6 +80,35 @@ public class LargeValuesTest {
         remove();
     }
 
+    @Test
+    public void largeOverflowTextNodeValue() throws EXistException, PermissionDeniedException, IOException, SAXException, LockException {
+        final StringBuilder text = new StringBuilder();
+        final Random r = new Random(42);
+        while (text.length() < 200_000) {
+            text.append((char) ('A' + r.nextInt(26)));
+        }
+        final String xml = "<test>" + text + "</test>";
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try(final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            try(final Txn transaction = transact.beginTransaction()) {
+                final Collection root = broker.getOrCreateCollection(transaction, TestConstants.TEST_COLLECTION_URI);
+                broker.saveCollection(transaction, root);
+                broker.storeDocument(transaction, XmldbURI.create("large-text.xml"), new StringInputSource(xml), MimeType.XML_TYPE, root);
+                transact.commit(transaction);
+            }
+
+            try(final LockedDocument lockedDoc = broker.getXMLResource(TestConstants.TEST_COLLECTION_URI.append("large-text.xml"), LockMode.READ_LOCK)) {
+                assertNotNull(lockedDoc);
+                final IStoredNode textNode = (IStoredNode) lockedDoc.getDocument().getDocumentElement().getFirstChild();
+                assertEquals(Node.TEXT_NODE, textNode.getNodeType());
+
+                assertEquals(text.toString(), broker.getNodeValue(textNode, false));
+            }
+        }
+    }
+
     /**
      * Store some documents, reindex the collection and crash without commit.
      */
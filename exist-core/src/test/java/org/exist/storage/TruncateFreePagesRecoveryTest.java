@@ -0,0 +1,197 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.sync.Sync;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.test.TestConstants;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.LockException;
+import org.exist.util.MimeType;
+import org.exist.util.StringInputSource;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.value.Sequence;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+/**
+ * Cuts off free pages from the storage files and checks that the database
+ * still opens and recovers afterwards.
+ */
+public class TruncateFreePagesRecoveryTest {
+
+    private static final int DOCUMENTS = 20;
+    private static final int ITEMS = 500;
+
+    @Rule
+    public ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @After
+    public void cleanup() {
+        // restore the flag in-case of a test failure
+        BrokerPool.FORCE_CORRUPTION = false;
+    }
+
+    @Test
+    public void truncateAndRestart() throws EXistException, PermissionDeniedException, IOException, SAXException,
+            LockException, XPathException, DatabaseConfigurationException {
+        store("removed", true);
+        remove("removed");
+        assertTrue(truncate() > 0);
+
+        store("kept", true);
+        existEmbeddedServer.restart();
+
+        verify("kept", true);
+        verify("removed", false);
+
+        // the pages cut off are appended again
+        store("added", true);
+        existEmbeddedServer.restart();
+
+        verify("kept", true);
+        verify("added", true);
+    }
+
+    @Test
+    public void truncateAndRecover() throws EXistException, PermissionDeniedException, IOException, SAXException,
+            LockException, XPathException, DatabaseConfigurationException {
+        store("removed", true);
+        remove("removed");
+        assertTrue(truncate() > 0);
+
+        store("kept", true);
+        // the following transaction will not be committed, it will thus be rolled back by recovery
+        store("uncommitted", false);
+
+        // flush journal
+        existEmbeddedServer.getBrokerPool().getJournalManager().get().flush(true, false);
+
+        // restart with no Journal checkpoint, forces recovery to run at startup
+        BrokerPool.FORCE_CORRUPTION = true;
+        existEmbeddedServer.restart();
+        BrokerPool.FORCE_CORRUPTION = false;
+
+        verify("kept", true);
+        verify("uncommitted", false);
+        verify("removed", false);
+
+        // the recovered files can be truncated again and keep working
+        remove("kept");
+        truncate();
+        store("added", true);
+        existEmbeddedServer.restart();
+
+        verify("kept", false);
+        verify("added", true);
+    }
+
+    private void store(final String prefix, final boolean commit) throws EXistException, PermissionDeniedException,
+            IOException, SAXException, LockException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Txn transaction = transact.beginTransaction();
+            final Collection test = broker.getOrCreateCollection(transaction, TestConstants.TEST_COLLECTION_URI);
+            broker.saveCollection(transaction, test);
+
+            for (int i = 0; i < DOCUMENTS; i++) {
+                final StringBuilder xml = new StringBuilder("<items prefix=\"").append(prefix).append("\">");
+                for (int j = 0; j < ITEMS; j++) {
+                    xml.append("<item n=\"").append(j).append("\">").append(prefix).append(' ').append(j).append("</item>");
+                }
+                xml.append("</items>");
+                broker.storeDocument(transaction, XmldbURI.create(prefix + i + ".xml"), new StringInputSource(xml.toString()), MimeType.XML_TYPE, test);
+            }
+
+            if (commit) {
+                transact.commit(transaction);
+                transaction.close();
+            }
+        }
+    }
+
+    private void remove(final String prefix) throws EXistException, PermissionDeniedException, IOException,
+            LockException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = transact.beginTransaction();
+                final Collection test = broker.openCollection(TestConstants.TEST_COLLECTION_URI, LockMode.WRITE_LOCK)) {
+            for (int i = 0; i < DOCUMENTS; i++) {
+                test.removeXMLResource(transaction, broker, XmldbURI.create(prefix + i + ".xml"));
+            }
+            transact.commit(transaction);
+        }
+    }
+
+    /**
+     * Runs a checkpoint and then cuts off the free pages, as the
+     * {@link DefragmentationTask} does.
+     */
+    private long truncate() throws EXistException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            pool.sync(broker, Sync.MAJOR);
+            return ((NativeBroker) broker).truncateFreePages();
+        }
+    }
+
+    private void verify(final String prefix, final boolean exists) throws EXistException, PermissionDeniedException,
+            XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            for (int i = 0; i < DOCUMENTS; i++) {
+                final XmldbURI docUri = TestConstants.TEST_COLLECTION_URI.append(prefix + i + ".xml");
+                try (final LockedDocument lockedDoc = broker.getXMLResource(docUri, LockMode.READ_LOCK)) {
+                    if (exists) {
+                        assertNotNull("Document " + docUri + " should exist", lockedDoc);
+                    } else {
+                        assertNull("Document " + docUri + " should not exist", lockedDoc);
+                    }
+                }
+            }
+
+            final XQuery xquery = pool.getXQueryService();
+            final Sequence result = xquery.execute(broker,
+                    "count(collection('" + TestConstants.TEST_COLLECTION_URI + "')/items[@prefix = '" + prefix + "']/item[starts-with(., '" + prefix + " ')])",
+                    null);
+            assertEquals(String.valueOf(exists ? DOCUMENTS * ITEMS : 0), result.getStringValue());
+        }
+    }
+}
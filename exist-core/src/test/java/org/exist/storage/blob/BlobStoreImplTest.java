@@ -63,6 +63,7 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 
 public class BlobStoreImplTest {
 
@@ -73,13 +74,17 @@ public class BlobStoreImplTest {
     private final Random random = new Random();
 
     private static BlobStore newBlobStore(final Path blobDbx, final Path blobDir) {
+        return newBlobStore(blobDbx, blobDir, BlobStoreImpl.DEFAULT_COMPACT_MIN_ENTRIES);
+    }
+
+    private static BlobStore newBlobStore(final Path blobDbx, final Path blobDir, final int compactMinEntries) {
         final Database database = createNiceMock(Database.class);
         expect(database.getThreadGroup()).andReturn(Thread.currentThread().getThreadGroup());
         expect(database.getId()).andReturn("BlobStoreTest").times(2);
         expect(database.getJournalManager()).andReturn(Optional.empty()).anyTimes();
         replay(database);
 
-        return new BlobStoreImpl(database, blobDbx, blobDir, DIGEST_TYPE);
+        return new BlobStoreImpl(database, blobDbx, blobDir, DIGEST_TYPE, compactMinEntries);
     }
 
     @Test
@@ -306,6 +311,59 @@ public class BlobStoreImplTest {
         assertEquals(expectedBlobDbxLen, actualBlobDbxLen);
     }
 
+    @Test
+    public void compactPersistentReferencesOnline() throws IOException, InterruptedException {
+        final Path blobDbx = temporaryFolder.getRoot().toPath().resolve("blob.dbx");
+        final Path blobDir = temporaryFolder.newFolder("blob").toPath();
+
+        try (final BlobStoreImpl blobStore = (BlobStoreImpl) newBlobStore(blobDbx, blobDir, 4)) {
+            blobStore.open();
+
+            // add and then remove 4 blobs, leaving 4 garbage entries once they have been vacuumed
+            final List<BlobId> removed = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                removed.add(addAndVerify(blobStore, generateTestFile()));
+            }
+            for (final BlobId blobId : removed) {
+                blobStore.remove(null, blobId);
+            }
+            for (final BlobId blobId : removed) {
+                waitFor(() -> blobStore.getReferenceCount(blobId) == null);
+            }
+
+            // once the file holds twice as many entries as there are blobs, it is compacted
+            final List<Tuple2<BlobId, Tuple2<byte[], MessageDigest>>> added = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                final Tuple2<byte[], MessageDigest> testFile = generateTestFile();
+                added.add(Tuple(addAndVerify(blobStore, testFile), testFile));
+            }
+
+            final long expectedBlobDbxLen = calculateBlobStoreSize(4);
+            waitFor(() -> Files.size(blobDbx) == expectedBlobDbxLen);
+
+            for (final Tuple2<BlobId, Tuple2<byte[], MessageDigest>> blob : added) {
+                getAndVerify(blobStore, blob._1, blob._2);
+                assertEquals(Integer.valueOf(1), blobStore.getReferenceCount(blob._1));
+            }
+
+            // the persistent writer keeps appending to the compacted file
+            final Tuple2<byte[], MessageDigest> testFile = generateTestFile();
+            added.add(Tuple(addAndVerify(blobStore, testFile), testFile));
+            final long expectedGrownBlobDbxLen = calculateBlobStoreSize(5);
+            waitFor(() -> Files.size(blobDbx) == expectedGrownBlobDbxLen);
+        }
+
+        // the persistent file must still be valid after reopening
+        try (final BlobStoreImpl blobStore = (BlobStoreImpl) newBlobStore(blobDbx, blobDir, 4)) {
+            blobStore.open();
+            for (final Tuple2<BlobId, Tuple2<byte[], MessageDigest>> blob : added) {
+                getAndVerify(blobStore, blob._1, blob._2);
+                assertEquals(Integer.valueOf(1), blobStore.getReferenceCount(blob._1));
+            }
+        }
+        assertEquals(calculateBlobStoreSize(5), Files.size(blobDbx));
+    }
+
     /**
      * A blind copy is where the same resource
      * is added to the blob store twice, if the
@@ -406,6 +464,21 @@ public class BlobStoreImplTest {
         }
     }
 
+    private static void waitFor(final Condition condition) throws IOException, InterruptedException {
+        final long timeout = System.currentTimeMillis() + 10_000;
+        while (!condition.test()) {
+            if (System.currentTimeMillis() > timeout) {
+                fail("Timed out waiting for the blob store");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Condition {
+        boolean test() throws IOException;
+    }
+
     private long calculateBlobStoreSize(final int numRecords) {
         return BlobStoreImpl.BLOB_STORE_HEADER_LEN + (numRecords * (DIGEST_TYPE.getDigestLengthBytes() + BlobStoreImpl.REFERENCE_COUNT_LEN));
     }
@@ -23,6 +23,8 @@ package org.exist.storage.btree;
 
 import org.exist.EXistException;
 import org.exist.storage.BrokerPool;
+import org.exist.storage.index.BFile;
+import org.exist.storage.lock.ManagedLock;
 import org.exist.test.ExistEmbeddedServer;
 import org.exist.util.*;
 import org.exist.xquery.TerminatedException;
@@ -42,6 +44,7 @@ import java.nio.file.Paths;
 import java.util.Map;
 import java.util.Random;
 import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Low-level tests on the B+tree.
@@ -350,6 +353,113 @@ public class BTreeTest {
         }
     }
 
+    @Test
+    public void flushAtMostMaxPages() throws DBException, IOException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try(final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+
+            for (int i = 1; i <= COUNT; i++) {
+                btree.addValue(new Value("F" + Integer.toString(i)), i);
+            }
+
+            assertEquals(0, btree.flush(0));
+            assertEquals(5, btree.flush(5));
+            // the other pages are still dirty
+            assertTrue(btree.flush(Integer.MAX_VALUE) > 0);
+            assertEquals(0, btree.flush(Integer.MAX_VALUE));
+
+            for (int i = 1; i <= COUNT; i++) {
+                assertEquals(i, btree.findValue(new Value("F" + Integer.toString(i))));
+            }
+        }
+    }
+
+    @Test
+    public void bfileFlushAtMostMaxPages() throws DBException, IOException, LockException, ReadOnlyException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try(final BFile bfile = new BFile(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, file, pool.getCacheManager(), 1.4, 0.07);
+                final ManagedLock<ReentrantLock> fileLock = pool.getLockManager().acquireBtreeWriteLock(bfile.getLockName())) {
+            bfile.create();
+
+            final byte[] data = new byte[100];
+            for (int i = 1; i <= COUNT; i++) {
+                bfile.put(new Value("F" + Integer.toString(i)), data, true);
+            }
+
+            assertEquals(5, bfile.flush(5));
+            // the other index and data pages are still dirty
+            assertTrue(bfile.flush(Integer.MAX_VALUE) > 0);
+            assertEquals(0, bfile.flush(Integer.MAX_VALUE));
+        }
+    }
+
+    @Test
+    public void truncateFreePages() throws DBException, IOException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final long pageSize;
+        final long headerSize;
+        try(final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+            pageSize = btree.getFileHeader().getPageSize();
+            headerSize = btree.getFileHeader().getHeaderSize();
+
+            // page 0 is the root node, add pages 1 to 10
+            for (int i = 1; i <= 10; i++) {
+                final Paged.Page page = btree.getFreePage();
+                assertEquals(i, page.getPageNum());
+                btree.writeValue(page, new Value("P" + Integer.toString(i)));
+            }
+            btree.unlinkPages(3);
+            btree.unlinkPages(9);
+            btree.unlinkPages(5);
+            btree.unlinkPages(10);
+            btree.unlinkPages(8);
+
+            assertEquals(3, btree.truncateFreePages());
+            assertEquals(8, btree.getFileHeader().getTotalCount());
+            assertEquals(headerSize + (8 * pageSize), Files.size(file));
+            // nothing left to cut off
+            assertEquals(0, btree.truncateFreePages());
+        }
+
+        try(final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            assertTrue(btree.open(BTREE_TEST_FILE_VERSION));
+            assertEquals(8, btree.getFileHeader().getTotalCount());
+            assertEquals(3, btree.getFileHeader().getFirstFreePage());
+            assertEquals(5, btree.getFileHeader().getLastFreePage());
+            assertEquals(headerSize + (8 * pageSize), Files.size(file));
+
+            // the remaining free pages are reused lowest first, then the file grows again
+            assertEquals(3, btree.getFreePage().getPageNum());
+            assertEquals(5, btree.getFreePage().getPageNum());
+            assertEquals(8, btree.getFreePage().getPageNum());
+            assertEquals(9, btree.getFileHeader().getTotalCount());
+        }
+    }
+
+    @Test
+    public void truncateFreePagesInWriteBatch() throws DBException, IOException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try(final BTree btree = new BTree(pool, BTREE_TEST_FILE_ID, BTREE_TEST_FILE_VERSION, false, pool.getCacheManager(), file)) {
+            btree.create((short) -1);
+            final long pageSize = btree.getFileHeader().getPageSize();
+            final long headerSize = btree.getFileHeader().getHeaderSize();
+
+            btree.beginWriteBatch();
+            for (int i = 1; i <= 10; i++) {
+                btree.writeValue(btree.getFreePage(), new Value("P" + Integer.toString(i)));
+            }
+            btree.unlinkPages(9);
+            btree.unlinkPages(10);
+            assertEquals(2, btree.truncateFreePages());
+            btree.endWriteBatch();
+
+            // the pages still pending in the batch must not extend the file again
+            assertEquals(headerSize + (9 * pageSize), Files.size(file));
+        }
+    }
+
     @ClassRule
     public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
 
@@ -0,0 +1,133 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LRUCacheTest {
+
+    @Test
+    public void flushWritesDirtyItemsInKeyOrder() {
+        final List<Long> written = new ArrayList<>();
+        final LRUCache<Item> cache = new LRUCache<>("test", 16, 1.0, 0.75, Cache.CacheType.DATA);
+        for (final long key : new long[] { 7, 3, 12, 5, 1 }) {
+            cache.add(new Item(key, key != 5, written));
+        }
+
+        assertTrue(cache.flush());
+        assertEquals(Arrays.asList(1L, 3L, 7L, 12L), written);
+        assertFalse(cache.hasDirtyItems());
+    }
+
+    @Test
+    public void flushAtMostMaxItems() {
+        final List<Long> written = new ArrayList<>();
+        final LRUCache<Item> cache = new LRUCache<>("test", 16, 1.0, 0.75, Cache.CacheType.DATA);
+        for (long key = 10; key > 0; key--) {
+            cache.add(new Item(key, true, written));
+        }
+
+        assertEquals(4, cache.flush(4));
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L), written);
+
+        assertEquals(6, cache.flush(100));
+        assertEquals(10, written.size());
+        assertEquals(0, cache.flush(100));
+    }
+
+    private static class Item implements Cacheable {
+        private final long key;
+        private final List<Long> written;
+        private boolean dirty;
+        private int refCount = 0;
+        private int timestamp = 0;
+
+        Item(final long key, final boolean dirty, final List<Long> written) {
+            this.key = key;
+            this.dirty = dirty;
+            this.written = written;
+        }
+
+        @Override
+        public long getKey() {
+            return key;
+        }
+
+        @Override
+        public int getReferenceCount() {
+            return refCount;
+        }
+
+        @Override
+        public int incReferenceCount() {
+            return ++refCount;
+        }
+
+        @Override
+        public int decReferenceCount() {
+            return --refCount;
+        }
+
+        @Override
+        public void setReferenceCount(final int count) {
+            this.refCount = count;
+        }
+
+        @Override
+        public void setTimestamp(final int timestamp) {
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public int getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public boolean sync(final boolean syncJournal) {
+            if (!dirty) {
+                return false;
+            }
+            written.add(key);
+            dirty = false;
+            return true;
+        }
+
+        @Override
+        public boolean allowUnload() {
+            return true;
+        }
+
+        @Override
+        public boolean isDirty() {
+            return dirty;
+        }
+    }
+}
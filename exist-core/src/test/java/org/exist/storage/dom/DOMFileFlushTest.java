@@ -0,0 +1,75 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.dom;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.NativeBroker;
+import org.exist.storage.lock.Lock;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.util.MimeType;
+import org.exist.util.StringInputSource;
+import org.exist.xmldb.XmldbURI;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DOMFileFlushTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @Test
+    public void flushAtMostMaxPages() throws EXistException, PermissionDeniedException, LockException, SAXException, IOException {
+        final StringBuilder xml = new StringBuilder("<root>");
+        for (int i = 0; i < 5000; i++) {
+            xml.append("<item n=\"").append(i).append("\">some text to fill the data pages</item>");
+        }
+        xml.append("</root>");
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            try (final Txn transaction = pool.getTransactionManager().beginTransaction();
+                    final Collection collection = broker.openCollection(XmldbURI.ROOT_COLLECTION_URI, Lock.LockMode.WRITE_LOCK)) {
+                broker.storeDocument(transaction, XmldbURI.create("flush.xml"), new StringInputSource(xml.toString()), MimeType.XML_TYPE, collection);
+                transaction.commit();
+            }
+
+            final NativeBroker nativeBroker = (NativeBroker) broker;
+            assertEquals(5, nativeBroker.flushDirtyPages(5));
+            // the other pages are still dirty
+            assertTrue(nativeBroker.flushDirtyPages(Integer.MAX_VALUE) > 0);
+            assertEquals(0, nativeBroker.flushDirtyPages(Integer.MAX_VALUE));
+        }
+    }
+}
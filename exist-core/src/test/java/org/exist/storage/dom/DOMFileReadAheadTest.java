@@ -0,0 +1,185 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.dom;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.NativeBroker;
+import org.exist.storage.StorageAddress;
+import org.exist.storage.lock.Lock;
+import org.exist.storage.lock.ManagedLock;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.LockException;
+import org.exist.util.MimeType;
+import org.exist.util.StringInputSource;
+import org.exist.xmldb.XmldbURI;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.exist.storage.btree.Paged.Page.NO_PAGE;
+import static org.junit.Assert.*;
+
+public class DOMFileReadAheadTest {
+
+    @Rule
+    public final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @Test
+    public void readAheadLoadsFollowingPages() throws EXistException, PermissionDeniedException, LockException,
+            SAXException, IOException, DatabaseConfigurationException, InterruptedException {
+        final List<Long> chain = store("read-ahead.xml");
+        assertTrue(chain.size() > DOMFile.DEFAULT_READ_AHEAD + 1);
+
+        // start with an empty page cache
+        existEmbeddedServer.restart();
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final DOMFile domDb = ((NativeBroker) broker).getDOMFile();
+            try (final ManagedLock<ReentrantLock> domFileLock = pool.getLockManager().acquireBtreeReadLock(domDb.getLockName())) {
+                for (int i = 1; i < chain.size(); i++) {
+                    assertFalse(domDb.isCached(chain.get(i)));
+                }
+                assertEquals(DOMFile.DEFAULT_READ_AHEAD / 2, domDb.readAhead(domDb.getDOMPage(chain.get(0))));
+            }
+
+            // the pages are loaded in the background
+            final long lastPage = chain.get(DOMFile.DEFAULT_READ_AHEAD);
+            final long timeout = System.currentTimeMillis() + 10_000;
+            while (!isCached(pool, domDb, lastPage)) {
+                if (System.currentTimeMillis() > timeout) {
+                    fail("Timed out waiting for read-ahead");
+                }
+                Thread.sleep(10);
+            }
+
+            try (final ManagedLock<ReentrantLock> domFileLock = pool.getLockManager().acquireBtreeReadLock(domDb.getLockName())) {
+                for (int i = 1; i <= DOMFile.DEFAULT_READ_AHEAD; i++) {
+                    assertTrue(domDb.isCached(chain.get(i)));
+                }
+                assertFalse(domDb.isCached(chain.get(DOMFile.DEFAULT_READ_AHEAD + 1)));
+            }
+        }
+    }
+
+    @Test
+    public void changedChainIsNotLoaded() throws EXistException, PermissionDeniedException, LockException,
+            SAXException, IOException, DatabaseConfigurationException {
+        final List<Long> chain = store("relinked.xml");
+        final List<Long> removedChain = store("removed.xml");
+
+        // start with an empty page cache
+        existEmbeddedServer.restart();
+        remove("removed.xml");
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final DOMFile domDb = ((NativeBroker) broker).getDOMFile();
+            try (final ManagedLock<ReentrantLock> domFileLock = pool.getLockManager().acquireBtreeReadLock(domDb.getLockName())) {
+                // the chain was relinked after the read-ahead was requested, the page no longer follows the first one
+                domDb.loadAhead(chain.get(0), chain.get(2));
+                assertFalse(domDb.isCached(chain.get(2)));
+                assertFalse(domDb.isCached(chain.get(3)));
+
+                // the pages were freed after the read-ahead was requested
+                domDb.loadAhead(removedChain.get(0), removedChain.get(1));
+                assertFalse(domDb.isCached(removedChain.get(1)));
+                assertFalse(domDb.isCached(removedChain.get(2)));
+
+                // the unchanged chain is loaded
+                domDb.loadAhead(chain.get(0), chain.get(1));
+                assertTrue(domDb.isCached(chain.get(1)));
+                assertTrue(domDb.isCached(chain.get(2)));
+            }
+        }
+    }
+
+    private static boolean isCached(final BrokerPool pool, final DOMFile domDb, final long pageNum) throws LockException {
+        try (final ManagedLock<ReentrantLock> domFileLock = pool.getLockManager().acquireBtreeReadLock(domDb.getLockName())) {
+            return domDb.isCached(pageNum);
+        }
+    }
+
+    /**
+     * Store a document spanning many data pages.
+     *
+     * @return the chain of data pages of the document
+     */
+    private List<Long> store(final String docName) throws EXistException, PermissionDeniedException, LockException,
+            SAXException, IOException {
+        final StringBuilder xml = new StringBuilder("<root>");
+        for (int i = 0; i < 5000; i++) {
+            xml.append("<item n=\"").append(i).append("\">some text to fill the data pages</item>");
+        }
+        xml.append("</root>");
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            try (final Txn transaction = pool.getTransactionManager().beginTransaction();
+                    final Collection collection = broker.openCollection(XmldbURI.ROOT_COLLECTION_URI, Lock.LockMode.WRITE_LOCK)) {
+                broker.storeDocument(transaction, XmldbURI.create(docName), new StringInputSource(xml.toString()), MimeType.XML_TYPE, collection);
+                transaction.commit();
+            }
+
+            final long firstChildAddress;
+            try (final LockedDocument lockedDoc = broker.getXMLResource(XmldbURI.ROOT_COLLECTION_URI.append(docName), Lock.LockMode.READ_LOCK)) {
+                assertNotNull(lockedDoc);
+                firstChildAddress = lockedDoc.getDocument().getFirstChildAddress();
+            }
+
+            final DOMFile domDb = ((NativeBroker) broker).getDOMFile();
+            final List<Long> chain = new ArrayList<>();
+            try (final ManagedLock<ReentrantLock> domFileLock = pool.getLockManager().acquireBtreeReadLock(domDb.getLockName())) {
+                long pageNum = StorageAddress.pageFromPointer(firstChildAddress);
+                while (pageNum != NO_PAGE) {
+                    chain.add(pageNum);
+                    pageNum = domDb.getDOMPage(pageNum).getPageHeader().getNextDataPage();
+                }
+            }
+            return chain;
+        }
+    }
+
+    private void remove(final String docName) throws EXistException, PermissionDeniedException, LockException,
+            IOException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = pool.getTransactionManager().beginTransaction();
+                final Collection collection = broker.openCollection(XmldbURI.ROOT_COLLECTION_URI, Lock.LockMode.WRITE_LOCK)) {
+            collection.removeXMLResource(transaction, broker, XmldbURI.create(docName));
+            transaction.commit();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.dom;
+
+import org.exist.storage.Signatures;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public class OverflowCompressionTest {
+
+    @Test
+    public void roundTrip() throws IOException {
+        final byte[] value = textNode(20_000);
+        final byte[] compressed = OverflowCompression.compress(value);
+        assertNotNull(compressed);
+        assertTrue(compressed.length < value.length);
+        assertTrue(OverflowCompression.isCompressed(compressed));
+        assertArrayEquals(value, OverflowCompression.decompress(compressed));
+    }
+
+    @Test
+    public void incompressibleValueIsNotCompressed() {
+        final byte[] value = new byte[8192];
+        new Random(42).nextBytes(value);
+        value[0] = (byte) (Signatures.Char << 0x5);
+        assertNull(OverflowCompression.compress(value));
+    }
+
+    @Test
+    public void uncompressedNodesAreNotMistakenForCompressed() {
+        for (int type = Signatures.Char; type <= Signatures.Cdata; type++) {
+            final byte[] value = textNode(100);
+            value[0] = (byte) ((type << 0x5) | 0x1F);
+            assertFalse(OverflowCompression.isCompressed(value));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptData() throws IOException {
+        final byte[] compressed = OverflowCompression.compress(textNode(20_000));
+        assertNotNull(compressed);
+        final byte[] truncated = new byte[compressed.length / 2];
+        System.arraycopy(compressed, 0, truncated, 0, truncated.length);
+        OverflowCompression.decompress(truncated);
+    }
+
+    private static byte[] textNode(final int length) {
+        final StringBuilder builder = new StringBuilder(length);
+        while (builder.length() < length) {
+            builder.append("<p>The quick brown fox jumps over the lazy dog.</p>");
+        }
+        final byte[] text = builder.toString().getBytes(UTF_8);
+        final byte[] value = new byte[text.length + 1];
+        value[0] = (byte) (Signatures.Char << 0x5);
+        System.arraycopy(text, 0, value, 1, text.length);
+        return value;
+    }
+}
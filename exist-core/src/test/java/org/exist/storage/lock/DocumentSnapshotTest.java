@@ -0,0 +1,105 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.lock;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.test.TestConstants;
+import org.exist.util.LockException;
+import org.exist.util.MimeType;
+import org.exist.util.StringInputSource;
+import org.exist.xmldb.XmldbURI;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+public class DocumentSnapshotTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    private static final XmldbURI DOC_URI = XmldbURI.create("snapshot.xml");
+
+    @Test
+    public void unmodifiedDocumentIsValid() throws EXistException, PermissionDeniedException, IOException, SAXException, LockException {
+        store("<test>1</test>");
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final DocumentSnapshot snapshot = pin(broker);
+            assertEquals(1, snapshot.size());
+            assertNull(snapshot.validate(broker));
+        }
+    }
+
+    @Test
+    public void modifiedDocumentIsReported() throws EXistException, PermissionDeniedException, IOException, SAXException, LockException {
+        store("<test>1</test>");
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final DocumentSnapshot snapshot = pin(broker);
+
+            // a writer replaces the document without waiting for the reader
+            store("<test>2</test>");
+
+            final DocumentImpl modified = snapshot.validate(broker);
+            assertNotNull(modified);
+            assertEquals(TestConstants.TEST_COLLECTION_URI.append(DOC_URI), modified.getURI());
+        }
+    }
+
+    private static DocumentSnapshot pin(final DBBroker broker) throws PermissionDeniedException {
+        final DocumentSnapshot snapshot = new DocumentSnapshot();
+        try (final LockedDocument lockedDocument = broker.getXMLResource(TestConstants.TEST_COLLECTION_URI.append(DOC_URI), LockMode.READ_LOCK)) {
+            assertNotNull(lockedDocument);
+            snapshot.pin(lockedDocument.getDocument());
+        }
+        return snapshot;
+    }
+
+    private static void store(final String xml) throws EXistException, PermissionDeniedException, IOException, SAXException, LockException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = transact.beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, TestConstants.TEST_COLLECTION_URI);
+            broker.saveCollection(transaction, collection);
+            broker.storeDocument(transaction, DOC_URI, new StringInputSource(xml), MimeType.XML_TYPE, collection);
+            transact.commit(transaction);
+        }
+    }
+}
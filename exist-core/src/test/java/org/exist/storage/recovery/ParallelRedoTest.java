@@ -0,0 +1,133 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.recovery;
+
+import org.exist.storage.journal.AbstractLoggable;
+import org.exist.storage.journal.FileLoggable;
+import org.exist.storage.journal.LogException;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParallelRedoTest {
+
+    private static final byte TEST_LOG_TYPE = 0x7F;
+
+    @Test
+    public void entriesOfOneFileAreRedoneInOrder() throws LogException {
+        final Map<Byte, List<Integer>> redone = new HashMap<>();
+        for (byte fileId = 0; fileId < 6; fileId++) {
+            redone.put(fileId, Collections.synchronizedList(new ArrayList<>()));
+        }
+
+        try (final ParallelRedo parallelRedo = new ParallelRedo(3)) {
+            for (int i = 0; i < 10_000; i++) {
+                final byte fileId = (byte) (i % 6);
+                parallelRedo.redo(new TestLoggable(fileId, i, redone.get(fileId)));
+            }
+            parallelRedo.await();
+        }
+
+        for (final Map.Entry<Byte, List<Integer>> entry : redone.entrySet()) {
+            final List<Integer> seq = entry.getValue();
+            assertEquals(10_000 / 6 + (entry.getKey() < 10_000 % 6 ? 1 : 0), seq.size());
+            for (int i = 1; i < seq.size(); i++) {
+                assertTrue(seq.get(i - 1) < seq.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void singleThreaded() throws LogException {
+        final List<Integer> redone = new ArrayList<>();
+        try (final ParallelRedo parallelRedo = new ParallelRedo(1)) {
+            for (int i = 0; i < 100; i++) {
+                parallelRedo.redo(new TestLoggable((byte) (i % 3), i, redone));
+                assertEquals(i + 1, redone.size());
+            }
+        }
+    }
+
+    @Test
+    public void failureIsReported() {
+        try (final ParallelRedo parallelRedo = new ParallelRedo(2)) {
+            parallelRedo.redo(new TestLoggable((byte) 1, -1, new ArrayList<>()));
+            parallelRedo.await();
+            fail("Expected LogException");
+        } catch (final LogException e) {
+            assertTrue(e.getMessage().startsWith("Redo failed"));
+        }
+    }
+
+    private static class TestLoggable extends AbstractLoggable implements FileLoggable {
+        private final byte fileId;
+        private final int seq;
+        private final List<Integer> redone;
+
+        TestLoggable(final byte fileId, final int seq, final List<Integer> redone) {
+            super(TEST_LOG_TYPE, 1);
+            this.fileId = fileId;
+            this.seq = seq;
+            this.redone = redone;
+        }
+
+        @Override
+        public byte getFileId() {
+            return fileId;
+        }
+
+        @Override
+        public void redo() throws LogException {
+            if (seq < 0) {
+                throw new LogException("test failure");
+            }
+            redone.add(seq);
+        }
+
+        @Override
+        public void write(final ByteBuffer out) {
+        }
+
+        @Override
+        public void read(final ByteBuffer in) {
+        }
+
+        @Override
+        public int getLogSize() {
+            return 0;
+        }
+
+        @Override
+        public String dump() {
+            return "TestLoggable " + fileId + ":" + seq;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.serializers;
+
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.lock.Lock;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.util.MimeType;
+import org.exist.util.StringInputSource;
+import org.exist.xmldb.XmldbURI;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import javax.xml.transform.OutputKeys;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.Properties;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RawDocumentSerializerTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    private static final XmldbURI DOC_URI = XmldbURI.create("raw.xml");
+    private static final XmldbURI XINCLUDE_DOC_URI = XmldbURI.create("raw-xinclude.xml");
+
+    private static final String XML =
+            "<!-- before --><root xmlns=\"http://exist-db.org/test/a\" id=\"r&quot;1\" title=\"a&lt;b&#10;c&#9;d&amp;e\">" +
+            "<b:item xmlns:b=\"http://exist-db.org/test/b\" b:type=\"x\">Tom &amp; Jerry &gt; 3 &lt; 4</b:item>" +
+            "<empty/><?target some data?><item xmlns=\"\">no namespace</item>" +
+            "<text xml:lang=\"en\">smile 😀 café</text></root><?after?>";
+
+    private static final String XINCLUDE_XML =
+            "<root xmlns:xi=\"http://www.w3.org/2001/XInclude\"><xi:include href=\"raw.xml\"/></root>";
+
+    @BeforeClass
+    public static void storeDocuments() throws EXistException, PermissionDeniedException, LockException, SAXException, IOException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction();
+             final Collection collection = broker.openCollection(XmldbURI.ROOT_COLLECTION_URI, Lock.LockMode.WRITE_LOCK)) {
+            broker.storeDocument(transaction, DOC_URI, new StringInputSource(XML), MimeType.XML_TYPE, collection);
+            broker.storeDocument(transaction, XINCLUDE_DOC_URI, new StringInputSource(XINCLUDE_XML), MimeType.XML_TYPE, collection);
+            transaction.commit();
+        }
+    }
+
+    @Test
+    public void sameAsSaxSerialization() throws EXistException, PermissionDeniedException, SAXException, IOException {
+        assertSameAsSax(noIndent());
+    }
+
+    @Test
+    public void xmlDeclaration() throws EXistException, PermissionDeniedException, SAXException, IOException {
+        final Properties properties = noIndent();
+        properties.setProperty(OutputKeys.OMIT_XML_DECLARATION, "no");
+        assertSameAsSax(properties);
+    }
+
+    @Test
+    public void notUsedForIndentOrXInclude() throws EXistException, PermissionDeniedException, SAXException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final LockedDocument lockedDocument = broker.getXMLResource(XmldbURI.ROOT_COLLECTION_URI.append(DOC_URI), Lock.LockMode.READ_LOCK);
+             final LockedDocument lockedXInclude = broker.getXMLResource(XmldbURI.ROOT_COLLECTION_URI.append(XINCLUDE_DOC_URI), Lock.LockMode.READ_LOCK)) {
+            final Serializer serializer = broker.borrowSerializer();
+            try {
+                serializer.setProperties(noIndent());
+                assertTrue(serializer.isRawSerializable(lockedDocument.getDocument()));
+                assertFalse(serializer.isRawSerializable(lockedXInclude.getDocument()));
+
+                serializer.setProperty(OutputKeys.INDENT, "yes");
+                assertFalse(serializer.isRawSerializable(lockedDocument.getDocument()));
+            } finally {
+                broker.returnSerializer(serializer);
+            }
+        }
+    }
+
+    @Test
+    public void escapeConvertsSurrogatePairs() {
+        // U+1F600 as stored: two 3 byte sequences for the surrogates
+        final byte[] stored = { 'a', (byte) 0xED, (byte) 0xA0, (byte) 0xBD, (byte) 0xED, (byte) 0xB8, (byte) 0x80, '&' };
+        final byte[] target = new byte[stored.length * 6];
+        final int len = RawDocumentSerializer.escape(stored, 0, stored.length, RawDocumentSerializer.TEXT, target, 0);
+        final byte[] expected = "a😀&amp;".getBytes(UTF_8);
+        final byte[] actual = new byte[len];
+        System.arraycopy(target, 0, actual, 0, len);
+        assertArrayEquals(expected, actual);
+    }
+
+    private static Properties noIndent() {
+        final Properties properties = new Properties();
+        properties.setProperty(OutputKeys.INDENT, "no");
+        properties.setProperty(OutputKeys.ENCODING, UTF_8.name());
+        return properties;
+    }
+
+    private static void assertSameAsSax(final Properties properties) throws EXistException, PermissionDeniedException, SAXException, IOException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final LockedDocument lockedDocument = broker.getXMLResource(XmldbURI.ROOT_COLLECTION_URI.append(DOC_URI), Lock.LockMode.READ_LOCK)) {
+            final DocumentImpl doc = lockedDocument.getDocument();
+            final Serializer serializer = broker.borrowSerializer();
+            try {
+                serializer.setProperties(properties);
+                final String expected = serializer.serialize(doc);
+
+                assertTrue(serializer.isRawSerializable(doc));
+                final UnsynchronizedByteArrayOutputStream os = new UnsynchronizedByteArrayOutputStream();
+                serializer.toRawUTF8(doc, os);
+                assertEquals(expected, new String(os.toByteArray(), UTF_8));
+            } finally {
+                broker.returnSerializer(serializer);
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.util.io;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+
+public class PeriodicFlushWriterTest {
+
+    @Test
+    public void noFlushWithinInterval() throws IOException {
+        final CountingWriter counter = new CountingWriter();
+        try (final PeriodicFlushWriter writer = new PeriodicFlushWriter(counter, 60_000)) {
+            for (int i = 0; i < 10_000; i++) {
+                writer.write("<item/>");
+            }
+            assertEquals(0, counter.flushes);
+        }
+        assertEquals(70_000, counter.toString().length());
+    }
+
+    @Test
+    public void flushAfterInterval() throws IOException, InterruptedException {
+        final CountingWriter counter = new CountingWriter();
+        try (final PeriodicFlushWriter writer = new PeriodicFlushWriter(counter, 10)) {
+            writer.write(new char[1024]);
+            assertEquals(0, counter.flushes);
+
+            Thread.sleep(20);
+            writer.write(new char[1024]);
+            assertEquals(1, counter.flushes);
+
+            // nothing more within the interval
+            writer.write(new char[1024]);
+            assertEquals(1, counter.flushes);
+        }
+    }
+
+    private static class CountingWriter extends StringWriter {
+        int flushes = 0;
+
+        @Override
+        public void flush() {
+            flushes++;
+            super.flush();
+        }
+    }
+}
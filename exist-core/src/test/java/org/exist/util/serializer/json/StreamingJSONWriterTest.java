@@ -0,0 +1,184 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.util.serializer.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import org.apache.commons.io.input.UnsynchronizedByteArrayInputStream;
+import org.exist.storage.serializers.EXistOutputKeys;
+import org.exist.util.serializer.SAXSerializer;
+import org.junit.Test;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXResult;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.Properties;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class StreamingJSONWriterTest {
+
+    private static final String JSON_NS = "xmlns:json='" + JSONWriter.JASON_NS + "'";
+    private static final DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+    static {
+        documentBuilderFactory.setNamespaceAware(true);
+    }
+    private static final TransformerFactory transformerFactory = TransformerFactory.newInstance("net.sf.saxon.TransformerFactoryImpl", null);
+
+    @Test
+    public void sameAsTree() throws IOException, TransformerException, ParserConfigurationException, SAXException {
+        final String xml =
+                "<a z='99'>\n" +
+                "    <b x='1'/>\n" +
+                "    <b x='2'></b>\n" +
+                "    <b x='3'>stuff</b>\n" +
+                "    <b x='4'>\t\r\n   \r\n</b>\n" +
+                "    <c><d>1</d><e/></c>\n" +
+                "</a>";
+        final String expected = "{\"z\":\"99\",\"b\":[{\"x\":\"1\"},{\"x\":\"2\"},{\"x\":\"3\",\"#text\":\"stuff\"},{\"x\":\"4\"}],\"c\":{\"d\":\"1\",\"e\":null}}";
+        assertEquals(expected, serialize(xml, false));
+        assertEquals(expected, serialize(xml, true));
+    }
+
+    @Test
+    public void jsonValues() throws IOException, TransformerException, ParserConfigurationException, SAXException {
+        final String xml =
+                "<json:value " + JSON_NS + ">" +
+                "<json:value json:literal='true'>1</json:value>" +
+                "<json:value>two</json:value>" +
+                "<json:value><name>three</name></json:value>" +
+                "</json:value>";
+        final String expected = "[1,\"two\",{\"name\":\"three\"}]";
+        assertEquals(expected, serialize(xml, false));
+        assertEquals(expected, serialize(xml, true));
+    }
+
+    @Test
+    public void forcedArray() throws IOException, TransformerException, ParserConfigurationException, SAXException {
+        final String xml = "<a " + JSON_NS + "><b json:array='true'>x</b><c/><d json:array='true'/></a>";
+        final String expected = "{\"b\":[\"x\"],\"c\":null,\"d\":[]}";
+        assertEquals(expected, serialize(xml, false));
+        assertEquals(expected, serialize(xml, true));
+    }
+
+    @Test
+    public void rename() throws IOException, TransformerException, ParserConfigurationException, SAXException {
+        final String xml = "<a " + JSON_NS + "><b json:name='x-y'>1</b><b json:name='x-y'>2</b></a>";
+        assertEquals("{\"x-y\":[\"1\",\"2\"]}", serialize(xml, true));
+    }
+
+    @Test
+    public void nonAdjacentSiblings() throws IOException, TransformerException, ParserConfigurationException, SAXException {
+        final String xml = "<a><b>1</b><c>2</c><b>3</b></a>";
+        assertEquals("{\"b\":[\"1\",\"3\"],\"c\":\"2\"}", serialize(xml, false));
+        // only adjacent siblings are combined when streaming
+        assertStreamingFails(xml);
+    }
+
+    @Test
+    public void nonAdjacentForcedArray() throws IOException, TransformerException, ParserConfigurationException, SAXException {
+        final String xml = "<a " + JSON_NS + "><b json:array='true'>1</b><c>2</c><b json:array='true'>3</b></a>";
+        assertStreamingFails(xml);
+    }
+
+    @Test
+    public void lookaheadExceeded() throws IOException, TransformerException, ParserConfigurationException, SAXException {
+        final StringBuilder large = new StringBuilder();
+        while (large.length() <= StreamingJSONWriter.MAX_LOOKAHEAD) {
+            large.append("0123456789");
+        }
+        assertEquals("{\"b\":\"" + large + "\",\"c\":[\"1\",\"2\"]}", serialize("<a><b>" + large + "</b><c>1</c><c>2</c></a>", true));
+        assertStreamingFails("<a><b>" + large + "</b><b>" + large + "</b></a>");
+
+        // marked as array, large siblings stream without look ahead
+        final String xml = "<a " + JSON_NS + "><b json:array='true'>" + large + "</b><b json:array='true'>" + large + "</b></a>";
+        assertEquals("{\"b\":[\"" + large + "\",\"" + large + "\"]}", serialize(xml, true));
+    }
+
+    @Test
+    public void jsonp() throws IOException, TransformerException, ParserConfigurationException, SAXException {
+        final Properties properties = new Properties();
+        properties.setProperty(EXistOutputKeys.JSONP, "callback");
+        assertEquals("callback({\"b\":\"1\"})", serialize("<a><b>1</b></a>", true, properties));
+    }
+
+    private void assertStreamingFails(final String xml) throws IOException, ParserConfigurationException, SAXException {
+        try {
+            final String json = serialize(xml, true);
+            fail("Expected streaming serialization to fail, got: " + json);
+        } catch (final TransformerException e) {
+            // expected, the output would have duplicate properties
+        }
+    }
+
+    /**
+     * Parses the JSON, rejecting duplicate properties.
+     */
+    private static void assertValidJson(final String json) throws IOException {
+        try (final JsonParser parser = new JsonFactory().enable(JsonParser.Feature.STRICT_DUPLICATE_DETECTION).createParser(json)) {
+            while (parser.nextToken() != null) {
+                // consume
+            }
+        } catch (final JsonParseException e) {
+            fail("Invalid JSON: " + e.getMessage());
+        }
+    }
+
+    private String serialize(final String xml, final boolean streaming) throws IOException, TransformerException, ParserConfigurationException, SAXException {
+        return serialize(xml, streaming, new Properties());
+    }
+
+    private String serialize(final String xml, final boolean streaming, final Properties properties) throws IOException, TransformerException, ParserConfigurationException, SAXException {
+        final Node xmlDoc;
+        try (final InputStream is = new UnsynchronizedByteArrayInputStream(xml.getBytes(UTF_8))) {
+            xmlDoc = documentBuilderFactory.newDocumentBuilder().parse(is);
+        }
+
+        properties.setProperty(OutputKeys.METHOD, "json");
+        properties.setProperty(OutputKeys.INDENT, "no");
+        properties.setProperty(EXistOutputKeys.JSON_IGNORE_WHITESPACE_TEXT_NODES, "yes");
+        properties.setProperty(EXistOutputKeys.JSON_STREAMING, streaming ? "yes" : "no");
+
+        final SAXSerializer serializer = new SAXSerializer();
+        try (final StringWriter writer = new StringWriter()) {
+            serializer.setOutput(writer, properties);
+            transformerFactory.newTransformer().transform(new DOMSource(xmlDoc), new SAXResult(serializer));
+            final String json = writer.toString();
+            if (properties.getProperty(EXistOutputKeys.JSONP) == null) {
+                assertValidJson(json);
+            }
+            return json;
+        }
+    }
+}
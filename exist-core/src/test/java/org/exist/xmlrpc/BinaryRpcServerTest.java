@@ -0,0 +1,324 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xmlrpc;
+
+import com.evolvedbinary.j8fu.tuple.Tuple3;
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
+import org.apache.xmlrpc.XmlRpcException;
+import org.apache.xmlrpc.server.XmlRpcServer;
+import org.exist.security.ACLPermission.ACE_ACCESS_TYPE;
+import org.exist.security.ACLPermission.ACE_TARGET;
+import org.exist.security.internal.aider.ACEAider;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.test.TestConstants;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class BinaryRpcServerTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    private static XmlRpcServer xmlRpcServer;
+    private static BinaryRpcServer server;
+
+    @BeforeClass
+    public static void startServer() throws XmlRpcException, IOException {
+        xmlRpcServer = new XmlRpcServer();
+        xmlRpcServer.setTypeFactory(new ExistRpcTypeFactory(xmlRpcServer));
+        final RpcServlet.DefaultHandlerMapping mapping = new RpcServlet.DefaultHandlerMapping();
+        mapping.setVoidMethodEnabled(true);
+        mapping.setRequestProcessorFactoryFactory(pClass -> new XmldbRequestProcessorFactory("exist", true));
+        mapping.loadDefault(RpcConnection.class);
+        xmlRpcServer.setHandlerMapping(mapping);
+        server = new BinaryRpcServer(xmlRpcServer, InetAddress.getLoopbackAddress(), 0);
+    }
+
+    @AfterClass
+    public static void stopServer() throws IOException {
+        server.close();
+    }
+
+    private static BinaryRpcClient newClient() {
+        return new BinaryRpcClient(InetAddress.getLoopbackAddress().getHostAddress(), server.getPort());
+    }
+
+    @Test
+    public void call() throws XmlRpcException {
+        try (final BinaryRpcClient client = newClient()) {
+            assertEquals(Boolean.TRUE, client.execute("admin", "", "hasCollection", new Object[] { "/db" }));
+            assertEquals(Boolean.FALSE, client.execute("admin", "", "hasCollection", new Object[] { "/db/no-such-collection" }));
+        }
+    }
+
+    @Test
+    public void query() throws XmlRpcException {
+        try (final BinaryRpcClient client = newClient()) {
+            final int handle = (Integer) client.execute("admin", "", "executeQuery", new Object[] { "1 to 10", new HashMap<String, Object>() });
+            assertEquals(10, client.execute("admin", "", "getHits", new Object[] { handle }));
+            client.execute("admin", "", "releaseQueryResult", new Object[] { handle });
+        }
+    }
+
+    @Test(expected = XmlRpcException.class)
+    public void wrongPassword() throws XmlRpcException {
+        try (final BinaryRpcClient client = newClient()) {
+            client.execute("admin", "wrong", "hasCollection", new Object[] { "/db" });
+        }
+    }
+
+    @Test
+    public void batch() throws XmlRpcException {
+        try (final BinaryRpcClient client = newClient()) {
+            final Object[] results = client.executeBatch("admin", "", Arrays.asList(
+                    new BinaryRpcClient.Call("hasCollection", "/db"),
+                    new BinaryRpcClient.Call("noSuchMethod"),
+                    new BinaryRpcClient.Call("hasCollection", TestConstants.TEST_COLLECTION_URI.toString())
+            ));
+            assertEquals(3, results.length);
+            assertEquals(Boolean.TRUE, results[0]);
+            assertTrue(results[1] instanceof XmlRpcException);
+            assertEquals(Boolean.FALSE, results[2]);
+        }
+    }
+
+    @Test
+    public void concurrentCalls() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (final BinaryRpcClient client = newClient()) {
+            final List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                final int n = i;
+                results.add(executor.submit(() -> {
+                    final int handle = (Integer) client.execute("admin", "", "executeQuery", new Object[] { "1 to " + n, new HashMap<String, Object>() });
+                    try {
+                        return client.execute("admin", "", "getHits", new Object[] { handle });
+                    } finally {
+                        client.execute("admin", "", "releaseQueryResult", new Object[] { handle });
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(i, results.get(i).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void credentialsPerCall() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (final BinaryRpcClient client = newClient()) {
+            final List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                final String password = i % 2 == 0 ? "" : "wrong";
+                results.add(executor.submit(() -> {
+                    try {
+                        client.execute("admin", password, "hasCollection", new Object[] { "/db" });
+                        return true;
+                    } catch (final XmlRpcException e) {
+                        return false;
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals("call " + i, i % 2 == 0, results.get(i).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void replyTimeout() throws IOException {
+        try (final ServerSocket silent = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+                final BinaryRpcClient client = new BinaryRpcClient(InetAddress.getLoopbackAddress().getHostAddress(), silent.getLocalPort())) {
+            client.setReplyTimeout(200);
+            final long start = System.nanoTime();
+            try {
+                client.execute("admin", "", "hasCollection", new Object[] { "/db" });
+                fail("Expected the call to time out");
+            } catch (final XmlRpcException e) {
+                assertTrue(e.getCause() instanceof TimeoutException);
+            }
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 10_000);
+        }
+    }
+
+    @Test
+    public void connectionLimit() throws IOException, XmlRpcException {
+        try (final BinaryRpcServer limited = new BinaryRpcServer(xmlRpcServer, InetAddress.getLoopbackAddress(), 0, 1, 1);
+                final BinaryRpcClient first = new BinaryRpcClient(InetAddress.getLoopbackAddress().getHostAddress(), limited.getPort());
+                final BinaryRpcClient second = new BinaryRpcClient(InetAddress.getLoopbackAddress().getHostAddress(), limited.getPort())) {
+            assertEquals(Boolean.TRUE, first.execute("admin", "", "hasCollection", new Object[] { "/db" }));
+            second.setReplyTimeout(10_000);
+            try {
+                second.execute("admin", "", "hasCollection", new Object[] { "/db" });
+                fail("Expected the connection to be refused");
+            } catch (final XmlRpcException e) {
+                assertFalse(e.getCause() instanceof TimeoutException);
+            }
+            assertEquals(Boolean.TRUE, first.execute("admin", "", "hasCollection", new Object[] { "/db" }));
+        }
+    }
+
+    @Test
+    public void callBeforeHelloIsRejected() throws IOException {
+        try (final Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            final UnsynchronizedByteArrayOutputStream payload = new UnsynchronizedByteArrayOutputStream();
+            BinaryRpcProtocol.writeCall(new DataOutputStream(payload), "hasCollection", new Object[] { "/db" });
+            writeFrame(socket, 1, BinaryRpcProtocol.CALL, payload.toByteArray());
+            assertClosedWithoutResponse(socket);
+        }
+    }
+
+    @Test
+    public void oversizedFrameBeforeHelloIsRejected() throws IOException {
+        try (final Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            // only the header is sent, the server must not wait for or allocate the payload
+            out.writeInt(BinaryRpcProtocol.MAX_HELLO_SIZE + 1);
+            out.writeInt(0);
+            out.writeByte(BinaryRpcProtocol.HELLO);
+            out.flush();
+            assertClosedWithoutResponse(socket);
+        }
+    }
+
+    @Test
+    public void unsupportedVersion() throws IOException {
+        try (final Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            final UnsynchronizedByteArrayOutputStream payload = new UnsynchronizedByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(payload);
+            out.writeInt(BinaryRpcProtocol.VERSION + 1);
+            BinaryRpcProtocol.writeValue(out, "admin");
+            BinaryRpcProtocol.writeValue(out, "");
+            writeFrame(socket, 0, BinaryRpcProtocol.HELLO, payload.toByteArray());
+
+            socket.setSoTimeout(10_000);
+            final DataInputStream in = new DataInputStream(socket.getInputStream());
+            in.readInt();
+            assertEquals(0, in.readInt());
+            assertEquals(BinaryRpcProtocol.FAULT, in.readByte());
+            final XmlRpcException fault = BinaryRpcProtocol.readFault(in);
+            assertTrue(fault.getMessage(), fault.getMessage().contains("version"));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void batchCountIsBoundedByFrame() throws IOException {
+        try (final Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            final UnsynchronizedByteArrayOutputStream hello = new UnsynchronizedByteArrayOutputStream();
+            BinaryRpcProtocol.writeHello(new DataOutputStream(hello), "admin", "");
+            writeFrame(socket, 0, BinaryRpcProtocol.HELLO, hello.toByteArray());
+
+            final UnsynchronizedByteArrayOutputStream payload = new UnsynchronizedByteArrayOutputStream();
+            new DataOutputStream(payload).writeInt(Integer.MAX_VALUE);
+            writeFrame(socket, 1, BinaryRpcProtocol.BATCH, payload.toByteArray());
+            assertClosedWithoutResponse(socket);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void lengthIsBoundedByPayload() throws IOException {
+        final UnsynchronizedByteArrayOutputStream os = new UnsynchronizedByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(os);
+        out.writeByte(7);   // array tag
+        out.writeInt(100_000_000);
+        out.writeByte(0);
+        BinaryRpcProtocol.readValue(new DataInputStream(new ByteArrayInputStream(os.toByteArray())));
+    }
+
+    private static void writeFrame(final Socket socket, final int requestId, final byte type, final byte[] payload) throws IOException {
+        final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+        out.writeInt(payload.length + 5);
+        out.writeInt(requestId);
+        out.writeByte(type);
+        out.write(payload);
+        out.flush();
+    }
+
+    private static void assertClosedWithoutResponse(final Socket socket) throws IOException {
+        socket.setSoTimeout(10_000);
+        try {
+            assertEquals(-1, socket.getInputStream().read());
+        } catch (final SocketException e) {
+            // connection reset by the server
+        }
+    }
+
+    @Test
+    public void codecRoundTrip() throws IOException {
+        final Map<String, Object> struct = new HashMap<>();
+        struct.put("int", 42);
+        struct.put("long", Long.MAX_VALUE);
+        struct.put("double", 1.5d);
+        struct.put("string", "héllo");
+        struct.put("bytes", new byte[] { 1, 2, 3 });
+        struct.put("date", new Date(1234567890L));
+        struct.put("list", Arrays.asList("a", 1, null));
+        struct.put("tuple", new Tuple3<>("x", 2, true));
+        struct.put("ace", new ACEAider(ACE_ACCESS_TYPE.ALLOWED, ACE_TARGET.GROUP, "dba", 5));
+
+        final UnsynchronizedByteArrayOutputStream os = new UnsynchronizedByteArrayOutputStream();
+        BinaryRpcProtocol.writeValue(new DataOutputStream(os), struct);
+        final Map<?, ?> result = (Map<?, ?>) BinaryRpcProtocol.readValue(new DataInputStream(new ByteArrayInputStream(os.toByteArray())));
+
+        assertEquals(42, result.get("int"));
+        assertEquals(Long.MAX_VALUE, result.get("long"));
+        assertEquals(1.5d, result.get("double"));
+        assertEquals("héllo", result.get("string"));
+        assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) result.get("bytes"));
+        assertEquals(new Date(1234567890L), result.get("date"));
+        assertArrayEquals(new Object[] { "a", 1, null }, (Object[]) result.get("list"));
+        final Tuple3<?, ?, ?> tuple = (Tuple3<?, ?, ?>) result.get("tuple");
+        assertEquals("x", tuple._1);
+        assertEquals(2, tuple._2);
+        assertEquals(true, tuple._3);
+        final ACEAider ace = (ACEAider) result.get("ace");
+        assertEquals(ACE_ACCESS_TYPE.ALLOWED, ace.getAccessType());
+        assertEquals(ACE_TARGET.GROUP, ace.getTarget());
+        assertEquals("dba", ace.getWho());
+        assertEquals(5, ace.getMode());
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xmlrpc;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class QueryResultCacheTest {
+
+    @Test
+    public void resultLargerThanCacheIsKept() {
+        final QueryResultCache cache = new QueryResultCache(QueryResultCache.DEFAULT_TIMEOUT, 100);
+        final TestResult result = new TestResult(1000);
+        final int id = cache.add(result);
+        cache.cleanUp();
+
+        assertNotNull(cache.get(id));
+        assertFalse(result.isClosed());
+    }
+
+    @Test
+    public void totalWeightIsBounded() {
+        final QueryResultCache cache = new QueryResultCache(QueryResultCache.DEFAULT_TIMEOUT, 100);
+        final int[] ids = new int[10];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = cache.add(new TestResult(1000));
+            cache.cleanUp();
+        }
+
+        int cached = 0;
+        for (final int id : ids) {
+            if (cache.get(id) != null) {
+                cached++;
+            }
+        }
+        assertTrue(cached >= 1);
+        assertTrue(cached <= 4);
+    }
+
+    private static class TestResult extends AbstractCachedResult {
+        private final int weight;
+
+        TestResult(final int weight) {
+            this.weight = weight;
+        }
+
+        @Override
+        public int getWeight() {
+            return weight;
+        }
+
+        @Override
+        public Object getResult() {
+            return null;
+        }
+    }
+}
@@ -549,6 +549,52 @@ public class XmlRpcTest {
         item = (byte[]) xmlrpc.execute("retrieve", params);
     }
 
+    @Test
+    public void testRetrieveWindow() throws XmlRpcException, MalformedURLException {
+        List<Object> params = new ArrayList<>();
+        String query = "(1 to 25) ! <item n='{.}'/>";
+        params.add(query.getBytes(UTF_8));
+        params.add(new HashMap<>());
+        XmlRpcClient xmlrpc = getClient();
+        Integer handle = (Integer) xmlrpc.execute("executeQuery", params);
+        assertNotNull(handle);
+
+        final StringBuilder all = new StringBuilder();
+        int start = 0;
+        while (start < 25) {
+            params.clear();
+            params.add(handle);
+            params.add(start);
+            params.add(10);
+            final Map<String, Object> options = new HashMap<>();
+            options.put(OutputKeys.OMIT_XML_DECLARATION, "yes");
+            options.put(OutputKeys.INDENT, "no");
+            params.add(options);
+            final Map window = (Map) xmlrpc.execute("retrieveWindow", params);
+            assertEquals(25, ((Integer) window.get("hits")).intValue());
+            assertEquals(start, ((Integer) window.get("start")).intValue());
+
+            final Object[] items = (Object[]) window.get("items");
+            assertEquals(Math.min(10, 25 - start), items.length);
+            final byte[] data = (byte[]) window.get("data");
+            int offset = 0;
+            for (final Object item : items) {
+                assertEquals("element()", ((Map) item).get("type"));
+                final int length = (Integer) ((Map) item).get("length");
+                all.append(new String(data, offset, length, UTF_8)).append(' ');
+                offset += length;
+            }
+            assertEquals(data.length, offset);
+            start += items.length;
+        }
+
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 1; i <= 25; i++) {
+            expected.append("<item n=\"").append(i).append("\"/> ");
+        }
+        assertEquals(expected.toString(), all.toString());
+    }
+
     @Test
     public void testQueryModuleExternalVar() throws XmlRpcException, MalformedURLException {
         storeData();
@@ -579,6 +625,85 @@ public class XmlRpcTest {
         assertEquals("local-string-value", value);
     }
 
+    @Test
+    public void testQuerySnapshot() throws XmlRpcException, MalformedURLException {
+        storeData();
+        final Map<String, Object> result = querySnapshot("//para");
+        assertNull(result.get(RpcAPI.ERROR));
+        assertEquals(2, ((Object[]) result.get("results")).length);
+    }
+
+    @Test
+    public void testQuerySnapshotConflict() throws XmlRpcException, MalformedURLException {
+        storeData();
+        // the query replaces a document it has read
+        final Map<String, Object> result = querySnapshot(
+                "let $paras := doc('" + TARGET_RESOURCE + "')//para "
+                        + "return (xmldb:store('" + TARGET_COLLECTION + "', '" + TARGET_RESOURCE.lastSegment() + "', <test/>), $paras)");
+        final String error = (String) result.get(RpcAPI.ERROR);
+        assertNotNull(error);
+        assertTrue(error, error.contains("EXXQDY0007"));
+    }
+
+    @Test
+    public void testQuerySnapshotIgnoresUnreadDocuments() throws XmlRpcException, MalformedURLException {
+        storeData();
+        // only documents the query has read are validated
+        final Map<String, Object> result = querySnapshot(
+                "let $paras := doc('" + TARGET_RESOURCE + "')//para "
+                        + "return (xmldb:store('" + TARGET_COLLECTION + "', 'other.xml', <other/>), $paras)");
+        assertNull(result.get(RpcAPI.ERROR));
+        assertEquals(3, ((Object[]) result.get("results")).length);
+    }
+
+    @Test
+    public void testQuerySnapshotRetrieveAfterModification() throws XmlRpcException, MalformedURLException {
+        storeData();
+        final Map<String, Object> qp = new HashMap<>();
+        qp.put(RpcAPI.SNAPSHOT_MODE, TARGET_COLLECTION.toString());
+
+        final List<Object> params = new ArrayList<>();
+        params.add(("doc('" + TARGET_RESOURCE + "')//para").getBytes(UTF_8));
+        params.add(qp);
+        final XmlRpcClient xmlrpc = getClient();
+        final Integer handle = (Integer) xmlrpc.execute("executeQuery", params);
+        assertNotNull(handle);
+
+        params.clear();
+        params.add(handle);
+        params.add(0);
+        params.add(new HashMap<String, Object>());
+        assertNotNull(xmlrpc.execute("retrieve", params));
+
+        // replace the document after the query ran, but before the rest of the result is serialized
+        final List<Object> parseParams = new ArrayList<>();
+        parseParams.add("<test/>");
+        parseParams.add(TARGET_RESOURCE.toString());
+        parseParams.add(1);
+        assertTrue((Boolean) xmlrpc.execute("parse", parseParams));
+
+        params.set(1, 1);
+        try {
+            xmlrpc.execute("retrieve", params);
+            fail("Retrieving from a stale snapshot should fail");
+        } catch (final XmlRpcException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("EXXQDY0007"));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> querySnapshot(final String query) throws XmlRpcException, MalformedURLException {
+        final Map<String, Object> qp = new HashMap<>();
+        qp.put(RpcAPI.SNAPSHOT_MODE, TARGET_COLLECTION.toString());
+
+        final List<Object> params = new ArrayList<>();
+        params.add(query.getBytes(UTF_8));
+        params.add(qp);
+
+        final XmlRpcClient xmlrpc = getClient();
+        return (Map<String, Object>) xmlrpc.execute("queryP", params);
+    }
+
     @Test
     public void testCollectionWithAccentsAndSpaces() throws XmlRpcException, MalformedURLException {
         storeData();
@@ -211,6 +211,87 @@ public class IndexIntegrationTest extends AbstractTestUpdate {
         );
     }
 
+    /**
+     * One index asks for the whole document to be reindexed when an attribute is replaced.
+     * Only this index may see the other nodes of the document, the second index must only
+     * be passed the old and the new attribute.
+     */
+    @Test
+    public void updateAttributeReindexesOnlyRequestedRoots() throws Exception {
+        final String docName = "pathNs2.xml";
+        final XQueryService service = storeXMLStringAndGetQueryService(docName,
+                "<test><t xml:id=\"id1\"><c>text</c></t><u/></test>");
+
+        final IMocksControl control = createControl();
+
+        final IndexWorker ancestorWorker = control.createMock(IndexWorker.class);
+        final StreamListener ancestorStream = control.createMock(AbstractStreamListener.class);
+        final IndexWorker nodeWorker = control.createMock(IndexWorker.class);
+        final StreamListener nodeStream = control.createMock(AbstractStreamListener.class);
+
+        final AbstractIndex ancestorIndex = new TestIndex("AncestorIndex", ancestorWorker);
+        final AbstractIndex nodeIndex = new TestIndex("NodeIndex", nodeWorker);
+
+        final BrokerPool pool = BrokerPool.getInstance();
+
+        expect(ancestorWorker.getIndexId()).andReturn("AncestorIndex").anyTimes();
+        expect(nodeWorker.getIndexId()).andReturn("NodeIndex").anyTimes();
+
+        control.replay();
+
+        pool.getIndexManager().registerIndex(ancestorIndex);
+        pool.getIndexManager().registerIndex(nodeIndex);
+
+        // acquire the broker to reload the Index Manager config so registerIndex is noticed
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            control.verify();
+            control.reset();
+
+            for (final IndexWorker worker : new IndexWorker[] { ancestorWorker, nodeWorker }) {
+                expect(worker.getQueryRewriter(anyObject(XQueryContext.class))).andStubReturn(null);
+                final String id = worker == ancestorWorker ? "AncestorIndex" : "NodeIndex";
+                expect(worker.getIndexId()).andStubReturn(id);
+                expect(worker.getIndexName()).andStubReturn(id);
+                expect(worker.getListener()).andStubReturn(worker == ancestorWorker ? ancestorStream : nodeStream);
+                worker.setDocument(anyObject()); expectLastCall().anyTimes();
+                worker.setMode(anyObject()); expectLastCall().anyTimes();
+                worker.flush(); expectLastCall().anyTimes();
+            }
+            for (final StreamListener stream : new StreamListener[] { ancestorStream, nodeStream }) {
+                stream.setNextInChain(anyObject()); expectLastCall().asStub();
+                expect(stream.getNextInChain()).andStubReturn(null);
+                stream.startIndexDocument(anyObject()); expectLastCall().times(2);
+                stream.endIndexDocument(anyObject()); expectLastCall().times(2);
+            }
+
+            // the first index reindexes the document element
+            expect(ancestorWorker.getReindexRoot(anyObject(), anyObject(), anyBoolean(), anyBoolean())).andStubAnswer(() ->
+                    (IStoredNode) ((IStoredNode) getCurrentArguments()[0]).getOwnerDocument().getDocumentElement());
+            ancestorStream.startElement(anyObject(), anyObject(), anyObject()); expectLastCall().times(8);
+            ancestorStream.endElement(anyObject(), anyObject(), anyObject()); expectLastCall().times(8);
+            ancestorStream.attribute(anyObject(), eqAttr("xml:id", "id1"), anyObject()); expectLastCall();
+            ancestorStream.attribute(anyObject(), eqAttr("xml:id", "id2"), anyObject()); expectLastCall();
+            ancestorStream.characters(anyObject(), anyObject(), anyObject()); expectLastCall().times(2);
+
+            // the second one only gets the replaced attribute
+            expect(nodeWorker.getReindexRoot(anyObject(), anyObject(), anyBoolean(), anyBoolean())).andStubReturn(null);
+            nodeStream.attribute(anyObject(), eqAttr("xml:id", "id1"), anyObject()); expectLastCall();
+            nodeStream.attribute(anyObject(), eqAttr("xml:id", "id2"), anyObject()); expectLastCall();
+
+            control.replay();
+
+            queryResource(service, docName, "update value //t/@xml:id with 'id2'", 0);
+
+            control.verify();
+        } finally {
+            control.reset();
+            ancestorIndex.close();
+            nodeIndex.close();
+            pool.getIndexManager().unregisterIndex(ancestorIndex);
+            pool.getIndexManager().unregisterIndex(nodeIndex);
+        }
+    }
+
     private static DocumentImpl eqDocument(final XmldbURI url) {
         reportMatcher(new DocumentMatcher(url));
         return null;
@@ -268,20 +349,26 @@ public class IndexIntegrationTest extends AbstractTestUpdate {
     }
 
     private static class TestIndex extends AbstractIndex {
+        final String id;
         final IndexWorker worker;
 
         TestIndex(final IndexWorker worker) {
+            this("TestIndex", worker);
+        }
+
+        TestIndex(final String id, final IndexWorker worker) {
+            this.id = id;
             this.worker = worker;
         }
 
         @Override
         public String getIndexId() {
-            return "TestIndex";
+            return id;
         }
 
         @Override
         public String getIndexName() {
-            return "TestIndex";
+            return id;
         }
 
         @Override
@@ -0,0 +1,144 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xslt;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.stream.StreamSource;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public class StylesheetDependenciesTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void unchangedFiles() throws IOException {
+        final Path main = stylesheet("main.xsl");
+        final Path module = stylesheet("module.xsl");
+
+        final StylesheetDependencies dependencies = new StylesheetDependencies();
+        dependencies.add(null, main.toUri().toString());
+        dependencies.add(null, module.toUri().toString());
+
+        assertEquals(2, dependencies.size());
+        assertTrue(dependencies.isValid(null));
+    }
+
+    @Test
+    public void modifiedModule() throws IOException {
+        final Path main = stylesheet("main.xsl");
+        final Path module = stylesheet("module.xsl");
+
+        final StylesheetDependencies dependencies = new StylesheetDependencies();
+        dependencies.add(null, main.toUri().toString());
+        dependencies.add(null, module.toUri().toString());
+
+        Files.setLastModifiedTime(module, FileTime.fromMillis(Files.getLastModifiedTime(module).toMillis() + 5000));
+        assertFalse(dependencies.isValid(null));
+    }
+
+    @Test
+    public void removedModule() throws IOException {
+        final Path module = stylesheet("module.xsl");
+
+        final StylesheetDependencies dependencies = new StylesheetDependencies();
+        dependencies.add(null, module.toUri().toString());
+
+        Files.delete(module);
+        assertFalse(dependencies.isValid(null));
+    }
+
+    @Test
+    public void recordsResolvedModules() throws Exception {
+        final Path main = stylesheet("main.xsl");
+        final Path module = stylesheet("module.xsl");
+
+        final StylesheetDependencies dependencies = new StylesheetDependencies();
+
+        // a resolver which leaves resolution to the processor
+        URIResolver resolver = dependencies.recording(null, null);
+        assertNull(resolver.resolve("module.xsl", main.toUri().toString()));
+        assertEquals(1, dependencies.size());
+
+        // a resolver returning a source with a system id
+        resolver = dependencies.recording(null, (href, base) -> new StreamSource(module.toUri().toString()));
+        final Source source = resolver.resolve("other.xsl", null);
+        assertEquals(module.toUri().toString(), source.getSystemId());
+        assertEquals(1, dependencies.size());
+
+        assertTrue(dependencies.isValid(null));
+    }
+
+    @Test
+    public void remoteModulesCheckedAtInterval() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        final HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            exchange.getResponseHeaders().set("Last-Modified", "Mon, 19 Oct 2026 10:00:00 GMT");
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            final String uri = "http://localhost:" + server.getAddress().getPort() + "/module.xsl";
+
+            StylesheetDependencies dependencies = new StylesheetDependencies();
+            dependencies.add(null, uri);
+            assertEquals(1, requests.get());
+
+            // within the interval the server is not asked again
+            assertTrue(dependencies.isValid(null));
+            assertTrue(dependencies.isValid(null));
+            assertEquals(1, requests.get());
+
+            dependencies = new StylesheetDependencies(0);
+            dependencies.add(null, uri);
+            assertTrue(dependencies.isValid(null));
+            assertTrue(dependencies.isValid(null));
+            assertEquals(4, requests.get());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private Path stylesheet(final String name) throws IOException {
+        final Path file = temporaryFolder.getRoot().toPath().resolve(name);
+        Files.write(file, "<xsl:stylesheet xmlns:xsl='http://www.w3.org/1999/XSL/Transform' version='1.0'/>".getBytes(UTF_8));
+        return file;
+    }
+}
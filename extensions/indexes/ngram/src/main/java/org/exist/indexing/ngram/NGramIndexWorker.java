@@ -85,7 +85,12 @@ import static java.nio.charset.StandardCharsets.UTF_8;
  * Each index entry maps a key (collectionId, ngram) to a list of occurrences, which has the
  * following structure:
  *
- * <pre>[docId : int, nameType: byte, occurrenceCount: int, entrySize: long, [id: NodeId, offset: int, ...]* ]</pre>
+ * <pre>[docId : int, nameType: byte, occurrenceCount: int, entrySize: long, [id: NodeId, freq: int, offsetDelta: int, ...]* ]</pre>
+ *
+ * The offsets of an ngram within a node are stored in ascending order, each as the difference to
+ * the previous offset. The entrySize of a document block serves as skip pointer: blocks of documents
+ * which are not queried, or not needed to estimate the frequency of an ngram, are skipped without
+ * decoding their node ids and offsets.
  */
 public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
@@ -194,17 +199,7 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
             // write nodeids, freq, and offsets to a `temp` buf
             try {
-                NodeId previous = null;
-                for (int m = 0; m < occurences.getSize(); ) {
-                    previous = occurences.getNode(m).write(previous, buf);
-
-                    final int freq = occurences.getOccurrences(m);
-                    buf.writeInt(freq);
-                    for (int n = 0; n < freq; n++) {
-                        buf.writeInt(occurences.getOffset(m + n));
-                    }
-                    m += freq;
-                }
+                writeOccurrences(occurences, buf);
 
                 final byte[] bufData = buf.toByteArray();
 
@@ -296,8 +291,10 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                                 // add the node to the new list if it is not
                                 // in the list of removed nodes
                                 if (!occurencesList.contains(nodeId)) {
+                                    int offset = 0;
                                     for (int n = 0; n < freq; n++) {
-                                        newOccurrences.add(nodeId, is.readInt());
+                                        offset += is.readInt();
+                                        newOccurrences.add(nodeId, offset);
                                     }
                                 } else {
                                     is.skip(freq);
@@ -312,16 +309,7 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                                 os.writeInt(newOccurrences.getTermCount());
 
                                 // write nodeids, freq, and offsets to a `temp` buf
-                                previous = null;
-                                for (int m = 0; m < newOccurrences.getSize(); ) {
-                                    previous = newOccurrences.getNode(m).write(previous, buf);
-                                    final int freq = newOccurrences.getOccurrences(m);
-                                    buf.writeInt(freq);
-                                    for (int n = 0; n < freq; n++) {
-                                        buf.writeInt(newOccurrences.getOffset(m + n));
-                                    }
-                                    m += freq;
-                                }
+                                writeOccurrences(newOccurrences, buf);
 
                                 final byte[] bufData = buf.toByteArray();
 
@@ -360,6 +348,35 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         ngrams.clear();
     }
 
+    /**
+     * Write the node ids, frequencies and delta encoded offsets of a sorted occurrence list.
+     */
+    private static void writeOccurrences(final OccurrenceList occurrences, final VariableByteOutputStream out)
+            throws IOException {
+        int[] offsets = new int[16];
+        NodeId previous = null;
+        for (int m = 0; m < occurrences.getSize(); ) {
+            previous = occurrences.getNode(m).write(previous, out);
+
+            final int freq = occurrences.getOccurrences(m);
+            out.writeInt(freq);
+            if (offsets.length < freq) {
+                offsets = new int[freq];
+            }
+            for (int n = 0; n < freq; n++) {
+                offsets[n] = occurrences.getOffset(m + n);
+            }
+            // the sort on node ids does not preserve the order of offsets
+            Arrays.sort(offsets, 0, freq);
+            int last = 0;
+            for (int n = 0; n < freq; n++) {
+                out.writeInt(offsets[n] - last);
+                last = offsets[n];
+            }
+            m += freq;
+        }
+    }
+
     @Override
     public void removeCollection(final Collection collection, final DBBroker broker, final boolean reindex) {
         if (LOG.isDebugEnabled()) {
@@ -408,6 +425,73 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         return result;
     }
 
+    /**
+     * Count the occurrences of the given ngram in the given documents. Only the headers of the
+     * document blocks are read, so this is much cheaper than {@link #search}. It is used to determine
+     * the rarest ngram of a query string, which should be looked up first.
+     *
+     * @param docs the documents to consider
+     * @param qnames the qnames to search, or null to search all indexed qnames
+     * @param ngram the ngram to look up
+     * @param context the query context
+     * @return the total number of occurrences of the ngram in all indexed nodes of the documents
+     * @throws XPathException if the index could not be read
+     */
+    public long countOccurrences(final DocumentSet docs, final List<QName> qnames, final String ngram,
+            final XQueryContext context) throws XPathException {
+        return countOccurrences(docs, qnames, ngram, context, Long.MAX_VALUE);
+    }
+
+    /**
+     * Count the occurrences of the given ngram in the given documents, but stop reading the
+     * index as soon as the count reaches the limit. When looking for the rarest ngram, the
+     * smallest count found so far is passed as the limit, so a frequent ngram costs no more
+     * to count than the rarest one.
+     *
+     * @param docs the documents to consider
+     * @param qnames the qnames to search, or null to search all indexed qnames
+     * @param ngram the ngram to look up
+     * @param context the query context
+     * @param limit the count at which to stop
+     * @return the total number of occurrences of the ngram, or a number of at least
+     *     {@code limit} if the limit has been reached
+     * @throws XPathException if the index could not be read
+     */
+    public long countOccurrences(final DocumentSet docs, final List<QName> qnames, final String ngram,
+            final XQueryContext context, final long limit) throws XPathException {
+        final List<QName> searchQnames;
+        if (qnames == null || qnames.isEmpty()) {
+            searchQnames = getDefinedIndexes(context.getBroker(), docs);
+        } else {
+            searchQnames = qnames;
+        }
+
+        final CountCallback cb = new CountCallback(docs, limit);
+        for (final Iterator<Collection> iter = docs.getCollectionIterator(); iter.hasNext() && cb.count < limit; ) {
+            final int collectionId = iter.next().getId();
+            for (final QName qname : searchQnames) {
+                if (cb.count >= limit) {
+                    break;
+                }
+                final NGramQNameKey key = new NGramQNameKey(collectionId, qname, index.getBrokerPool().getSymbols(), ngram);
+                try (final ManagedLock<ReentrantLock> dbLock = lockManager.acquireBtreeReadLock(index.db.getLockName())) {
+                    final int op = ngram.codePointCount(0, ngram.length()) < getN() ? IndexQuery.TRUNC_RIGHT : IndexQuery.EQ;
+                    index.db.query(new IndexQuery(op, key), cb);
+                    if (cb.error != null) {
+                        throw cb.error;
+                    }
+                } catch (final LockException e) {
+                    throw new XPathException((Expression) null, "Failed to acquire lock for '" +
+                            FileUtils.fileName(index.db.getFile()) + "'", e);
+                } catch (final IOException | BTreeException e) {
+                    throw new XPathException((Expression) null, e.getMessage() + " in '" +
+                            FileUtils.fileName(index.db.getFile()) + "'", e);
+                }
+            }
+        }
+        return cb.count;
+    }
+
     /**
      * Check index configurations for all collection in the given DocumentSet and return
      * a list of QNames, which have indexes defined on them.
@@ -1058,17 +1142,55 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                 diff = current.lastIndexOf(ngram);
             }
             final Match match = new NGramMatch(contextId, nodeId, ngram, freq);
+            int offset = 0;
             for (int n = 0; n < freq; n++) {
-                int offset = is.readInt();
-                if (diff > 0) {
-                    offset += diff;
-                }
-                match.addOffset(offset, ngram.length());
+                offset += is.readInt();
+                match.addOffset(diff > 0 ? offset + diff : offset, ngram.length());
             }
             parentNode.addMatch(match);
         }
     }
 
+    private final class CountCallback implements BTreeCallback {
+        private final DocumentSet docs;
+        private final long limit;
+        private long count = 0;
+        private IOException error = null;
+
+        CountCallback(final DocumentSet docs, final long limit) {
+            this.docs = docs;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean indexInfo(final Value key, final long pointer) {
+            try {
+                final VariableByteInput is = index.db.getAsStream(pointer);
+                if (is == null) {
+                    return true;
+                }
+                while (is.available() > 0) {
+                    final int storedDocId = is.readInt();
+                    is.readByte();
+                    final int occurrences = is.readInt();
+                    final int length = is.readFixedInt();
+                    if (docs.getDoc(storedDocId) != null) {
+                        count += occurrences;
+                        if (count >= limit) {
+                            // no need to read the rest of the entry, or any further keys
+                            return false;
+                        }
+                    }
+                    is.skipBytes(length);
+                }
+            } catch (final IOException e) {
+                error = e;
+                return false;
+            }
+            return true;
+        }
+    }
+
     private final class IndexScanCallback implements BTreeCallback {
         private final DocumentSet docs;
         private NodeSet contextSet;
@@ -490,34 +490,48 @@ public class NGramSearch extends Function implements Optimizable {
         if (ngrams.length == 0)
             return new EmptyNodeSet();
 
-        String firstNgramm = ngrams[0];
-        LOG.trace("First NGRAM: {}", firstNgramm);
-        NodeSet result = index.search(getExpressionId(), docs, qnames, firstNgramm, firstNgramm, context, nodeSet, axis);
-
+        // if this ngram is shorter than n,
+        // fill it up with characters from the previous ngram. too short
+        // ngrams lead to a considerable performance loss.
+        String[] filledNgrams = new String[ngrams.length];
+        filledNgrams[0] = ngrams[0];
         for (int i = 1; i < ngrams.length; i++) {
-            String ngram = ngrams[i];
-            int len = ngram.codePointCount(0, ngram.length());
-            int fillSize = index.getN() - len;
-            String filledNgram = ngram;
-
-            // if this ngram is shorter than n,
-            // fill it up with characters from the previous ngram. too short
-            // ngrams lead to a considerable performance loss.
-            if (fillSize > 0) {
-                String filler = ngrams[i - 1];
-                StringBuilder buf = new StringBuilder();
-                int pos = filler.offsetByCodePoints(0, len);
-                for (int j = 0; j < fillSize; j++) {
-                    int codepoint = filler.codePointAt(pos);
-                    pos += Character.charCount(codepoint);
-                    buf.appendCodePoint(codepoint);
+            filledNgrams[i] = fillNgram(ngrams[i], ngrams[i - 1], index.getN());
+        }
+
+        // Look up the rarest ngram first and restrict the search for all other ngrams
+        // to the documents containing it, so the cost of the search is determined by
+        // the rarest rather than by the most frequent ngram.
+        NodeSet[] found = new NodeSet[ngrams.length];
+        DocumentSet searchDocs = docs;
+        if (ngrams.length > 1) {
+            int rarest = 0;
+            long minCount = Long.MAX_VALUE;
+            for (int i = 0; i < ngrams.length; i++) {
+                // counting stops once the count can not be smaller than the smallest one so far
+                long count = index.countOccurrences(docs, qnames, filledNgrams[i], context, minCount);
+                if (count < minCount) {
+                    minCount = count;
+                    rarest = i;
                 }
-                buf.append(ngram);
-                filledNgram = buf.toString();
-                LOG.debug("Filled: {}", filledNgram);
             }
+            LOG.trace("Rarest NGRAM: {} ({} occurrences)", ngrams[rarest], minCount);
+            if (minCount == 0)
+                return new EmptyNodeSet();
+            found[rarest] = index.search(getExpressionId(), docs, qnames, filledNgrams[rarest], ngrams[rarest], context, nodeSet, axis);
+            if (found[rarest].isEmpty())
+                return found[rarest];
+            searchDocs = found[rarest].getDocumentSet();
+        }
 
-            NodeSet nodes = index.search(getExpressionId(), docs, qnames, filledNgram, ngram, context, nodeSet, axis);
+        String firstNgramm = ngrams[0];
+        LOG.trace("First NGRAM: {}", firstNgramm);
+        NodeSet result = found[0] != null ? found[0] :
+                index.search(getExpressionId(), searchDocs, qnames, firstNgramm, firstNgramm, context, nodeSet, axis);
+
+        for (int i = 1; i < ngrams.length && !result.isEmpty(); i++) {
+            NodeSet nodes = found[i] != null ? found[i] :
+                    index.search(getExpressionId(), searchDocs, qnames, filledNgrams[i], ngrams[i], context, nodeSet, axis);
 
             final NodeSet nodesContainingFirstINgrams = result;
 
@@ -529,6 +543,24 @@ public class NGramSearch extends Function implements Optimizable {
         return result;
 	}
 
+    private static String fillNgram(final String ngram, final String filler, final int n) {
+        int len = ngram.codePointCount(0, ngram.length());
+        int fillSize = n - len;
+        if (fillSize <= 0)
+            return ngram;
+
+        StringBuilder buf = new StringBuilder();
+        int pos = filler.offsetByCodePoints(0, len);
+        for (int j = 0; j < fillSize; j++) {
+            int codepoint = filler.codePointAt(pos);
+            pos += Character.charCount(codepoint);
+            buf.appendCodePoint(codepoint);
+        }
+        buf.append(ngram);
+        LOG.debug("Filled: {}", buf);
+        return buf.toString();
+    }
+
     /**
      * Finds all matches in head which are followed by matches in tail in the specified distance.
      *
@@ -63,6 +63,7 @@ import java.util.Properties;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * 
@@ -537,6 +538,49 @@ public class CustomIndexTest {
         }
     }
 
+    /**
+     * Store a document with repeated ngrams and check that the occurrences
+     * and delta-encoded offsets written to the index are read back correctly.
+     */
+    @Test
+    public void countOccurrences() throws EXistException, PermissionDeniedException, XPathException, IOException, SAXException, LockException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try(final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final MutableDocumentSet countDocs = new DefaultDocumentSet();
+            try (final Txn transaction = transact.beginTransaction()) {
+                final Collection root = broker.getOrCreateCollection(transaction, TestConstants.TEST_COLLECTION_URI);
+                broker.storeDocument(transaction, XmldbURI.create("test_count.xml"),
+                        new StringInputSource("<section><para>abcabcabc</para><para>ABC</para></section>"), MimeType.XML_TYPE, root);
+                countDocs.add(root.getDocument(broker, XmldbURI.create("test_count.xml")));
+                transact.commit(transaction);
+            }
+
+            final NGramIndexWorker index = (NGramIndexWorker) broker.getIndexController().getWorkerByIndexId(NGramIndex.ID);
+            final XQueryContext context = new XQueryContext(broker.getBrokerPool());
+            assertEquals(4, index.countOccurrences(countDocs, null, "abc", context));
+            assertEquals(2, index.countOccurrences(countDocs, null, "bca", context));
+            assertEquals(2, index.countOccurrences(countDocs, null, "cab", context));
+            assertEquals(0, index.countOccurrences(countDocs, null, "xyz", context));
+            // documents outside the set are not counted
+            assertEquals(0, index.countOccurrences(docs, null, "bca", context));
+            // counting stops at the limit
+            assertEquals(0, index.countOccurrences(countDocs, null, "abc", context, 0));
+            assertTrue(index.countOccurrences(countDocs, null, "abc", context, 2) >= 2);
+            assertEquals(2, index.countOccurrences(countDocs, null, "bca", context, 4));
+
+            final XQuery xquery = pool.getXQueryService();
+            Sequence seq = xquery.execute(broker, "doc('" + TestConstants.TEST_COLLECTION_URI + "/test_count.xml')//para[ngram:contains(., 'cabcab')]", null);
+            assertEquals(1, seq.getItemCount());
+            seq = xquery.execute(broker, "doc('" + TestConstants.TEST_COLLECTION_URI + "/test_count.xml')//para[ngram:ends-with(., 'bcabc')]", null);
+            assertEquals(1, seq.getItemCount());
+            seq = xquery.execute(broker, "doc('" + TestConstants.TEST_COLLECTION_URI + "/test_count.xml')//para[ngram:contains(., 'abc')]", null);
+            assertEquals(2, seq.getItemCount());
+            seq = xquery.execute(broker, "doc('" + TestConstants.TEST_COLLECTION_URI + "/test_count.xml')//para[ngram:contains(., 'cabd')]", null);
+            assertEquals(0, seq.getItemCount());
+        }
+    }
+
     @Test
     public void indexKeys() throws SAXException, PermissionDeniedException, XPathException, EXistException {
         final BrokerPool pool = existEmbeddedServer.getBrokerPool();
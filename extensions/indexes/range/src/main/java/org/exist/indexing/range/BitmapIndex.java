@@ -0,0 +1,146 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.range;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Bitmap index for fields declared with <code>bitmap="yes"</code> in the range index
+ * configuration:
+ *
+ * <pre>
+ * &lt;create match="//entry"&gt;
+ *   &lt;field name="status" match="@status" type="xs:string" bitmap="yes"/&gt;
+ *   &lt;field name="year" match="date/@year" type="xs:integer" bitmap="yes"/&gt;
+ * </pre>
+ *
+ * For every value looked up, the set of matching Lucene documents (one per indexed node)
+ * is kept as a {@link CompressedBitmap}. Bitmaps are computed per segment core, so they
+ * remain valid when the reader is reopened and are dropped together with the segment.
+ * Deleted documents are not reflected in the bitmaps and need to be filtered by the caller
+ * using the live docs of the segment.
+ *
+ * Equality lookups on low-cardinality fields (status codes, years, languages) can then be
+ * combined with AND/OR on the bitmaps, without building large intermediate node sets.
+ */
+public class BitmapIndex {
+
+    /**
+     * Maximum number of values cached per field and segment. Bitmaps for high-cardinality
+     * fields are evicted in least recently used order.
+     */
+    public static final int MAX_CACHED_VALUES = 1024;
+
+    private static final CompressedBitmap EMPTY = new CompressedBitmap();
+
+    private final Map<Object, SegmentBitmaps> segments = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Get the bitmap of documents in the given segment having the specified term in field.
+     *
+     * @param context the segment to look at
+     * @param field the name of the lucene field
+     * @param term the term to look up
+     * @return bitmap of the segment relative document numbers, including deleted documents
+     * @throws IOException if reading the index fails
+     */
+    public CompressedBitmap getBitmap(final AtomicReaderContext context, final String field, final BytesRef term) throws IOException {
+        final AtomicReader reader = context.reader();
+        final SegmentBitmaps cached = getSegment(reader);
+        CompressedBitmap bitmap = cached.get(field, term);
+        if (bitmap == null) {
+            bitmap = load(reader, field, term);
+            cached.put(field, BytesRef.deepCopyOf(term), bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Drop all cached bitmaps. Called when the range index is closed or removed, as the
+     * readers of the segments may not all have been closed by then.
+     */
+    public void clear() {
+        segments.clear();
+    }
+
+    private SegmentBitmaps getSegment(final AtomicReader reader) {
+        final Object key = reader.getCoreCacheKey();
+        synchronized (segments) {
+            SegmentBitmaps cached = segments.get(key);
+            if (cached == null) {
+                cached = new SegmentBitmaps();
+                segments.put(key, cached);
+                reader.addCoreClosedListener(segments::remove);
+            }
+            return cached;
+        }
+    }
+
+    private static CompressedBitmap load(final AtomicReader reader, final String field, final BytesRef term) throws IOException {
+        final Terms terms = reader.terms(field);
+        if (terms == null) {
+            return EMPTY;
+        }
+        final TermsEnum termsEnum = terms.iterator(null);
+        if (!termsEnum.seekExact(term)) {
+            return EMPTY;
+        }
+        final CompressedBitmap bitmap = new CompressedBitmap();
+        final DocsEnum docs = termsEnum.docs(null, null, DocsEnum.FLAG_NONE);
+        int doc;
+        while ((doc = docs.nextDoc()) != DocsEnum.NO_MORE_DOCS) {
+            bitmap.add(doc);
+        }
+        return bitmap;
+    }
+
+    private static class SegmentBitmaps {
+
+        private final Map<String, Map<BytesRef, CompressedBitmap>> fields = new HashMap<>();
+
+        synchronized CompressedBitmap get(final String field, final BytesRef term) {
+            final Map<BytesRef, CompressedBitmap> values = fields.get(field);
+            return values == null ? null : values.get(term);
+        }
+
+        synchronized void put(final String field, final BytesRef term, final CompressedBitmap bitmap) {
+            fields.computeIfAbsent(field, f -> new LinkedHashMap<BytesRef, CompressedBitmap>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<BytesRef, CompressedBitmap> eldest) {
+                    return size() > MAX_CACHED_VALUES;
+                }
+            }).put(term, bitmap);
+        }
+    }
+}
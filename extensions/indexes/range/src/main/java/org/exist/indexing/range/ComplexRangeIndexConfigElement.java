@@ -92,6 +92,15 @@ public class ComplexRangeIndexConfigElement extends RangeIndexConfigElement {
         return caseSensitive;
     }
 
+    @Override
+    public boolean usesBitmap(String fieldName) {
+        RangeIndexConfigField field = fields.get(fieldName);
+        if (field != null) {
+            return field.usesBitmap();
+        }
+        return false;
+    }
+
     @Override
     public boolean match(NodePath other) {
         if (isQNameIndex) {
@@ -0,0 +1,345 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.range;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A compressed bitmap of non-negative ints, organized like a Roaring bitmap: values
+ * are partitioned by their upper 16 bits into chunks, each chunk either holding a
+ * sorted array of the lower 16 bits (sparse) or a fixed 8KB bitset (dense).
+ *
+ * Used by {@link BitmapIndex} to cache the set of Lucene documents matching a
+ * value, so that several equality conditions can be combined with cheap AND/OR
+ * operations instead of intersecting node sets.
+ *
+ * Instances are not thread safe while being modified, but may be shared once built.
+ */
+public class CompressedBitmap {
+
+    /** A chunk switches from array to bitset representation above this cardinality. */
+    static final int MAX_ARRAY_SIZE = 4096;
+
+    private static final int BITSET_WORDS = 1024;
+
+    private char[] keys = new char[4];
+    private Object[] chunks = new Object[4];
+    private int[] cardinalities = new int[4];
+    private int size = 0;
+
+    public CompressedBitmap() {
+    }
+
+    public void add(final int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Only non-negative values can be stored: " + value);
+        }
+        final char high = (char) (value >>> 16);
+        final char low = (char) value;
+        int idx;
+        // fast path: values are mostly added in ascending order
+        if (size > 0 && keys[size - 1] == high) {
+            idx = size - 1;
+        } else {
+            idx = findChunk(high);
+            if (idx < 0) {
+                idx = -idx - 1;
+                insertChunk(idx, high, new char[8], 0);
+            }
+        }
+        final Object chunk = chunks[idx];
+        if (chunk instanceof char[]) {
+            final char[] array = (char[]) chunk;
+            final int card = cardinalities[idx];
+            int pos;
+            if (card > 0 && array[card - 1] < low) {
+                pos = card;
+            } else {
+                pos = Arrays.binarySearch(array, 0, card, low);
+                if (pos >= 0) {
+                    return;
+                }
+                pos = -pos - 1;
+            }
+            if (card == MAX_ARRAY_SIZE) {
+                final long[] bits = toBitset(array, card);
+                bits[low >>> 6] |= 1L << low;
+                chunks[idx] = bits;
+            } else {
+                char[] target = array;
+                if (card == array.length) {
+                    target = Arrays.copyOf(array, Math.min(MAX_ARRAY_SIZE, array.length * 2));
+                    chunks[idx] = target;
+                }
+                System.arraycopy(target, pos, target, pos + 1, card - pos);
+                target[pos] = low;
+            }
+            cardinalities[idx] = card + 1;
+        } else {
+            final long[] bits = (long[]) chunk;
+            final long mask = 1L << low;
+            if ((bits[low >>> 6] & mask) == 0) {
+                bits[low >>> 6] |= mask;
+                cardinalities[idx]++;
+            }
+        }
+    }
+
+    public boolean contains(final int value) {
+        if (value < 0) {
+            return false;
+        }
+        final int idx = findChunk((char) (value >>> 16));
+        if (idx < 0) {
+            return false;
+        }
+        final char low = (char) value;
+        final Object chunk = chunks[idx];
+        if (chunk instanceof char[]) {
+            return Arrays.binarySearch((char[]) chunk, 0, cardinalities[idx], low) >= 0;
+        }
+        return (((long[]) chunk)[low >>> 6] & (1L << low)) != 0;
+    }
+
+    public int getCardinality() {
+        int card = 0;
+        for (int i = 0; i < size; i++) {
+            card += cardinalities[i];
+        }
+        return card;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Estimate of the heap memory occupied by this bitmap.
+     *
+     * @return the approximate size in bytes
+     */
+    public long getSizeInBytes() {
+        long bytes = 16 + keys.length * 2L + chunks.length * 8L + cardinalities.length * 4L;
+        for (int i = 0; i < size; i++) {
+            final Object chunk = chunks[i];
+            bytes += chunk instanceof char[] ? 16 + ((char[]) chunk).length * 2L : 16 + BITSET_WORDS * 8L;
+        }
+        return bytes;
+    }
+
+    /**
+     * Iterate over the values in ascending order.
+     *
+     * @return an iterator over all values contained in the bitmap
+     */
+    public PrimitiveIterator.OfInt iterator() {
+        return new BitmapIterator();
+    }
+
+    /**
+     * Compute the intersection of two bitmaps. Neither argument is modified.
+     *
+     * @param a first bitmap
+     * @param b second bitmap
+     * @return a new bitmap containing all values present in both a and b
+     */
+    public static CompressedBitmap and(final CompressedBitmap a, final CompressedBitmap b) {
+        final CompressedBitmap result = new CompressedBitmap();
+        int i = 0, j = 0;
+        while (i < a.size && j < b.size) {
+            final char ka = a.keys[i];
+            final char kb = b.keys[j];
+            if (ka < kb) {
+                i++;
+            } else if (ka > kb) {
+                j++;
+            } else {
+                final long[] bits = toBitset(a.chunks[i], a.cardinalities[i]);
+                final long[] other = toBitset(b.chunks[j], b.cardinalities[j]);
+                int card = 0;
+                for (int w = 0; w < BITSET_WORDS; w++) {
+                    bits[w] &= other[w];
+                    card += Long.bitCount(bits[w]);
+                }
+                if (card > 0) {
+                    result.appendChunk(ka, bits, card);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compute the union of two bitmaps. Neither argument is modified.
+     *
+     * @param a first bitmap
+     * @param b second bitmap
+     * @return a new bitmap containing all values present in a or b
+     */
+    public static CompressedBitmap or(final CompressedBitmap a, final CompressedBitmap b) {
+        final CompressedBitmap result = new CompressedBitmap();
+        int i = 0, j = 0;
+        while (i < a.size || j < b.size) {
+            if (j == b.size || (i < a.size && a.keys[i] < b.keys[j])) {
+                result.appendChunk(a.keys[i], copy(a.chunks[i], a.cardinalities[i]), a.cardinalities[i]);
+                i++;
+            } else if (i == a.size || b.keys[j] < a.keys[i]) {
+                result.appendChunk(b.keys[j], copy(b.chunks[j], b.cardinalities[j]), b.cardinalities[j]);
+                j++;
+            } else {
+                final long[] bits = toBitset(a.chunks[i], a.cardinalities[i]);
+                final long[] other = toBitset(b.chunks[j], b.cardinalities[j]);
+                int card = 0;
+                for (int w = 0; w < BITSET_WORDS; w++) {
+                    bits[w] |= other[w];
+                    card += Long.bitCount(bits[w]);
+                }
+                result.appendChunk(a.keys[i], bits, card);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    private int findChunk(final char high) {
+        return Arrays.binarySearch(keys, 0, size, high);
+    }
+
+    private void insertChunk(final int idx, final char high, final Object chunk, final int cardinality) {
+        if (size == keys.length) {
+            final int newLength = keys.length * 2;
+            keys = Arrays.copyOf(keys, newLength);
+            chunks = Arrays.copyOf(chunks, newLength);
+            cardinalities = Arrays.copyOf(cardinalities, newLength);
+        }
+        System.arraycopy(keys, idx, keys, idx + 1, size - idx);
+        System.arraycopy(chunks, idx, chunks, idx + 1, size - idx);
+        System.arraycopy(cardinalities, idx, cardinalities, idx + 1, size - idx);
+        keys[idx] = high;
+        chunks[idx] = chunk;
+        cardinalities[idx] = cardinality;
+        size++;
+    }
+
+    /**
+     * Append a chunk with a key larger than all existing keys, converting dense
+     * bitsets with a low cardinality back to the array representation.
+     */
+    private void appendChunk(final char high, final Object chunk, final int cardinality) {
+        Object stored = chunk;
+        if (chunk instanceof long[] && cardinality <= MAX_ARRAY_SIZE) {
+            stored = toArray((long[]) chunk, cardinality);
+        }
+        insertChunk(size, high, stored, cardinality);
+    }
+
+    private static Object copy(final Object chunk, final int cardinality) {
+        if (chunk instanceof char[]) {
+            return Arrays.copyOf((char[]) chunk, cardinality);
+        }
+        return ((long[]) chunk).clone();
+    }
+
+    private static long[] toBitset(final Object chunk, final int cardinality) {
+        if (chunk instanceof long[]) {
+            return ((long[]) chunk).clone();
+        }
+        final char[] array = (char[]) chunk;
+        final long[] bits = new long[BITSET_WORDS];
+        for (int i = 0; i < cardinality; i++) {
+            final char low = array[i];
+            bits[low >>> 6] |= 1L << low;
+        }
+        return bits;
+    }
+
+    private static char[] toArray(final long[] bits, final int cardinality) {
+        final char[] array = new char[cardinality];
+        int pos = 0;
+        for (int w = 0; w < BITSET_WORDS; w++) {
+            long word = bits[w];
+            while (word != 0) {
+                array[pos++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return array;
+    }
+
+    private class BitmapIterator implements PrimitiveIterator.OfInt {
+
+        private int chunk = 0;
+        private int pos = 0;
+        private int word = 0;
+        private long bits = 0;
+        private boolean ready = false;
+        private int next;
+
+        @Override
+        public boolean hasNext() {
+            if (ready) {
+                return true;
+            }
+            while (chunk < size) {
+                final Object current = chunks[chunk];
+                final int high = keys[chunk] << 16;
+                if (current instanceof char[]) {
+                    if (pos < cardinalities[chunk]) {
+                        next = high | ((char[]) current)[pos++];
+                        ready = true;
+                        return true;
+                    }
+                } else {
+                    final long[] words = (long[]) current;
+                    while (bits == 0 && word < BITSET_WORDS) {
+                        bits = words[word++];
+                    }
+                    if (bits != 0) {
+                        next = high | (((word - 1) << 6) + Long.numberOfTrailingZeros(bits));
+                        bits &= bits - 1;
+                        ready = true;
+                        return true;
+                    }
+                }
+                chunk++;
+                pos = 0;
+                word = 0;
+                bits = 0;
+            }
+            return false;
+        }
+
+        @Override
+        public int nextInt() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ready = false;
+            return next;
+        }
+    }
+}
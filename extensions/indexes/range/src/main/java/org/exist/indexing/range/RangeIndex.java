@@ -27,10 +27,19 @@ import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.core.KeywordAnalyzer;
 import org.exist.indexing.IndexWorker;
 import org.exist.indexing.lucene.LuceneIndex;
+import org.exist.storage.BrokerPool;
 import org.exist.storage.DBBroker;
+import org.exist.storage.btree.DBException;
+import org.exist.util.DatabaseConfigurationException;
+import org.exist.util.NamedThreadFactory;
+import org.w3c.dom.Element;
 
+import javax.annotation.Nullable;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Main implementation class for the new range index. This extends the existing LuceneIndex.
@@ -89,8 +98,51 @@ public class RangeIndex extends LuceneIndex {
 
     private static final String DIR_NAME = "range";
 
+    private static final String PARALLELISM_ATTR = "parallelism";
+
     private Analyzer defaultAnalyzer = new KeywordAnalyzer();
 
+    private final BitmapIndex bitmapIndex = new BitmapIndex();
+
+    private int parallelism = 1;
+
+    @Nullable
+    private ExecutorService searchExecutor = null;
+
+    @Override
+    public void configure(BrokerPool pool, Path dataDir, Element config) throws DatabaseConfigurationException {
+        super.configure(pool, dataDir, config);
+
+        String parallelismParam = config.getAttribute(PARALLELISM_ATTR);
+        if (parallelismParam != null && !parallelismParam.isEmpty()) {
+            try {
+                parallelism = Integer.parseInt(parallelismParam);
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid parallelism setting for range index: {}", parallelismParam, e);
+            }
+        }
+    }
+
+    @Override
+    public void open() throws DatabaseConfigurationException {
+        super.open();
+        if (parallelism > 1) {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Searching range index segments with {} threads", parallelism);
+            searchExecutor = Executors.newFixedThreadPool(parallelism, new NamedThreadFactory(getBrokerPool(), "range-index-search"));
+        }
+    }
+
+    @Override
+    public synchronized void close() throws DBException {
+        if (searchExecutor != null) {
+            searchExecutor.shutdownNow();
+            searchExecutor = null;
+        }
+        super.close();
+        bitmapIndex.clear();
+    }
+
     @Override
     public String getDirName() {
         return DIR_NAME;
@@ -109,4 +161,18 @@ public class RangeIndex extends LuceneIndex {
     public Analyzer getDefaultAnalyzer() {
         return defaultAnalyzer;
     }
+
+    public BitmapIndex getBitmapIndex() {
+        return bitmapIndex;
+    }
+
+    /**
+     * Get the executor used to search index segments concurrently.
+     *
+     * @return the executor, or null if parallel search is disabled
+     */
+    @Nullable
+    public ExecutorService getSearchExecutor() {
+        return searchExecutor;
+    }
 }
@@ -188,6 +188,28 @@ public class RangeIndexConfig {
         return caseSensitive;
     }
 
+    public boolean usesBitmap(QName qname, String fieldName) {
+        if (qname != null) {
+            RangeIndexConfigElement idxConf = paths.get(qname);
+            while (idxConf != null) {
+                if (!idxConf.isComplex() && idxConf.usesBitmap(null)) {
+                    return true;
+                }
+                idxConf = idxConf.getNext();
+            }
+        } else {
+            for (RangeIndexConfigElement idxConf: paths.values()) {
+                while (idxConf != null) {
+                    if (idxConf.isComplex() && idxConf.usesBitmap(fieldName)) {
+                        return true;
+                    }
+                    idxConf = idxConf.getNext();
+                }
+            }
+        }
+        return false;
+    }
+
     public Iterator<RangeIndexConfigElement> getConfig(NodePath path) {
         iterator.reset(path);
         return iterator;
@@ -58,6 +58,7 @@ public class RangeIndexConfigElement {
     protected boolean includeNested = false;
     protected boolean caseSensitive = true;
     protected boolean usesCollation = false;
+    protected boolean bitmap = false;
     protected int wsTreatment = XMLString.SUPPRESS_NONE;
     private org.exist.indexing.range.conversion.TypeConverter typeConverter = null;
 
@@ -121,6 +122,12 @@ public class RangeIndexConfigElement {
                 RangeIndex.LOG.warn("Failed to initialize custom-type: {}", custom, e);
             }
         }
+
+        // keep bitmaps of matching nodes per value if bitmap="yes"
+        String bitmapStr = node.getAttribute("bitmap");
+        if (bitmapStr != null && !bitmapStr.isEmpty()) {
+            bitmap = bitmapStr.equalsIgnoreCase("yes");
+        }
     }
 
     private void parseChildren(Node root) throws DatabaseConfigurationException {
@@ -297,6 +304,10 @@ public class RangeIndexConfigElement {
         return usesCollation;
     }
 
+    public boolean usesBitmap(String fieldName) {
+        return bitmap;
+    }
+
     public boolean isComplex() {
         return false;
     }
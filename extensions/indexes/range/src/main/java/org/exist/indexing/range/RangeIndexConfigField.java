@@ -48,6 +48,7 @@ public class RangeIndexConfigField {
     protected boolean includeNested = false;
     protected int wsTreatment = XMLString.SUPPRESS_NONE;
     protected boolean caseSensitive = true;
+    protected boolean bitmap = false;
 
     public RangeIndexConfigField(NodePath parentPath, Element elem, Map<String, String> namespaces) throws DatabaseConfigurationException {
         name = elem.getAttribute("name");
@@ -106,6 +107,11 @@ public class RangeIndexConfigField {
         if (caseStr != null && !caseStr.isEmpty()) {
             caseSensitive = caseStr.equalsIgnoreCase("yes");
         }
+
+        String bitmapStr = elem.getAttribute("bitmap");
+        if (bitmapStr != null && !bitmapStr.isEmpty()) {
+            bitmap = bitmapStr.equalsIgnoreCase("yes");
+        }
     }
 
     public String getName() {
@@ -146,6 +152,10 @@ public class RangeIndexConfigField {
         return caseSensitive;
     }
 
+    public boolean usesBitmap() {
+        return bitmap;
+    }
+
     public boolean includeNested() {
         return includeNested;
     }
@@ -33,6 +33,7 @@ import org.exist.dom.persistent.DocumentSet;
 import org.exist.dom.QName;
 import org.exist.dom.persistent.AbstractCharacterData;
 import org.exist.dom.persistent.NodeProxy;
+import org.exist.dom.persistent.StoredNode;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
@@ -72,6 +73,9 @@ import org.w3c.dom.NodeList;
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * The main worker class for the range index.
@@ -520,8 +524,23 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             List<QName> definedIndexes = getDefinedIndexes(qnames);
             NodeSet resultSet = new NewArrayNodeSet();
             for (QName qname : definedIndexes) {
-                Query query;
                 String field = LuceneUtil.encodeQName(qname, index.getBrokerPool().getSymbols());
+                final short nodeType = qname.getNameType() == ElementValue.ATTRIBUTE ? Node.ATTRIBUTE_NODE : Node
+                        .ELEMENT_NODE;
+
+                if (operator == RangeIndex.Operator.EQ && usesBitmap(qname, null, docs)) {
+                    final List<BytesRef> terms = new ArrayList<>(keys.length);
+                    for (AtomicValue key : keys) {
+                        BytesRef term = toTerm(field, qname, key, docs);
+                        if (term != null) {
+                            terms.add(term);
+                        }
+                    }
+                    resultSet.addAll(collectBitmaps(contextId, docs, contextSet, axis, nodeType, searcher.searcher,
+                            Collections.singletonList(field), Collections.singletonList(terms)));
+                    continue;
+                }
+                Query query;
                 if (keys.length > 1) {
                     BooleanQuery bool = new BooleanQuery();
                     for (AtomicValue key : keys) {
@@ -531,9 +550,6 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                 } else {
                     query = toQuery(field, qname, keys[0], operator, docs);
                 }
-                final short nodeType = qname.getNameType() == ElementValue.ATTRIBUTE ? Node.ATTRIBUTE_NODE : Node
-                        .ELEMENT_NODE;
-
                 resultSet.addAll(doQuery(contextId, docs, contextSet, axis, searcher.searcher, nodeType, query, null));
             }
             return resultSet;
@@ -542,6 +558,9 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
     public NodeSet queryField(int contextId, DocumentSet docs, NodeSet contextSet, Sequence fields, Sequence[] keys, RangeIndex.Operator[] operators, int axis) throws IOException, XPathException {
         return index.withSearcher(searcher -> {
+            if (canUseBitmaps(fields, keys, operators, docs)) {
+                return queryBitmaps(contextId, docs, contextSet, fields, keys, axis, searcher.searcher);
+            }
             BooleanQuery query = new BooleanQuery();
             int j = 0;
             for (SequenceIterator i = fields.iterate(); i.hasNext(); j++) {
@@ -571,6 +590,91 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         });
     }
 
+    /**
+     * Check if a field query can be answered from the bitmap index: this is the case if all
+     * conditions are equality comparisons on fields configured with bitmap="yes".
+     */
+    private boolean canUseBitmaps(Sequence fields, Sequence[] keys, RangeIndex.Operator[] operators, DocumentSet docs) throws XPathException {
+        int j = 0;
+        for (SequenceIterator i = fields.iterate(); i.hasNext(); j++) {
+            String field = i.nextItem().getStringValue();
+            if (operators[j] != RangeIndex.Operator.EQ || keys[j].isEmpty() || !usesBitmap(null, field, docs)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Evaluate equality conditions on several fields using the bitmap index: the bitmaps for
+     * the keys of one field are OR'ed, the results for different fields AND'ed. Only the lucene
+     * documents remaining after the combination are resolved into nodes.
+     */
+    private NodeSet queryBitmaps(int contextId, DocumentSet docs, NodeSet contextSet, Sequence fields, Sequence[] keys,
+                                 int axis, IndexSearcher searcher) throws IOException, XPathException {
+        final List<String> fieldNames = new ArrayList<>(keys.length);
+        final List<List<BytesRef>> terms = new ArrayList<>(keys.length);
+        int j = 0;
+        for (SequenceIterator i = fields.iterate(); i.hasNext(); j++) {
+            String field = i.nextItem().getStringValue();
+            List<BytesRef> fieldTerms = new ArrayList<>(keys[j].getItemCount());
+            for (SequenceIterator ki = keys[j].iterate(); ki.hasNext(); ) {
+                BytesRef term = toTerm(field, null, ki.nextItem().atomize(), docs);
+                if (term != null) {
+                    fieldTerms.add(term);
+                }
+            }
+            fieldNames.add(field);
+            terms.add(fieldTerms);
+        }
+
+        return collectBitmaps(contextId, docs, contextSet, axis, Node.ELEMENT_NODE, searcher, fieldNames, terms);
+    }
+
+    private NodeSet collectBitmaps(int contextId, DocumentSet docs, NodeSet contextSet, int axis, short nodeType,
+                                   IndexSearcher searcher, List<String> fieldNames, List<List<BytesRef>> terms) throws IOException {
+        final BitmapIndex bitmaps = index.getBitmapIndex();
+        return searchLeaves(contextId, docs, contextSet, axis, nodeType, searcher, (leaf, collector) -> {
+            CompressedBitmap matches = null;
+            for (int f = 0; f < fieldNames.size(); f++) {
+                CompressedBitmap fieldMatches = null;
+                for (BytesRef term : terms.get(f)) {
+                    CompressedBitmap bitmap = bitmaps.getBitmap(leaf, fieldNames.get(f), term);
+                    fieldMatches = fieldMatches == null ? bitmap : CompressedBitmap.or(fieldMatches, bitmap);
+                }
+                if (fieldMatches == null) {
+                    return;
+                }
+                matches = matches == null ? fieldMatches : CompressedBitmap.and(matches, fieldMatches);
+                if (matches.isEmpty()) {
+                    return;
+                }
+            }
+            if (matches == null) {
+                return;
+            }
+            collector.setNextReader(leaf);
+            final Bits liveDocs = leaf.reader().getLiveDocs();
+            for (PrimitiveIterator.OfInt di = matches.iterator(); di.hasNext(); ) {
+                final int doc = di.nextInt();
+                if (liveDocs == null || liveDocs.get(doc)) {
+                    collector.collect(doc);
+                }
+            }
+        });
+    }
+
+    /**
+     * Convert a key into the indexed term it has to match exactly, analyzing
+     * string values in the same way as {@link #toQuery} does for EQ.
+     */
+    private BytesRef toTerm(String field, QName qname, AtomicValue content, DocumentSet docs) throws XPathException {
+        if (Type.subTypeOf(content.getType(), Type.STRING)) {
+            return analyzeContent(field, qname, content.getStringValue(), docs);
+        }
+        return RangeIndexConfigElement.convertToBytes(content);
+    }
+
 //    private OpenBitSet getDocs(DocumentSet docs, IndexSearcher searcher) throws IOException {
 //        OpenBitSet bits = new OpenBitSet(searcher.getIndexReader().maxDoc());
 //        for (Iterator i = docs.getDocumentIterator(); i.hasNext(); ) {
@@ -588,23 +692,174 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     private NodeSet doQuery(final int contextId, final DocumentSet docs, final NodeSet contextSet, final int axis,
                             IndexSearcher searcher, final short nodeType, Query query, Filter filter) throws
             IOException {
-        SearchCollector collector = new SearchCollector(docs, contextSet, nodeType, axis, contextId);
-        searcher.search(query, filter, collector);
-        return collector.getResultSet();
+        if (filter != null || index.getSearchExecutor() == null) {
+            SearchCollector collector = new SearchCollector(docs, contextSet, nodeType, axis, contextId);
+            searcher.search(query, filter, collector);
+            return collector.getResultSet();
+        }
+        final Weight weight = searcher.createNormalizedWeight(query);
+        return searchLeaves(contextId, docs, contextSet, axis, nodeType, searcher, (leaf, collector) -> {
+            final Scorer scorer = weight.scorer(leaf, leaf.reader().getLiveDocs());
+            if (scorer != null) {
+                collector.setNextReader(leaf);
+                int doc;
+                while ((doc = scorer.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                    collector.collect(doc);
+                }
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface LeafSearch {
+        void search(AtomicReaderContext leaf, DocValuesCollector collector) throws IOException;
+    }
+
+    /**
+     * Run a search on every segment of the index and merge the resulting node sets.
+     * If a search executor is configured for the index, segments are searched
+     * concurrently. Worker threads only read the matching lucene documents from
+     * their segment: resolving the matches against the document and context sets
+     * accesses the broker and may modify the context set, so it is always done
+     * on the calling thread.
+     */
+    private NodeSet searchLeaves(final int contextId, final DocumentSet docs, final NodeSet contextSet, final int axis,
+                                 final short nodeType, IndexSearcher searcher, LeafSearch search) throws IOException {
+        final List<AtomicReaderContext> leaves = searcher.getIndexReader().leaves();
+        final ExecutorService executor = index.getSearchExecutor();
+        final SearchCollector collector = new SearchCollector(docs, contextSet, nodeType, axis, contextId);
+        if (executor == null || leaves.size() < 2) {
+            for (AtomicReaderContext leaf : leaves) {
+                search.search(leaf, collector);
+            }
+            return collector.getResultSet();
+        }
+
+        final List<Future<MatchCollector>> results = new ArrayList<>(leaves.size());
+        try {
+            for (AtomicReaderContext leaf : leaves) {
+                results.add(executor.submit(() -> {
+                    final MatchCollector matches = new MatchCollector();
+                    search.search(leaf, matches);
+                    return matches;
+                }));
+            }
+            for (Future<MatchCollector> result : results) {
+                result.get().replay(collector);
+            }
+            return collector.getResultSet();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while searching range index: " + e.getMessage(), e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error while searching range index: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            for (Future<MatchCollector> result : results) {
+                result.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Reads document id, node id and node address of every matching lucene document
+     * from the doc values of the current segment and passes them on to
+     * {@link #collect(int, NodeId, long)}.
+     */
+    private abstract class DocValuesCollector extends Collector {
+        private NumericDocValues docIdValues;
+        private BinaryDocValues nodeIdValues;
+        private BinaryDocValues addressValues;
+
+        @Override
+        public void setScorer(Scorer scorer) throws IOException {
+            // ignore
+        }
+
+        @Override
+        public void collect(int doc) throws IOException {
+            final int docId = (int) this.docIdValues.get(doc);
+            if (!accept(docId)) {
+                return;
+            }
+            final BytesRef ref = this.nodeIdValues.get(doc);
+            final int units = ByteConversion.byteToShort(ref.bytes, ref.offset);
+            final NodeId nodeId = index.getBrokerPool().getNodeFactory().createFromData(units, ref.bytes, ref.offset + 2);
+            collect(docId, nodeId, getAddress(doc));
+        }
+
+        private long getAddress(int doc) {
+            if (addressValues != null) {
+                final BytesRef ref = addressValues.get(doc);
+                if (ref.offset < ref.bytes.length) {
+                    return ByteConversion.byteToLong(ref.bytes, ref.offset);
+                }
+            }
+            return StoredNode.UNKNOWN_NODE_IMPL_ADDRESS;
+        }
+
+        /**
+         * @return false if matches in the given document can be skipped without reading the node id
+         */
+        protected boolean accept(int docId) {
+            return true;
+        }
+
+        protected abstract void collect(int docId, NodeId nodeId, long address);
+
+        @Override
+        public void setNextReader(AtomicReaderContext atomicReaderContext) throws IOException {
+            final AtomicReader reader = atomicReaderContext.reader();
+            this.docIdValues = reader.getNumericDocValues(FIELD_DOC_ID);
+            this.nodeIdValues = reader.getBinaryDocValues(FIELD_NODE_ID);
+            this.addressValues = reader.getBinaryDocValues(FIELD_ADDRESS);
+        }
+
+        @Override
+        public boolean acceptsDocsOutOfOrder() {
+            return true;
+        }
     }
 
-    private class SearchCollector extends Collector {
+    /**
+     * Records the raw matches of a segment searched on a worker thread. Touches
+     * neither the broker nor any node set, so it is safe to run concurrently.
+     */
+    private class MatchCollector extends DocValuesCollector {
+        private int[] docIds = new int[64];
+        private long[] addresses = new long[64];
+        private final List<NodeId> nodeIds = new ArrayList<>();
+
+        @Override
+        protected void collect(int docId, NodeId nodeId, long address) {
+            final int count = nodeIds.size();
+            if (count == docIds.length) {
+                docIds = Arrays.copyOf(docIds, count * 2);
+                addresses = Arrays.copyOf(addresses, count * 2);
+            }
+            docIds[count] = docId;
+            addresses[count] = address;
+            nodeIds.add(nodeId);
+        }
+
+        void replay(DocValuesCollector target) {
+            for (int i = 0; i < nodeIds.size(); i++) {
+                if (target.accept(docIds[i])) {
+                    target.collect(docIds[i], nodeIds.get(i), addresses[i]);
+                }
+            }
+        }
+    }
+
+    private class SearchCollector extends DocValuesCollector {
         private final NodeSet resultSet;
         private final NodeSet contextSet;
         private final short nodeType;
         private final int axis;
         private final int contextId;
         private final DocumentSet docs;
-        private AtomicReader reader;
-        private NumericDocValues docIdValues;
-        private BinaryDocValues nodeIdValues;
-        private BinaryDocValues addressValues;
-        private final byte[] buf = new byte[1024];
 
         public SearchCollector(DocumentSet docs, NodeSet contextSet, short nodeType, int axis, int contextId) {
             this.resultSet = new NewArrayNodeSet();
@@ -620,21 +875,13 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         }
 
         @Override
-        public void setScorer(Scorer scorer) throws IOException {
-            // ignore
+        protected boolean accept(int docId) {
+            return docs.getDoc(docId) != null;
         }
 
         @Override
-        public void collect(int doc) throws IOException {
-            int docId = (int) this.docIdValues.get(doc);
-            DocumentImpl storedDocument = docs.getDoc(docId);
-            if (storedDocument == null) {
-                return;
-            }
-            final BytesRef ref = this.nodeIdValues.get(doc);
-
-            int units = ByteConversion.byteToShort(ref.bytes, ref.offset);
-            NodeId nodeId = index.getBrokerPool().getNodeFactory().createFromData(units, ref.bytes, ref.offset + 2);
+        protected void collect(int docId, NodeId nodeId, long address) {
+            final DocumentImpl storedDocument = docs.getDoc(docId);
 
             // if a context set is specified, we can directly check if the
             // matching node is a descendant of one of the nodes
@@ -645,7 +892,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                 if (parentNode != null) {
                     NodeProxy storedNode = new NodeProxy(parentNode.getExpression(), storedDocument, nodeId);
                     storedNode.setNodeType(nodeType);
-                    getAddress(doc, storedNode);
+                    setAddress(storedNode, address);
                     if (axis == NodeSet.ANCESTOR) {
                         resultSet.add(parentNode, sizeHint);
                         if (Expression.NO_CONTEXT_ID != contextId) {
@@ -659,33 +906,16 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             } else {
                 NodeProxy storedNode = new NodeProxy(null, storedDocument, nodeId);
                 storedNode.setNodeType(nodeType);
-                getAddress(doc, storedNode);
+                setAddress(storedNode, address);
                 resultSet.add(storedNode);
             }
         }
 
-        private void getAddress(int doc, NodeHandle storedNode) {
-            if (addressValues != null) {
-                final BytesRef ref = addressValues.get(doc);
-                if (ref.offset < ref.bytes.length) {
-                    final long address = ByteConversion.byteToLong(ref.bytes, ref.offset);
-                    storedNode.setInternalAddress(address);
-                }
+        private void setAddress(NodeHandle storedNode, long address) {
+            if (address != StoredNode.UNKNOWN_NODE_IMPL_ADDRESS) {
+                storedNode.setInternalAddress(address);
             }
         }
-
-        @Override
-        public void setNextReader(AtomicReaderContext atomicReaderContext) throws IOException {
-            this.reader = atomicReaderContext.reader();
-            this.docIdValues = this.reader.getNumericDocValues(FIELD_DOC_ID);
-            this.nodeIdValues = this.reader.getBinaryDocValues(FIELD_NODE_ID);
-            this.addressValues = this.reader.getBinaryDocValues(FIELD_ADDRESS);
-        }
-
-        @Override
-        public boolean acceptsDocsOutOfOrder() {
-            return true;
-        }
     }
 
     /**
@@ -787,6 +1017,24 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         return true;
     }
 
+    /**
+     * Check if a bitmap index has been configured for the given field or qname
+     * in any of the collections. Either field or qname should be specified.
+     */
+    private boolean usesBitmap(QName qname, String fieldName, DocumentSet docs) {
+        for (Iterator<Collection> i = docs.getCollectionIterator(); i.hasNext(); ) {
+            Collection collection = i.next();
+            IndexSpec idxConf = collection.getIndexConfiguration(broker);
+            if (idxConf != null) {
+                RangeIndexConfig config = (RangeIndexConfig) idxConf.getCustomIndexSpec(RangeIndex.ID);
+                if (config != null && config.usesBitmap(qname, fieldName)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     private static boolean matchQName(QName qname, QName candidate) {
         boolean match = true;
         if (qname.getLocalPart() != null)
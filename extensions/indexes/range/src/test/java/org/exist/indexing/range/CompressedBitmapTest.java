@@ -0,0 +1,123 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.range;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompressedBitmapTest {
+
+    @Test
+    public void addAndContains() {
+        final CompressedBitmap bitmap = new CompressedBitmap();
+        bitmap.add(5);
+        bitmap.add(1);
+        bitmap.add(70000);
+        bitmap.add(5);
+        assertEquals(3, bitmap.getCardinality());
+        assertTrue(bitmap.contains(1));
+        assertTrue(bitmap.contains(5));
+        assertTrue(bitmap.contains(70000));
+        assertFalse(bitmap.contains(2));
+        assertFalse(bitmap.contains(-1));
+        assertValues(bitmap, 1, 5, 70000);
+    }
+
+    @Test
+    public void denseChunks() {
+        final CompressedBitmap bitmap = new CompressedBitmap();
+        final BitSet expected = new BitSet();
+        for (int i = 0; i < 3 * CompressedBitmap.MAX_ARRAY_SIZE; i += 2) {
+            bitmap.add(i);
+            expected.set(i);
+        }
+        assertEquals(expected.cardinality(), bitmap.getCardinality());
+        assertSame(expected, bitmap);
+    }
+
+    @Test
+    public void andOr() {
+        final Random random = new Random(42);
+        final CompressedBitmap a = new CompressedBitmap();
+        final CompressedBitmap b = new CompressedBitmap();
+        final BitSet expectedA = new BitSet();
+        final BitSet expectedB = new BitSet();
+        for (int i = 0; i < 20000; i++) {
+            final int va = random.nextInt(300000);
+            // b is dense in the first chunk and sparse in the others
+            final int vb = i < 10000 ? random.nextInt(65536) : random.nextInt(300000);
+            a.add(va);
+            expectedA.set(va);
+            b.add(vb);
+            expectedB.set(vb);
+        }
+
+        final BitSet and = (BitSet) expectedA.clone();
+        and.and(expectedB);
+        assertSame(and, CompressedBitmap.and(a, b));
+
+        final BitSet or = (BitSet) expectedA.clone();
+        or.or(expectedB);
+        assertSame(or, CompressedBitmap.or(a, b));
+
+        // arguments are unchanged
+        assertSame(expectedA, a);
+        assertSame(expectedB, b);
+    }
+
+    @Test
+    public void empty() {
+        final CompressedBitmap a = new CompressedBitmap();
+        final CompressedBitmap b = new CompressedBitmap();
+        b.add(3);
+        assertTrue(a.isEmpty());
+        assertTrue(CompressedBitmap.and(a, b).isEmpty());
+        assertValues(CompressedBitmap.or(a, b), 3);
+        assertFalse(a.iterator().hasNext());
+    }
+
+    private static void assertSame(final BitSet expected, final CompressedBitmap actual) {
+        assertEquals(expected.cardinality(), actual.getCardinality());
+        final PrimitiveIterator.OfInt i = actual.iterator();
+        for (int v = expected.nextSetBit(0); v >= 0; v = expected.nextSetBit(v + 1)) {
+            assertTrue(i.hasNext());
+            assertEquals(v, i.nextInt());
+        }
+        assertFalse(i.hasNext());
+    }
+
+    private static void assertValues(final CompressedBitmap bitmap, final int... values) {
+        final PrimitiveIterator.OfInt i = bitmap.iterator();
+        for (final int value : values) {
+            assertTrue(i.hasNext());
+            assertEquals(value, i.nextInt());
+        }
+        assertFalse(i.hasNext());
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.range;
+
+import org.exist.EXistException;
+import org.exist.TestUtils;
+import org.exist.collections.Collection;
+import org.exist.collections.CollectionConfigurationManager;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.util.MimeType;
+import org.exist.util.StringInputSource;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.value.Sequence;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * An update which needs to reindex an ancestor for one index, but not for another.
+ * The range index on item has to reindex the item the note is inserted into, while the
+ * Lucene index on note only receives the inserted node. Both need to see the new content.
+ */
+public class MixedReindexRootsTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    private static final XmldbURI COLLECTION_URI = XmldbURI.ROOT_COLLECTION_URI.append("mixed-reindex-roots");
+
+    private static final String COLLECTION_CONFIG =
+            "<collection xmlns=\"http://exist-db.org/collection-config/1.0\">" +
+            "    <index>" +
+            "        <lucene>" +
+            "            <text qname=\"note\"/>" +
+            "        </lucene>" +
+            "        <range>" +
+            "            <create qname=\"item\" type=\"xs:string\"/>" +
+            "        </range>" +
+            "    </index>" +
+            "</collection>";
+
+    private static final String XML =
+            "<items>" +
+            "    <item>foo</item>" +
+            "    <item>bar</item>" +
+            "</items>";
+
+    @BeforeClass
+    public static void storeDocument() throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = transact.beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, COLLECTION_URI);
+            final CollectionConfigurationManager mgr = pool.getConfigurationManager();
+            mgr.addConfiguration(transaction, broker, collection, COLLECTION_CONFIG);
+            broker.saveCollection(transaction, collection);
+            broker.storeDocument(transaction, XmldbURI.create("items.xml"),
+                    new StringInputSource(XML), MimeType.XML_TYPE, collection);
+            transact.commit(transaction);
+        }
+    }
+
+    @AfterClass
+    public static void cleanup() throws EXistException, PermissionDeniedException, IOException, LockException, TriggerException {
+        TestUtils.cleanupDB();
+    }
+
+    @Test
+    public void insertIntoRangeIndexedParent() throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = pool.getXQueryService();
+            xquery.execute(broker, "update insert <note>gamma</note> into collection('" + COLLECTION_URI
+                    + "')//item[. = 'foo']", null);
+
+            // the Lucene index received the inserted note through the stream listener
+            assertEquals(1, count(broker, "collection('" + COLLECTION_URI + "')//note[ft:query(., 'gamma')]"));
+            // the range index reindexed the whole item, including the inserted note
+            assertEquals(1, count(broker, "collection('" + COLLECTION_URI + "')//item[range:eq(., 'foogamma')]"));
+            assertEquals(0, count(broker, "collection('" + COLLECTION_URI + "')//item[range:eq(., 'foo')]"));
+            assertEquals(1, count(broker, "collection('" + COLLECTION_URI + "')//item[range:eq(., 'bar')]"));
+        }
+    }
+
+    private static int count(final DBBroker broker, final String query) throws PermissionDeniedException, XPathException {
+        final XQuery xquery = broker.getBrokerPool().getXQueryService();
+        final Sequence result = xquery.execute(broker,
+                "import module namespace range=\"http://exist-db.org/xquery/range\";\n" +
+                query, null);
+        return result.getItemCount();
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.range;
+
+import org.exist.EXistException;
+import org.exist.TestUtils;
+import org.exist.collections.Collection;
+import org.exist.collections.CollectionConfigurationManager;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.dom.QName;
+import org.exist.dom.persistent.DefaultDocumentSet;
+import org.exist.dom.persistent.DocumentSet;
+import org.exist.dom.persistent.MutableDocumentSet;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.dom.persistent.NodeSet;
+import org.exist.dom.persistent.VirtualNodeSet;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.ElementValue;
+import org.exist.storage.sync.Sync;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.util.MimeType;
+import org.exist.util.StringInputSource;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.Expression;
+import org.exist.xquery.NameTest;
+import org.exist.xquery.value.AtomicValue;
+import org.exist.xquery.value.StringValue;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Searches a range index with several segments using the search executor,
+ * with a virtual node set as context. Matches are resolved against the
+ * context set, which has to happen on the calling thread.
+ */
+public class ParallelSearchTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    private static final XmldbURI COLLECTION_URI = XmldbURI.ROOT_COLLECTION_URI.append("parallel-search");
+
+    private static final String COLLECTION_CONFIG =
+            "<collection xmlns=\"http://exist-db.org/collection-config/1.0\">" +
+            "    <index>" +
+            "        <range>" +
+            "            <create qname=\"status\" type=\"xs:string\"/>" +
+            "        </range>" +
+            "    </index>" +
+            "</collection>";
+
+    private static final int DOCUMENTS = 6;
+    private static final int ITEMS = 50;
+
+    @BeforeClass
+    public static void storeDocuments() throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            try (final Txn transaction = transact.beginTransaction()) {
+                final Collection collection = broker.getOrCreateCollection(transaction, COLLECTION_URI);
+                final CollectionConfigurationManager mgr = pool.getConfigurationManager();
+                mgr.addConfiguration(transaction, broker, collection, COLLECTION_CONFIG);
+                broker.saveCollection(transaction, collection);
+                transact.commit(transaction);
+            }
+            // store each document in its own transaction, so the index ends up with several segments
+            for (int d = 0; d < DOCUMENTS; d++) {
+                final StringBuilder data = new StringBuilder("<items>");
+                for (int i = 0; i < ITEMS; i++) {
+                    data.append("<item n=\"").append(i).append("\"><status>")
+                            .append(i % 5 == 0 ? "open" : "closed")
+                            .append("</status></item>");
+                }
+                data.append("</items>");
+                try (final Txn transaction = transact.beginTransaction()) {
+                    final Collection collection = broker.getCollection(COLLECTION_URI);
+                    broker.storeDocument(transaction, XmldbURI.create("items" + d + ".xml"),
+                            new StringInputSource(data.toString()), MimeType.XML_TYPE, collection);
+                    transact.commit(transaction);
+                }
+                broker.sync(Sync.MAJOR);
+            }
+        }
+    }
+
+    @AfterClass
+    public static void cleanup() throws EXistException, PermissionDeniedException, IOException, LockException, TriggerException {
+        TestUtils.cleanupDB();
+    }
+
+    @Test
+    public void descendantAxisWithVirtualContext() throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final RangeIndex index = (RangeIndex) pool.getIndexManager().getIndexById(RangeIndex.ID);
+        assertNotNull("search executor must be enabled by the test configuration", index.getSearchExecutor());
+        assertTrue("index should have several segments",
+                index.withSearcher(searcher -> searcher.searcher.getIndexReader().leaves().size()) > 1);
+
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final DocumentSet docs = getDocuments(broker);
+            final RangeIndexWorker worker = (RangeIndexWorker) broker.getIndexController().getWorkerByIndexId(RangeIndex.ID);
+
+            // /items/item[status = "open"]/status
+            final NodeSet context = itemsOf(broker, docs);
+            final NodeSet result = worker.query(Expression.NO_CONTEXT_ID, docs, context,
+                    Collections.singletonList(new QName("status")), new AtomicValue[] { new StringValue("open") },
+                    RangeIndex.Operator.EQ, NodeSet.DESCENDANT);
+            assertEquals(DOCUMENTS * ITEMS / 5, result.getLength());
+            for (final NodeProxy p : result) {
+                assertEquals("status", p.getQName().getLocalPart());
+                assertEquals("open", p.getNodeValue());
+            }
+        }
+    }
+
+    @Test
+    public void ancestorAxisWithVirtualContext() throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final DocumentSet docs = getDocuments(broker);
+            final RangeIndexWorker worker = (RangeIndexWorker) broker.getIndexController().getWorkerByIndexId(RangeIndex.ID);
+
+            // /items/item[status = "closed"]
+            final NodeSet context = itemsOf(broker, docs);
+            final NodeSet result = worker.query(Expression.NO_CONTEXT_ID, docs, context,
+                    Collections.singletonList(new QName("status")), new AtomicValue[] { new StringValue("closed") },
+                    RangeIndex.Operator.EQ, NodeSet.ANCESTOR);
+            assertEquals(DOCUMENTS * ITEMS * 4 / 5, result.getLength());
+            for (final NodeProxy p : result) {
+                assertEquals("item", p.getQName().getLocalPart());
+            }
+        }
+    }
+
+    private static NodeSet itemsOf(final DBBroker broker, final DocumentSet docs) throws Exception {
+        return new VirtualNodeSet(broker, NodeSet.DESCENDANT,
+                new NameTest(ElementValue.ELEMENT, new QName("item")), Expression.NO_CONTEXT_ID, docs.docsToNodeSet());
+    }
+
+    private static DocumentSet getDocuments(final DBBroker broker) throws Exception {
+        final MutableDocumentSet docs = new DefaultDocumentSet();
+        broker.getCollection(COLLECTION_URI).getDocuments(broker, docs);
+        assertEquals(DOCUMENTS, docs.getDocumentCount());
+        return docs;
+    }
+}
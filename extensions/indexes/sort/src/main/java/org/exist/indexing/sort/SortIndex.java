@@ -28,13 +28,17 @@ import org.exist.indexing.AbstractIndex;
 import org.exist.indexing.IndexWorker;
 import org.exist.indexing.RawBackupSupport;
 import org.exist.storage.DBBroker;
+import org.exist.storage.btree.BTreeException;
 import org.exist.storage.btree.DBException;
+import org.exist.storage.btree.IndexQuery;
+import org.exist.storage.btree.Value;
 import org.exist.storage.index.BTreeStore;
 import org.exist.storage.lock.LockManager;
 import org.exist.storage.lock.ManagedLock;
 import org.exist.util.DatabaseConfigurationException;
 import org.exist.util.FileUtils;
 import org.exist.util.LockException;
+import org.exist.xquery.TerminatedException;
 
 import java.io.IOException;
 import java.io.OutputStream;
@@ -51,6 +55,11 @@ import java.util.concurrent.locks.ReentrantLock;
  *
  * Every sort index has an id by which it is identified and distinguished from other indexes
  * on the same node set.
+ *
+ * In addition, sort keys can be declared in collection.xconf (see {@link SortKeyConfig}).
+ * Those are maintained automatically whenever documents are stored, updated or removed,
+ * and "order by" clauses sorting on such a key are rewritten to read the precomputed key
+ * from the index. The items are still sorted in memory.
  */
 public class SortIndex extends AbstractIndex implements RawBackupSupport {
 
@@ -60,6 +69,7 @@ public class SortIndex extends AbstractIndex implements RawBackupSupport {
     public static final byte SORT_INDEX_ID = 0x10;
     protected static final Logger LOG = LogManager.getLogger(SortIndex.class);
     protected BTreeStore btree;
+    private volatile boolean hasConfiguredKeys = false;
 
     @Override
     public void open() throws DatabaseConfigurationException {
@@ -72,6 +82,26 @@ public class SortIndex extends AbstractIndex implements RawBackupSupport {
             LOG.error("Failed to initialize structural index: {}", e.getMessage(), e);
             throw new DatabaseConfigurationException(e.getMessage(), e);
         }
+        final IndexQuery query = new IndexQuery(IndexQuery.RANGE, new Value(new byte[]{2}), new Value(new byte[]{3}));
+        try(final ManagedLock<ReentrantLock> btreeLock = pool.getLockManager().acquireBtreeReadLock(btree.getLockName())) {
+            btree.query(query, (value, pointer) -> {
+                hasConfiguredKeys = true;
+                return false;
+            });
+        } catch (final LockException | IOException | BTreeException | TerminatedException e) {
+            LOG.warn("Failed to read sort keys registry: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return true if keys defined in collection.xconf have been stored in the index
+     */
+    public boolean hasConfiguredKeys() {
+        return hasConfiguredKeys;
+    }
+
+    void setHasConfiguredKeys() {
+        this.hasConfiguredKeys = true;
     }
 
     @Override
@@ -103,7 +133,7 @@ public class SortIndex extends AbstractIndex implements RawBackupSupport {
 
     @Override
     public IndexWorker getWorker(final DBBroker broker) {
-        return new SortIndexWorker(this);
+        return new SortIndexWorker(this, broker);
     }
 
     @Override
@@ -23,13 +23,19 @@ package org.exist.indexing.sort;
 
 import org.exist.EXistException;
 import org.exist.collections.Collection;
+import org.exist.dom.QName;
 import org.exist.dom.persistent.*;
+import org.exist.indexing.AbstractStreamListener;
 import org.exist.indexing.IndexController;
 import org.exist.indexing.IndexWorker;
 import org.exist.indexing.MatchListener;
 import org.exist.indexing.StreamListener;
 import org.exist.indexing.StreamListener.ReindexMode;
+import org.exist.numbering.NodeId;
+import org.exist.security.PermissionDeniedException;
 import org.exist.storage.DBBroker;
+import org.exist.storage.ElementValue;
+import org.exist.storage.IndexSpec;
 import org.exist.storage.NodePath;
 import org.exist.storage.btree.BTreeCallback;
 import org.exist.storage.btree.BTreeException;
@@ -37,33 +43,71 @@ import org.exist.storage.btree.IndexQuery;
 import org.exist.storage.btree.Value;
 import org.exist.storage.lock.LockManager;
 import org.exist.storage.lock.ManagedLock;
+import org.exist.storage.txn.Txn;
 import org.exist.util.*;
 import org.exist.xquery.QueryRewriter;
 import org.exist.xquery.TerminatedException;
 import org.exist.xquery.XQueryContext;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class SortIndexWorker implements IndexWorker {
 
+    public static final String CONFIG_ELEMENT = "sort";
+
+    /**
+     * Keys longer than this (in UTF-8 bytes) are not stored. The order by
+     * falls back to evaluating the sort expression for those nodes.
+     */
+    public static final int MAX_KEY_LENGTH = 256;
+
     private ReindexMode mode = ReindexMode.STORE;
     private DocumentImpl document = null;
     private SortIndex index;
+    private final DBBroker broker;
     private final LockManager lockManager;
 
-    public SortIndexWorker(final SortIndex index) {
+    private List<SortKeyConfig> config = null;
+    private final Deque<PendingKeys> pending = new ArrayDeque<>();
+    private final List<byte[]> keysToAdd = new ArrayList<>();
+    private final List<byte[]> keysToRemove = new ArrayList<>();
+    private final Map<String, Short> configuredIds = new HashMap<>();
+    private final SortKeyListener listener = new SortKeyListener();
+
+    public SortIndexWorker(final SortIndex index, final DBBroker broker) {
         this.index = index;
+        this.broker = broker;
         this.lockManager = index.getBrokerPool().getLockManager();
     }
 
+    @SuppressWarnings("unchecked")
     public void setDocument(final DocumentImpl doc, final ReindexMode mode) {
         this.document = doc;
         this.mode = mode;
+        this.config = null;
+        pending.clear();
+        if (doc != null) {
+            final IndexSpec indexConf = doc.getCollection().getIndexConfiguration(broker);
+            if (indexConf != null) {
+                config = (List<SortKeyConfig>) indexConf.getCustomIndexSpec(SortIndex.ID);
+            }
+        }
     }
 
     public String getIndexId() {
@@ -76,16 +120,106 @@ public class SortIndexWorker implements IndexWorker {
 
     @Override
     public QueryRewriter getQueryRewriter(final XQueryContext context) {
-        return null;
+        return index.hasConfiguredKeys() ? new SortKeyRewriter(context) : null;
     }
 
     @Override
     public void flush() {
         switch (mode) {
+            case STORE:
+                storeKeys();
+                break;
+            case REMOVE_SOME_NODES:
+                removeKeys();
+                break;
             case REMOVE_ALL_NODES:
                 remove(document);
                 break;
         }
+        keysToAdd.clear();
+        keysToRemove.clear();
+        pending.clear();
+    }
+
+    private void storeKeys() {
+        if (keysToAdd.isEmpty()) {
+            return;
+        }
+        try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
+            for (final byte[] key : keysToAdd) {
+                index.btree.addValue(new Value(key), 0);
+            }
+        } catch (final LockException | IOException | BTreeException e) {
+            SortIndex.LOG.error("Exception caught while storing sort keys: {}", e.getMessage(), e);
+        }
+    }
+
+    private void removeKeys() {
+        if (keysToRemove.isEmpty()) {
+            return;
+        }
+        try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
+            for (final byte[] prefix : keysToRemove) {
+                index.btree.remove(new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value(prefix)), null);
+            }
+        } catch (final LockException | IOException | BTreeException | TerminatedException e) {
+            SortIndex.LOG.error("Exception caught while removing sort keys: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Look up the key stored for the given node by a <code>sort</code> definition
+     * in collection.xconf.
+     *
+     * @param key the qname of the child element or attribute providing the key
+     * @param proxy the node
+     *
+     * @return the string value of the key or null if no key is stored for the node
+     *
+     * @throws EXistException if an error occurs with the database
+     * @throws LockException if a locking error occurs
+     */
+    public @Nullable String getSortKey(final QName key, final NodeProxy proxy) throws EXistException, LockException {
+        final short id = getConfiguredId(SortKeyConfig.getIndexName(key), false);
+        if (id < 0) {
+            return null;
+        }
+        final byte[] prefix = computeKey(id, proxy.getOwnerDocument().getDocId(), proxy.getNodeId(), null);
+        final FindKeyCallback callback = new FindKeyCallback(prefix.length);
+        try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeReadLock(index.btree.getLockName())) {
+            index.btree.query(new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value(prefix)), callback);
+        } catch (final BTreeException | TerminatedException | IOException e) {
+            throw new EXistException("Exception caught while reading sort index: " + e.getMessage(), e);
+        }
+        return callback.key;
+    }
+
+    /**
+     * Read all keys stored for nodes of the given document by a <code>sort</code> definition
+     * in collection.xconf. This is a single range scan on the index and thus much cheaper than
+     * calling {@link #getSortKey(QName, NodeProxy)} for every node of a larger document.
+     *
+     * @param key the qname of the child element or attribute providing the key
+     * @param doc the document
+     *
+     * @return the string values of the keys, by node id of the node they belong to
+     *
+     * @throws EXistException if an error occurs with the database
+     * @throws LockException if a locking error occurs
+     */
+    public SortedMap<NodeId, String> getSortKeys(final QName key, final DocumentImpl doc) throws EXistException, LockException {
+        final short id = getConfiguredId(SortKeyConfig.getIndexName(key), false);
+        if (id < 0) {
+            return Collections.emptySortedMap();
+        }
+        final byte[] prefix = computeKey(id, doc.getDocId());
+        final CollectKeysCallback callback = new CollectKeysCallback(prefix.length);
+        try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeReadLock(index.btree.getLockName())) {
+            index.btree.query(new IndexQuery(IndexQuery.TRUNC_RIGHT, new Value(prefix)), callback);
+        } catch (final BTreeException | TerminatedException | IOException e) {
+            throw new EXistException("Exception caught while reading sort index: " + e.getMessage(), e);
+        }
+        return callback.keys;
     }
 
     /**
@@ -179,8 +313,9 @@ public class SortIndexWorker implements IndexWorker {
     public void remove(final DocumentImpl doc) {
         if (index.btree == null)
             return;
+        // ids of indexes created by the user and of sort keys defined in collection.xconf
         final byte[] fromKey = new byte[]{1};
-        final byte[] endKey = new byte[]{2};
+        final byte[] endKey = new byte[]{3};
 
         try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
             final IndexQuery query = new IndexQuery(IndexQuery.RANGE, new Value(fromKey), new Value(endKey));
@@ -209,24 +344,54 @@ public class SortIndexWorker implements IndexWorker {
     private short getOrRegisterId(final String name) throws EXistException, LockException {
         short id = getId(name);
         if (id < 0) {
-            final byte[] fromKey = {1};
-            final byte[] endKey = {2};
-            final IndexQuery query = new IndexQuery(IndexQuery.RANGE, new Value(fromKey), new Value(endKey));
-            try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
-                final FindIdCallback callback = new FindIdCallback(false);
-                index.btree.query(query, callback);
-                id = (short) (callback.max + 1);
-                registerId(id, name);
-            } catch (final IOException | TerminatedException | BTreeException e) {
-                throw new EXistException("Exception caught while reading sort index: " + e.getMessage(), e);
-            }
+            id = registerNewId((byte) 1, name);
+        }
+        return id;
+    }
+
+    /**
+     * Get the id under which keys defined in collection.xconf are stored. Ids for those
+     * live in a separate registry, but share the id space with indexes created by the user.
+     *
+     * @param name the name of the sort key as returned by {@link SortKeyConfig#getIndexName(QName)}
+     * @param create register a new id if none exists
+     *
+     * @return the id or a negative value if no id is registered and create was false
+     */
+    private short getConfiguredId(final String name, final boolean create) throws EXistException, LockException {
+        final Short cached = configuredIds.get(name);
+        if (cached != null) {
+            return cached;
+        }
+        short id = getId((byte) 2, name);
+        if (id < 0 && create) {
+            id = registerNewId((byte) 2, name);
+            index.setHasConfiguredKeys();
+        }
+        if (id >= 0) {
+            configuredIds.put(name, id);
         }
         return id;
     }
 
-    private void registerId(final short id, final String name) throws EXistException {
+    private short registerNewId(final byte registry, final String name) throws EXistException {
+        final byte[] fromKey = {1};
+        final byte[] endKey = {3};
+        final IndexQuery query = new IndexQuery(IndexQuery.RANGE, new Value(fromKey), new Value(endKey));
+        try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
+            final FindIdCallback callback = new FindIdCallback(false);
+            index.btree.query(query, callback);
+            final short id = (short) (callback.max + 1);
+            registerId(registry, id, name);
+            return id;
+        } catch (final LockException | IOException | TerminatedException | BTreeException e) {
+            throw new EXistException("Exception caught while reading sort index: " + e.getMessage(), e);
+        }
+    }
+
+    private void registerId(final byte registry, final short id, final String name) throws EXistException {
         final byte[] key = new byte[1 + UTF8.encoded(name)];
-        key[0] = 1;
+        key[0] = registry;
         UTF8.encode(name, key, 1);
         try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
             index.btree.addValue(new Value(key), id);
@@ -247,8 +412,12 @@ public class SortIndexWorker implements IndexWorker {
     }
 
     private short getId(final String name) throws EXistException, LockException {
+        return getId((byte) 1, name);
+    }
+
+    private short getId(final byte registry, final String name) throws EXistException, LockException {
         final byte[] key = new byte[1 + UTF8.encoded(name)];
-        key[0] = 1;
+        key[0] = registry;
         UTF8.encode(name, key, 1);
         try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeReadLock(index.btree.getLockName())) {
             return (short) index.btree.findValue(new Value(key));
@@ -274,6 +443,24 @@ public class SortIndexWorker implements IndexWorker {
         return data;
     }
 
+    /**
+     * Key of a sort key defined in collection.xconf. The node id is preceded by its
+     * length in units, so a key can be found by searching for the prefix without value.
+     */
+    private static byte[] computeKey(final short id, final int docId, final NodeId nodeId, @Nullable final byte[] value) {
+        final int valueLength = value == null ? 0 : value.length;
+        final byte[] data = new byte[9 + nodeId.size() + valueLength];
+        data[0] = 0;
+        ByteConversion.shortToByteH(id, data, 1);
+        ByteConversion.intToByteH(docId, data, 3);
+        ByteConversion.shortToByteH((short) nodeId.units(), data, 7);
+        nodeId.serialize(data, 9);
+        if (value != null) {
+            System.arraycopy(value, 0, data, 9 + nodeId.size(), valueLength);
+        }
+        return data;
+    }
+
     private byte[] computeKey(final short id) {
         final byte[] data = new byte[3];
         data[0] = 0;
@@ -282,7 +469,17 @@ public class SortIndexWorker implements IndexWorker {
     }
 
     public Object configure(final IndexController controller, final NodeList configNodes, final Map<String, String> namespaces) throws DatabaseConfigurationException {
-        return null;
+        List<SortKeyConfig> keys = null;
+        for (int i = 0; i < configNodes.getLength(); i++) {
+            final Node node = configNodes.item(i);
+            if (node.getNodeType() == Node.ELEMENT_NODE && CONFIG_ELEMENT.equals(node.getLocalName())) {
+                if (keys == null) {
+                    keys = new ArrayList<>(4);
+                }
+                keys.add(new SortKeyConfig(namespaces, (Element) node));
+            }
+        }
+        return keys;
     }
 
     public DocumentImpl getDocument() {
@@ -290,7 +487,7 @@ public class SortIndexWorker implements IndexWorker {
     }
 
     public void setDocument(final DocumentImpl doc) {
-        this.document = doc;
+        setDocument(doc, mode);
     }
 
     @Override
@@ -302,19 +499,70 @@ public class SortIndexWorker implements IndexWorker {
         this.mode = mode;
     }
 
+    @SuppressWarnings("unchecked")
     public IStoredNode getReindexRoot(final IStoredNode node, final NodePath path, final boolean insert, final boolean includeSelf) {
+        final IndexSpec indexConf = node.getOwnerDocument().getCollection().getIndexConfiguration(broker);
+        final List<SortKeyConfig> keys = indexConf == null ? null : (List<SortKeyConfig>) indexConf.getCustomIndexSpec(SortIndex.ID);
+        if (keys != null) {
+            // a key changes if the node is a matching element, its key or inside its key:
+            // reindex the top-most matching element
+            boolean reindexRequired = false;
+            for (int i = 0; i < path.length() && !reindexRequired; i++) {
+                reindexRequired = isMatch(keys, path.getComponent(i));
+            }
+            if (reindexRequired) {
+                IStoredNode topMost = null;
+                IStoredNode current = node.getNodeType() == Node.ATTRIBUTE_NODE ? node.getParentStoredNode() : node;
+                while (current != null) {
+                    if (current.getNodeType() == Node.ELEMENT_NODE && isMatch(keys, current.getQName())) {
+                        topMost = current;
+                    }
+                    current = current.getParentStoredNode();
+                }
+                if (topMost != null) {
+                    return topMost;
+                }
+            }
+        }
         return insert ? null : node;
     }
 
+    private static boolean isMatch(final List<SortKeyConfig> keys, final QName qname) {
+        for (final SortKeyConfig key : keys) {
+            if (key.getMatch().equals(qname)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public StreamListener getListener() {
-        return null;
+        return listener;
     }
 
     public MatchListener getMatchListener(final DBBroker broker, final NodeProxy proxy) {
         return null;
     }
 
-    public void removeCollection(final Collection collection, final DBBroker broker, final boolean reindex) {
+    public void removeCollection(final Collection collection, final DBBroker broker, final boolean reindex) throws PermissionDeniedException {
+        final IndexSpec indexConf = collection.getIndexConfiguration(broker);
+        if (indexConf == null || indexConf.getCustomIndexSpec(SortIndex.ID) == null) {
+            return;
+        }
+        // drop the keys defined in collection.xconf. Document ids are reused, so keys
+        // must not outlive their documents.
+        try(final ManagedLock<ReentrantLock> btreeLock = lockManager.acquireBtreeWriteLock(index.btree.getLockName())) {
+            final FindIdCallback callback = new FindIdCallback(true);
+            index.btree.query(new IndexQuery(IndexQuery.RANGE, new Value(new byte[]{2}), new Value(new byte[]{3})), callback);
+            for (final Iterator<DocumentImpl> i = collection.iteratorNoLock(broker); i.hasNext(); ) {
+                final DocumentImpl doc = i.next();
+                for (final long id : callback.allIds) {
+                    remove(doc, (short) id);
+                }
+            }
+        } catch (final LockException | EXistException | BTreeException | TerminatedException | IOException e) {
+            SortIndex.LOG.error("Exception caught while removing sort keys: {}", e.getMessage(), e);
+        }
     }
 
     public boolean checkIndex(final DBBroker broker) {
@@ -325,6 +573,170 @@ public class SortIndexWorker implements IndexWorker {
         return new Occurrences[0];
     }
 
+    /**
+     * Collects the sort keys of an element matching a <code>sort</code> definition while
+     * the element is streamed.
+     */
+    private static final class PendingKeys {
+        final NodeId nodeId;
+        final List<SortKeyConfig> keys;
+        final String[] values;
+        final int[] counts;
+        NodeId keyNode = null;
+        int keyIndex = -1;
+        XMLString buffer = null;
+
+        PendingKeys(final NodeId nodeId, final List<SortKeyConfig> keys) {
+            this.nodeId = nodeId;
+            this.keys = keys;
+            this.values = new String[keys.size()];
+            this.counts = new int[keys.size()];
+        }
+
+        void setValue(final int i, final String value) {
+            // a key occurring more than once cannot be used for sorting
+            values[i] = counts[i]++ == 0 ? value : null;
+        }
+    }
+
+    private class SortKeyListener extends AbstractStreamListener {
+
+        @Override
+        public void startElement(final Txn transaction, final ElementImpl element, final NodePath path) {
+            if (config != null) {
+                final PendingKeys top = pending.peek();
+                if (top != null && top.buffer == null && element.getNodeId().isChildOf(top.nodeId)) {
+                    for (int i = 0; i < top.keys.size(); i++) {
+                        final QName key = top.keys.get(i).getKey();
+                        if (key.getNameType() == ElementValue.ELEMENT && key.equals(element.getQName())) {
+                            top.keyNode = element.getNodeId();
+                            top.keyIndex = i;
+                            top.buffer = new XMLString();
+                            break;
+                        }
+                    }
+                }
+                List<SortKeyConfig> matching = null;
+                for (final SortKeyConfig key : config) {
+                    if (key.getMatch().equals(element.getQName())) {
+                        if (matching == null) {
+                            matching = new ArrayList<>(2);
+                        }
+                        matching.add(key);
+                    }
+                }
+                if (matching != null) {
+                    pending.push(new PendingKeys(element.getNodeId(), matching));
+                }
+            }
+            super.startElement(transaction, element, path);
+        }
+
+        @Override
+        public void attribute(final Txn transaction, final AttrImpl attrib, final NodePath path) {
+            final PendingKeys top = pending.peek();
+            if (top != null && attrib.getNodeId().isChildOf(top.nodeId)) {
+                for (int i = 0; i < top.keys.size(); i++) {
+                    final QName key = top.keys.get(i).getKey();
+                    if (key.getNameType() == ElementValue.ATTRIBUTE && key.equals(attrib.getQName())) {
+                        top.setValue(i, attrib.getValue());
+                    }
+                }
+            }
+            super.attribute(transaction, attrib, path);
+        }
+
+        @Override
+        public void characters(final Txn transaction, final AbstractCharacterData text, final NodePath path) {
+            for (final PendingKeys keys : pending) {
+                if (keys.buffer != null) {
+                    keys.buffer.append(text.getXMLString());
+                }
+            }
+            super.characters(transaction, text, path);
+        }
+
+        @Override
+        public void endElement(final Txn transaction, final ElementImpl element, final NodePath path) {
+            PendingKeys top = pending.peek();
+            if (top != null && top.nodeId.equals(element.getNodeId())) {
+                pending.pop();
+                collect(top);
+                top = pending.peek();
+            }
+            if (top != null && top.keyNode != null && top.keyNode.equals(element.getNodeId())) {
+                top.setValue(top.keyIndex, top.buffer.toString());
+                top.buffer.reset();
+                top.buffer = null;
+                top.keyNode = null;
+            }
+            super.endElement(transaction, element, path);
+        }
+
+        private void collect(final PendingKeys keys) {
+            try {
+                final int docId = document.getDocId();
+                for (int i = 0; i < keys.keys.size(); i++) {
+                    final String name = SortKeyConfig.getIndexName(keys.keys.get(i).getKey());
+                    if (mode == ReindexMode.STORE) {
+                        if (keys.values[i] == null) {
+                            continue;
+                        }
+                        final byte[] value = keys.values[i].getBytes(StandardCharsets.UTF_8);
+                        if (value.length <= MAX_KEY_LENGTH) {
+                            keysToAdd.add(computeKey(getConfiguredId(name, true), docId, keys.nodeId, value));
+                        }
+                    } else if (mode == ReindexMode.REMOVE_SOME_NODES) {
+                        final short id = getConfiguredId(name, false);
+                        if (id >= 0) {
+                            keysToRemove.add(computeKey(id, docId, keys.nodeId, null));
+                        }
+                    }
+                }
+            } catch (final EXistException | LockException e) {
+                SortIndex.LOG.error("Exception caught while indexing sort keys: {}", e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public IndexWorker getWorker() {
+            return SortIndexWorker.this;
+        }
+    }
+
+    private final class CollectKeysCallback implements BTreeCallback {
+        private final int prefixLength;
+        final SortedMap<NodeId, String> keys = new TreeMap<>();
+
+        private CollectKeysCallback(final int prefixLength) {
+            this.prefixLength = prefixLength;
+        }
+
+        public boolean indexInfo(final Value value, final long pointer) throws TerminatedException {
+            final byte[] data = value.getData();
+            final int units = ByteConversion.byteToShortH(data, prefixLength);
+            final NodeId nodeId = index.getBrokerPool().getNodeFactory().createFromData(units, data, prefixLength + 2);
+            final int valueOffset = prefixLength + 2 + nodeId.size();
+            keys.put(nodeId, new String(data, valueOffset, data.length - valueOffset, StandardCharsets.UTF_8));
+            return true;
+        }
+    }
+
+    private final static class FindKeyCallback implements BTreeCallback {
+        private final int prefixLength;
+        String key = null;
+
+        private FindKeyCallback(final int prefixLength) {
+            this.prefixLength = prefixLength;
+        }
+
+        public boolean indexInfo(final Value value, final long pointer) throws TerminatedException {
+            final byte[] data = value.getData();
+            key = new String(data, prefixLength, data.length - prefixLength, StandardCharsets.UTF_8);
+            return false;
+        }
+    }
+
     private final static class FindIdCallback implements BTreeCallback {
         long max = 0;
         List<Long> allIds = null;
@@ -0,0 +1,117 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.sort;
+
+import org.exist.dom.QName;
+import org.exist.storage.ElementValue;
+import org.exist.util.DatabaseConfigurationException;
+import org.w3c.dom.Element;
+
+import java.util.Map;
+
+/**
+ * A sort key declared in collection.xconf:
+ *
+ * <pre>
+ * &lt;sort match="book" key="title"/&gt;
+ * &lt;sort match="book" key="@id"/&gt;
+ * </pre>
+ *
+ * For every element matching the qname given in <code>match</code>, the string value of its
+ * child element or attribute named by <code>key</code> is kept in the sort index. An
+ * <code>order by $x/title</code> on such elements can then read the key from the index
+ * instead of loading the child node.
+ */
+public class SortKeyConfig {
+
+    public static final String MATCH_ATTR = "match";
+    public static final String KEY_ATTR = "key";
+
+    private final QName match;
+    private final QName key;
+
+    public SortKeyConfig(final Map<String, String> namespaces, final Element node) throws DatabaseConfigurationException {
+        final String matchAttr = node.getAttribute(MATCH_ATTR);
+        final String keyAttr = node.getAttribute(KEY_ATTR);
+        if (matchAttr.isEmpty() || keyAttr.isEmpty()) {
+            throw new DatabaseConfigurationException("Configuration error: element " + node.getNodeName() +
+                    " must have attributes " + MATCH_ATTR + " and " + KEY_ATTR);
+        }
+        if (matchAttr.startsWith("@")) {
+            throw new DatabaseConfigurationException("Sort index configuration: " + MATCH_ATTR +
+                    " should name an element: " + matchAttr);
+        }
+        this.match = parse(namespaces, matchAttr);
+        this.key = parse(namespaces, keyAttr);
+    }
+
+    /**
+     * @return the qname of the elements for which a key is stored
+     */
+    public QName getMatch() {
+        return match;
+    }
+
+    /**
+     * @return the qname of the child element or attribute providing the key
+     */
+    public QName getKey() {
+        return key;
+    }
+
+    /**
+     * Name under which keys for the given child element or attribute are registered
+     * in the sort index. Keys are shared by all configurations using the same key qname.
+     *
+     * @param key qname of the child element or attribute
+     * @return the name of the index
+     */
+    static String getIndexName(final QName key) {
+        return (key.getNameType() == ElementValue.ATTRIBUTE ? "@" : "") + key.toURIQualifiedName();
+    }
+
+    private static QName parse(final Map<String, String> namespaces, String name) throws DatabaseConfigurationException {
+        boolean isAttribute = false;
+        if (name.startsWith("@")) {
+            isAttribute = true;
+            name = name.substring(1);
+        }
+        try {
+            final String prefix = QName.extractPrefix(name);
+            final String localName = QName.extractLocalName(name);
+            String namespaceURI = "";
+            if (prefix != null) {
+                namespaceURI = namespaces.get(prefix);
+                if (namespaceURI == null) {
+                    throw new DatabaseConfigurationException("Sort index configuration: no namespace defined for prefix: " +
+                            prefix + " in index definition");
+                }
+            }
+            if (isAttribute) {
+                return new QName(localName, namespaceURI, prefix, ElementValue.ATTRIBUTE);
+            }
+            return new QName(localName, namespaceURI, prefix);
+        } catch (final QName.IllegalQNameException e) {
+            throw new DatabaseConfigurationException("Sort index configuration: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.sort;
+
+import org.exist.EXistException;
+import org.exist.dom.QName;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.numbering.NodeId;
+import org.exist.util.LockException;
+import org.exist.xquery.*;
+import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.Type;
+import org.exist.xquery.value.UntypedAtomicValue;
+
+import javax.annotation.Nullable;
+import java.util.SortedMap;
+
+/**
+ * Replaces a sort expression like <code>$x/title</code> in an "order by" clause. If the
+ * variable is bound to a stored node for which the key has been indexed (see {@link SortKeyConfig}),
+ * the string value of the key is read from the sort index. Otherwise the original expression
+ * is evaluated. Both produce the same atomized value, so indexed and non-indexed items can be
+ * sorted together.
+ *
+ * The index only provides precomputed keys: they are stored by node, not in key order, and the
+ * items are still sorted in memory by the order by clause. What is saved is evaluating the path
+ * and the string value of the key for every item. Keys are looked up one by one. Only once
+ * {@link #BULK_READ_THRESHOLD} items of the same document have been sorted are the keys of all
+ * nodes in the document read with a single scan, and kept until an item from another document
+ * is encountered or the document is modified.
+ */
+public class SortKeyLookup extends AbstractExpression {
+
+    /**
+     * Number of items of a document to look up one by one, before all keys of the document are read.
+     */
+    static final int BULK_READ_THRESHOLD = 16;
+
+    private final VariableReference variable;
+    private final QName key;
+    private final Expression fallback;
+
+    private DocumentImpl lastDocument = null;
+    private long lastVersion = -1;
+    private int documentLookups = 0;
+    private SortedMap<NodeId, String> documentKeys = null;
+    // number of keys read from the index rather than computed, for testing
+    private long indexHits = 0;
+
+    public SortKeyLookup(final XQueryContext context, final VariableReference variable, final QName key, final Expression fallback) {
+        super(context);
+        this.variable = variable;
+        this.key = key;
+        this.fallback = fallback;
+        setLocation(fallback.getLine(), fallback.getColumn());
+    }
+
+    @Override
+    public void analyze(final AnalyzeContextInfo contextInfo) throws XPathException {
+        fallback.analyze(contextInfo);
+    }
+
+    @Override
+    public Sequence eval(final Sequence contextSequence, final Item contextItem) throws XPathException {
+        final Sequence input = variable.eval(contextSequence, contextItem);
+        if (input.hasOne() && input.itemAt(0) instanceof NodeProxy) {
+            final SortIndexWorker worker = (SortIndexWorker)
+                    context.getBroker().getIndexController().getWorkerByIndexId(SortIndex.ID);
+            try {
+                final String value = getSortKey(worker, (NodeProxy) input.itemAt(0));
+                if (value != null) {
+                    indexHits++;
+                    return new UntypedAtomicValue(this, value);
+                }
+            } catch (final EXistException e) {
+                throw new XPathException(this, e.getMessage(), e);
+            } catch (final LockException e) {
+                throw new XPathException(this, "Caught lock error while searching index. Giving up.", e);
+            }
+        }
+        return fallback.eval(contextSequence, contextItem);
+    }
+
+    private @Nullable String getSortKey(final SortIndexWorker worker, final NodeProxy proxy) throws EXistException, LockException {
+        final DocumentImpl doc = proxy.getOwnerDocument();
+        if (doc != lastDocument || doc.getVersion() != lastVersion) {
+            lastDocument = doc;
+            lastVersion = doc.getVersion();
+            documentLookups = 0;
+            documentKeys = null;
+        }
+        if (documentKeys == null) {
+            if (++documentLookups < BULK_READ_THRESHOLD) {
+                return worker.getSortKey(key, proxy);
+            }
+            documentKeys = worker.getSortKeys(key, doc);
+        }
+        return documentKeys.get(proxy.getNodeId());
+    }
+
+    long getIndexHits() {
+        return indexHits;
+    }
+
+    @Override
+    public int returnsType() {
+        return Type.ITEM;
+    }
+
+    @Override
+    public Cardinality getCardinality() {
+        return fallback.getCardinality();
+    }
+
+    @Override
+    public int getDependencies() {
+        return fallback.getDependencies();
+    }
+
+    @Override
+    public void accept(final ExpressionVisitor visitor) {
+        fallback.accept(visitor);
+    }
+
+    @Override
+    public void resetState(final boolean postOptimization) {
+        super.resetState(postOptimization);
+        fallback.resetState(postOptimization);
+        lastDocument = null;
+        lastVersion = -1;
+        documentLookups = 0;
+        documentKeys = null;
+    }
+
+    @Override
+    public void dump(final ExpressionDumper dumper) {
+        fallback.dump(dumper);
+    }
+
+    @Override
+    public String toString() {
+        return fallback.toString();
+    }
+}
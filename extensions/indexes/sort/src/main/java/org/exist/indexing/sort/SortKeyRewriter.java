@@ -0,0 +1,70 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.sort;
+
+import org.exist.dom.QName;
+import org.exist.storage.ElementValue;
+import org.exist.xquery.*;
+import org.exist.xquery.value.Type;
+
+/**
+ * Rewrites "order by" specifiers of the form <code>order by $x/key</code> or
+ * <code>order by $x/@key</code> into a {@link SortKeyLookup}, which reads the key from
+ * the sort index if it has been declared in collection.xconf. Whether the index can be
+ * used is decided at run time for every item.
+ */
+public class SortKeyRewriter extends QueryRewriter {
+
+    public SortKeyRewriter(final XQueryContext context) {
+        super(context);
+    }
+
+    @Override
+    public Expression rewriteOrderSpec(final OrderSpec orderSpec) throws XPathException {
+        Expression expr = orderSpec.getSortExpression();
+        while (expr instanceof PathExpr && ((PathExpr) expr).getLength() == 1) {
+            expr = ((PathExpr) expr).getExpression(0);
+        }
+        if (!(expr instanceof PathExpr)) {
+            return null;
+        }
+        final PathExpr path = (PathExpr) expr;
+        if (path.getLength() != 2 || !(path.getExpression(0) instanceof VariableReference) ||
+                !(path.getExpression(1) instanceof LocationStep)) {
+            return null;
+        }
+        final LocationStep step = (LocationStep) path.getExpression(1);
+        final NodeTest test = step.getTest();
+        if (step.hasPredicates() || test.isWildcardTest() || test.getName() == null) {
+            return null;
+        }
+        final QName key;
+        if (step.getAxis() == Constants.CHILD_AXIS && test.getType() == Type.ELEMENT) {
+            key = new QName(test.getName().getLocalPart(), test.getName().getNamespaceURI(), ElementValue.ELEMENT);
+        } else if (step.getAxis() == Constants.ATTRIBUTE_AXIS && test.getType() == Type.ATTRIBUTE) {
+            key = new QName(test.getName().getLocalPart(), test.getName().getNamespaceURI(), ElementValue.ATTRIBUTE);
+        } else {
+            return null;
+        }
+        return new SortKeyLookup(getContext(), (VariableReference) path.getExpression(0), key, orderSpec.getSortExpression());
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.sort;
+
+import org.exist.EXistException;
+import org.exist.TestUtils;
+import org.exist.collections.Collection;
+import org.exist.collections.CollectionConfigurationManager;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.util.MimeType;
+import org.exist.util.StringInputSource;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.CompiledXQuery;
+import org.exist.xquery.DefaultExpressionVisitor;
+import org.exist.xquery.Expression;
+import org.exist.xquery.OrderByClause;
+import org.exist.xquery.OrderSpec;
+import org.exist.xquery.XQuery;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.Sequence;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that "order by" on a key declared in collection.xconf reads the keys from the
+ * sort index, both one by one and, for larger documents, with a scan of the document.
+ */
+public class SortKeyLookupTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    private static final XmldbURI COLLECTION_URI = XmldbURI.ROOT_COLLECTION_URI.append("sort-key-lookup");
+
+    private static final String COLLECTION_CONFIG =
+            "<collection xmlns=\"http://exist-db.org/collection-config/1.0\">" +
+            "    <index>" +
+            "        <sort match=\"item\" key=\"name\"/>" +
+            "    </index>" +
+            "</collection>";
+
+    private static final int ITEMS = SortKeyLookup.BULK_READ_THRESHOLD * 2;
+
+    @BeforeClass
+    public static void storeDocuments() throws Exception {
+        final StringBuilder large = new StringBuilder("<test>");
+        for (int i = 0; i < ITEMS; i++) {
+            // stored in reverse order of the keys
+            large.append("<item><name>").append(String.format("k%03d", ITEMS - i)).append("</name></item>");
+        }
+        large.append("<item/></test>");
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = transact.beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, COLLECTION_URI);
+            final CollectionConfigurationManager mgr = pool.getConfigurationManager();
+            mgr.addConfiguration(transaction, broker, collection, COLLECTION_CONFIG);
+            broker.saveCollection(transaction, collection);
+            broker.storeDocument(transaction, XmldbURI.create("small.xml"),
+                    new StringInputSource("<test><item><name>b</name></item><item><name>a</name></item></test>"),
+                    MimeType.XML_TYPE, collection);
+            broker.storeDocument(transaction, XmldbURI.create("large.xml"),
+                    new StringInputSource(large.toString()), MimeType.XML_TYPE, collection);
+            transact.commit(transaction);
+        }
+    }
+
+    @AfterClass
+    public static void cleanup() throws EXistException, PermissionDeniedException, IOException, LockException, TriggerException {
+        TestUtils.cleanupDB();
+    }
+
+    @Test
+    public void keysAreLookedUp() throws Exception {
+        final SortKeyLookup lookup = orderByName("small.xml", "a", "b");
+        assertEquals(2, lookup.getIndexHits());
+    }
+
+    @Test
+    public void keysAreScannedForLargerDocuments() throws Exception {
+        final String[] expected = new String[ITEMS + 1];
+        // the item without a key sorts first
+        expected[0] = "";
+        for (int i = 1; i <= ITEMS; i++) {
+            expected[i] = String.format("k%03d", i);
+        }
+        final SortKeyLookup lookup = orderByName("large.xml", expected);
+        assertEquals(ITEMS, lookup.getIndexHits());
+    }
+
+    private static SortKeyLookup orderByName(final String docName, final String... expected) throws Exception {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQuery xquery = pool.getXQueryService();
+            final XQueryContext context = new XQueryContext(pool);
+            final CompiledXQuery compiled = xquery.compile(context,
+                    "for $item in doc('" + COLLECTION_URI.append(docName) + "')//item " +
+                    "order by $item/name " +
+                    "return string($item/name)");
+
+            final List<SortKeyLookup> lookups = new ArrayList<>();
+            ((Expression) compiled).accept(new DefaultExpressionVisitor() {
+                @Override
+                public void visitOrderByClause(final OrderByClause orderBy) {
+                    for (final OrderSpec spec : orderBy.getOrderSpecs()) {
+                        if (spec.getSortExpression() instanceof SortKeyLookup) {
+                            lookups.add((SortKeyLookup) spec.getSortExpression());
+                        }
+                    }
+                    super.visitOrderByClause(orderBy);
+                }
+            });
+            assertEquals("order by should have been rewritten to use the sort index", 1, lookups.size());
+
+            final Sequence result = xquery.execute(broker, compiled, null);
+            assertEquals(expected.length, result.getItemCount());
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], result.itemAt(i).getStringValue());
+            }
+            return lookups.get(0);
+        }
+    }
+}
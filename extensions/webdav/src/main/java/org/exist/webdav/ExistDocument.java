@@ -28,6 +28,7 @@ import org.exist.dom.persistent.BinaryDocument;
 import org.exist.dom.persistent.DocumentImpl;
 import org.exist.dom.persistent.LockToken;
 import org.exist.dom.persistent.LockedDocument;
+import org.exist.http.BinaryDocumentSender;
 import org.exist.security.Account;
 import org.exist.security.Permission;
 import org.exist.security.PermissionDeniedException;
@@ -183,7 +184,7 @@ public class ExistDocument extends ExistResource {
 
                 } else {
                     // Stream NON-XML document
-                    broker.readBinaryResource((BinaryDocument) document, os);
+                    streamBinary(broker, (BinaryDocument) document, 0, document.getContentLength(), os);
                     os.flush();
                 }
             }
@@ -203,6 +204,40 @@ public class ExistDocument extends ExistResource {
 
     }
 
+    /**
+     * Stream a byte range of a binary document to framework.
+     *
+     * @param os Outputstream.
+     * @param offset position of the first byte to stream.
+     * @param count number of bytes to stream.
+     * @throws IOException IO exception, also if the document is not a binary document
+     * @throws PermissionDeniedException permission is denied.
+     */
+    public void stream(final OutputStream os, final long offset, final long count) throws IOException, PermissionDeniedException {
+        try (final DBBroker broker = brokerPool.get(Optional.ofNullable(subject));
+             final LockedDocument lockedDocument = broker.getXMLResource(xmldbUri, LockMode.READ_LOCK)) {
+
+            final DocumentImpl document = lockedDocument.getDocument();
+            if (document.getResourceType() != DocumentImpl.BINARY_FILE) {
+                throw new IOException("Byte ranges are only supported for binary documents");
+            }
+            streamBinary(broker, (BinaryDocument) document, offset, count, os);
+            os.flush();
+
+        } catch (EXistException e) {
+            LOG.error(e);
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /*
+     * Copies straight from the blob file, see BinaryDocumentSender
+     */
+    private void streamBinary(final DBBroker broker, final BinaryDocument document, final long offset, final long count, final OutputStream os) throws IOException {
+        // reading from the blob store is not journalled, no transaction is needed
+        BinaryDocumentSender.transfer(broker, null, document, offset, count, os);
+    }
+
     private void serialize(final DBBroker broker, final Properties properties, final DocumentImpl document, final OutputStream os) throws SAXException, IOException {
         final Serializer serializer = broker.borrowSerializer();
 
@@ -178,7 +178,27 @@ public class MiltonDocument extends MiltonResource
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Serializing from database");
             }
-            existDocument.stream(out);
+            if (range != null && !existDocument.isXmlDocument()) {
+                // Only send requested bytes, the size of XML documents is not known in advance
+                final long length = existDocument.getContentLength();
+                final Long start = range.getStart();
+                final Long finish = range.getFinish();
+                final long first;
+                final long last;
+                if (start == null) {
+                    // suffix range
+                    first = Math.max(0, length - (finish == null ? length : finish));
+                    last = length - 1;
+                } else {
+                    first = start;
+                    last = finish == null ? length - 1 : Math.min(finish, length - 1);
+                }
+                if (last >= first) {
+                    existDocument.stream(out, first, last - first + 1);
+                }
+            } else {
+                existDocument.stream(out);
+            }
 
         } catch (PermissionDeniedException e) {
             if (LOG.isDebugEnabled()) {